@@ -0,0 +1,265 @@
+import java.util.SplittableRandom;
+
+/**
+ * A batch of finished boards, stored column by column for scoring many
+ * boards at once.  Rather than one object per board, the batch keeps two
+ * byte arrays, one for the values (2 to 14) and one for the suits (0 to 3)
+ * of the cards, and the cards in one cell of all the boards are next to
+ * each other:  the value of the card in cell c of board b is
+ * values[c*capacity + b].  A million boards take 50 megabytes and no
+ * objects at all.
+ * <p>score() finds the score of every board in the batch.  It works on a
+ * block of boards at a time, and for each line it reads the five value
+ * columns and the five suit columns of the line straight through, so
+ * memory is read in order and the block's scores stay in the cache.  The
+ * hand type of a line is found without branches or table lookups by
+ * plain arithmetic on the five cards:  the number of equal pairs among
+ * them tells the pattern of equal values (0 for no pair, 1 for a pair,
+ * 2 for two pairs, 3 for a triple, 4 for a full house, 6 for four of a
+ * kind), the suits are compared for a flush, and the highest and lowest
+ * values, with their sum for the wheel, show a straight.  That is the
+ * straight-line code over primitive arrays that the JIT compiler can turn
+ * into vector instructions.  Only the last step, looking up the points of
+ * the combined code, is a table lookup, and it is done in a separate loop.
+ * <p>A batch is not thread-safe while it is being filled, but once it is
+ * full any number of threads can score it, each with its own score array.
+ */
+public class BoardBatch {
+
+	private static final int BLOCK_SIZE = 1024;   // Boards per block in score().
+	private static final int WHEEL_SUM = 14 + 2 + 3 + 4 + 5;   // The sum of the values of A-2-3-4-5.
+
+	private final int capacity;
+	private final byte[] values;   // values[cell*capacity + board]
+	private final byte[] suits;    // suits[cell*capacity + board]
+	private int size;
+
+	/**
+	 * Creates an empty batch with room for a given number of boards.
+	 * @throws IllegalArgumentException if the capacity is less than 1 or too large.
+	 */
+	public BoardBatch(int capacity) {
+		if (capacity < 1 || capacity > Integer.MAX_VALUE / GameState.CELL_COUNT)
+			throw new IllegalArgumentException("Bad batch capacity " + capacity + ".");
+		this.capacity = capacity;
+		values = new byte[GameState.CELL_COUNT * capacity];
+		suits = new byte[GameState.CELL_COUNT * capacity];
+	}
+
+	/**
+	 * Returns the number of boards in the batch.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the largest number of boards that the batch can hold.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Removes all the boards from the batch.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Adds a finished board to the batch.
+	 * @return the number of the board in the batch.
+	 * @throws IllegalArgumentException if the game is not over.
+	 * @throws IllegalStateException if the batch is full.
+	 */
+	public int add(GameState state) {
+		if (!state.isOver())
+			throw new IllegalArgumentException("Only finished boards can be added to a batch.");
+		if (size == capacity)
+			throw new IllegalStateException("The batch is full.");
+		for (int cell = 0; cell < GameState.CELL_COUNT; cell++)
+			put(size, cell, state.getCard(cell));
+		return size++;
+	}
+
+	/**
+	 * Adds a board given as the card code in each of its 25 cells.
+	 * @return the number of the board in the batch.
+	 * @throws IllegalArgumentException if the array is not 25 valid card codes.
+	 * @throws IllegalStateException if the batch is full.
+	 */
+	public int add(int[] cards) {
+		if (cards.length != GameState.CELL_COUNT)
+			throw new IllegalArgumentException("A board has " + GameState.CELL_COUNT + " cells.");
+		if (size == capacity)
+			throw new IllegalStateException("The batch is full.");
+		for (int cell = 0; cell < GameState.CELL_COUNT; cell++) {
+			if (cards[cell] < 0 || cards[cell] >= CardCodes.DECK_SIZE)
+				throw new IllegalArgumentException("Bad card code " + cards[cell] + ".");
+			put(size, cell, cards[cell]);
+		}
+		return size++;
+	}
+
+	private void put(int board, int cell, int card) {
+		values[cell*capacity + board] = (byte)CardCodes.value(card);
+		suits[cell*capacity + board] = (byte)CardCodes.suit(card);
+	}
+
+	/**
+	 * Returns the card code of the card in a cell of one of the boards.
+	 */
+	public int getCard(int board, int cell) {
+		if (board < 0 || board >= size)
+			throw new IndexOutOfBoundsException("No board " + board + " in the batch.");
+		int i = cell*capacity + board;
+		return suits[i]*13 + values[i] - 2;
+	}
+
+	/**
+	 * Scores every board in the batch.
+	 * @param scores receives the score of board b in scores[b].  Its length must be
+	 *    at least size().
+	 * @throws IllegalArgumentException if the lines are not lines of five cells on a
+	 *    5-by-5 board.
+	 */
+	public void score(ScoringScheme scheme, LineTable lines, int[] scores) {
+		if (lines.getSize() != GameState.SIZE)
+			throw new IllegalArgumentException("Only 5-by-5 boards can be scored in a batch.");
+		PokerEvents.ScoringPass event = new PokerEvents.ScoringPass();
+		event.begin();
+		int[] points = pointsTable(scheme);
+		int[] codes = new int[BLOCK_SIZE];
+		for (int start = 0; start < size; start += BLOCK_SIZE) {
+			int end = Math.min(size, start + BLOCK_SIZE);
+			for (int b = start; b < end; b++)
+				scores[b] = 0;
+			for (int line = 0; line < lines.getLineCount(); line++) {
+				int[] cells = lines.getCellsOfLine(line);
+				lineCodes(cells[0]*capacity, cells[1]*capacity, cells[2]*capacity,
+						cells[3]*capacity, cells[4]*capacity, start, end, codes);
+				for (int b = start; b < end; b++)
+					scores[b] += points[codes[b - start]];
+			}
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.scheme = scheme.getName();
+			event.boards = size;
+			event.lines = lines.getLineCount();
+			event.bytes = 2L * GameState.CELL_COUNT * size;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Scores every board in the batch with the standard lines.
+	 * @return a new array with the score of each board.
+	 */
+	public int[] score(ScoringScheme scheme) {
+		int[] scores = new int[size];
+		score(scheme, LineTable.STANDARD, scores);
+		return scores;
+	}
+
+	/**
+	 * Computes the hand code of one line on a block of boards.  The code is
+	 * 8*(equal pairs) + 4*straight + 2*flush + (lowest value is 10), and pointsTable()
+	 * turns it into points.  The cells are given by the offsets of their columns.
+	 */
+	private void lineCodes(int c0, int c1, int c2, int c3, int c4, int start, int end, int[] codes) {
+		byte[] v = values, s = suits;
+		for (int b = start; b < end; b++) {
+			int v0 = v[c0 + b], v1 = v[c1 + b], v2 = v[c2 + b], v3 = v[c3 + b], v4 = v[c4 + b];
+			int s0 = s[c0 + b];
+			int pairs = (v0 == v1 ? 1 : 0) + (v0 == v2 ? 1 : 0) + (v0 == v3 ? 1 : 0) + (v0 == v4 ? 1 : 0)
+					+ (v1 == v2 ? 1 : 0) + (v1 == v3 ? 1 : 0) + (v1 == v4 ? 1 : 0)
+					+ (v2 == v3 ? 1 : 0) + (v2 == v4 ? 1 : 0) + (v3 == v4 ? 1 : 0);
+			int flush = (s0 == s[c1 + b] & s0 == s[c2 + b] & s0 == s[c3 + b] & s0 == s[c4 + b]) ? 1 : 0;
+			int high = Math.max(Math.max(Math.max(v0, v1), Math.max(v2, v3)), v4);
+			int low = Math.min(Math.min(Math.min(v0, v1), Math.min(v2, v3)), v4);
+			int sum = v0 + v1 + v2 + v3 + v4;
+			int straight = (pairs == 0 & (high - low == 4 | (high == 14 & sum == WHEEL_SUM))) ? 1 : 0;
+			int royal = low == 10 ? 1 : 0;
+			codes[b - start] = 8*pairs + 4*straight + 2*flush + royal;
+		}
+	}
+
+	/**
+	 * Makes the table of points for each hand code from lineCodes().
+	 */
+	private static int[] pointsTable(ScoringScheme scheme) {
+		int[] types = { PokerRank.NOTHING, PokerRank.PAIR, PokerRank.TWO_PAIR, PokerRank.TRIPLE,
+				PokerRank.FULL_HOUSE, PokerRank.NOTHING, PokerRank.FOUR_OF_A_KIND };   // By equal pairs.
+		int[] points = new int[8 * types.length];
+		for (int pairs = 0; pairs < types.length; pairs++) {
+			for (int rest = 0; rest < 8; rest++) {
+				boolean straight = (rest & 4) != 0, flush = (rest & 2) != 0, royal = (rest & 1) != 0;
+				int type = types[pairs];
+				if (pairs == 0) {
+					if (straight && flush)
+						type = royal ? PokerRank.ROYAL_FLUSH : PokerRank.STRAIGHT_FLUSH;
+					else if (flush)
+						type = PokerRank.FLUSH;
+					else if (straight)
+						type = PokerRank.STRAIGHT;
+				}
+				points[8*pairs + rest] = scheme.getPoints(type);
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * Checks score() against GameState.score() on random boards, and compares its
+	 * speed with scoring the same boards one at a time with HandEvaluator.  The
+	 * arguments are the number of boards and the seed; both are optional.
+	 */
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+		ScoringScheme scheme = ScoringScheme.getDefault();
+		SplittableRandom rng = new SplittableRandom(seed);
+		BoardBatch batch = new BoardBatch(count);
+		int[][] boards = new int[count][GameState.CELL_COUNT];
+		int[] expected = new int[count];
+		GameState game = new GameState(Deals.sorted());
+		for (int b = 0; b < count; b++) {
+			game.reset(Deals.newDeal(rng));
+			for (int cell = 0; cell < GameState.CELL_COUNT; cell++) {
+				game.place(cell);
+				boards[b][cell] = game.getCard(cell);
+			}
+			batch.add(game);
+			expected[b] = game.score(scheme);
+		}
+		int[] scores = new int[count];
+		int[] hand = new int[GameState.SIZE];
+		long batchNanos = Long.MAX_VALUE, singleNanos = Long.MAX_VALUE;
+		int errors = 0;
+		for (int rep = 0; rep < 5; rep++) {
+			long t = System.nanoTime();
+			batch.score(scheme, LineTable.STANDARD, scores);
+			batchNanos = Math.min(batchNanos, System.nanoTime() - t);
+			t = System.nanoTime();
+			errors = 0;
+			for (int b = 0; b < count; b++) {
+				int score = 0;
+				for (int line = 0; line < LineTable.STANDARD.getLineCount(); line++) {
+					int[] cells = LineTable.STANDARD.getCellsOfLine(line);
+					for (int i = 0; i < cells.length; i++)
+						hand[i] = boards[b][cells[i]];
+					score += scheme.getPoints(HandEvaluator.handType(hand, hand.length));
+				}
+				if (score != expected[b] || scores[b] != expected[b])
+					errors++;
+			}
+			singleNanos = Math.min(singleNanos, System.nanoTime() - t);
+		}
+		System.out.printf("%d boards, %d differences from GameState.score()%n", count, errors);
+		System.out.printf("Batch:        %.1f ns per board%n", (double)batchNanos / count);
+		System.out.printf("One by one:   %.1f ns per board%n", (double)singleNanos / count);
+	}
+
+}
@@ -0,0 +1,366 @@
+/**
+ * An upper bound on the final score of a whole board, which is tighter than
+ * the sum of the bounds of LineBounds because it takes into account that
+ * the lines compete for the same cards.  LineBounds bounds each line by
+ * itself, so when the five cards of a straight flush are still to come,
+ * every line is allowed the points of a straight flush, although only one
+ * line can get them.
+ * <p>The hand types that need particular cards are treated as "premium":
+ * flushes, full houses, fours of a kind, straight flushes and royal
+ * flushes.  For each line, each way of making a premium hand from the cards
+ * in it is an option, which needs a card of one suit in each empty cell of
+ * the line (a flush), or some cards of one value (the three of a kind of a
+ * full house), or particular cards (four of a kind, or a straight flush).
+ * The bound is the best total over one choice for each line, where a line
+ * either takes one of its options or takes the best points of the other
+ * hand types that are possible for it, subject to these conditions:
+ * <ul>
+ * <li>For each suit, the empty cells that must get a card of that suit are
+ * no more than the remaining cards of the suit.  This is exact about the
+ * cells that lines share, so a flush row and a flush column of the same
+ * suit need nine cards, not ten.
+ * <li>A particular card that several lines need must go in an empty cell
+ * that all of those lines share.
+ * <li>For each value, the cards needed by all the lines, less one for each
+ * pair of those lines that cross at an empty cell, are no more than the
+ * remaining cards of the value.
+ * </ul>
+ * Every real way of filling the board makes a choice that meets these
+ * conditions, so the bound never underestimates.
+ * <p>The best choice is found by a small depth-first search.  A caller that
+ * only needs to know whether the bound is above some limit can say so, and
+ * the search stops as soon as it finds a choice that is.  A BoardBounds
+ * object has scratch space, so it must be used by only one thread at a time.
+ * It only works on 5-by-5 boards.
+ */
+public class BoardBounds {
+
+	private static final int MAX_OPTIONS = 100;     // The most premium options for one line.
+	private static final int PREMIUM = 1 << PokerRank.FLUSH | 1 << PokerRank.FULL_HOUSE
+			| 1 << PokerRank.FOUR_OF_A_KIND | 1 << PokerRank.STRAIGHT_FLUSH | 1 << PokerRank.ROYAL_FLUSH;
+	private static final int WHEEL = 0x100F;        // The values of A-2-3-4-5.
+	private static final int BROADWAY = 0x1F00;     // The values of 10-J-Q-K-A.
+	private static final int ALL_CELLS = (1 << GameState.CELL_COUNT) - 1;
+
+	private final int[] points;     // The points for each hand type.
+
+	/* The options of each line, sorted by points, from the highest.  For option i of a line,
+	 * optionSuit is the suit that its empty cells need, or -1; optionValue is the value (0 for
+	 * a two) of which it needs optionValueCount cards, or -1; optionCards holds the particular
+	 * cards that it needs. */
+
+	private final int[][] optionPoints = new int[GameState.LINE_COUNT][MAX_OPTIONS];
+	private final int[][] optionSuit = new int[GameState.LINE_COUNT][MAX_OPTIONS];
+	private final int[][] optionValue = new int[GameState.LINE_COUNT][MAX_OPTIONS];
+	private final int[][] optionValueCount = new int[GameState.LINE_COUNT][MAX_OPTIONS];
+	private final long[][] optionCards = new long[GameState.LINE_COUNT][MAX_OPTIONS];
+	private final int[] optionCount = new int[GameState.LINE_COUNT];
+	private final int[] otherPoints = new int[GameState.LINE_COUNT];  // Best points without a premium hand, or -1.
+	private final int[] emptyCells = new int[GameState.LINE_COUNT];   // The empty cells of each line, as a mask.
+	private final int[] order = new int[GameState.LINE_COUNT];        // The lines to choose for, in order.
+	private final int[] lineCards = new int[GameState.SIZE];
+
+	/* The state of the search for the best choice. */
+
+	private final int[] suitCells = new int[4];      // The cells that must get a card of each suit.
+	private final int[] suitsLeft = new int[4];      // The remaining cards of each suit.
+	private final int[] cardCells = new int[CardCodes.DECK_SIZE];   // Where each needed card can go.
+	private final int[] valueNeeded = new int[13];   // Cards of each value needed, less shared cells.
+	private final int[] valueLines = new int[13];    // The lines that need cards of each value, as a mask.
+	private final int[] valuesLeft = new int[13];    // The remaining cards of each value.
+	private final int[][] savedCells = new int[GameState.LINE_COUNT][GameState.SIZE];  // For undoing cardCells.
+	private int lineCount;
+	private int best;
+	private int limit;
+
+	/**
+	 * Creates an object for bounding the score under a scoring scheme.
+	 */
+	public BoardBounds(ScoringScheme scheme) {
+		points = scheme.getPointsTable();
+	}
+
+	/**
+	 * Returns an upper bound on the final score of a board.
+	 * @param remaining the cards that will fill the empty cells.  It must not include
+	 *    the cards on the board.
+	 */
+	public int bound(GameState state, DeckState remaining) {
+		return bound(state, remaining, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns an upper bound on the final score of a board, or stops early once the
+	 * bound is known to be more than a limit.
+	 * @param remaining the cards that will fill the empty cells.  It must not include
+	 *    the cards on the board.
+	 * @param limit a number of points.
+	 * @return the bound, if it is no more than the limit; otherwise, some number that is
+	 *    more than the limit (but possibly less than the bound).
+	 * @throws IllegalArgumentException if the board is not 5 by 5.
+	 */
+	public int bound(GameState state, DeckState remaining, int limit) {
+		LineTable lines = state.getLineTable();
+		if (!lines.isFiveByFive())
+			throw new IllegalArgumentException("Only 5-by-5 boards can be bounded.");
+		long available = remaining.getCards();
+		long availableCounts = remaining.getPackedValueCounts();
+		int fixed = 0;
+		int n = 0;
+		for (int line = 0; line < lines.getLineCount(); line++) {
+			int count = 0;
+			int cells = 0;
+			for (int cell : lines.getCellsOfLine(line)) {
+				if (state.isEmpty(cell))
+					cells |= 1 << cell;
+				else
+					lineCards[count++] = state.getCard(cell);
+			}
+			if (count == GameState.SIZE) {
+				fixed += points[state.getLineType(line)];
+				continue;
+			}
+			emptyCells[n] = cells;
+			makeOptions(n, count, LineBounds.possibleTypes(lineCards, count, remaining), available, availableCounts);
+			n++;
+		}
+		lineCount = n;
+
+		// Choose for the lines with the most to gain from a premium hand first.
+		for (int i = 0; i < n; i++) {
+			int gain = gain(i);
+			int j = i;
+			while (j > 0 && gain(order[j-1]) < gain) {
+				order[j] = order[j-1];
+				j--;
+			}
+			order[j] = i;
+		}
+
+		for (int s = 0; s < 4; s++) {
+			suitCells[s] = 0;
+			suitsLeft[s] = remaining.getSuitCount(s);
+		}
+		for (int v = 0; v < 13; v++) {
+			valueNeeded[v] = 0;
+			valueLines[v] = 0;
+			valuesLeft[v] = remaining.getValueCount(v + 2);
+		}
+		for (int c = 0; c < CardCodes.DECK_SIZE; c++)
+			cardCells[c] = ALL_CELLS;
+		this.limit = limit - fixed;
+		best = -1;
+		choose(0, 0);
+		if (best < 0)
+			best = optimistic(0);   // Can't happen for a position that can be reached; be safe.
+		return fixed + best;
+	}
+
+	private int gain(int line) {
+		return optionCount[line] == 0 ? 0 : optionPoints[line][0] - Math.max(otherPoints[line], 0);
+	}
+
+	/**
+	 * Tries every choice for the line order[i] and the lines after it, until a total
+	 * above the limit is found.
+	 * @param total the points of the choices for the lines before it.
+	 */
+	private void choose(int i, int total) {
+		if (i == lineCount) {
+			best = Math.max(best, total);
+			return;
+		}
+		if (total + optimistic(i) <= best)
+			return;
+		int line = order[i];
+		int[] pts = optionPoints[line];
+		int count = optionCount[line];
+		for (int o = 0; o < count && best <= limit; o++) {
+			if (otherPoints[line] >= pts[o])
+				break;  // The options are sorted, so the rest are no better.
+			if (!feasible(line, o))
+				continue;
+			int suit = optionSuit[line][o];
+			int oldCells = suit < 0 ? 0 : suitCells[suit];
+			int value = optionValue[line][o];
+			int oldNeeded = value < 0 ? 0 : valueNeeded[value];
+			if (suit >= 0)
+				suitCells[suit] |= emptyCells[line];
+			if (value >= 0) {
+				valueNeeded[value] += optionValueCount[line][o] - shares(value, line);
+				valueLines[value] |= 1 << line;
+			}
+			int k = 0;
+			for (long cards = optionCards[line][o]; cards != 0; cards &= cards - 1) {
+				int c = Long.numberOfTrailingZeros(cards);
+				savedCells[i][k++] = cardCells[c];
+				cardCells[c] &= emptyCells[line];
+			}
+			choose(i + 1, total + pts[o]);
+			k = 0;
+			for (long cards = optionCards[line][o]; cards != 0; cards &= cards - 1)
+				cardCells[Long.numberOfTrailingZeros(cards)] = savedCells[i][k++];
+			if (value >= 0) {
+				valueNeeded[value] = oldNeeded;
+				valueLines[value] &= ~(1 << line);
+			}
+			if (suit >= 0)
+				suitCells[suit] = oldCells;
+		}
+		if (otherPoints[line] >= 0 && best <= limit)
+			choose(i + 1, total + otherPoints[line]);
+	}
+
+	/**
+	 * Returns the sum, over the lines order[i], order[i+1], ..., of the most points that
+	 * each line can get by itself, given the choices made for the lines before it.
+	 */
+	private int optimistic(int i) {
+		int sum = 0;
+		for (int k = i; k < lineCount; k++) {
+			int line = order[k];
+			int max = otherPoints[line];
+			for (int o = 0; o < optionCount[line] && optionPoints[line][o] > max; o++) {
+				if (feasible(line, o))
+					max = optionPoints[line][o];
+			}
+			sum += max;
+		}
+		return sum;
+	}
+
+	/**
+	 * Tests whether an option of a line fits with the choices made so far.
+	 */
+	private boolean feasible(int line, int o) {
+		int suit = optionSuit[line][o];
+		if (suit >= 0 && Integer.bitCount(suitCells[suit] | emptyCells[line]) > suitsLeft[suit])
+			return false;
+		int value = optionValue[line][o];
+		if (value >= 0 && valueNeeded[value] + optionValueCount[line][o] - shares(value, line) > valuesLeft[value])
+			return false;
+		for (long cards = optionCards[line][o]; cards != 0; cards &= cards - 1) {
+			if ((cardCells[Long.numberOfTrailingZeros(cards)] & emptyCells[line]) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of lines that need cards of a value and cross a line at an
+	 * empty cell, where one card could count for both lines.
+	 */
+	private int shares(int value, int line) {
+		int count = 0;
+		for (int lines = valueLines[value]; lines != 0; lines &= lines - 1) {
+			if ((emptyCells[Integer.numberOfTrailingZeros(lines)] & emptyCells[line]) != 0)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Lists the premium options for one line, whose cards are in lineCards.
+	 */
+	private void makeOptions(int line, int count, int types, long available, long availableCounts) {
+		int other = -1;
+		for (int t = 0; t <= PokerRank.ROYAL_FLUSH; t++) {
+			if ((types & (1 << t)) != 0 && (PREMIUM & (1 << t)) == 0)
+				other = Math.max(other, points[t]);
+		}
+		otherPoints[line] = other;
+		optionCount[line] = 0;
+
+		long lineCounts = 0;
+		int lineValues = 0;
+		int suit = count == 0 ? -1 : CardCodes.suit(lineCards[0]);
+		for (int i = 0; i < count; i++) {
+			int v = CardCodes.value(lineCards[i]) - 2;
+			lineCounts += 1L << (4*v);
+			lineValues |= 1 << v;
+			if (CardCodes.suit(lineCards[i]) != suit)
+				suit = -2;
+		}
+
+		if ((types & (1 << PokerRank.FLUSH)) != 0 && points[PokerRank.FLUSH] > other) {
+			for (int s = 0; s < 4; s++) {
+				if ((suit == -1 || suit == s) && count + Integer.bitCount(suitValues(available, s)) >= GameState.SIZE)
+					addOption(line, points[PokerRank.FLUSH], s, -1, 0, 0);
+			}
+		}
+		if ((types & (1 << PokerRank.FOUR_OF_A_KIND)) != 0 && points[PokerRank.FOUR_OF_A_KIND] > other) {
+			for (int v = 0; v < 13; v++) {
+				int in = nibble(lineCounts, v);
+				if (count - in <= 1 && in + nibble(availableCounts, v) >= 4) {
+					long cards = 0;    // All the remaining cards of the value.
+					for (int s = 0; s < 4; s++)
+						cards |= 1L << (13*s + v);
+					addOption(line, points[PokerRank.FOUR_OF_A_KIND], -1, -1, 0, cards & available);
+				}
+			}
+		}
+		if ((types & (1 << PokerRank.FULL_HOUSE)) != 0 && points[PokerRank.FULL_HOUSE] > other) {
+			for (int v = 0; v < 13; v++) {
+				int inV = nibble(lineCounts, v);
+				if (inV > 3 || inV + nibble(availableCounts, v) < 3)
+					continue;
+				boolean pair = false;   // Some other value can make the pair.
+				for (int w = 0; w < 13 && !pair; w++) {
+					int inW = nibble(lineCounts, w);
+					pair = w != v && inW <= 2 && inW + nibble(availableCounts, w) >= 2 && inV + inW == count;
+				}
+				if (pair)
+					addOption(line, points[PokerRank.FULL_HOUSE], -1, v, 3 - inV, 0);
+			}
+		}
+		boolean straightFlush = (types & (1 << PokerRank.STRAIGHT_FLUSH)) != 0
+				&& points[PokerRank.STRAIGHT_FLUSH] > other;
+		boolean royalFlush = (types & (1 << PokerRank.ROYAL_FLUSH)) != 0
+				&& points[PokerRank.ROYAL_FLUSH] > other;
+		if ((straightFlush || royalFlush) && Integer.bitCount(lineValues) == count) {
+			for (int w = -1; w <= 8; w++) {
+				int window = w == -1 ? WHEEL : 0x1F << w;
+				int type = window == BROADWAY ? PokerRank.ROYAL_FLUSH : PokerRank.STRAIGHT_FLUSH;
+				if ((lineValues & ~window) != 0 || (type == PokerRank.ROYAL_FLUSH ? !royalFlush : !straightFlush))
+					continue;
+				int missing = window & ~lineValues;
+				for (int s = 0; s < 4; s++) {
+					if ((suit == -1 || suit == s) && (missing & ~suitValues(available, s)) == 0)
+						addOption(line, points[type], s, -1, 0, (long)missing << (13*s));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds an option to the list of a line, keeping the list sorted by points.
+	 */
+	private void addOption(int line, int pts, int suit, int value, int valueCount, long cards) {
+		int i = optionCount[line];
+		if (i == MAX_OPTIONS)
+			throw new IllegalStateException("Too many options for one line.");
+		optionCount[line]++;
+		while (i > 0 && optionPoints[line][i-1] < pts) {
+			optionPoints[line][i] = optionPoints[line][i-1];
+			optionSuit[line][i] = optionSuit[line][i-1];
+			optionValue[line][i] = optionValue[line][i-1];
+			optionValueCount[line][i] = optionValueCount[line][i-1];
+			optionCards[line][i] = optionCards[line][i-1];
+			i--;
+		}
+		optionPoints[line][i] = pts;
+		optionSuit[line][i] = suit;
+		optionValue[line][i] = value;
+		optionValueCount[line][i] = valueCount;
+		optionCards[line][i] = cards;
+	}
+
+	private static int suitValues(long cards, int suit) {
+		return (int)(cards >>> (13*suit)) & 0x1FFF;
+	}
+
+	private static int nibble(long counts, int v) {
+		return (int)(counts >>> (4*v)) & 0xF;
+	}
+
+}
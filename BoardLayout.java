@@ -0,0 +1,149 @@
+/**
+ * Describes where the cells of the grid are drawn on the game board, and
+ * maps a mouse click to the cell that contains it.  The cells are laid out
+ * in rows and columns with a fixed spacing, so the cell at a point is found
+ * by arithmetic instead of by testing the rectangles one by one, and the
+ * cost of a click is the same for any size of board.
+ * <p>Positions are given in board coordinates, the coordinates that are
+ * used for drawing the board at its natural size.  When the window is
+ * resized, the program sets a scale factor; the board is then drawn
+ * scaled by that factor, and cellAt() converts the click position back to
+ * board coordinates before looking for the cell.  Nothing else has to be
+ * recomputed.
+ */
+public class BoardLayout {
+
+	public static final int CARD_WIDTH = 90;   // Each card image is 90 pixels wide.
+	public static final int CARD_HEIGHT = 126; // Each card image is 126 pixels tall.
+
+	private final int rows, columns;        // The size of the grid.
+	private final double left, top;         // The upper left corner of the cell in row 0, column 0.
+	private final double cellWidth, cellHeight;
+	private final double gap;               // The space between neighbouring cells.
+	private double scale = 1;               // Window coordinates are board coordinates times scale.
+
+	/**
+	 * Creates a layout for the usual 5-by-5 grid of card images, with a 20 pixel
+	 * margin and 20 pixels between cards.
+	 */
+	public BoardLayout() {
+		this(5, 5, 20, 20, CARD_WIDTH, CARD_HEIGHT, 20);
+	}
+
+	/**
+	 * Creates a layout for a grid of cells.
+	 * @param rows the number of rows in the grid.
+	 * @param columns the number of columns in the grid.
+	 * @param left the x-coordinate of the left edge of the first column.
+	 * @param top the y-coordinate of the top edge of the first row.
+	 * @param cellWidth the width of each cell.
+	 * @param cellHeight the height of each cell.
+	 * @param gap the space between neighbouring rows and columns.
+	 * @throws IllegalArgumentException if the grid is empty or the cells have no area.
+	 */
+	public BoardLayout(int rows, int columns, double left, double top,
+			double cellWidth, double cellHeight, double gap) {
+		if (rows < 1 || columns < 1)
+			throw new IllegalArgumentException("A grid must have at least one row and one column.");
+		if (cellWidth <= 0 || cellHeight <= 0 || gap < 0)
+			throw new IllegalArgumentException("Illegal cell size.");
+		this.rows = rows;
+		this.columns = columns;
+		this.left = left;
+		this.top = top;
+		this.cellWidth = cellWidth;
+		this.cellHeight = cellHeight;
+		this.gap = gap;
+	}
+
+	/**
+	 * Sets the factor by which the board is scaled when it is drawn.
+	 * @throws IllegalArgumentException if the scale is not positive.
+	 */
+	public void setScale(double scale) {
+		if (!(scale > 0))
+			throw new IllegalArgumentException("The scale must be positive.");
+		this.scale = scale;
+	}
+
+	/**
+	 * Returns the factor by which the board is scaled when it is drawn.
+	 */
+	public double getScale() {
+		return scale;
+	}
+
+	/**
+	 * Returns the number of the cell that contains a point in window coordinates,
+	 * such as the position of a mouse click.  Cells are numbered in row-major order,
+	 * so the cell in row r and column c is number r*columns + c.
+	 * @return the cell number, or -1 if the point is not inside any cell.
+	 */
+	public int cellAt(double x, double y) {
+		int row = rowAt(y);
+		int col = columnAt(x);
+		if (row == -1 || col == -1)
+			return -1;
+		return row*columns + col;
+	}
+
+	/**
+	 * Returns the row that contains a given y-coordinate, in window coordinates,
+	 * or -1 if the y-coordinate is not inside any row.
+	 */
+	public int rowAt(double y) {
+		return indexAt(y / scale - top, cellHeight, rows);
+	}
+
+	/**
+	 * Returns the column that contains a given x-coordinate, in window coordinates,
+	 * or -1 if the x-coordinate is not inside any column.
+	 */
+	public int columnAt(double x) {
+		return indexAt(x / scale - left, cellWidth, columns);
+	}
+
+	/**
+	 * Returns the x-coordinate of the left edge of a column, in board coordinates.
+	 */
+	public double cellX(int column) {
+		return left + column*(cellWidth + gap);
+	}
+
+	/**
+	 * Returns the y-coordinate of the top edge of a row, in board coordinates.
+	 */
+	public double cellY(int row) {
+		return top + row*(cellHeight + gap);
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public double getCellWidth() {
+		return cellWidth;
+	}
+
+	public double getCellHeight() {
+		return cellHeight;
+	}
+
+	/**
+	 * Finds the cell that contains an offset along a row or column of cells.
+	 */
+	private int indexAt(double offset, double size, int count) {
+		if (offset < 0)
+			return -1;
+		double pitch = size + gap;
+		int index = (int)(offset / pitch);
+		if (index >= count || offset - index*pitch >= size)
+			return -1;  // Past the last cell, or in the gap after a cell.
+		return index;
+	}
+
+}
@@ -0,0 +1,272 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Draws boards into image files without a window, for reports on simulated
+ * games.  This uses java.awt.image instead of JavaFX, so it works in
+ * headless mode (-Djava.awt.headless=true) on a machine without a display.
+ * The 52 card images are read from the cards folder once, when the renderer
+ * is created, and are then shared by all threads; each board is composed
+ * by copying those images into a new BufferedImage.  The layout of the grid
+ * is the same as in the game window, so only 5-by-5 boards can be drawn.
+ * <p>Most of the time goes into compressing the PNG files, so the files are
+ * written with the fastest compression setting rather than the smallest
+ * files, and in parallel.
+ */
+public class BoardRenderer {
+
+	private static final Color BACKGROUND = new Color(0, 128, 0);    // The colors used by the game window.
+	private static final Color EMPTY_CELL = new Color(245, 245, 220);
+	private static final Color BORDER = new Color(160, 82, 45);
+
+	private final BufferedImage[] cardImages = new BufferedImage[CardCodes.DECK_SIZE];  // Indexed by card code.
+	private final BoardLayout layout = new BoardLayout();
+	private final int width, height;    // The size of the image of one board.
+
+	/**
+	 * Creates a renderer that reads the card images from the folder "cards".
+	 * @throws IOException if a card image can't be read.
+	 */
+	public BoardRenderer() throws IOException {
+		this(new File("cards"));
+	}
+
+	/**
+	 * Creates a renderer that reads the card images, such as "HQ.jpg", from a given folder.
+	 * @throws IOException if a card image can't be read.
+	 */
+	public BoardRenderer(File cardFolder) throws IOException {
+		for (int code = 0; code < CardCodes.DECK_SIZE; code++) {
+			File file = new File(cardFolder, CardCodes.shortName(code) + ".jpg");
+			BufferedImage image = ImageIO.read(file);
+			if (image == null)
+				throw new IOException("Can't read card image " + file);
+			// Convert to the same type as the board images, so drawing is a plain copy.
+			cardImages[code] = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+			cardImages[code].createGraphics().drawImage(image, 0, 0, null);
+		}
+		width = (int)(layout.cellX(layout.getColumns()));
+		height = (int)(layout.cellY(layout.getRows())) + 30;  // room for the score below the grid
+	}
+
+	/**
+	 * Returns the width of the image of one board.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the image of one board.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Draws the board of a game, with its score, into a new image.
+	 * @throws IllegalArgumentException if the board is not 5 by 5.
+	 */
+	public BufferedImage render(GameState game, ScoringScheme scheme) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		draw(g, game, scheme);
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Draws the board of a game, and its score, with the upper left corner of the
+	 * board at (0,0) in a graphics context.  This is safe to call from several
+	 * threads at once, as long as each thread uses its own graphics context.
+	 * @throws IllegalArgumentException if the board is not 5 by 5.
+	 */
+	public void draw(Graphics2D g, GameState game, ScoringScheme scheme) {
+		if (game.getSize() != layout.getColumns() || game.getSize() != layout.getRows())
+			throw new IllegalArgumentException("Only 5-by-5 boards can be drawn.");
+		g.setColor(BACKGROUND);
+		g.fillRect(0, 0, width, height);
+		int cardWidth = (int)layout.getCellWidth();
+		int cardHeight = (int)layout.getCellHeight();
+		for (int row = 0; row < layout.getRows(); row++) {
+			int y = (int)layout.cellY(row);
+			for (int col = 0; col < layout.getColumns(); col++) {
+				int x = (int)layout.cellX(col);
+				int card = game.getCard(row*game.getSize() + col);
+				if (card == GameState.EMPTY) {
+					g.setColor(EMPTY_CELL);
+					g.fillRect(x, y, cardWidth, cardHeight);
+				}
+				else {
+					g.drawImage(cardImages[card], x, y, null);
+				}
+				g.setColor(BORDER);
+				g.drawRect(x - 1, y - 1, cardWidth + 1, cardHeight + 1);
+			}
+		}
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setColor(Color.WHITE);
+		g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 18));
+		g.drawString("Score: " + game.score(scheme), 20, height - 12);
+	}
+
+	/**
+	 * Writes one PNG file for each game, named board00000.png, board00001.png, and so
+	 * on, using several threads.
+	 * @param games the games to draw.  They must not be changed while this method runs.
+	 * @param folder the folder where the files are written.  It is created if necessary.
+	 * @param threads the number of threads to use.
+	 * @throws IOException if a file can't be written.
+	 */
+	public void writeImages(List<GameState> games, ScoringScheme scheme, File folder, int threads) throws IOException {
+		if (!folder.isDirectory() && !folder.mkdirs())
+			throw new IOException("Can't create folder " + folder);
+		parallel(games.size(), threads, i -> {
+			BufferedImage image = render(games.get(i), scheme);
+			File file = new File(folder, String.format("board%05d.png", i));
+			try {
+				writePNG(image, file);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Writes a single PNG file that shows many boards in a grid, each one shrunk by a
+	 * given factor.  The boards are drawn in parallel, in horizontal strips of the sheet.
+	 * @param columns the number of boards in each row of the sheet.
+	 * @param scale the scale for the boards; for example, 0.25 for boards a quarter of
+	 *    their usual size.
+	 * @throws IOException if the file can't be written.
+	 */
+	public void writeContactSheet(List<GameState> games, ScoringScheme scheme, File file,
+			int columns, double scale, int threads) throws IOException {
+		int rows = (games.size() + columns - 1) / columns;
+		int boardWidth = (int)Math.ceil(width*scale);
+		int boardHeight = (int)Math.ceil(height*scale);
+		BufferedImage sheet = new BufferedImage(columns*boardWidth, Math.max(1, rows*boardHeight), BufferedImage.TYPE_INT_RGB);
+		parallel(rows, threads, row -> {
+			// Each task draws one strip of the sheet, so the tasks never draw on the same pixels.
+			Graphics2D g = sheet.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.clipRect(0, row*boardHeight, columns*boardWidth, boardHeight);
+			for (int col = 0; col < columns && row*columns + col < games.size(); col++) {
+				Graphics2D board = (Graphics2D)g.create();
+				board.translate(col*boardWidth, row*boardHeight);
+				board.scale(scale, scale);
+				draw(board, games.get(row*columns + col), scheme);
+				board.dispose();
+			}
+			g.dispose();
+		});
+		writePNG(sheet, file);
+	}
+
+	/**
+	 * Writes an image to a PNG file, using the fastest compression.
+	 */
+	private static void writePNG(BufferedImage image, File file) throws IOException {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		if (param.canWriteCompressed()) {
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(1.0f);  // For PNG, this means the least compression.
+		}
+		file.delete();
+		try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+			writer.setOutput(out);
+			writer.write(null, new IIOImage(image, null, null), param);
+		}
+		finally {
+			writer.dispose();
+		}
+	}
+
+	/**
+	 * Runs a task for each number from 0 to count-1, on a number of threads.
+	 */
+	private static void parallel(int count, int threads, IntConsumer task) throws IOException {
+		AtomicInteger next = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> workers = new ArrayList<Future<?>>();
+			for (int t = 0; t < threads; t++) {
+				workers.add(executor.submit( () -> {
+					int i;
+					while ((i = next.getAndIncrement()) < count)
+						task.accept(i);
+				}));
+			}
+			for (Future<?> f : workers)
+				f.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Rendering was interrupted.", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException)
+				throw ((UncheckedIOException)e.getCause()).getCause();
+			throw new IllegalStateException("Rendering failed.", e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Plays some games with the greedy strategy and draws their final boards.  The
+	 * arguments are the number of games, the output folder, and optionally the word
+	 * "sheet" to write one contact sheet instead of one file per board.
+	 */
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		File folder = new File(args.length > 1 ? args[1] : "boards");
+		boolean sheet = args.length > 2 && args[2].equals("sheet");
+		ScoringScheme scheme = ScoringScheme.getDefault();
+		PlacementStrategy strategy = new GreedyStrategy(scheme);
+		List<GameState> games = new ArrayList<GameState>();
+		for (int i = 0; i < count; i++) {
+			GameState game = new GameState(Deals.forGame(1, i));
+			game.playOut(strategy);
+			games.add(game);
+		}
+		ImageIO.setUseCache(false);  // Encode in memory instead of through temporary files.
+		BoardRenderer renderer = new BoardRenderer();
+		int threads = Runtime.getRuntime().availableProcessors();
+		long startTime = System.nanoTime();
+		if (sheet) {
+			folder.mkdirs();
+			renderer.writeContactSheet(games, scheme, new File(folder, "sheet.png"), 10, 0.25, threads);
+		}
+		else {
+			renderer.writeImages(games, scheme, folder, threads);
+		}
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		System.out.printf("Drew %d boards in %.2f seconds (%.0f per second)%n", count, seconds, count / seconds);
+	}
+
+}
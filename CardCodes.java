@@ -0,0 +1,85 @@
+/**
+ * Utility methods for representing playing cards as small integers.  The
+ * headless game engine works with card codes instead of PokerCard objects,
+ * so that a whole deal is just an array of ints.  The code of a card with
+ * a given suit and value is  suit*13 + (value-2),  which puts the 52 cards of
+ * a regular deck in the same order as the one used by the constructor
+ * of GraphicalDeck:  the Two through Ace of Spades are codes 0 through 12,
+ * the Hearts are 13 through 25, and so on.  Jokers do not have codes.
+ */
+public final class CardCodes {
+
+	public static final int DECK_SIZE = 52;   // The number of different card codes.
+
+	private static final byte[] VALUE = new byte[DECK_SIZE];  // VALUE[code] is the value (2 to 14) of the card.
+	private static final byte[] SUIT = new byte[DECK_SIZE];   // SUIT[code] is the suit (0 to 3) of the card.
+
+	static {
+		for (int code = 0; code < DECK_SIZE; code++) {
+			VALUE[code] = (byte)(code % 13 + 2);
+			SUIT[code] = (byte)(code / 13);
+		}
+	}
+
+	private CardCodes() {
+	}
+
+	/**
+	 * Returns the code for a card with a given value and suit.
+	 * @param value the value of the card, 2 through 14.
+	 * @param suit the suit of the card, one of PokerCard.SPADES, PokerCard.HEARTS,
+	 *    PokerCard.DIAMONDS, or PokerCard.CLUBS.
+	 * @throws IllegalArgumentException if the value or suit is out of range.
+	 */
+	public static int code(int value, int suit) {
+		if (value < 2 || value > 14)
+			throw new IllegalArgumentException("Illegal playing card value");
+		if (suit < PokerCard.SPADES || suit > PokerCard.CLUBS)
+			throw new IllegalArgumentException("Jokers and illegal suits do not have card codes");
+		return suit*13 + value - 2;
+	}
+
+	/**
+	 * Returns the code for a card.
+	 * @throws IllegalArgumentException if the card is a joker.
+	 */
+	public static int code(PokerCard card) {
+		return code(card.getValue(), card.getSuit());
+	}
+
+	/**
+	 * Returns the value, 2 through 14, of the card with a given code.
+	 */
+	public static int value(int code) {
+		return VALUE[code];
+	}
+
+	/**
+	 * Returns the suit, 0 through 3, of the card with a given code.
+	 */
+	public static int suit(int code) {
+		return SUIT[code];
+	}
+
+	/**
+	 * Creates a PokerCard object for a card code.
+	 */
+	public static PokerCard toCard(int code) {
+		return new PokerCard(VALUE[code], SUIT[code]);
+	}
+
+	/**
+	 * Returns a short name for a card, made from the first letter of its suit
+	 * followed by its value, such as "S10", "HQ" or "DA".  These are the names
+	 * of the card images in the cards folder (without the ".jpg").
+	 */
+	public static String shortName(int code) {
+		char suit = "SHDC".charAt(SUIT[code]);
+		int value = VALUE[code];
+		if (value <= 10)
+			return suit + Integer.toString(value);
+		else
+			return suit + Character.toString("JQKA".charAt(value - 11));
+	}
+
+}
@@ -0,0 +1,217 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes the index of daily challenges that the game loads at startup.  This
+ * is meant to be run offline, once for a long run of days, because rating
+ * the deals takes much longer than playing them.  Candidate deals are made
+ * from a seed with Deals.forGame(), and each of them is rated in parallel:
+ * every strategy that has been added plays the deal, and KnownDeckSolver
+ * looks for the best arrangement of its 25 cards within a time limit.
+ * <p>The difficulty of a deal is the fraction of the best score that the
+ * strategies got on average.  A deal on which they come close to the best
+ * is easy, and one that needs the player to see far ahead is hard.  The
+ * candidates are sorted by that fraction and split into three buckets of
+ * equal size, so the buckets don't depend on the scoring scheme or on how
+ * strong the strategies are.
+ * <p>The results depend only on the seed, the number of candidates and the
+ * time limit, not on the number of threads, except that a solver that runs
+ * out of time may find a better arrangement on a faster machine.
+ */
+public class ChallengeGenerator {
+
+	private static final int SOLVER_TABLE_SIZE = 1 << 20;   // Transposition table entries for each thread.
+
+	private final ScoringScheme scheme;
+	private final LineTable lines = LineTable.getDefault();   // The lines of the deals; recorded in the index.
+	private final List<PlacementStrategy> strategies = new ArrayList<PlacementStrategy>();
+	private long solverTime = 1000;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Creates a generator with no strategies.
+	 */
+	public ChallengeGenerator(ScoringScheme scheme) {
+		this.scheme = scheme;
+	}
+
+	/**
+	 * Adds a strategy to the players whose mean score is the expected score of a deal.
+	 * The strategy will be called from several threads at once, so it must be thread-safe.
+	 */
+	public void addStrategy(PlacementStrategy strategy) {
+		strategies.add(strategy);
+	}
+
+	/**
+	 * Sets the time that the solver may spend on each deal.  The default is one second.
+	 * @throws IllegalArgumentException if the time is not positive.
+	 */
+	public void setSolverTime(long millis) {
+		if (millis <= 0)
+			throw new IllegalArgumentException("The solver time must be positive.");
+		solverTime = millis;
+	}
+
+	/**
+	 * Sets the number of deals that are rated at the same time.  The default is the
+	 * number of available processors.
+	 * @throws IllegalArgumentException if the number is less than 1.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed.");
+		this.threads = threads;
+	}
+
+	/**
+	 * Rates a block of candidate deals and sorts them into an index.  Candidate g is
+	 * Deals.forGame(seed, g).
+	 * @param candidates the number of deals to rate.
+	 * @param startDate the day of the first challenge of each difficulty.
+	 * @throws IllegalStateException if no strategies have been added.
+	 */
+	public DailyChallenges generate(int candidates, long seed, LocalDate startDate) {
+		if (strategies.isEmpty())
+			throw new IllegalStateException("No strategies have been added to the generator.");
+		if (candidates < 1)
+			throw new IllegalArgumentException("At least one candidate is needed.");
+		int[] expected = new int[candidates];   // In tenths of a point.
+		int[] best = new int[candidates];
+		boolean[] optimal = new boolean[candidates];
+		AtomicInteger nextGame = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> workers = new ArrayList<Future<?>>();
+			for (int t = 0; t < threads; t++) {
+				workers.add(executor.submit( () -> {
+					KnownDeckSolver solver = new KnownDeckSolver(scheme);
+					solver.setParallelism(1);
+					solver.setTimeLimit(solverTime);
+					solver.setTranspositionTable(new HeapTranspositionTable(SOLVER_TABLE_SIZE));
+					int[] deal = new int[CardCodes.DECK_SIZE];
+					GameState game = new GameState(Deals.sorted(), lines);
+					int g;
+					while ((g = nextGame.getAndIncrement()) < candidates) {
+						Deals.forGame(seed, g, deal);
+						long total = 0;
+						int top = 0;
+						for (PlacementStrategy strategy : strategies) {
+							game.reset(deal);
+							game.playOut(strategy);
+							int score = game.score(scheme);
+							total += score;
+							top = Math.max(top, score);
+						}
+						game.reset(deal);
+						KnownDeckSolver.Solution solution = solver.solve(game);
+						expected[g] = (int)Math.round(10.0 * total / strategies.size());
+						best[g] = Math.max(top, solution.getScore());
+						optimal[g] = solution.isOptimal() && solution.getScore() >= top;
+					}
+				}));
+			}
+			for (Future<?> f : workers)
+				f.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Generator was interrupted.", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Generator failed.", e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return sort(scheme.getName(), lines.toString(), candidates, seed, startDate, expected, best, optimal);
+	}
+
+	/**
+	 * Splits the rated deals into three buckets by the fraction of the best score
+	 * that the strategies got.  Within a bucket the deals stay in the order of their
+	 * game numbers, so the calendar is the same however the threads were scheduled.
+	 */
+	private static DailyChallenges sort(String schemeName, String linesName, int candidates, long seed, LocalDate startDate,
+			int[] expected, int[] best, boolean[] optimal) {
+		double[] fraction = new double[candidates];
+		Integer[] order = new Integer[candidates];
+		for (int g = 0; g < candidates; g++) {
+			fraction[g] = best[g] == 0 ? 1 : expected[g] / (10.0 * best[g]);
+			order[g] = g;
+		}
+		Arrays.sort(order, (a, b) -> fraction[a] != fraction[b] ? Double.compare(fraction[b], fraction[a]) : a - b);
+		int[] difficulty = new int[candidates];
+		for (int i = 0; i < candidates; i++)
+			difficulty[order[i]] = (int)((long)i * 3 / candidates);   // Easiest first.
+		DailyChallenges.Challenge[][] buckets = new DailyChallenges.Challenge[3][];
+		for (int d = DailyChallenges.EASY; d <= DailyChallenges.HARD; d++) {
+			List<DailyChallenges.Challenge> bucket = new ArrayList<DailyChallenges.Challenge>();
+			for (int g = 0; g < candidates; g++) {
+				if (difficulty[g] == d)
+					bucket.add(new DailyChallenges.Challenge(seed, g, d, expected[g], best[g], optimal[g]));
+			}
+			buckets[d] = bucket.toArray(new DailyChallenges.Challenge[bucket.size()]);
+		}
+		return new DailyChallenges(schemeName, linesName, seed, startDate.toEpochDay(), buckets);
+	}
+
+	/**
+	 * Makes an index from the command line and writes it to a file.  The arguments
+	 * are the number of candidate deals, the seed, the solver's time for each deal
+	 * in seconds, the name of the file and the first day (as in 2026-01-01); all of
+	 * them are optional.  The deals are rated by a random player and a greedy player,
+	 * and by a ValueStrategy if the model file value.model can be read.
+	 * @throws IOException if the index can't be written.
+	 */
+	public static void main(String[] args) throws IOException {
+		int candidates = args.length > 0 ? Integer.parseInt(args[0]) : 366;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+		double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+		String fileName = args.length > 3 ? args[3] : DailyChallenges.INDEX_FILE;
+		LocalDate start = args.length > 4 ? LocalDate.parse(args[4]) : LocalDate.now();
+		ScoringScheme scheme = ScoringScheme.getDefault();
+		ChallengeGenerator generator = new ChallengeGenerator(scheme);
+		generator.addStrategy(new RandomStrategy(seed));
+		generator.addStrategy(new GreedyStrategy(scheme));
+		try {
+			generator.addStrategy(new ValueStrategy(ValueTrainer.load(ValueTrainer.MODEL_FILE)));
+		}
+		catch (IOException e) {
+			System.out.println("No value model; rating with the random and greedy players only.");
+		}
+		generator.setSolverTime(Math.max(1, Math.round(seconds * 1000)));
+		long startTime = System.nanoTime();
+		DailyChallenges index = generator.generate(candidates, seed, start);
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName))) {
+			index.save(out);
+		}
+		for (int d = DailyChallenges.EASY; d <= DailyChallenges.HARD; d++) {
+			int count = index.getCount(d), proven = 0;
+			double expected = 0, best = 0;
+			for (int i = 0; i < count; i++) {
+				DailyChallenges.Challenge c = index.getChallenge(d, i);
+				expected += c.getExpectedScore();
+				best += c.getBestScore();
+				if (c.isOptimal())
+					proven++;
+			}
+			System.out.printf("%-6s %4d deals, mean expected %6.1f, mean best %6.1f, %d proven optimal%n",
+					DailyChallenges.getDifficultyName(d), count, expected / Math.max(1, count),
+					best / Math.max(1, count), proven);
+		}
+		System.out.printf("Wrote %s in %.1f seconds.%n", fileName, (System.nanoTime() - startTime) / 1e9);
+	}
+
+}
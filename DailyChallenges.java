@@ -0,0 +1,291 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDate;
+
+/**
+ * An index of daily challenge deals, with a difficulty rating for each of
+ * them that was worked out in advance by ChallengeGenerator.  A deal is
+ * not stored in the index; it is identified by its game number, and the
+ * deal itself is Deals.forGame(seed, game), so every player gets exactly
+ * the same cards on the same day.  For each deal, the index records the
+ * expected score (the mean score of a few computer players), the best
+ * score found by KnownDeckSolver, and whether that score is proven to be
+ * the best possible, so the game can show the challenge and its target
+ * at once, without running the solver.  The scores only mean something
+ * under the scoring scheme and on the lines that the deals were rated
+ * with, so the index records their names, and load() can refuse an index
+ * that was rated for another game.
+ * <p>The deals are sorted into three buckets, EASY, MEDIUM and HARD, by the
+ * fraction of the best score that the computer players got, and each
+ * bucket has its own calendar:  the challenge of a given difficulty for a
+ * given day is the next deal of that bucket, counting from the start day
+ * of the index and starting over when the bucket runs out.
+ * <p>The file is small and binary:  a header, then thirteen bytes for each deal.
+ * An index is never changed after it is loaded, so it can be shared by any
+ * number of threads.
+ */
+public class DailyChallenges {
+
+	public static final int EASY = 0;
+	public static final int MEDIUM = 1;
+	public static final int HARD = 2;
+	public static final String INDEX_FILE = "challenges.idx";   // The default file name.
+
+	private static final int MAGIC = 0x504F4432;   // "POD2", the start of an index file.
+	private static final String[] DIFFICULTY_NAMES = { "Easy", "Medium", "Hard" };
+
+	private final String scheme;          // The name of the scoring scheme the deals were rated with.
+	private final String lines;           // The name of the line table, as from LineTable.toString().
+	private final long seed;
+	private final long startDay;          // The first day of the calendar, as an epoch day.
+	private final Challenge[][] buckets;  // The deals of each difficulty, in calendar order.
+
+	/**
+	 * Creates an index.  Only ChallengeGenerator and load() make indexes.
+	 */
+	DailyChallenges(String scheme, String lines, long seed, long startDay, Challenge[][] buckets) {
+		this.scheme = scheme;
+		this.lines = lines;
+		this.seed = seed;
+		this.startDay = startDay;
+		this.buckets = buckets;
+	}
+
+	/**
+	 * Returns the name of the scoring scheme that the deals were rated with.
+	 */
+	public String getScheme() {
+		return scheme;
+	}
+
+	/**
+	 * Returns the name of the lines that the deals were rated on, as from
+	 * LineTable.toString().
+	 */
+	public String getLines() {
+		return lines;
+	}
+
+	/**
+	 * Returns the seed that the deals are made from.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns the day on which the first challenge of each difficulty is played.
+	 */
+	public LocalDate getStartDate() {
+		return LocalDate.ofEpochDay(startDay);
+	}
+
+	/**
+	 * Returns the number of deals of a difficulty.
+	 */
+	public int getCount(int difficulty) {
+		return buckets[checkDifficulty(difficulty)].length;
+	}
+
+	/**
+	 * Returns one of the deals of a difficulty, in calendar order.
+	 */
+	public Challenge getChallenge(int difficulty, int index) {
+		return buckets[checkDifficulty(difficulty)][index];
+	}
+
+	/**
+	 * Returns the challenge of a difficulty for a given day, or null if the index
+	 * has no deals of that difficulty.
+	 */
+	public Challenge forDay(LocalDate date, int difficulty) {
+		Challenge[] bucket = buckets[checkDifficulty(difficulty)];
+		if (bucket.length == 0)
+			return null;
+		return bucket[(int)Math.floorMod(date.toEpochDay() - startDay, (long)bucket.length)];
+	}
+
+	/**
+	 * Returns today's challenge of a difficulty, or null if there is none.
+	 */
+	public Challenge today(int difficulty) {
+		return forDay(LocalDate.now(), difficulty);
+	}
+
+	/**
+	 * Returns the name of a difficulty, such as "Easy".
+	 */
+	public static String getDifficultyName(int difficulty) {
+		return DIFFICULTY_NAMES[checkDifficulty(difficulty)];
+	}
+
+	private static int checkDifficulty(int difficulty) {
+		if (difficulty < EASY || difficulty > HARD)
+			throw new IllegalArgumentException("Unknown difficulty " + difficulty + ".");
+		return difficulty;
+	}
+
+	/**
+	 * Writes the index in its compact binary form.
+	 */
+	public void save(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeUTF(scheme);
+		data.writeUTF(lines);
+		data.writeLong(seed);
+		data.writeLong(startDay);
+		for (Challenge[] bucket : buckets)
+			data.writeInt(bucket.length);
+		for (Challenge[] bucket : buckets) {
+			for (Challenge c : bucket) {
+				data.writeInt(c.game);
+				data.writeInt(c.expectedTenths);
+				data.writeInt(c.bestScore);
+				data.writeByte(c.optimal ? 1 : 0);
+			}
+		}
+		data.flush();
+	}
+
+	/**
+	 * Reads an index that was written by save().
+	 * @throws IOException if the data can't be read or is not an index.
+	 */
+	public static DailyChallenges load(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not a challenge index, or one made by an older version.");
+		String scheme = data.readUTF();
+		String lines = data.readUTF();
+		long seed = data.readLong();
+		long startDay = data.readLong();
+		int[] counts = new int[DIFFICULTY_NAMES.length];
+		for (int d = 0; d < counts.length; d++) {
+			counts[d] = data.readInt();
+			if (counts[d] < 0 || counts[d] > 1 << 24)
+				throw new IOException("The challenge index has the wrong size.");
+		}
+		Challenge[][] buckets = new Challenge[counts.length][];
+		for (int d = 0; d < counts.length; d++) {
+			buckets[d] = new Challenge[counts[d]];
+			for (int i = 0; i < counts[d]; i++) {
+				int game = data.readInt();
+				int expected = data.readInt();
+				int best = data.readInt();
+				boolean optimal = data.readByte() != 0;
+				buckets[d][i] = new Challenge(seed, game, d, expected, best, optimal);
+			}
+		}
+		return new DailyChallenges(scheme, lines, seed, startDay, buckets);
+	}
+
+	/**
+	 * Reads an index from a file.
+	 * @throws IOException if the file can't be read or is not an index.
+	 */
+	public static DailyChallenges load(String fileName) throws IOException {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(fileName))) {
+			return load(in);
+		}
+	}
+
+	/**
+	 * Reads an index from a file, and checks that it was rated for a game with a given
+	 * scoring scheme and lines.
+	 * @throws IOException if the file can't be read or is not an index, or the index
+	 *    was rated with another scheme or on other lines.
+	 */
+	public static DailyChallenges load(String fileName, ScoringScheme scheme, LineTable lines) throws IOException {
+		DailyChallenges index = load(fileName);
+		if (!index.scheme.equals(scheme.getName()) || !index.lines.equals(lines.toString()))
+			throw new IOException("The challenges were rated with " + index.scheme + " scoring on "
+					+ index.lines + ", not " + scheme.getName() + " scoring on " + lines + ".");
+		return index;
+	}
+
+	/**
+	 * One deal of the index, with its rating.
+	 */
+	public static class Challenge {
+
+		private final long seed;
+		private final int game;
+		private final int difficulty;
+		private final int expectedTenths;   // The expected score, in tenths of a point.
+		private final int bestScore;
+		private final boolean optimal;
+
+		Challenge(long seed, int game, int difficulty, int expectedTenths, int bestScore, boolean optimal) {
+			this.seed = seed;
+			this.game = game;
+			this.difficulty = difficulty;
+			this.expectedTenths = expectedTenths;
+			this.bestScore = bestScore;
+			this.optimal = optimal;
+		}
+
+		/**
+		 * Returns the game number of the deal, as in Deals.forGame(seed, game).
+		 */
+		public int getGame() {
+			return game;
+		}
+
+		/**
+		 * Returns the seed of the deal by itself, as in Deals.gameSeed(), so that
+		 * Deals.forGame(getDealSeed(), 0) is the deal.  Games of the challenge are
+		 * recorded with this seed, and ranked by it in a Leaderboard.
+		 */
+		public long getDealSeed() {
+			return Deals.gameSeed(seed, game);
+		}
+
+		/**
+		 * Returns a new copy of the deal.
+		 */
+		public int[] getDeal() {
+			return Deals.forGame(seed, game);
+		}
+
+		/**
+		 * Returns EASY, MEDIUM or HARD.
+		 */
+		public int getDifficulty() {
+			return difficulty;
+		}
+
+		/**
+		 * Returns the mean score of the computer players that rated the deal.
+		 */
+		public double getExpectedScore() {
+			return expectedTenths / 10.0;
+		}
+
+		/**
+		 * Returns the best score that was found for the deal.  This is the target
+		 * that the game shows to the player.
+		 */
+		public int getBestScore() {
+			return bestScore;
+		}
+
+		/**
+		 * Tests whether the best score is proven to be the best possible.
+		 */
+		public boolean isOptimal() {
+			return optimal;
+		}
+
+		public String toString() {
+			return String.format("%s deal %d:  expected %.1f, best %d%s", getDifficultyName(difficulty), game,
+					getExpectedScore(), bestScore, optimal ? " (optimal)" : "");
+		}
+	}
+
+}
@@ -0,0 +1,133 @@
+import java.util.SplittableRandom;
+
+/**
+ * Utility methods for creating deals, that is, shuffled orders of the 52
+ * card codes, for the headless game engine.  Every deal can be created
+ * from a seed, so that simulations are repeatable.  A simulation of many
+ * games should use forGame(seed, game), which gives each game its own
+ * independent deal no matter which thread plays it or in what order.
+ */
+public final class Deals {
+
+	private Deals() {
+	}
+
+	/**
+	 * Returns a new deal, shuffled with a given random number generator.
+	 */
+	public static int[] newDeal(SplittableRandom rng) {
+		int[] deal = new int[CardCodes.DECK_SIZE];
+		shuffle(deal, rng);
+		return deal;
+	}
+
+	/**
+	 * Fills an array of length 52 with a deal, shuffled with a given random number
+	 * generator.  This lets a simulation reuse the same array for every game.
+	 */
+	public static void shuffle(int[] deal, SplittableRandom rng) {
+		for (int i = 0; i < deal.length; i++)
+			deal[i] = i;
+		for (int i = deal.length - 1; i > 0; i--) {
+			int r = rng.nextInt(i + 1);
+			int temp = deal[i];
+			deal[i] = deal[r];
+			deal[r] = temp;
+		}
+	}
+
+	/**
+	 * Returns the deal for a numbered game in a simulation that uses a given seed.
+	 * The same seed and game number always give the same deal.
+	 */
+	public static int[] forGame(long seed, long game) {
+		int[] deal = new int[CardCodes.DECK_SIZE];
+		forGame(seed, game, deal);
+		return deal;
+	}
+
+	/**
+	 * Fills an array of length 52 with the deal for a numbered game, as in forGame(seed, game).
+	 */
+	public static void forGame(long seed, long game, int[] deal) {
+		shuffle(deal, new SplittableRandom(mix(gameSeed(seed, game))));
+	}
+
+	/**
+	 * Returns a seed that gives a numbered game's deal by itself:  forGame(gameSeed(seed,
+	 * game), 0) is the same deal as forGame(seed, game).
+	 */
+	public static long gameSeed(long seed, long game) {
+		return seed + game * 0x9E3779B97F4A7C15L;
+	}
+
+	/**
+	 * Fills an array with the uniform random numbers, in the range 0 to 1,
+	 * that drive the shuffle in fromUniforms().  51 numbers are needed for
+	 * one deal.
+	 */
+	public static double[] uniforms(SplittableRandom rng) {
+		double[] u = new double[CardCodes.DECK_SIZE - 1];
+		for (int i = 0; i < u.length; i++)
+			u[i] = rng.nextDouble();
+		return u;
+	}
+
+	/**
+	 * Creates a deal by shuffling the sorted deck with a given list of 51
+	 * uniform random numbers, one for each step of the shuffle.  If antithetic
+	 * is true, each number u is replaced by 1-u.  The two deals made from the
+	 * same list are an antithetic pair:  each is a perfectly random deal on
+	 * its own, but the cards that the first deal puts near the top of the deck
+	 * the second tends to put near the bottom.
+	 */
+	public static int[] fromUniforms(double[] u, boolean antithetic) {
+		int[] deal = sorted();
+		for (int i = deal.length - 1; i > 0; i--) {
+			double x = antithetic ? 1 - u[i-1] : u[i-1];
+			int r = Math.min(i, (int)(x * (i + 1)));
+			int temp = deal[i];
+			deal[i] = deal[r];
+			deal[r] = temp;
+		}
+		return deal;
+	}
+
+	/**
+	 * Moves a given card to the top of a deal, by swapping it with the card
+	 * that is there.  If the rest of the deal is random, the result is a random
+	 * deal among those that start with the given card.
+	 */
+	public static void moveToTop(int[] deal, int card) {
+		for (int i = 0; i < deal.length; i++) {
+			if (deal[i] == card) {
+				deal[i] = deal[0];
+				deal[0] = card;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the 52 card codes in order.
+	 */
+	public static int[] sorted() {
+		int[] deal = new int[CardCodes.DECK_SIZE];
+		for (int i = 0; i < deal.length; i++)
+			deal[i] = i;
+		return deal;
+	}
+
+	/**
+	 * A hash function that scrambles the bits of a long.  (This is the
+	 * finalizer of the 64-bit MurmurHash3.)  It is used to turn seeds and game
+	 * numbers into well-separated seeds, and by strategies that need
+	 * repeatable pseudo-random choices.
+	 */
+	public static long mix(long z) {
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return z ^ (z >>> 33);
+	}
+
+}
@@ -0,0 +1,212 @@
+/**
+ * A set of cards, such as the cards that are still in the deck, that can
+ * answer questions about its composition in constant time.  The set is kept
+ * as a 64-bit mask with bit c set for card code c, together with the
+ * number of cards of each suit and of each value, and all of these are
+ * updated together when a card is removed or added back.  So "is the seven
+ * of spades still live?", "how many hearts are left?" and "how many queens
+ * are left?" are each a single array access or bit test, with no scan of
+ * the deck.  Estimators, bounds and rollouts can ask these questions at
+ * every node of a search.
+ * <p>The counts of the values are also kept packed in one long, four bits
+ * for each value, with the count of the twos in the lowest four bits; this
+ * is the form that LineBounds uses.  A DeckState is not thread-safe; each
+ * search should use its own, or a copy.
+ */
+public class DeckState {
+
+	private static final long FULL = (1L << CardCodes.DECK_SIZE) - 1;   // The mask of a full deck.
+	private static final long FULL_VALUE_COUNTS = 0x4444444444444L;    // Four cards of each of the 13 values.
+
+	private long cards;                            // Bit c is set if card c is in the set.
+	private final int[] suitCounts = new int[4];   // The number of cards of each suit.
+	private final int[] valueCounts = new int[15]; // The number of cards of each value; indexes 0 and 1 are unused.
+	private long packedValueCounts;                // The same counts, four bits per value.
+	private int size;
+
+	/**
+	 * Creates a full deck of 52 cards.
+	 */
+	public DeckState() {
+		fill();
+	}
+
+	/**
+	 * Creates a set that contains the cards in a mask of card codes.
+	 */
+	public DeckState(long cards) {
+		setCards(cards);
+	}
+
+	/**
+	 * Creates a copy of another set.
+	 */
+	public DeckState(DeckState other) {
+		copyFrom(other);
+	}
+
+	/**
+	 * Puts all 52 cards into the set.
+	 */
+	public void fill() {
+		cards = FULL;
+		for (int s = 0; s < 4; s++)
+			suitCounts[s] = 13;
+		for (int v = 2; v <= 14; v++)
+			valueCounts[v] = 4;
+		packedValueCounts = FULL_VALUE_COUNTS;
+		size = CardCodes.DECK_SIZE;
+	}
+
+	/**
+	 * Replaces the contents of the set with the cards in a mask of card codes.  This
+	 * takes time proportional to the number of cards; removing and adding single
+	 * cards is the constant-time way to change the set.
+	 * @throws IllegalArgumentException if the mask has bits that are not card codes.
+	 */
+	public void setCards(long cards) {
+		if ((cards & ~FULL) != 0)
+			throw new IllegalArgumentException("The mask contains bits that are not card codes.");
+		this.cards = 0;
+		for (int s = 0; s < 4; s++)
+			suitCounts[s] = 0;
+		for (int v = 2; v <= 14; v++)
+			valueCounts[v] = 0;
+		packedValueCounts = 0;
+		size = 0;
+		for (long bits = cards; bits != 0; bits &= bits - 1)
+			add(Long.numberOfTrailingZeros(bits));
+	}
+
+	/**
+	 * Makes this set a copy of another one.
+	 */
+	public void copyFrom(DeckState other) {
+		cards = other.cards;
+		System.arraycopy(other.suitCounts, 0, suitCounts, 0, suitCounts.length);
+		System.arraycopy(other.valueCounts, 0, valueCounts, 0, valueCounts.length);
+		packedValueCounts = other.packedValueCounts;
+		size = other.size;
+	}
+
+	/**
+	 * Takes a card out of the set.
+	 * @throws IllegalArgumentException if the card is not in the set, or is not
+	 *    a card code.
+	 */
+	public void remove(int card) {
+		if (card < 0 || card >= CardCodes.DECK_SIZE)
+			throw new IllegalArgumentException("Not a card code: " + card);
+		long bit = 1L << card;
+		if ((cards & bit) == 0)
+			throw new IllegalArgumentException("The card " + CardCodes.shortName(card) + " is not in the set.");
+		int value = CardCodes.value(card);
+		cards &= ~bit;
+		suitCounts[CardCodes.suit(card)]--;
+		valueCounts[value]--;
+		packedValueCounts -= 1L << (4*(value - 2));
+		size--;
+	}
+
+	/**
+	 * Puts a card into the set, for example to take back a remove().
+	 * @throws IllegalArgumentException if the card is already in the set, or
+	 *    is not a card code.
+	 */
+	public void add(int card) {
+		if (card < 0 || card >= CardCodes.DECK_SIZE)
+			throw new IllegalArgumentException("Not a card code: " + card);
+		long bit = 1L << card;
+		if ((cards & bit) != 0)
+			throw new IllegalArgumentException("The card " + CardCodes.shortName(card) + " is already in the set.");
+		int value = CardCodes.value(card);
+		cards |= bit;
+		suitCounts[CardCodes.suit(card)]++;
+		valueCounts[value]++;
+		packedValueCounts += 1L << (4*(value - 2));
+		size++;
+	}
+
+	/**
+	 * Tests whether a card is in the set.
+	 */
+	public boolean contains(int card) {
+		return card >= 0 && card < CardCodes.DECK_SIZE && (cards & (1L << card)) != 0;
+	}
+
+	/**
+	 * Returns the number of cards in the set.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of cards of a suit in the set.
+	 * @param suit the suit, 0 through 3.
+	 */
+	public int getSuitCount(int suit) {
+		return suitCounts[suit];
+	}
+
+	/**
+	 * Returns the number of cards of a value in the set.
+	 * @param value the value, 2 through 14.
+	 */
+	public int getValueCount(int value) {
+		return valueCounts[value];
+	}
+
+	/**
+	 * Returns the values of the cards of one suit in the set, as a mask of 13 bits
+	 * with bit 0 for the two and bit 12 for the ace.
+	 */
+	public int getSuitValues(int suit) {
+		return (int)(cards >>> (13*suit)) & 0x1FFF;
+	}
+
+	/**
+	 * Returns the cards in the set, as a mask with bit c set for card code c.
+	 */
+	public long getCards() {
+		return cards;
+	}
+
+	/**
+	 * Returns the number of cards of each value in the set, packed four bits per
+	 * value:  the count of the cards of value v is in bits 4*(v-2) to 4*(v-2)+3.
+	 */
+	public long getPackedValueCounts() {
+		return packedValueCounts;
+	}
+
+	/**
+	 * Computes the packed counts of the values, in the form returned by
+	 * getPackedValueCounts(), for any mask of card codes.
+	 */
+	public static long packedValueCounts(long cards) {
+		long counts = 0;
+		for (int s = 0; s < 4; s++) {
+			int bits = (int)(cards >>> (13*s)) & 0x1FFF;
+			while (bits != 0) {
+				counts += 1L << (4*Integer.numberOfTrailingZeros(bits));
+				bits &= bits - 1;
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the short names of the cards in the set, in order of card code.
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (long bits = cards; bits != 0; bits &= bits - 1) {
+			if (str.length() > 1)
+				str.append(' ');
+			str.append(CardCodes.shortName(Long.numberOfTrailingZeros(bits)));
+		}
+		return str.append(']').toString();
+	}
+
+}
@@ -0,0 +1,312 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Proves that a fast hand evaluator agrees with PokerRank, the reference,
+ * by trying every possible hand:  all 2,598,960 five-card hands and all
+ * hands of zero to four cards, which is 2,893,164 hands in all.  For each
+ * hand, the rank and the hand type that the candidate computes must be the
+ * same as those of PokerRank, and the two must put the hand in the same
+ * order relative to the hand that was checked just before it.  The number
+ * of five-card hands of each type is also compared with the well-known
+ * totals (4 royal flushes, 36 straight flushes, and so on).
+ * <p>The work is split by the lowest card in the hand, and the 52 parts
+ * are shared out among several threads.  Each thread has its own PokerRank
+ * object and its own counters, which are added together at the end.
+ */
+public class EvaluatorVerifier {
+
+	/**
+	 * A hand evaluator that can be checked.  The cards are given as card codes
+	 * (see CardCodes), and the result must be the rank defined by PokerRank.getRank().
+	 * HandEvaluator::rank is an Evaluator.  It is called from several threads at once.
+	 */
+	public interface Evaluator {
+		int rank(int[] cards, int count);
+	}
+
+	/**
+	 * The number of five-card hands of each type, indexed by the hand type constants
+	 * of PokerRank, from NOTHING to ROYAL_FLUSH.
+	 */
+	public static final long[] FIVE_CARD_COUNTS = {
+			1302540, 1098240, 123552, 54912, 10200, 5108, 3744, 624, 36, 4 };
+
+	private static final int TYPE_COUNT = 10;       // The number of hand types.
+	private static final int MAX_EXAMPLES = 10;     // The number of mismatches that are described in the report.
+
+	private static final PokerCard[] CARDS = new PokerCard[CardCodes.DECK_SIZE];  // The card for each code.
+
+	static {
+		for (int code = 0; code < CardCodes.DECK_SIZE; code++)
+			CARDS[code] = CardCodes.toCard(code);
+	}
+
+	private final Evaluator candidate;
+
+	/**
+	 * Creates a verifier for a candidate evaluator.
+	 */
+	public EvaluatorVerifier(Evaluator candidate) {
+		this.candidate = candidate;
+	}
+
+	/**
+	 * Checks every hand, using all available processors.
+	 */
+	public Result run() {
+		return run(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Checks every hand, using a given number of threads.
+	 * @throws IllegalArgumentException if threads is less than one.
+	 */
+	public Result run(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed.");
+		long startTime = System.nanoTime();
+		AtomicInteger nextCard = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Worker>> futures = new ArrayList<Future<Worker>>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit( () -> {
+					Worker worker = new Worker();
+					int first;
+					while ((first = nextCard.getAndIncrement()) < CardCodes.DECK_SIZE)
+						worker.enumerate(first);
+					return worker;
+				}));
+			}
+			Worker total = new Worker();
+			total.check(0);  // The empty hand.
+			for (Future<Worker> f : futures)
+				total.merge(f.get());
+			return new Result(total, (System.nanoTime() - startTime) / 1e9);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Verification was interrupted.", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Verification failed.", e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Checks hands on one thread and counts the results.
+	 */
+	private class Worker {
+
+		final int[] hand = new int[5];
+		final PokerRank reference = new PokerRank();
+		final long[][] typeCounts = new long[6][TYPE_COUNT];  // Indexed by number of cards, then hand type.
+		final List<String> examples = new ArrayList<String>();
+		long hands;
+		long rankMismatches, typeMismatches, orderMismatches;
+		int previousRank, previousReference;   // The ranks of the hand that was checked last.
+		boolean hasPrevious;
+
+		/**
+		 * Checks all hands whose lowest card code is first.
+		 */
+		void enumerate(int first) {
+			hand[0] = first;
+			check(1);
+			for (int b = first + 1; b < CardCodes.DECK_SIZE; b++) {
+				hand[1] = b;
+				check(2);
+				for (int c = b + 1; c < CardCodes.DECK_SIZE; c++) {
+					hand[2] = c;
+					check(3);
+					for (int d = c + 1; d < CardCodes.DECK_SIZE; d++) {
+						hand[3] = d;
+						check(4);
+						for (int e = d + 1; e < CardCodes.DECK_SIZE; e++) {
+							hand[4] = e;
+							check(5);
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Checks the hand made of the first count cards in the hand array.
+		 */
+		void check(int count) {
+			reference.clear();
+			for (int i = 0; i < count; i++)
+				reference.add(CARDS[hand[i]]);
+			int expected = reference.getRank();
+			int type = reference.getHandType();
+			int rank = candidate.rank(hand, count);
+			hands++;
+			typeCounts[count][type]++;
+			if (rank != expected) {
+				rankMismatches++;
+				describe(count, "rank " + Integer.toHexString(rank) + ", expected " + Integer.toHexString(expected));
+			}
+			if (rank >> 20 != type)
+				typeMismatches++;
+			if (hasPrevious && Integer.signum(rank - previousRank) != Integer.signum(expected - previousReference)) {
+				orderMismatches++;
+				if (rank == expected)  // Otherwise, the rank mismatch is already reported.
+					describe(count, "ordered differently from the previous hand");
+			}
+			previousRank = rank;
+			previousReference = expected;
+			hasPrevious = true;
+		}
+
+		/**
+		 * Adds a description of a hand that failed to the report, unless enough
+		 * examples have already been found.
+		 */
+		void describe(int count, String problem) {
+			if (examples.size() < MAX_EXAMPLES) {
+				StringBuilder s = new StringBuilder();
+				for (int i = 0; i < count; i++)
+					s.append(CardCodes.shortName(hand[i])).append(' ');
+				examples.add(s + ": " + problem);
+			}
+		}
+
+		/**
+		 * Adds the counts from another worker to this one.
+		 */
+		void merge(Worker other) {
+			hands += other.hands;
+			rankMismatches += other.rankMismatches;
+			typeMismatches += other.typeMismatches;
+			orderMismatches += other.orderMismatches;
+			for (int size = 0; size < typeCounts.length; size++) {
+				for (int type = 0; type < TYPE_COUNT; type++)
+					typeCounts[size][type] += other.typeCounts[size][type];
+			}
+			for (String example : other.examples) {
+				if (examples.size() < MAX_EXAMPLES)
+					examples.add(example);
+			}
+		}
+	}
+
+	/**
+	 * The outcome of a verification run.
+	 */
+	public static class Result {
+
+		private final long hands;
+		private final long rankMismatches, typeMismatches, orderMismatches;
+		private final long[][] typeCounts;
+		private final List<String> examples;
+		private final double seconds;
+
+		private Result(Worker total, double seconds) {
+			hands = total.hands;
+			rankMismatches = total.rankMismatches;
+			typeMismatches = total.typeMismatches;
+			orderMismatches = total.orderMismatches;
+			typeCounts = total.typeCounts;
+			examples = total.examples;
+			this.seconds = seconds;
+		}
+
+		/**
+		 * Returns the number of hands that were checked.
+		 */
+		public long getHands() {
+			return hands;
+		}
+
+		/**
+		 * Returns the number of hands for which the candidate computed a different rank.
+		 */
+		public long getRankMismatches() {
+			return rankMismatches;
+		}
+
+		/**
+		 * Returns the number of hands for which the candidate computed a different hand type.
+		 */
+		public long getTypeMismatches() {
+			return typeMismatches;
+		}
+
+		/**
+		 * Returns the number of hands that the candidate ordered differently from the
+		 * reference, relative to the hand that was checked before it.
+		 */
+		public long getOrderMismatches() {
+			return orderMismatches;
+		}
+
+		/**
+		 * Returns the number of hands with a given number of cards and a given type,
+		 * according to the reference.
+		 */
+		public long getHandTypeCount(int cards, int type) {
+			return typeCounts[cards][type];
+		}
+
+		/**
+		 * Tests whether the candidate agreed with the reference on every hand, and the
+		 * five-card hand types were counted correctly.
+		 */
+		public boolean isPassed() {
+			if (rankMismatches > 0 || typeMismatches > 0 || orderMismatches > 0)
+				return false;
+			for (int type = 0; type < TYPE_COUNT; type++) {
+				if (typeCounts[5][type] != FIVE_CARD_COUNTS[type])
+					return false;
+			}
+			return true;
+		}
+
+		public String toString() {
+			StringBuilder s = new StringBuilder();
+			s.append(String.format("Checked %,d hands in %.2f seconds: %s%n", hands, seconds,
+					isPassed() ? "PASSED" : "FAILED"));
+			s.append(String.format("Mismatches: %d in rank, %d in hand type, %d in order%n",
+					rankMismatches, typeMismatches, orderMismatches));
+			for (String example : examples)
+				s.append("  ").append(example).append(String.format("%n"));
+			s.append(String.format("%-16s", "Cards:"));
+			for (int size = 0; size < typeCounts.length; size++)
+				s.append(String.format("%10d", size));
+			s.append(String.format("%n"));
+			for (int type = TYPE_COUNT - 1; type >= 0; type--) {
+				s.append(String.format("%-16s", PokerRank.getHandTypeName(type)));
+				for (int size = 0; size < typeCounts.length; size++)
+					s.append(String.format("%10d", typeCounts[size][type]));
+				if (typeCounts[5][type] != FIVE_CARD_COUNTS[type])
+					s.append("  expected ").append(FIVE_CARD_COUNTS[type]);
+				s.append(String.format("%n"));
+			}
+			return s.toString();
+		}
+	}
+
+	/**
+	 * Verifies HandEvaluator against PokerRank and prints the report.  The optional
+	 * argument is the number of threads.  The exit status is 1 if the verification
+	 * fails, so this can be run as a step of a build.
+	 */
+	public static void main(String[] args) {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		Result result = new EvaluatorVerifier(HandEvaluator::rank).run(threads);
+		System.out.print(result);
+		if (!result.isPassed())
+			System.exit(1);
+	}
+
+}
@@ -0,0 +1,631 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * A file of recorded games that can be replayed, with the whole deal and
+ * every move of each game, so that a game can be watched again card by
+ * card.  The log can hold millions of games, and it is read without
+ * loading it:  the records are in one file and the position of each
+ * record in a second file, the index, which has eight bytes per game.
+ * Both files are mapped into memory read-only, so finding game n is one
+ * read of the index and one read of the data, whatever the size of the
+ * log, and only the pages that are touched are ever read from the disk.
+ * Since a single buffer can only map 2 gigabytes, the data is mapped in
+ * pieces of a gigabyte each, and each piece overlaps the next by the size
+ * of the longest record, so every record lies inside one piece.
+ * <p>Games are added by a Writer.  It appends the record to the data file
+ * before it appends the record's position to the index, and each record
+ * starts with a marker, its length and a CRC-32 checksum like those of
+ * ScoreStore, so after a crash the index never points past the data, and
+ * a record that was only partly written is recognized.  A Writer holds an
+ * exclusive lock on a third file, the lock file, so only one Writer, in
+ * any process, can have a log open at a time.  (Closing any channel to a
+ * locked file can drop the program's locks on it, which is why the lock
+ * is on a file that nothing else opens, and why Writers in one program
+ * also check a set of the logs they have open.)  A log that is opened for reading sees
+ * the games that were in it when it was opened, and maps the data only
+ * up to the end of the last complete record, which is the part of the
+ * file that a Writer never cuts off.
+ * <p>getGame() decodes a record into a Game and keeps the most recently
+ * used games in a small cache.  prefetch() decodes games in a background
+ * thread ahead of time, which also brings their pages in from the disk,
+ * so that a viewer stepping through the log seldom waits for a game.
+ * The methods of a GameLog are thread-safe.
+ */
+public class GameLog implements AutoCloseable {
+
+	public static final String INDEX_SUFFIX = ".idx";   // Added to the name of the data file.
+	public static final String LOCK_SUFFIX = ".lock";   // The file that a Writer locks.
+	public static final int CACHE_SIZE = 64;            // Decoded games kept in memory.
+
+	private static final long DATA_MAGIC = 0x504F5347414D4531L;    // "POSGAME1", the start of a data file.
+	private static final long INDEX_MAGIC = 0x504F5347494458L;     // "POSGIDX", the start of an index file.
+	private static final int FILE_HEADER_SIZE = 8;      // The magic number at the start of each file.
+	private static final short MAGIC = 0x5047;          // "PG", the start of every record.
+	private static final int HEADER_SIZE = 8;           // Marker, length and checksum.
+	private static final int MAX_RECORD_SIZE = 4096;    // Longer "records" are taken to be corrupt.
+	private static final int MAX_NAME_SIZE = 1000;      // The longest name, in bytes of UTF-8.
+	private static final int CHUNK_SHIFT = 30;          // log2 of the bytes of data in one buffer.
+	private static final int INDEX_SHIFT = 27;          // log2 of the index entries in one buffer.
+
+	private final ByteBuffer[] data;     // The data file, from 2^CHUNK_SHIFT * i, with MAX_RECORD_SIZE of overlap.
+	private final ByteBuffer[] index;    // The positions of the records, 2^INDEX_SHIFT in each buffer.
+	private final int size;
+	private final long dataEnd;          // The end of the last complete record.
+	private final Map<Integer,Game> cache = new LinkedHashMap<Integer,Game>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Integer,Game> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	private final ExecutorService prefetcher;
+
+	private static final Set<Path> OPEN_WRITERS = new HashSet<Path>();   // The logs open in Writers of this program.
+
+	/**
+	 * Opens a log for reading.
+	 * @param file the data file; the index is the file with INDEX_SUFFIX added to its name.
+	 * @throws IOException if the files can't be read or mapped, or are not a game log.
+	 */
+	public GameLog(Path file) throws IOException {
+		try (FileChannel dataChannel = FileChannel.open(file, StandardOpenOption.READ);
+				FileChannel indexChannel = FileChannel.open(indexFile(file), StandardOpenOption.READ)) {
+			checkMagic(dataChannel, DATA_MAGIC);
+			checkMagic(indexChannel, INDEX_MAGIC);
+			long dataSize = dataChannel.size();
+			long entries = (indexChannel.size() - FILE_HEADER_SIZE) / 8;
+			if (entries > Integer.MAX_VALUE)
+				throw new IOException("The game log has too many games.");
+			index = new ByteBuffer[(int)((entries + (1L << INDEX_SHIFT) - 1) >>> INDEX_SHIFT)];
+			for (int i = 0; i < index.length; i++) {
+				long first = (long)i << INDEX_SHIFT;
+				long count = Math.min(entries - first, 1L << INDEX_SHIFT);
+				index[i] = indexChannel.map(FileChannel.MapMode.READ_ONLY, FILE_HEADER_SIZE + first * 8, count * 8);
+			}
+			// The last few entries can point to records that were still being written.
+			int n = (int)entries;
+			long end = FILE_HEADER_SIZE;
+			while (n > 0 && (end = recordEnd(dataChannel, offset(n - 1), dataSize)) < 0)
+				n--;
+			size = n;
+			dataEnd = n == 0 ? FILE_HEADER_SIZE : end;
+			data = new ByteBuffer[(int)((dataEnd + (1L << CHUNK_SHIFT) - 1) >>> CHUNK_SHIFT)];
+			for (int i = 0; i < data.length; i++) {
+				long start = (long)i << CHUNK_SHIFT;
+				long length = Math.min(dataEnd - start, (1L << CHUNK_SHIFT) + MAX_RECORD_SIZE);
+				data[i] = dataChannel.map(FileChannel.MapMode.READ_ONLY, start, length);
+			}
+		}
+		prefetcher = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "GameLog prefetch");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Returns the file in the user's home directory where PokerSolitaireWithScore
+	 * records its games.
+	 */
+	public static Path getDefaultFile() {
+		return Paths.get(System.getProperty("user.home"), ".pokersolitaire", "games.log");
+	}
+
+	private static Path indexFile(Path file) {
+		return file.resolveSibling(file.getFileName() + INDEX_SUFFIX);
+	}
+
+	private static void checkMagic(FileChannel channel, long magic) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+		while (header.hasRemaining() && channel.read(header, header.position()) > 0)
+			;
+		header.flip();
+		if (header.remaining() < FILE_HEADER_SIZE || header.getLong() != magic)
+			throw new IOException("Not a game log file.");
+	}
+
+	/**
+	 * Returns the position in the data file of the record of game i.
+	 */
+	private long offset(int i) {
+		return index[i >>> INDEX_SHIFT].getLong((i & ((1 << INDEX_SHIFT) - 1)) * 8);
+	}
+
+	/**
+	 * Returns the end of the record at a given position in a data file, or -1 if the
+	 * record does not have a good header or does not fit in the file.  The checksum is
+	 * not tested.
+	 */
+	private static long recordEnd(FileChannel channel, long offset, long dataSize) throws IOException {
+		if (offset < FILE_HEADER_SIZE || offset > dataSize - HEADER_SIZE)
+			return -1;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (header.hasRemaining()) {
+			if (channel.read(header, offset + header.position()) < 0)
+				return -1;
+		}
+		int length = header.getShort(2) & 0xFFFF;
+		if (header.getShort(0) != MAGIC || length > MAX_RECORD_SIZE - HEADER_SIZE
+				|| offset + HEADER_SIZE + length > dataSize)
+			return -1;
+		return offset + HEADER_SIZE + length;
+	}
+
+	/**
+	 * Returns the number of games in the log.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a game from the log.  This takes the same time for any game.
+	 * @param i the number of the game, from 0 for the oldest to size()-1.
+	 * @return the game, or null if its record is damaged.
+	 * @throws IndexOutOfBoundsException if there is no game i.
+	 */
+	public Game getGame(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("No game " + i + " in the log.");
+		synchronized (cache) {
+			Game game = cache.get(i);
+			if (game != null)
+				return game;
+		}
+		Game game = decode(offset(i));
+		if (game != null) {
+			synchronized (cache) {
+				cache.put(i, game);
+			}
+		}
+		return game;
+	}
+
+	/**
+	 * Decodes the games in a range in the background, so that getGame() finds them
+	 * in the cache.  The parts of the range that are not in the log are ignored.
+	 * Does nothing after close().
+	 */
+	public void prefetch(int first, int count) {
+		int from = Math.max(0, first);
+		int to = (int)Math.min(size, (long)first + count);
+		if (from >= to || prefetcher.isShutdown())
+			return;
+		try {
+			prefetcher.execute(() -> {
+				for (int i = from; i < to; i++)
+					getGame(i);
+			});
+		}
+		catch (RuntimeException e) {
+			// Closed at the same time; there is nothing to prefetch for.
+		}
+	}
+
+	/**
+	 * Reads the record at a given position.
+	 * @return the game, or null if the record is damaged.
+	 */
+	private Game decode(long offset) {
+		if (offset < FILE_HEADER_SIZE || offset > dataEnd - HEADER_SIZE)
+			return null;   // A damaged index entry.
+		ByteBuffer buffer = data[(int)(offset >>> CHUNK_SHIFT)].duplicate();
+		int at = (int)(offset & ((1L << CHUNK_SHIFT) - 1));
+		if (at + HEADER_SIZE > buffer.limit() || buffer.getShort(at) != MAGIC)
+			return null;
+		int length = buffer.getShort(at + 2) & 0xFFFF;
+		int checksum = buffer.getInt(at + 4);
+		if (length > MAX_RECORD_SIZE - HEADER_SIZE || at + HEADER_SIZE + length > buffer.limit())
+			return null;
+		buffer.limit(at + HEADER_SIZE + length).position(at + HEADER_SIZE);
+		CRC32 crc = new CRC32();
+		crc.update(buffer.duplicate());
+		if ((int)crc.getValue() != checksum)
+			return null;
+		try {
+			long time = buffer.getLong();
+			long seed = buffer.getLong();
+			int score = buffer.getInt();
+			String player = getString(buffer);
+			String scheme = getString(buffer);
+			LineTable lines = LineTable.forName(getString(buffer));
+			int[] deal = new int[CardCodes.DECK_SIZE];
+			for (int i = 0; i < deal.length; i++)
+				deal[i] = buffer.get();
+			int[] moves = new int[lines.getCellCount()];
+			for (int i = 0; i < moves.length; i++)
+				moves[i] = buffer.get();
+			return new Game(player, scheme, score, seed, time, lines, deal, moves);
+		}
+		catch (RuntimeException e) {
+			return null;   // A good checksum on bad contents; not written by a Writer.
+		}
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Stops the prefetching thread.  The memory stays mapped until the log is garbage
+	 * collected, but the log must not be used any more.
+	 */
+	public void close() {
+		prefetcher.shutdownNow();
+	}
+
+
+	/**
+	 * A recorded game:  who played it, the deal, the cell where each card went,
+	 * and the final score.  A Game is immutable.
+	 */
+	public static class Game {
+
+		private final String player;
+		private final String scheme;
+		private final int score;
+		private final long seed;
+		private final long time;
+		private final LineTable lines;
+		private final int[] deal;
+		private final int[] moves;
+
+		/**
+		 * @throws IllegalArgumentException if the deal is not a permutation of the 52
+		 *    codes or the moves don't fill the board.
+		 */
+		private Game(String player, String scheme, int score, long seed, long time,
+				LineTable lines, int[] deal, int[] moves) {
+			this.player = player;
+			this.scheme = scheme;
+			this.score = score;
+			this.seed = seed;
+			this.time = time;
+			this.lines = lines;
+			this.deal = deal;
+			this.moves = moves;
+			toGameState();   // Checks the deal and the moves.
+		}
+
+		/**
+		 * Returns the name of the player.
+		 */
+		public String getPlayer() {
+			return player;
+		}
+
+		/**
+		 * Returns the name of the scoring scheme that the game was scored with.
+		 */
+		public String getScheme() {
+			return scheme;
+		}
+
+		/**
+		 * Returns the final score.
+		 */
+		public int getScore() {
+			return score;
+		}
+
+		/**
+		 * Returns the seed of the deal, as in Deals.forGame(), or ScoreStore.NO_SEED.
+		 */
+		public long getSeed() {
+			return seed;
+		}
+
+		/**
+		 * Returns the time when the game was recorded, in milliseconds since 1970.
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * Returns the lines that the game was played on.
+		 */
+		public LineTable getLineTable() {
+			return lines;
+		}
+
+		/**
+		 * Returns the order of the cards in the deck.
+		 * @return a new array with each of the 52 card codes.
+		 */
+		public int[] getDeal() {
+			return deal.clone();
+		}
+
+		/**
+		 * Returns the cell where a card of the deal was placed.
+		 * @param position the position of the card in the deal, from 0 to the number of
+		 *    cells minus 1.
+		 */
+		public int getMove(int position) {
+			return moves[position];
+		}
+
+		/**
+		 * Returns the number of moves, which is the number of cells of the board.
+		 */
+		public int getMoveCount() {
+			return moves.length;
+		}
+
+		/**
+		 * Plays the game again.
+		 * @return a new GameState with every move made.
+		 */
+		public GameState toGameState() {
+			GameState state = new GameState(deal, lines);
+			for (int move : moves)
+				state.place(move);
+			return state;
+		}
+	}
+
+
+	/**
+	 * Appends games to a log.  A Writer is thread-safe, and holds a lock on the log
+	 * while it is open, so that no other Writer can open it.
+	 */
+	public static class Writer implements AutoCloseable {
+
+		private final Path key;                 // The absolute name of the data file, in OPEN_WRITERS.
+		private final FileChannel lockChannel;  // The lock file, locked while the Writer is open.
+		private final FileChannel dataChannel;
+		private final FileChannel indexChannel;
+		private final CRC32 crc = new CRC32();   // Used only while holding the lock on this object.
+		private long dataSize;
+		private long indexSize;
+
+		/**
+		 * Opens a log for appending, creating the files and the directory they are in if
+		 * they don't exist.  A record that was only partly written when the program
+		 * stopped is removed.
+		 * @throws IOException if the files can't be opened, are not a game log, or are
+		 *    open in another Writer.
+		 */
+		public Writer(Path file) throws IOException {
+			key = file.toAbsolutePath().normalize();
+			synchronized (OPEN_WRITERS) {
+				if (!OPEN_WRITERS.add(key))
+					throw new IOException("The game log " + file + " is open in another writer.");
+			}
+			FileChannel lock = null, data = null, index = null;
+			try {
+				Path dir = key.getParent();
+				if (dir != null)
+					Files.createDirectories(dir);
+				lock = FileChannel.open(key.resolveSibling(key.getFileName() + LOCK_SUFFIX),
+						StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				if (lock.tryLock() == null)
+					throw new IOException("The game log " + file + " is open in another program.");
+				data = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				index = FileChannel.open(indexFile(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			}
+			catch (IOException | RuntimeException e) {
+				closeAll(e, index, data, lock);
+				release(key);
+				throw e;
+			}
+			lockChannel = lock;
+			dataChannel = data;
+			indexChannel = index;
+			try {
+				recover();
+			}
+			catch (IOException e) {
+				closeAll(e, indexChannel, dataChannel, lockChannel);
+				release(key);
+				throw e;
+			}
+		}
+
+		/**
+		 * Closes the channels that are not null, adding any errors to an exception that
+		 * is about to be thrown.
+		 */
+		private static void closeAll(Exception failure, FileChannel... channels) {
+			for (FileChannel channel : channels) {
+				if (channel == null)
+					continue;
+				try {
+					channel.close();
+				}
+				catch (IOException e) {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+
+		private static void release(Path key) {
+			synchronized (OPEN_WRITERS) {
+				OPEN_WRITERS.remove(key);
+			}
+		}
+
+		/**
+		 * Writes the file headers of a new log, or finds the end of the last complete
+		 * record of an old one and cuts off anything after it.
+		 */
+		private void recover() throws IOException {
+			if (dataChannel.size() == 0 && indexChannel.size() == 0) {
+				writeFully(dataChannel, ByteBuffer.allocate(FILE_HEADER_SIZE).putLong(0, DATA_MAGIC), 0);
+				writeFully(indexChannel, ByteBuffer.allocate(FILE_HEADER_SIZE).putLong(0, INDEX_MAGIC), 0);
+				dataSize = indexSize = FILE_HEADER_SIZE;
+				return;
+			}
+			checkMagic(dataChannel, DATA_MAGIC);
+			checkMagic(indexChannel, INDEX_MAGIC);
+			long actualSize = dataChannel.size();
+			indexSize = FILE_HEADER_SIZE + (indexChannel.size() - FILE_HEADER_SIZE) / 8 * 8;
+			dataSize = FILE_HEADER_SIZE;
+			ByteBuffer entry = ByteBuffer.allocate(8);
+			while (indexSize > FILE_HEADER_SIZE) {   // The same test as the one that readers use.
+				entry.clear();
+				readFully(indexChannel, entry, indexSize - 8);
+				long end = recordEnd(dataChannel, entry.getLong(0), actualSize);
+				if (end >= 0) {
+					dataSize = end;
+					break;
+				}
+				indexSize -= 8;
+			}
+			dataChannel.truncate(dataSize);
+			indexChannel.truncate(indexSize);
+		}
+
+		private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0)
+					throw new IOException("Unexpected end of the game log.");
+			}
+		}
+
+		private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+			while (buffer.hasRemaining())
+				channel.write(buffer, position + buffer.position());
+		}
+
+		/**
+		 * Appends a finished game to the log.
+		 * @param player the name of the player.
+		 * @param scheme the name of the scoring scheme that the game was scored with.
+		 * @param score the final score.
+		 * @param seed the seed of the deal, as in Deals.forGame(), or ScoreStore.NO_SEED.
+		 * @throws IllegalArgumentException if the game is not over, or a name is null or
+		 *    too long.
+		 * @throws IOException if the files can't be written.
+		 */
+		public synchronized void append(GameState game, String player, String scheme, int score, long seed)
+				throws IOException {
+			if (!game.isOver())
+				throw new IllegalArgumentException("Only finished games can be recorded.");
+			byte[] playerBytes = nameBytes(player);
+			byte[] schemeBytes = nameBytes(scheme);
+			byte[] linesBytes = game.getLineTable().toString().getBytes(StandardCharsets.UTF_8);
+			int cells = game.getCellCount();
+			ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + 20 + 6 + playerBytes.length
+					+ schemeBytes.length + linesBytes.length + CardCodes.DECK_SIZE + cells);
+			record.position(HEADER_SIZE);
+			record.putLong(System.currentTimeMillis()).putLong(seed).putInt(score);
+			record.putShort((short)playerBytes.length).put(playerBytes);
+			record.putShort((short)schemeBytes.length).put(schemeBytes);
+			record.putShort((short)linesBytes.length).put(linesBytes);
+			for (int i = 0; i < CardCodes.DECK_SIZE; i++)
+				record.put((byte)game.getDealtCard(i));
+			for (int i = 0; i < cells; i++)
+				record.put((byte)game.getMove(i));
+			crc.reset();
+			crc.update(record.array(), HEADER_SIZE, record.position() - HEADER_SIZE);
+			record.putShort(0, MAGIC).putShort(2, (short)(record.position() - HEADER_SIZE));
+			record.putInt(4, (int)crc.getValue());
+			record.flip();
+			long offset = dataSize;
+			writeFully(dataChannel, record, offset);
+			dataSize += record.limit();
+			ByteBuffer entry = ByteBuffer.allocate(8).putLong(0, offset);
+			writeFully(indexChannel, entry, indexSize);   // After the record, so the index never points past the data.
+			indexSize += 8;
+		}
+
+		private static byte[] nameBytes(String name) {
+			if (name == null)
+				throw new IllegalArgumentException("A name is required.");
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			if (bytes.length > MAX_NAME_SIZE)
+				throw new IllegalArgumentException("The name is too long.");
+			return bytes;
+		}
+
+		/**
+		 * Forces the games that have been appended out to the disk.
+		 * @throws IOException if the files can't be written.
+		 */
+		public synchronized void flush() throws IOException {
+			dataChannel.force(false);
+			indexChannel.force(false);
+		}
+
+		/**
+		 * Flushes and closes the log.
+		 * @throws IOException if the files can't be written or closed.
+		 */
+		public synchronized void close() throws IOException {
+			if (!lockChannel.isOpen())
+				return;
+			try {
+				flush();
+			}
+			finally {
+				try {
+					dataChannel.close();
+					indexChannel.close();
+					lockChannel.close();   // Releases the lock.
+				}
+				finally {
+					release(key);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Records games played by the greedy strategy in a log, then reads the games back
+	 * in a random order, checking each one and timing the seeks.  The arguments are
+	 * the file, the number of games and the seed; the last two are optional.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: java GameLog <file> [games] [seed]");
+			return;
+		}
+		Path file = Paths.get(args[0]);
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+		ScoringScheme scheme = ScoringScheme.getDefault();
+		PlacementStrategy strategy = new GreedyStrategy(scheme);
+		long start = System.nanoTime();
+		try (Writer writer = new Writer(file)) {
+			GameState game = new GameState(Deals.sorted());
+			for (int g = 0; g < count; g++) {
+				game.reset(Deals.forGame(seed, g));
+				while (!game.isOver())
+					game.place(strategy.chooseCell(game));
+				writer.append(game, "greedy", scheme.getName(), game.score(scheme), Deals.gameSeed(seed, g));
+			}
+		}
+		System.out.printf("Recorded %d games in %.1f s%n", count, (System.nanoTime() - start) / 1e9);
+		try (GameLog log = new GameLog(file)) {
+			SplittableRandom rng = new SplittableRandom(seed);
+			int reads = Math.min(log.size(), 1000000), bad = 0;
+			start = System.nanoTime();
+			for (int r = 0; r < reads; r++) {
+				Game game = log.getGame(rng.nextInt(log.size()));
+				if (game == null || game.toGameState().score(scheme) != game.getScore())
+					bad++;
+			}
+			System.out.printf("%d games in the log; %d random reads, %d bad, %.1f us per read and check%n",
+					log.size(), reads, bad, (System.nanoTime() - start) / 1e3 / Math.max(1, reads));
+		}
+	}
+
+}
@@ -0,0 +1,455 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The state of one game of Poker Solitaire, without any graphics, for use
+ * by simulations, strategies and solvers.  Cards are represented by card
+ * codes (see CardCodes).  A game is defined by a deal, which is the order
+ * of all 52 cards in the shuffled deck; the first 25 cards of the deal are
+ * placed on the board one at a time, in order.  The board is a 5-by-5 grid
+ * whose cells are numbered 0 to 24 in row-major order, so the cell in row r
+ * and column c is number 5*r + c.
+ * <p>The board is scored on the lines of a LineTable, by default twelve
+ * lines:  lines 0 to 4 are the rows, lines 5 to 9 are the columns, line 10
+ * is the diagonal from the top left corner and line 11 is the diagonal from
+ * the top right corner.  The numerical rank (as defined by PokerRank.getRank()) of the cards in each
+ * line is kept up to date as cards are placed, so scoring the board does not
+ * require evaluating any hands.
+ * <p>A LineTable for another size of grid makes a variant of the game:  on an
+ * n-by-n grid the first n*n cards are placed, getCellCount() and getSize()
+ * replace the constants CELL_COUNT and SIZE, which describe the standard
+ * board, and a line of six or seven cards is ranked as the best five-card
+ * hand in it.  Lines of up to five cards, which include every line of the
+ * standard board, are ranked directly by HandEvaluator.rank(), so the
+ * standard game pays nothing for the variants.
+ * <p>Moves can be undone and redone in constant time.  Each move records the
+ * cell that was used and the ranks that the lines through that cell had
+ * before the move, so undoing a move just empties the cell, backs up the
+ * position in the deal, and puts the old ranks back; nothing is copied and
+ * no hands are evaluated.  A search can use place() and undo() as its
+ * make/unmake operations.
+ */
+public class GameState {
+
+	public static final int SIZE = 5;            // The number of rows and of columns on the standard board.
+	public static final int CELL_COUNT = 25;     // The number of cells on the standard board.
+	public static final int LINE_COUNT = 12;     // The number of lines in the standard table.
+	public static final int MAX_CELLS = LineTable.MAX_SIZE * LineTable.MAX_SIZE;   // The most cells of any grid.
+	public static final int MAX_LINES = 2 * LineTable.MAX_SIZE + 2;               // The most lines of any table.
+	public static final int EMPTY = -1;          // The contents of an empty cell.
+
+	/**
+	 * ZOBRIST[52*cell + card] is a random number for each card in each cell.  The hash
+	 * code of a board is the exclusive or of the numbers for the cards on it.
+	 */
+	private static final long[] ZOBRIST = new long[MAX_CELLS * CardCodes.DECK_SIZE];
+
+	static {
+		SplittableRandom rng = new SplittableRandom(0x5EED);
+		for (int i = 0; i < ZOBRIST.length; i++)
+			ZOBRIST[i] = rng.nextLong();
+	}
+
+	private final LineTable table;                           // The lines that are scored.
+	private final int[][] cellsOfLine, linesOfCell;          // The arrays of the table, for quick access.
+	private final int[] deal = new int[CardCodes.DECK_SIZE]; // The order in which cards are dealt.
+	private final int cellCount;                             // The number of cells, and of cards that are placed.
+	private final boolean longLines;                         // Whether lines have more than five cells.
+	private final int[] cells;                               // The card code in each cell, or EMPTY.
+	private final int[] lineRanks;                           // The PokerRank rank of the cards in each line.
+	private final int[] hand;                                // Scratch space for evaluating a line.
+	private final int[] fiveCards = new int[5];              // Scratch space for the best five cards of a long line.
+	private int cardsPlaced;                                 // Also the position of the next card in the deal.
+	private final DeckState unseen = new DeckState();        // The cards that are not on the board.
+	private long hash;                                       // Zobrist hash of the cards on the board.
+	private long evaluations;                                // Hands evaluated by this object, for PokerEvents.
+
+	private final int[] moves;                               // moves[i] is the cell where card i of the deal went.
+	private final int stride;                                // The most lines through one cell.
+	private final int[] savedRanks;                          // The line ranks before move i are at stride*i, ...
+	private int movesMade;                                   // Moves 0 to movesMade-1 can be redone after an undo.
+
+	/**
+	 * Creates a game that uses a given deal, scored on the lines of LineTable.getDefault().
+	 * @param deal the order of the cards in the deck.  This must contain each of the
+	 *    52 card codes exactly once.  The array is copied.
+	 * @throws IllegalArgumentException if the deal is not a permutation of the 52 codes.
+	 */
+	public GameState(int[] deal) {
+		this(deal, LineTable.getDefault());
+	}
+
+	/**
+	 * Creates a game that uses a given deal and is scored on a given set of lines.
+	 * @param deal the order of the cards in the deck.  This must contain each of the
+	 *    52 card codes exactly once.  The array is copied.
+	 * @throws IllegalArgumentException if the deal is not a permutation of the 52 codes.
+	 */
+	public GameState(int[] deal, LineTable table) {
+		this.table = table;
+		cellCount = table.getCellCount();
+		longLines = table.getLineLength() > 5;
+		cells = new int[cellCount];
+		moves = new int[cellCount];
+		hand = new int[table.getLineLength()];
+		cellsOfLine = new int[table.getLineCount()][];
+		for (int line = 0; line < cellsOfLine.length; line++)
+			cellsOfLine[line] = table.getCellsOfLine(line);
+		linesOfCell = new int[cellCount][];
+		for (int cell = 0; cell < cellCount; cell++)
+			linesOfCell[cell] = table.getLinesOfCell(cell);
+		lineRanks = new int[table.getLineCount()];
+		stride = table.getMaxLinesPerCell();
+		savedRanks = new int[cellCount*stride];
+		reset(deal);
+	}
+
+	/**
+	 * Creates a copy of another game state.  The copy is completely independent
+	 * of the original.
+	 */
+	public GameState(GameState other) {
+		table = other.table;
+		cellCount = other.cellCount;
+		longLines = other.longLines;
+		cells = new int[cellCount];
+		moves = new int[cellCount];
+		hand = new int[other.hand.length];
+		cellsOfLine = other.cellsOfLine;
+		linesOfCell = other.linesOfCell;
+		lineRanks = new int[other.lineRanks.length];
+		stride = other.stride;
+		savedRanks = new int[other.savedRanks.length];
+		System.arraycopy(other.deal, 0, deal, 0, deal.length);
+		System.arraycopy(other.cells, 0, cells, 0, cells.length);
+		System.arraycopy(other.lineRanks, 0, lineRanks, 0, lineRanks.length);
+		System.arraycopy(other.moves, 0, moves, 0, moves.length);
+		System.arraycopy(other.savedRanks, 0, savedRanks, 0, savedRanks.length);
+		cardsPlaced = other.cardsPlaced;
+		movesMade = other.movesMade;
+		hash = other.hash;
+		unseen.copyFrom(other.unseen);
+	}
+
+	/**
+	 * Starts a new game, with an empty board, using a given deal.
+	 * @param deal the order of the cards in the deck.  This must contain each of the
+	 *    52 card codes exactly once.  The array is copied.
+	 * @throws IllegalArgumentException if the deal is not a permutation of the 52 codes.
+	 */
+	public void reset(int[] deal) {
+		if (deal == null || deal.length != CardCodes.DECK_SIZE)
+			throw new IllegalArgumentException("A deal must contain 52 cards.");
+		long seen = 0;
+		for (int card : deal) {
+			if (card < 0 || card >= CardCodes.DECK_SIZE || (seen & (1L << card)) != 0)
+				throw new IllegalArgumentException("A deal must contain each card exactly once.");
+			seen |= 1L << card;
+		}
+		System.arraycopy(deal, 0, this.deal, 0, deal.length);
+		Arrays.fill(cells, EMPTY);
+		Arrays.fill(lineRanks, 0);
+		cardsPlaced = 0;
+		movesMade = 0;
+		hash = 0;
+		unseen.fill();
+	}
+
+	/**
+	 * Returns the number of cards that have been placed on the board.
+	 */
+	public int getCardsPlaced() {
+		return cardsPlaced;
+	}
+
+	/**
+	 * Tests whether the game is over, that is, whether all the cells are full.
+	 */
+	public boolean isOver() {
+		return cardsPlaced == cellCount;
+	}
+
+	/**
+	 * Returns the number of rows, and of columns, of the board:  5, unless the game
+	 * is a variant.
+	 */
+	public int getSize() {
+		return table.getSize();
+	}
+
+	/**
+	 * Returns the number of cells of the board, which is also the number of cards
+	 * that are placed in a game:  25, unless the game is a variant.
+	 */
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * Returns the card that must be placed next.
+	 * @throws IllegalStateException if the game is over.
+	 */
+	public int getNextCard() {
+		if (cardsPlaced == cellCount)
+			throw new IllegalStateException("The game is over.");
+		return deal[cardsPlaced];
+	}
+
+	/**
+	 * Returns the card at a given position in the deal.  Cards in positions
+	 * greater than getCardsPlaced() have not been seen yet by the player, so a
+	 * strategy should not look at them.
+	 */
+	public int getDealtCard(int position) {
+		return deal[position];
+	}
+
+	/**
+	 * Returns the cards that are not on the board, which are the cards a player who
+	 * does not know the order of the deck could still see, including the next card.
+	 * The set is kept up to date in constant time as moves are made and undone, so
+	 * its counts can be read at every node of a search.  It belongs to this game and
+	 * must not be modified; a search that needs to change it should make a copy.
+	 */
+	public DeckState getUnseen() {
+		return unseen;
+	}
+
+	/**
+	 * Returns the card in a cell, or EMPTY if the cell is empty.
+	 */
+	public int getCard(int cell) {
+		return cells[cell];
+	}
+
+	/**
+	 * Tests whether a cell is empty.
+	 */
+	public boolean isEmpty(int cell) {
+		return cells[cell] == EMPTY;
+	}
+
+	/**
+	 * Places the next card from the deal in a cell.  Any moves that were undone
+	 * can no longer be redone.
+	 * @throws IllegalStateException if the game is over.
+	 * @throws IllegalArgumentException if the cell is not an empty cell on the board.
+	 */
+	public void place(int cell) {
+		if (cardsPlaced == cellCount)
+			throw new IllegalStateException("The game is over.");
+		if (cell < 0 || cell >= cellCount || cells[cell] != EMPTY)
+			throw new IllegalArgumentException("Cards can only be placed in empty cells.");
+		moves[cardsPlaced] = cell;
+		makeMove(cell);
+		movesMade = cardsPlaced;
+	}
+
+	/**
+	 * Takes back the most recent move.  The card goes back to being the next card.
+	 * @throws IllegalStateException if no cards have been placed.
+	 */
+	public void undo() {
+		if (cardsPlaced == 0)
+			throw new IllegalStateException("There is no move to undo.");
+		cardsPlaced--;
+		int cell = moves[cardsPlaced];
+		hash ^= ZOBRIST[CardCodes.DECK_SIZE*cell + cells[cell]];
+		unseen.add(cells[cell]);
+		cells[cell] = EMPTY;
+		int[] lines = linesOfCell[cell];
+		for (int i = 0; i < lines.length; i++)
+			lineRanks[lines[i]] = savedRanks[stride*cardsPlaced + i];
+	}
+
+	/**
+	 * Makes the move that was most recently undone again.
+	 * @throws IllegalStateException if there is no such move, because no move has been
+	 *    undone or because a card was placed after the undo.
+	 */
+	public void redo() {
+		if (cardsPlaced == movesMade)
+			throw new IllegalStateException("There is no move to redo.");
+		makeMove(moves[cardsPlaced]);
+	}
+
+	/**
+	 * Tests whether undo() can be called.
+	 */
+	public boolean canUndo() {
+		return cardsPlaced > 0;
+	}
+
+	/**
+	 * Tests whether redo() can be called.
+	 */
+	public boolean canRedo() {
+		return cardsPlaced < movesMade;
+	}
+
+	/**
+	 * Returns the cell in which a given card of the deal was placed.
+	 * @param position a position in the deal, less than getCardsPlaced(), or a
+	 *    position of a move that can be redone.
+	 */
+	public int getMove(int position) {
+		if (position < 0 || position >= Math.max(cardsPlaced, movesMade))
+			throw new IllegalArgumentException("No card has been placed from position " + position + " of the deal.");
+		return moves[position];
+	}
+
+	/**
+	 * Returns a 64-bit hash code for the cards on the board, which is kept up to date
+	 * as moves are made and undone.  Boards with the same cards in the same cells have
+	 * the same hash, and different boards almost never do.
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Returns the number of hands that this object has evaluated since it was created,
+	 * when making moves and in rankWith().  The count is not changed by reset(), so
+	 * the difference between two calls gives the work done in between.  A copy made
+	 * by the copy constructor starts counting from zero.
+	 */
+	public long getEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * Shuffles the cards that have not been dealt yet, that is, the cards in positions
+	 * getCardsPlaced() through 51 of the deal, including the next card.  A Monte
+	 * Carlo search uses this, on its own copy of the game, to try out possible
+	 * futures without looking at the real order of the deck.  The unseen cards are
+	 * sorted before they are shuffled, so the new order depends only on which cards
+	 * are unseen and on the random numbers, and two searches that use generators
+	 * with the same seed see the same futures.  Moves that were undone can no
+	 * longer be redone.
+	 */
+	public void shuffleUnseen(SplittableRandom rng) {
+		Arrays.sort(deal, cardsPlaced, deal.length);
+		for (int i = deal.length - 1; i > cardsPlaced; i--) {
+			int r = cardsPlaced + rng.nextInt(i - cardsPlaced + 1);
+			int temp = deal[i];
+			deal[i] = deal[r];
+			deal[r] = temp;
+		}
+		movesMade = cardsPlaced;
+	}
+
+	/**
+	 * Plays the rest of the game, letting a strategy choose the cell for each card.
+	 */
+	public void playOut(PlacementStrategy strategy) {
+		while (cardsPlaced < cellCount)
+			place(strategy.chooseCell(this));
+	}
+
+	/**
+	 * Returns the numerical rank, as defined by PokerRank.getRank(), of the cards
+	 * that are currently in a line.
+	 */
+	public int getLineRank(int line) {
+		return lineRanks[line];
+	}
+
+	/**
+	 * Returns the basic type of the hand in a line, one of the constants
+	 * PokerRank.NOTHING through PokerRank.ROYAL_FLUSH.
+	 */
+	public int getLineType(int line) {
+		return lineRanks[line] >> 20;
+	}
+
+	/**
+	 * Returns the rank that a line would have if a given card were placed in
+	 * a given empty cell of that line.  The board is not changed.
+	 */
+	public int rankWith(int line, int cell, int card) {
+		int count = 0;
+		for (int c : cellsOfLine[line]) {
+			if (c == cell)
+				hand[count++] = card;
+			else if (cells[c] != EMPTY)
+				hand[count++] = cells[c];
+		}
+		return rankHand(count);
+	}
+
+	/**
+	 * Returns the total points for the hands in all the lines.
+	 */
+	public int score(ScoringScheme scheme) {
+		int total = 0;
+		for (int line = 0; line < lineRanks.length; line++)
+			total += scheme.getPointsForRank(lineRanks[line]);
+		return total;
+	}
+
+	/**
+	 * Returns the table of the lines that are scored.
+	 */
+	public LineTable getLineTable() {
+		return table;
+	}
+
+	/**
+	 * Returns the number of lines that are scored.
+	 */
+	public int getLineCount() {
+		return lineRanks.length;
+	}
+
+	/**
+	 * Returns the lines that contain a given cell.  The array is shared and must not
+	 * be modified.
+	 */
+	public int[] getLinesOfCell(int cell) {
+		return linesOfCell[cell];
+	}
+
+	/**
+	 * Returns the cells, as numbers 0 to 24, of a given line.  The array is shared
+	 * and must not be modified.
+	 */
+	public int[] getCellsOfLine(int line) {
+		return cellsOfLine[line];
+	}
+
+	/**
+	 * Puts the next card in a cell, saving the ranks of the lines through the cell.
+	 */
+	private void makeMove(int cell) {
+		cells[cell] = deal[cardsPlaced];
+		hash ^= ZOBRIST[CardCodes.DECK_SIZE*cell + cells[cell]];
+		unseen.remove(cells[cell]);
+		int[] lines = linesOfCell[cell];
+		for (int i = 0; i < lines.length; i++) {
+			savedRanks[stride*cardsPlaced + i] = lineRanks[lines[i]];
+			lineRanks[lines[i]] = evaluate(lines[i]);
+		}
+		cardsPlaced++;
+	}
+
+	private int evaluate(int line) {
+		int count = 0;
+		for (int c : cellsOfLine[line]) {
+			if (cells[c] != EMPTY)
+				hand[count++] = cells[c];
+		}
+		return rankHand(count);
+	}
+
+	/**
+	 * Ranks the cards in hand[0] to hand[count-1].  Only the lines of a grid larger
+	 * than 5-by-5 can hold more than five cards.
+	 */
+	private int rankHand(int count) {
+		evaluations++;
+		if (longLines)
+			return HandEvaluator.bestRank(hand, count, fiveCards);
+		return HandEvaluator.rank(hand, count);
+	}
+
+}
@@ -0,0 +1,196 @@
+import java.util.Arrays;
+
+/**
+ * Accumulates statistics about finished games in constant memory, no
+ * matter how many games are added:  a histogram of the total score, the
+ * number of times each type of hand was made in each line of the board,
+ * and the running mean and variance of the score.  Two accumulators can be
+ * merged, so a simulation that runs on several threads gives each thread
+ * its own accumulator and merges them when all the games have been played.
+ * <p>A GameStatistics object is not thread-safe.
+ */
+public class GameStatistics {
+
+	private static final int HAND_TYPES = PokerRank.ROYAL_FLUSH + 1;
+
+	private long[] histogram = new long[256];   // histogram[s] is the number of games with score s.
+	private final long[] lineTypes = new long[GameState.MAX_LINES * HAND_TYPES];  // Indexed by line*10 + type.
+	private LineTable lines = LineTable.getDefault();  // The lines of the games, for the report.
+	private long royalGames;   // The number of games with a Royal Flush in at least one line.
+
+	private long count;        // The number of games.
+	private double mean;       // The mean score.
+	private double m2;         // The sum of squared differences from the mean.
+	private int min = Integer.MAX_VALUE;
+	private int max = Integer.MIN_VALUE;
+
+	/**
+	 * Adds a finished game, with a given score, to the statistics.
+	 */
+	public void add(GameState game, int score) {
+		boolean royal = false;
+		lines = game.getLineTable();
+		for (int line = 0; line < game.getLineCount(); line++) {
+			int type = game.getLineType(line);
+			lineTypes[line*HAND_TYPES + type]++;
+			if (type == PokerRank.ROYAL_FLUSH)
+				royal = true;
+		}
+		if (royal)
+			royalGames++;
+		addScore(score);
+	}
+
+	/**
+	 * Adds a score to the histogram and the moments, without any information about
+	 * the hands that made it.
+	 * @throws IllegalArgumentException if the score is negative.
+	 */
+	public void addScore(int score) {
+		if (score < 0)
+			throw new IllegalArgumentException("Scores can't be negative.");
+		if (score >= histogram.length)
+			histogram = Arrays.copyOf(histogram, Math.max(score + 1, 2*histogram.length));
+		histogram[score]++;
+		count++;
+		double d = score - mean;
+		mean += d / count;
+		m2 += d * (score - mean);
+		if (score < min)
+			min = score;
+		if (score > max)
+			max = score;
+	}
+
+	/**
+	 * Adds all of the games that have been added to another accumulator into this
+	 * one.  The other accumulator is not changed.
+	 */
+	public void merge(GameStatistics other) {
+		if (other.count == 0)
+			return;
+		if (other.histogram.length > histogram.length)
+			histogram = Arrays.copyOf(histogram, other.histogram.length);
+		for (int s = 0; s < other.histogram.length; s++)
+			histogram[s] += other.histogram[s];
+		for (int i = 0; i < lineTypes.length; i++)
+			lineTypes[i] += other.lineTypes[i];
+		royalGames += other.royalGames;
+		lines = other.lines;
+		long n = count + other.count;
+		double d = other.mean - mean;
+		m2 += other.m2 + d * d * ((double)count * other.count / n);
+		mean += d * other.count / n;
+		count = n;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * Returns the number of games.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the mean score, or 0 if there are no games.
+	 */
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * Returns the sample variance of the scores, or 0 if there are fewer than two games.
+	 */
+	public double getVariance() {
+		return count < 2 ? 0 : m2 / (count - 1);
+	}
+
+	/**
+	 * Returns the standard error of the mean score.
+	 */
+	public double getStandardError() {
+		return count < 2 ? 0 : Math.sqrt(getVariance() / count);
+	}
+
+	/**
+	 * Returns the smallest score, or 0 if there are no games.
+	 */
+	public int getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * Returns the largest score, or 0 if there are no games.
+	 */
+	public int getMax() {
+		return count == 0 ? 0 : max;
+	}
+
+	/**
+	 * Returns the number of games with a given score.
+	 */
+	public long getScoreCount(int score) {
+		return score >= 0 && score < histogram.length ? histogram[score] : 0;
+	}
+
+	/**
+	 * Returns the smallest score s such that at least a given fraction of the games
+	 * scored s or less.  For example, getPercentile(0.5) is the median.
+	 */
+	public int getPercentile(double fraction) {
+		long needed = (long)Math.ceil(fraction * count);
+		long seen = 0;
+		for (int s = 0; s < histogram.length; s++) {
+			seen += histogram[s];
+			if (seen >= needed && seen > 0)
+				return s;
+		}
+		return getMax();
+	}
+
+	/**
+	 * Returns the number of games in which a given line ended up with a given type
+	 * of hand.
+	 * @param line a line number, 0 to 11 on the standard board, as in GameState.
+	 * @param handType one of the constants PokerRank.NOTHING through PokerRank.ROYAL_FLUSH.
+	 */
+	public long getLineTypeCount(int line, int handType) {
+		return lineTypes[line*HAND_TYPES + handType];
+	}
+
+	/**
+	 * Returns the number of games in which at least one line was a Royal Flush.
+	 */
+	public long getRoyalFlushGames() {
+		return royalGames;
+	}
+
+	/**
+	 * Returns a multi-line report of the statistics, with the frequency of each hand
+	 * type in the rows, columns and diagonals.
+	 */
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		s.append(String.format("%d games: mean %.3f +/- %.3f, std dev %.3f, min %d, median %d, max %d%n",
+				count, getMean(), 1.96*getStandardError(), Math.sqrt(getVariance()),
+				getMin(), getPercentile(0.5), getMax()));
+		s.append(String.format("%-16s%10s%10s%10s%n", "", "Rows", "Columns", "Diagonals"));
+		for (int type = 0; type < HAND_TYPES; type++) {
+			long rows = 0, cols = 0, diags = 0;
+			for (int line = 0; line < lines.getLineCount(); line++) {
+				long c = lineTypes[line*HAND_TYPES + type];
+				if (lines.getLineKind(line) == LineTable.ROW)
+					rows += c;
+				else if (lines.getLineKind(line) == LineTable.COLUMN)
+					cols += c;
+				else
+					diags += c;
+			}
+			s.append(String.format("%-16s%10d%10d%10d%n", PokerRank.getHandTypeName(type), rows, cols, diags));
+		}
+		return s.toString();
+	}
+
+}
@@ -1,16 +1,26 @@
+import java.util.HashMap;
+import java.util.Map;
+
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 
 /**
  * Represents a card and it's associated image. This class is a subclass of PokerCard.java
  * and calls the super class in its constructor. 
+ * <p>The image is not read until the card is first drawn, and each image is read
+ * only once and then shared by all cards with the same value and suit, so making a
+ * new deck for each game doesn't decode 52 JPEG files.  Cards are only drawn on the
+ * JavaFX application thread, so the shared images need no locking.
  * 
  * @author martin
  *
  */
 public class GraphicalCard extends PokerCard {
 	
-	private Image cardImage; // The image of the card.
+	private static final Map<String,Image> images = new HashMap<String,Image>(); // Images that have been read, by file name.
+
+	private final String imageFile; // The file that holds the image of the card.
+	private Image cardImage; // The image of the card, or null if it has not been needed yet.
 	
 	/**
 	 * Constructs a graphical card with a value and suit. Also constructs the string needed for the image so the card knows which
@@ -33,8 +43,7 @@ public class GraphicalCard extends PokerCard {
 			v = Character.toString(this.getValueAsString().charAt(0));
 		 
 		// combine suit and string to get the card image
-		String card = "cards/" + (s+v) + ".jpg";
-		cardImage = new Image(card);
+		imageFile = "cards/" + (s+v) + ".jpg";
 	}
 	
 	/**
@@ -44,6 +53,8 @@ public class GraphicalCard extends PokerCard {
 	 * @param y The upper left corner y-coordinate.
 	 */
 	public void drawCard(GraphicsContext g, double x, double y) {
+		if (cardImage == null)
+			cardImage = images.computeIfAbsent(imageFile, Image::new);
 		g.drawImage(cardImage, x, y);
 	}
 }
@@ -12,6 +12,13 @@ public class GraphicalDeck {
      */
     private int cardsUsed;
 
+    /**
+     * The regular cards that have not been dealt yet, kept up to date by
+     * dealCard() and undealCard().  Jokers have no card codes, so they
+     * are not included.
+     */
+    private final DeckState remaining = new DeckState();
+
     /**
      * Constructs a regular 52-card poker deck.  Initially, the cards
      * are in a sorted order.  The shuffle() method can be called to
@@ -62,6 +69,7 @@ public class GraphicalDeck {
             deck[rand] = temp;
         }
         cardsUsed = 0;
+        remaining.fill();
     }
 
     /**
@@ -87,13 +95,43 @@ public class GraphicalDeck {
     public GraphicalCard dealCard() {
         if (cardsUsed == deck.length)
             throw new IllegalStateException("No cards are left in the deck.");
+        GraphicalCard card = deck[cardsUsed];
         cardsUsed++;
-        return deck[cardsUsed - 1];
+        if (card.getSuit() != GraphicalCard.JOKER)
+            remaining.remove(CardCodes.code(card));
+        return card;
         // Programming note:  Cards are not literally removed from the array
         // that represents the deck.  We just keep track of how many cards
         // have been used.
     }
 
+    /**
+     * Puts the card that was dealt most recently back on top of the deck,
+     * so that it will be returned again by the next call to dealCard().
+     * This undoes one call to dealCard() and takes constant time.
+     * @return the card that was put back.
+     * @throws IllegalStateException if no cards have been dealt
+     */
+    public GraphicalCard undealCard() {
+        if (cardsUsed == 0)
+            throw new IllegalStateException("No cards have been dealt from the deck.");
+        cardsUsed--;
+        GraphicalCard card = deck[cardsUsed];
+        if (card.getSuit() != GraphicalCard.JOKER)
+            remaining.add(CardCodes.code(card));
+        return card;
+    }
+
+    /**
+     * Returns the regular cards that are still in the deck, with constant-time
+     * queries such as the number of hearts that are left or whether a given
+     * card is still live.  The object is updated as cards are dealt and must
+     * not be modified by the caller.
+     */
+    public DeckState getRemaining() {
+        return remaining;
+    }
+
     /**
      * Test whether the deck contains Jokers.
      * @return true, if this is a 54-card deck containing two jokers, or false if
@@ -0,0 +1,52 @@
+/**
+ * A simple strategy that puts each card where it immediately adds the most
+ * points to the score.  Early in the game most placements add nothing, so
+ * ties are broken by keeping suits together in the columns, which leaves
+ * the columns open for flushes while pairs and triples build up in the rows.
+ * This is a baseline for comparing better strategies and a cheap policy for
+ * playing out the rest of a game in a Monte Carlo search.
+ */
+public class GreedyStrategy implements PlacementStrategy {
+
+	private final int[] points;   // Points for each hand type, from the scoring scheme.
+
+	/**
+	 * Creates a greedy strategy that maximizes points under a given scoring scheme.
+	 */
+	public GreedyStrategy(ScoringScheme scheme) {
+		points = scheme.getPointsTable();
+	}
+
+	public int chooseCell(GameState state) {
+		int card = state.getNextCard();
+		int suit = CardCodes.suit(card);
+		int bestCell = -1;
+		int bestValue = Integer.MIN_VALUE;
+		int size = state.getSize();
+		for (int cell = 0; cell < state.getCellCount(); cell++) {
+			if (!state.isEmpty(cell))
+				continue;
+			int value = 0;
+			for (int line : state.getLinesOfCell(cell)) {
+				int gain = points[state.rankWith(line, cell, card) >> 20] - points[state.getLineType(line)];
+				value += 16*gain;
+			}
+			int column = cell % size;
+			for (int row = 0; row < size; row++) {
+				int c = state.getCard(size*row + column);
+				if (c != GameState.EMPTY)
+					value += CardCodes.suit(c) == suit ? 1 : -1;
+			}
+			if (value > bestValue) {
+				bestValue = value;
+				bestCell = cell;
+			}
+		}
+		return bestCell;
+	}
+
+	public String toString() {
+		return "Greedy";
+	}
+
+}
@@ -0,0 +1,197 @@
+/**
+ * A fast, allocation-free replacement for PokerRank, for use by the
+ * headless game engine and the strategies that search it.  Hands are
+ * given as arrays of card codes (see CardCodes), and the numerical rank
+ * that is computed is exactly the same number that PokerRank.getRank()
+ * computes for the same cards, including the order in which the card
+ * values are packed into bits 0 through 19.  So ranks from the two classes
+ * can be freely compared, and the hand type is in bits 20 through 23.
+ * <p>As with PokerRank, a hand can have zero to five cards, and a hand with
+ * fewer than five cards is never a straight or a flush.
+ */
+public final class HandEvaluator {
+
+	/**
+	 * The bits of the value mask for a five-high straight, A-5-4-3-2.
+	 */
+	private static final int WHEEL = (1 << PokerCard.ACE) | 0x3C;
+
+	/**
+	 * The bits of the value mask for the cards of a royal flush, A-K-Q-J-10.
+	 */
+	private static final int BROADWAY = 0x1F << 10;
+
+	private HandEvaluator() {
+	}
+
+	/**
+	 * Returns the numerical rank of a hand, as defined by PokerRank.getRank().
+	 * @param cards an array containing the card codes of the hand.
+	 * @param count the number of cards in the hand, which are in positions 0
+	 *    through count-1 of the array.
+	 * @throws IllegalArgumentException if count is greater than five.
+	 */
+	public static int rank(int[] cards, int count) {
+		if (count > 5)
+			throw new IllegalArgumentException("HandEvaluator does not support hands with more than five cards.");
+		if (count == 0)
+			return 0;
+
+		/* Count the cards of each value, four bits per value, and record which
+		 * values occur in a bit mask.  At the same time, check for a flush. */
+
+		long counts = 0;
+		int mask = 0;
+		int suit = CardCodes.suit(cards[0]);
+		boolean isFlush = count == 5;
+		for (int i = 0; i < count; i++) {
+			int v = CardCodes.value(cards[i]);
+			counts += 1L << (4*v);
+			mask |= 1 << v;
+			if (CardCodes.suit(cards[i]) != suit)
+				isFlush = false;
+		}
+
+		if (count == 5 && Integer.bitCount(mask) == 5) {
+			// Five different values, so the hand is a straight, a flush, or nothing.
+			if (mask == WHEEL) {
+				// The ace counts as 1 and is ordered last, as in PokerRank.
+				return ((isFlush ? PokerRank.STRAIGHT_FLUSH : PokerRank.STRAIGHT) << 20) | 0x5432E;
+			}
+			boolean isStraight = mask == 0x1F << Integer.numberOfTrailingZeros(mask);
+			int type;
+			if (isFlush && isStraight)
+				type = mask == BROADWAY ? PokerRank.ROYAL_FLUSH : PokerRank.STRAIGHT_FLUSH;
+			else if (isFlush)
+				type = PokerRank.FLUSH;
+			else if (isStraight)
+				type = PokerRank.STRAIGHT;
+			else
+				type = PokerRank.NOTHING;
+			return (type << 20) | descending(mask);
+		}
+
+		/* Find the groups of equal values, from highest to lowest.  Single
+		 * cards that are higher than a triple are kept separately from those
+		 * that are lower, because PokerRank orders the lower ones first. */
+
+		int quad = 0, triple = 0, pairHi = 0, pairLo = 0;
+		int highSingles = 0, highCount = 0;  // Values of single cards seen before any triple, packed 4 bits each.
+		int lowSingles = 0, lowCount = 0;    // Values of single cards seen after a triple.
+		for (int v = PokerCard.ACE; v >= 2; v--) {
+			int c = (int)(counts >>> (4*v)) & 0xF;
+			if (c == 1) {
+				if (triple == 0) {
+					highSingles = (highSingles << 4) | v;
+					highCount++;
+				}
+				else {
+					lowSingles = (lowSingles << 4) | v;
+					lowCount++;
+				}
+			}
+			else if (c == 2) {
+				if (pairHi == 0)
+					pairHi = v;
+				else
+					pairLo = v;
+			}
+			else if (c == 3)
+				triple = v;
+			else if (c == 4)
+				quad = v;
+		}
+		int singles = (highSingles << (4*lowCount)) | lowSingles;  // All the singles, in descending order.
+
+		int type;
+		int order;  // The values of the cards in PokerRank order, packed 4 bits each.
+		if (quad > 0) {
+			type = PokerRank.FOUR_OF_A_KIND;
+			order = (quad * 0x1111 << (4*(count - 4))) | singles;
+		}
+		else if (triple > 0 && pairHi > 0) {
+			type = PokerRank.FULL_HOUSE;
+			order = (triple * 0x111 << 8) | (pairHi * 0x11);
+		}
+		else if (triple > 0) {
+			type = PokerRank.TRIPLE;
+			order = (triple * 0x111 << (4*(count - 3))) | (lowSingles << (4*highCount)) | highSingles;
+		}
+		else if (pairLo > 0) {
+			type = PokerRank.TWO_PAIR;
+			order = (pairHi * 0x11 << (4*(count - 2))) | (pairLo * 0x11 << (4*(count - 4))) | singles;
+		}
+		else if (pairHi > 0) {
+			type = PokerRank.PAIR;
+			order = (pairHi * 0x11 << (4*(count - 2))) | singles;
+		}
+		else {
+			type = PokerRank.NOTHING;
+			order = singles;
+		}
+		return (type << 20) | (order << (4*(5 - count)));
+	}
+
+	/**
+	 * Returns the rank of the best five-card hand that can be made from up to seven
+	 * cards, for the longer lines of a grid larger than 5-by-5.  A hand of five or
+	 * fewer cards is ranked as it is, by rank(), so this is only slower than rank()
+	 * for six or seven cards, where it tries every way of leaving out cards.
+	 * @param cards an array containing the card codes of the hand.
+	 * @param count the number of cards in the hand, at most seven.
+	 * @param scratch an array of length at least five, which is overwritten.
+	 * @throws IllegalArgumentException if count is greater than seven.
+	 */
+	public static int bestRank(int[] cards, int count, int[] scratch) {
+		if (count <= 5)
+			return rank(cards, count);
+		if (count > 7)
+			throw new IllegalArgumentException("HandEvaluator does not support hands with more than seven cards.");
+		int best = 0;
+		for (int a = 0; a < count; a++) {
+			if (count == 6)
+				best = Math.max(best, rankWithout(cards, count, a, a, scratch));
+			else {
+				for (int b = a + 1; b < count; b++)
+					best = Math.max(best, rankWithout(cards, count, a, b, scratch));
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Ranks the five cards that are left when the cards in positions a and b (which
+	 * may be the same) are taken out of a hand.
+	 */
+	private static int rankWithout(int[] cards, int count, int a, int b, int[] scratch) {
+		int n = 0;
+		for (int i = 0; i < count; i++) {
+			if (i != a && i != b)
+				scratch[n++] = cards[i];
+		}
+		return rank(scratch, 5);
+	}
+
+	/**
+	 * Returns the basic type of a hand, one of the constants PokerRank.NOTHING
+	 * through PokerRank.ROYAL_FLUSH.
+	 * @see #rank(int[], int)
+	 */
+	public static int handType(int[] cards, int count) {
+		return rank(cards, count) >> 20;
+	}
+
+	/**
+	 * Packs the values whose bits are set in a mask of five values, highest value first.
+	 */
+	private static int descending(int mask) {
+		int order = 0;
+		while (mask != 0) {
+			int v = 31 - Integer.numberOfLeadingZeros(mask);
+			order = (order << 4) | v;
+			mask &= ~(1 << v);
+		}
+		return order;
+	}
+
+}
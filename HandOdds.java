@@ -0,0 +1,508 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tables of the chances of each hand type in a line when more cards are
+ * added to it from the rest of the deck.  Working that out exactly means
+ * trying every set of cards that could be added, which is up to 2.6
+ * million hands for an empty line, far too slow for a strategy that asks
+ * about every line for every cell.  Instead, the chances are put together
+ * from a table lookup and a few counts.
+ * <p>The table gives the chances of the patterns of equal values:  no pair,
+ * a pair, two pairs, three of a kind, a full house and four of a kind.  It
+ * is indexed by an abstract state of the line and the deck, made of the
+ * pattern of equal values among the cards in the line (as in ValueModel),
+ * the number of cards still to come, the number of cards left in the deck
+ * that match a value in the line, and the size of the deck.  The chances
+ * in the table for a state are exact for one deck with that state, made up
+ * by the generator, and close for the others; two decks with the same
+ * state only differ in how the other values are spread.
+ * <p>Straights and flushes need no table.  When the line will be full and
+ * its values are all different, the hands among the ones with no pair that
+ * are straights are counted exactly from the straight windows, that is,
+ * the runs of five values that hold all the line's values, as the product
+ * of the numbers of cards left of the values missing from each window; the
+ * flushes, if the line is all one suit, are the ways of choosing the new
+ * cards from the cards left in its suit; and the straight flushes are the
+ * windows whose missing cards of the suit are all in the deck.  That takes
+ * a few dozen operations.
+ * <p>The table takes 76 kilobytes, with each chance stored in 16 bits.  The
+ * generator fills it by exact enumeration, with the states shared among
+ * threads, in a few seconds; main() writes it to the file hand.odds.
+ * getDefault() loads that file the first time it is called, or makes the
+ * table if there is no file.  A HandOdds object is never changed after it
+ * is made, so it can be shared by any number of threads.
+ */
+public class HandOdds {
+
+	public static final String ODDS_FILE = "hand.odds";   // Where main() saves the table.
+
+	private static final int MAGIC = 0x504F4831;          // "POH1", the start of a table file.
+	private static final int TYPE_COUNT = PokerRank.ROYAL_FLUSH + 1;
+	private static final int TOTALS = CardCodes.DECK_SIZE + 1;   // Sizes of the deck with the line, 0 to 52.
+	private static final int SCALE = 0xFFFF;              // A chance of 1 in the table.
+
+	/**
+	 * The hand types that the table holds, which depend only on the values of the cards.
+	 */
+	private static final int[] GROUPS = { PokerRank.NOTHING, PokerRank.PAIR, PokerRank.TWO_PAIR,
+			PokerRank.TRIPLE, PokerRank.FULL_HOUSE, PokerRank.FOUR_OF_A_KIND };
+
+	/**
+	 * The windows of five consecutive values, as masks of 13 bits with bit 0 for the two,
+	 * from A-2-3-4-5 to 10-J-Q-K-A.
+	 */
+	private static final int[] WINDOWS = { 0x100F, 0x1F, 0x3E, 0x7C, 0xF8, 0x1F0, 0x3E0, 0x7C0, 0xF80, 0x1F00 };
+
+	/**
+	 * The patterns of equal values that a line of up to four cards can have, as the
+	 * sizes of its groups of equal values, largest first.
+	 */
+	private static final int[][] SHAPES = {
+			{}, { 1 }, { 1, 1 }, { 2 }, { 1, 1, 1 }, { 2, 1 }, { 3 },
+			{ 1, 1, 1, 1 }, { 2, 1, 1 }, { 2, 2 }, { 3, 1 }, { 4 } };
+
+	private static final int[] SHAPE_BY_CODE = new int[125];   // By 25*count + 5*distinct + largest.
+	private static final int[] CARDS = new int[SHAPES.length];       // The number of cards of each shape.
+	private static final int[] MAX_LIVE = new int[SHAPES.length];    // The most cards that can match a line value.
+	private static final int[] OFFSET = new int[SHAPES.length + 1];  // The first state of each shape.
+
+	static {
+		for (int s = 0; s < SHAPES.length; s++) {
+			int[] groups = SHAPES[s];
+			for (int g : groups) {
+				CARDS[s] += g;
+				MAX_LIVE[s] += 4 - g;
+			}
+			SHAPE_BY_CODE[25*CARDS[s] + 5*groups.length + (groups.length == 0 ? 0 : groups[0])] = s;
+			OFFSET[s + 1] = OFFSET[s] + (5 - CARDS[s]) * (MAX_LIVE[s] + 1) * TOTALS;
+		}
+	}
+
+	private static HandOdds defaultOdds;
+
+	private final char[] table;   // table[GROUPS.length*state + g], the chance of GROUPS[g] times SCALE.
+
+	private HandOdds(char[] table) {
+		this.table = table;
+	}
+
+	/**
+	 * Returns the table from the file hand.odds, which is loaded the first time this
+	 * is called.  If the file can't be read, the table is made, using all the available
+	 * processors, and saved in the file if possible.
+	 */
+	public static synchronized HandOdds getDefault() {
+		if (defaultOdds == null) {
+			try (InputStream in = new BufferedInputStream(new FileInputStream(ODDS_FILE))) {
+				defaultOdds = load(in);
+			}
+			catch (IOException e) {
+				defaultOdds = generate(Runtime.getRuntime().availableProcessors());
+				try (OutputStream out = new BufferedOutputStream(new FileOutputStream(ODDS_FILE))) {
+					defaultOdds.save(out);
+				}
+				catch (IOException ignored) {
+					// The table will be made again next time.
+				}
+			}
+		}
+		return defaultOdds;
+	}
+
+	/**
+	 * Finds the chance of each hand type for the cards in a line when some more cards,
+	 * chosen at random, are added to them from a deck.
+	 * @param cards an array containing the card codes of the line.
+	 * @param count the number of cards in the line.
+	 * @param more the number of cards that will be added.
+	 * @param deck the cards that the new cards come from.  It must not contain the
+	 *    cards of the line.
+	 * @param result receives the chance of hand type t, PokerRank.NOTHING through
+	 *    PokerRank.ROYAL_FLUSH, in result[t].
+	 * @throws IllegalArgumentException if the line would have more than five cards, or
+	 *    the deck has fewer cards than are to be added.
+	 */
+	public void odds(int[] cards, int count, int more, DeckState deck, double[] result) {
+		evaluate(cards, count, more, deck, result, null);
+	}
+
+	/**
+	 * Returns the expected points of a line when some more cards are added to it,
+	 * from the chances given by odds().
+	 * @param points the points for each hand type, as from ScoringScheme.getPointsTable().
+	 * @throws IllegalArgumentException if the line would have more than five cards, or
+	 *    the deck has fewer cards than are to be added.
+	 */
+	public double expectedPoints(int[] cards, int count, int more, DeckState deck, int[] points) {
+		return evaluate(cards, count, more, deck, null, points);
+	}
+
+	/**
+	 * Does the work of odds() and expectedPoints().
+	 * @param result if not null, receives the chances.
+	 * @param points if not null, the points for the expected points.
+	 * @return the expected points, or 0 if points is null.
+	 */
+	private double evaluate(int[] cards, int count, int more, DeckState deck, double[] result, int[] points) {
+		if (count < 0 || more < 0 || count + more > 5)
+			throw new IllegalArgumentException("A line can hold at most five cards.");
+		if (more > deck.size())
+			throw new IllegalArgumentException("The deck has only " + deck.size() + " cards.");
+		if (result != null) {
+			for (int t = 0; t < TYPE_COUNT; t++)
+				result[t] = 0;
+		}
+		if (more == 0) {
+			int type = HandEvaluator.handType(cards, count);
+			if (result != null)
+				result[type] = 1;
+			return points == null ? 0 : points[type];
+		}
+		long counts = 0;       // Four bits for each value.
+		int values = 0;        // One bit for each value.
+		int suit = -1;
+		boolean oneSuit = true;
+		for (int i = 0; i < count; i++) {
+			int v = CardCodes.value(cards[i]) - 2;
+			counts += 1L << (4*v);
+			values |= 1 << v;
+			int s = CardCodes.suit(cards[i]);
+			if (i == 0)
+				suit = s;
+			else if (s != suit)
+				oneSuit = false;
+		}
+		int distinct = Integer.bitCount(values);
+		int largest = 0;
+		for (long n = counts; n != 0; n >>>= 4)
+			largest = Math.max(largest, (int)(n & 0xF));
+		int shape = SHAPE_BY_CODE[25*count + 5*distinct + largest];
+		long deckCounts = deck.getPackedValueCounts();
+		int live = 0;
+		for (int bits = values; bits != 0; bits &= bits - 1)
+			live += (int)(deckCounts >>> (4*Integer.numberOfTrailingZeros(bits))) & 0xF;
+		int state = index(shape, more, Math.min(live, MAX_LIVE[shape]), Math.min(CardCodes.DECK_SIZE, deck.size() + count));
+
+		// Straights and flushes, counted among the hands with no pair.
+		long straights = 0, flushes = 0, straightFlushes = 0, royalFlushes = 0;
+		if (count + more == 5 && distinct == count) {
+			int suits = count == 0 ? 0xF : oneSuit ? 1 << suit : 0;
+			for (int w = 0; w < WINDOWS.length; w++) {
+				int window = WINDOWS[w];
+				if ((values & ~window) != 0)
+					continue;
+				int missing = window & ~values;
+				long ways = 1;
+				for (int bits = missing; bits != 0; bits &= bits - 1)
+					ways *= (deckCounts >>> (4*Integer.numberOfTrailingZeros(bits))) & 0xF;
+				straights += ways;
+				for (int s = 0; s < 4; s++) {
+					if ((suits & 1 << s) != 0 && (deck.getSuitValues(s) & missing) == missing) {
+						if (window == WINDOWS[WINDOWS.length - 1])
+							royalFlushes++;
+						else
+							straightFlushes++;
+					}
+				}
+			}
+			for (int s = 0; s < 4; s++) {
+				if ((suits & 1 << s) != 0)
+					flushes += choose(deck.getSuitCount(s), more);
+			}
+		}
+		double hands = choose(deck.size(), more);
+		double straight = (straights - straightFlushes - royalFlushes) / hands;
+		double flush = (flushes - straightFlushes - royalFlushes) / hands;
+		double straightFlush = straightFlushes / hands;
+		double royalFlush = royalFlushes / hands;
+		int base = GROUPS.length*state;
+		double nothing = Math.max(0, (double)table[base] / SCALE - straight - flush - straightFlush - royalFlush);
+		if (result != null) {
+			for (int g = 1; g < GROUPS.length; g++)
+				result[GROUPS[g]] = (double)table[base + g] / SCALE;
+			result[PokerRank.NOTHING] = nothing;
+			result[PokerRank.STRAIGHT] = straight;
+			result[PokerRank.FLUSH] = flush;
+			result[PokerRank.STRAIGHT_FLUSH] = straightFlush;
+			result[PokerRank.ROYAL_FLUSH] = royalFlush;
+		}
+		if (points == null)
+			return 0;
+		int sum = 0;
+		for (int g = 1; g < GROUPS.length; g++)
+			sum += table[base + g] * points[GROUPS[g]];
+		return (double)sum / SCALE + nothing * points[PokerRank.NOTHING] + straight * points[PokerRank.STRAIGHT]
+				+ flush * points[PokerRank.FLUSH] + straightFlush * points[PokerRank.STRAIGHT_FLUSH]
+				+ royalFlush * points[PokerRank.ROYAL_FLUSH];
+	}
+
+	private static int index(int shape, int more, int live, int total) {
+		return OFFSET[shape] + ((more - 1) * (MAX_LIVE[shape] + 1) + live) * TOTALS + total;
+	}
+
+	/**
+	 * Returns the number of ways to choose k things from n.
+	 */
+	private static double choose(int n, int k) {
+		if (k > n)
+			return 0;
+		double ways = 1;
+		for (int i = 0; i < k; i++)
+			ways = ways * (n - i) / (i + 1);
+		return ways;
+	}
+
+	/**
+	 * Finds the exact chance of each hand type for the cards in a line when some more
+	 * cards, chosen at random, are added to them from a deck, by trying every set of
+	 * cards that could be added.  This is what odds() approximates; it can take
+	 * a large fraction of a second.
+	 * @throws IllegalArgumentException if the line would have more than five cards, or
+	 *    the deck has fewer cards than are to be added.
+	 */
+	public static void exactOdds(int[] cards, int count, int more, DeckState deck, double[] result) {
+		if (count < 0 || more < 0 || count + more > 5)
+			throw new IllegalArgumentException("A line can hold at most five cards.");
+		if (more > deck.size())
+			throw new IllegalArgumentException("The deck has only " + deck.size() + " cards.");
+		long[] counts = new long[TYPE_COUNT];
+		int[] hand = new int[5];
+		System.arraycopy(cards, 0, hand, 0, count);
+		enumerate(hand, count, count + more, toArray(deck.getCards()), 0, counts);
+		long total = 0;
+		for (long n : counts)
+			total += n;
+		for (int t = 0; t < TYPE_COUNT; t++)
+			result[t] = (double)counts[t] / total;
+	}
+
+	private static void enumerate(int[] hand, int filled, int total, int[] deck, int from, long[] counts) {
+		if (filled == total) {
+			counts[HandEvaluator.handType(hand, total)]++;
+			return;
+		}
+		for (int i = from; i <= deck.length - (total - filled); i++) {
+			hand[filled] = deck[i];
+			enumerate(hand, filled + 1, total, deck, i + 1, counts);
+		}
+	}
+
+	private static int[] toArray(long cards) {
+		int[] codes = new int[Long.bitCount(cards)];
+		int n = 0;
+		for (long bits = cards; bits != 0; bits &= bits - 1)
+			codes[n++] = Long.numberOfTrailingZeros(bits);
+		return codes;
+	}
+
+	/**
+	 * Makes the table by working out the chances for every state exactly, for a deck
+	 * made up to have that state.
+	 * @param threads the number of states to work on at the same time.
+	 * @throws IllegalArgumentException if the number of threads is less than 1.
+	 */
+	public static HandOdds generate(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed.");
+		char[] table = new char[GROUPS.length * OFFSET[SHAPES.length]];
+		AtomicInteger nextState = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> workers = new ArrayList<Future<?>>();
+			for (int t = 0; t < threads; t++) {
+				workers.add(executor.submit( () -> {
+					int[] line = new int[5];
+					long[] counts = new long[TYPE_COUNT];
+					int state;
+					while ((state = nextState.getAndIncrement()) < OFFSET[SHAPES.length]) {
+						int shape = 0;
+						while (OFFSET[shape + 1] <= state)
+							shape++;
+						int i = state - OFFSET[shape];
+						int size = i % TOTALS - CARDS[shape];
+						i /= TOTALS;
+						int live = i % (MAX_LIVE[shape] + 1);
+						int more = i / (MAX_LIVE[shape] + 1) + 1;
+						if (size < Math.max(more, live) || size > CardCodes.DECK_SIZE - CARDS[shape] - MAX_LIVE[shape] + live)
+							continue;   // No deck has this state.
+						int[] deck = sampleDeck(shape, live, size, line);
+						for (int type = 0; type < TYPE_COUNT; type++)
+							counts[type] = 0;
+						enumerate(line, CARDS[shape], CARDS[shape] + more, deck, 0, counts);
+						double hands = choose(size, more);
+						for (int g = 0; g < GROUPS.length; g++) {
+							long n = counts[GROUPS[g]];
+							if (g == 0)
+								n += counts[PokerRank.STRAIGHT] + counts[PokerRank.FLUSH]
+										+ counts[PokerRank.STRAIGHT_FLUSH] + counts[PokerRank.ROYAL_FLUSH];
+							table[GROUPS.length*state + g] = (char)Math.round(n / hands * SCALE);
+						}
+					}
+				}));
+			}
+			for (Future<?> f : workers)
+				f.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Making the hand odds was interrupted.", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Making the hand odds failed.", e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return new HandOdds(table);
+	}
+
+	/**
+	 * Makes up a line and a deck with a given state.  Cards of the line's values are
+	 * taken out of the rest of the deck, a value at a time, until the right number is
+	 * left, and then cards of the other values, also a value at a time, until the deck
+	 * has the right size, so that the other values have as nearly the same number of
+	 * cards left as possible.
+	 * @param size the number of cards in the deck.
+	 * @param line receives the card codes of the line.
+	 * @return the card codes of the deck.
+	 */
+	private static int[] sampleDeck(int shape, int live, int size, int[] line) {
+		int[] groups = SHAPES[shape];
+		int lineValues = 0;
+		int n = 0;
+		for (int g = 0; g < groups.length; g++) {
+			int value = 2 + 4*g;
+			lineValues |= 1 << (value - 2);
+			for (int suit = 0; suit < groups[g]; suit++)
+				line[n++] = CardCodes.code(value, suit);
+		}
+		long deck = (1L << CardCodes.DECK_SIZE) - 1;
+		for (int i = 0; i < n; i++)
+			deck &= ~(1L << line[i]);
+		int left = MAX_LIVE[shape];
+		int excess = Long.bitCount(deck) - size;
+		for (int suit = 3; suit >= 0; suit--) {
+			for (int v = 2; v <= 14; v++) {
+				long bit = 1L << CardCodes.code(v, suit);
+				if ((deck & bit) == 0)
+					continue;
+				boolean matches = (lineValues & 1 << (v - 2)) != 0;
+				if (matches ? left > live : excess > left - live) {
+					deck &= ~bit;
+					excess--;
+					if (matches)
+						left--;
+				}
+			}
+		}
+		return toArray(deck);
+	}
+
+	/**
+	 * Writes the table in a compact binary form.
+	 */
+	public void save(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(OFFSET[SHAPES.length]);
+		data.writeInt(GROUPS.length);
+		for (char c : table)
+			data.writeChar(c);
+		data.flush();
+	}
+
+	/**
+	 * Reads a table that was written by save().
+	 * @throws IOException if the data can't be read or is not a table of the right size.
+	 */
+	public static HandOdds load(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not a file of hand odds.");
+		if (data.readInt() != OFFSET[SHAPES.length] || data.readInt() != GROUPS.length)
+			throw new IOException("The hand odds have the wrong size.");
+		char[] table = new char[GROUPS.length * OFFSET[SHAPES.length]];
+		for (int i = 0; i < table.length; i++)
+			table[i] = data.readChar();
+		return new HandOdds(table);
+	}
+
+	/**
+	 * Makes the table, saves it in hand.odds, and then compares odds() with exactOdds()
+	 * on lines from random games, printing the mean error in the expected points and
+	 * the time of a lookup.  The optional arguments are the number of threads and the
+	 * number of lines to compare.
+	 * @throws IOException if the tables can't be saved.
+	 */
+	public static void main(String[] args) throws IOException {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int samples = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		long startTime = System.nanoTime();
+		HandOdds odds = generate(threads);
+		System.out.printf("Made %d states in %.1f seconds.%n", OFFSET[SHAPES.length], (System.nanoTime() - startTime) / 1e9);
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(ODDS_FILE))) {
+			odds.save(out);
+		}
+		System.out.println("Saved " + ODDS_FILE);
+		int[] points = ScoringScheme.getDefault().getPointsTable();
+		SplittableRandom rng = new SplittableRandom(1);
+		GameState game = new GameState(Deals.sorted());
+		PlacementStrategy player = new RandomStrategy(1);
+		int[][] hands = new int[samples][5];
+		int[] counts = new int[samples];
+		DeckState[] decks = new DeckState[samples];
+		double[] exact = new double[TYPE_COUNT];
+		double error = 0, total = 0;
+		int lines = 0;
+		while (lines < samples) {
+			game.reset(Deals.newDeal(rng));
+			int placed = rng.nextInt(GameState.CELL_COUNT);
+			for (int c = 0; c < placed; c++)
+				game.place(player.chooseCell(game));
+			int count = 0;
+			for (int cell : game.getCellsOfLine(rng.nextInt(game.getLineCount()))) {
+				if (!game.isEmpty(cell))
+					hands[lines][count++] = game.getCard(cell);
+			}
+			if (count == 5)
+				continue;
+			counts[lines] = count;
+			decks[lines] = new DeckState(game.getUnseen());
+			exactOdds(hands[lines], count, 5 - count, decks[lines], exact);
+			double expected = 0;
+			for (int type = 0; type < TYPE_COUNT; type++)
+				expected += exact[type] * points[type];
+			error += Math.abs(odds.expectedPoints(hands[lines], count, 5 - count, decks[lines], points) - expected);
+			total += expected;
+			lines++;
+		}
+		long lookupNanos = Long.MAX_VALUE;
+		double sum = 0;
+		for (int rep = 0; rep < 20; rep++) {
+			long t = System.nanoTime();
+			for (int i = 0; i < samples; i++)
+				sum += odds.expectedPoints(hands[i], counts[i], 5 - counts[i], decks[i], points);
+			lookupNanos = Math.min(lookupNanos, System.nanoTime() - t);
+		}
+		System.out.printf("%d lines, mean expected points %.3f, mean error %.3f points%n",
+				samples, total / samples, error / samples);
+		System.out.printf("%.0f ns per lookup (checksum %.0f)%n", (double)lookupNanos / samples, sum);
+	}
+
+}
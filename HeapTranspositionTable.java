@@ -0,0 +1,60 @@
+/**
+ * A TranspositionTable that keeps its entries in two arrays of longs on
+ * the Java heap.  The table is direct-mapped:  a key can only be stored in
+ * the slot given by its low bits, and a new entry always replaces the old
+ * one in its slot.
+ * <p>There are no locks.  Each slot holds the value and the exclusive or of
+ * the key with the value, and a probe only accepts a slot whose two words
+ * agree with the key.  If two threads store into the same slot at the same
+ * time, the words of the slot may come from different stores, but then they
+ * don't agree with either key, so the slot just reads as empty.
+ */
+public class HeapTranspositionTable implements TranspositionTable {
+
+	private final long[] checks;   // The key xor the data of each slot.
+	private final long[] data;     // The value of each slot, in the low 32 bits, with a 1 in bit 32.
+	private final int mask;        // The number of slots minus 1.
+
+	/**
+	 * Creates a table with room for a given number of entries, which is rounded up
+	 * to a power of two.  Each entry takes 16 bytes.
+	 * @throws IllegalArgumentException if the number is not between 1 and 2^30.
+	 */
+	public HeapTranspositionTable(int entries) {
+		if (entries < 1 || entries > 1 << 30)
+			throw new IllegalArgumentException("A table must have between 1 and 2^30 entries.");
+		int size = Integer.highestOneBit(entries);
+		if (size < entries)
+			size <<= 1;
+		checks = new long[size];
+		data = new long[size];
+		mask = size - 1;
+	}
+
+	public int probe(long key) {
+		int slot = (int)key & mask;
+		long d = data[slot];
+		if (d == 0 || (checks[slot] ^ d) != key)
+			return MISSING;
+		return (int)d;
+	}
+
+	public void store(long key, int value) {
+		int slot = (int)key & mask;
+		long d = (1L << 32) | (value & 0xFFFFFFFFL);   // Bit 32 marks a used slot.
+		data[slot] = d;
+		checks[slot] = key ^ d;
+	}
+
+	public void clear() {
+		for (int i = 0; i <= mask; i++) {
+			checks[i] = 0;
+			data[i] = 0;
+		}
+	}
+
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+}
@@ -0,0 +1,134 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javafx.application.Platform;
+
+/**
+ * Computes hints for the player on a background thread, so that the search
+ * never freezes the user interface.  The game calls analyze() every time
+ * a new Next Card is shown, and the analysis starts right away, before the
+ * player has asked for a hint.  If the player moves before the analysis
+ * is finished, the stale computation is cancelled and a new one is started
+ * for the new position.  Results are published back on the JavaFX
+ * application thread with Platform.runLater(), so all the methods of this
+ * class except the analysis itself run on that thread and no locking is
+ * needed.
+ */
+public class HintService {
+
+	private final ExecutorService executor;     // A single daemon thread that runs the analysis.
+	private final MonteCarloStrategy analyzer;  // The search that computes the hints.
+
+	private Future<?> pending;       // The computation in progress, or null.
+	private long position;           // Identifies the position that is being, or was, analyzed.
+	private boolean hasPosition;     // False until analyze() is first called.
+	private double[] values;         // The result for the current position, or null if not ready.
+	private int bestCell = -1;       // The cell with the highest value, or -1 if not ready.
+
+	/**
+	 * Creates a hint service that uses a Monte Carlo search with a given number of
+	 * rollouts per candidate cell.
+	 */
+	public HintService(ScoringScheme scheme, int rollouts) {
+		analyzer = new MonteCarloStrategy(scheme, rollouts);
+		executor = Executors.newSingleThreadExecutor( runnable -> {
+			Thread thread = new Thread(runnable, "Hint analysis");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts analyzing a position, unless it is the position that was analyzed most
+	 * recently.  Any analysis of a different position is cancelled.  This must be
+	 * called on the JavaFX application thread.
+	 * @param game the game, which must not be over.  A copy is made, so the game can
+	 *    be changed as soon as this method returns.
+	 * @param onReady if not null, this is run on the application thread when the hint
+	 *    for this position is ready.
+	 */
+	public void analyze(GameState game, Runnable onReady) {
+		long key = game.getHash() ^ Deals.mix(game.getCardsPlaced() * 64L + game.getNextCard());
+		if (hasPosition && key == position)
+			return;
+		cancel();
+		hasPosition = true;
+		position = key;
+		GameState snapshot = new GameState(game);
+		pending = executor.submit( () -> {
+			double[] result;
+			try {
+				result = analyzer.evaluate(snapshot);
+			}
+			catch (CancellationException e) {
+				return;
+			}
+			Platform.runLater( () -> publish(key, result, onReady) );
+		});
+	}
+
+	/**
+	 * Stops any analysis that is in progress and forgets the current hint.
+	 */
+	public void cancel() {
+		if (pending != null) {
+			pending.cancel(true);
+			pending = null;
+		}
+		hasPosition = false;
+		values = null;
+		bestCell = -1;
+	}
+
+	/**
+	 * Tests whether the hint for the most recently analyzed position is available.
+	 */
+	public boolean isReady() {
+		return values != null;
+	}
+
+	/**
+	 * Returns the recommended cell for the next card, or -1 if the hint is not ready.
+	 */
+	public int getBestCell() {
+		return bestCell;
+	}
+
+	/**
+	 * Returns the expected final score if the next card is placed in a given cell, or
+	 * NaN if the hint is not ready or the cell is not empty.
+	 */
+	public double getValue(int cell) {
+		return values == null ? Double.NaN : values[cell];
+	}
+
+	/**
+	 * Stops the background thread.  The service can't be used after this is called.
+	 */
+	public void shutdown() {
+		cancel();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Records the result of an analysis, if the position has not changed since it
+	 * was started.  Runs on the application thread.
+	 */
+	private void publish(long key, double[] result, Runnable onReady) {
+		if (!hasPosition || key != position)
+			return;  // The player has moved on; this result is stale.
+		pending = null;
+		values = result;
+		bestCell = -1;
+		for (int cell = 0; cell < result.length; cell++) {
+			if (!Double.isNaN(result[cell]) && (bestCell == -1 || result[cell] > result[bestCell]))
+				bestCell = cell;
+		}
+		if (onReady != null)
+			onReady.run();
+	}
+
+}
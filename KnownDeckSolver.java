@@ -0,0 +1,824 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the best possible score of a game whose whole deal is known, as in
+ * a puzzle or a daily challenge.  Since the player may put each card in any
+ * empty cell, every arrangement of the 25 cards on the board can be reached,
+ * and the solver searches for the arrangement with the highest score.
+ * <p>A whole deal on a 5-by-5 board, before any card is placed, is solved by
+ * LinePlanSearch, which doesn't place cards at all:  it decides which hand
+ * each row and column will make, such as a flush in hearts or three sevens,
+ * and only then checks that the cards can be arranged to make those hands,
+ * so the bound of every plan counts only hands that the deal can make at the
+ * same time.  That usually proves the optimum of a deal within a few seconds.
+ * <p>Any other position is searched card by card, with a depth-first branch and
+ * bound.  It starts from a good arrangement found by playing greedily and then
+ * improving the board by simulated annealing over swaps of the cards that were
+ * not yet placed, and it skips every position whose upper bound (using the cards
+ * that are still to come) is no better than the best score found so far.  The
+ * bound is first taken line by line from LineBounds, and if that doesn't prune
+ * the position, from BoardBounds, which also checks that the lines don't need
+ * more cards of a suit or value than there are.  An upper bound on the best score
+ * reachable from each position that has been searched is kept in a
+ * TranspositionTable, under a key that is the same for all the boards that
+ * are symmetric to it (by reflections and rotations of the grid, and by
+ * reordering rows and columns in ways that keep the lines as lines), so a
+ * position that is reached again, in any of its symmetric forms, is usually
+ * not searched twice.  An endgame with a dozen or so cards still to place is
+ * usually proven optimal within a second or two.
+ * <p>Both searches start from the annealed arrangement and split their first
+ * levels into fork/join tasks, which idle threads steal from each other.  All
+ * tasks share the best score found so far, so a good arrangement found by one
+ * task immediately prunes the others.  If a time limit is set and runs out, the
+ * rest of the search is skipped and the result is the best arrangement found,
+ * with a proven upper bound that may then be larger than its score;
+ * Solution.isOptimal() says which it is.
+ * <p>Games on other grids can be solved too, but BoardBounds only works on
+ * a 5-by-5 board, so on any other board the bound comes from LineBounds
+ * alone, and the search is slower.
+ */
+public class KnownDeckSolver {
+
+	private static final int SPLIT_DEPTH = 2;      // Levels of the search, below the start, that are forked.
+	private static final int TABLE_EMPTY = 5;      // Positions with at least this many empty cells go in the table.
+	private static final int CHECK_INTERVAL = 4096; // Nodes between checks of the clock.
+	private static final int ANNEALING_RUNS = 4;         // Passes of simulated annealing for the starting board.
+	private static final int ANNEALING_STEPS = 250000;   // Swaps tried in each pass.
+	private static final double START_TEMPERATURE = 8;   // In points.
+	private static final double END_TEMPERATURE = 0.2;
+
+	/**
+	 * ZOBRIST[52*cell + card] is a random number for each card in each cell.  The key of
+	 * a board is the smallest, over the symmetries, of the exclusive or of the numbers
+	 * for its cards after moving them by the symmetry, xor the key of the deal.
+	 */
+	private static final long[] ZOBRIST = new long[GameState.MAX_CELLS * CardCodes.DECK_SIZE];
+
+	/**
+	 * DEAL_ZOBRIST[card] is a random number for each card.  The key of a deal is the
+	 * exclusive or of the numbers for the cards that go on the board, which are all the
+	 * cards that the bound of a position depends on.
+	 */
+	private static final long[] DEAL_ZOBRIST = new long[CardCodes.DECK_SIZE];
+
+	static {
+		SplittableRandom rng = new SplittableRandom(0x501E);
+		int standard = GameState.CELL_COUNT * CardCodes.DECK_SIZE;
+		for (int i = 0; i < standard; i++)
+			ZOBRIST[i] = rng.nextLong();
+		for (int i = 0; i < DEAL_ZOBRIST.length; i++)
+			DEAL_ZOBRIST[i] = rng.nextLong();
+		for (int i = standard; i < ZOBRIST.length; i++)   // Last, so that table files of 5-by-5 games stay valid.
+			ZOBRIST[i] = rng.nextLong();
+	}
+
+	private final ScoringScheme scheme;
+	private TranspositionTable table = new HeapTranspositionTable(1 << 22);
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private long timeLimit;   // In milliseconds, or 0 for no limit.
+
+	/**
+	 * Creates a solver that maximizes the score under a scoring scheme.
+	 */
+	public KnownDeckSolver(ScoringScheme scheme) {
+		this.scheme = scheme;
+	}
+
+	/**
+	 * Sets the table that remembers searched positions.  The default is a
+	 * HeapTranspositionTable with about four million entries.  The table is not
+	 * cleared by solve():  every entry is an upper bound that holds whatever the
+	 * best score found so far, and its key includes the cards of the deal, the
+	 * points of the scoring scheme and the line table, so entries from earlier solves, or from a MappedTranspositionTable that was
+	 * filled by an earlier run, stay valid and speed up solving the same deal
+	 * again.  Entries for other deals are simply replaced as the table fills up.
+	 */
+	public void setTranspositionTable(TranspositionTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * Sets the number of threads that search at once.  The default is the number
+	 * of available processors.
+	 * @throws IllegalArgumentException if the number is less than one.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("At least one thread is needed.");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets a limit on the time that solve() may take, in milliseconds, or 0 for no
+	 * limit (the default).  When the limit runs out, the best arrangement found so
+	 * far is returned, and it is not necessarily optimal.
+	 * @throws IllegalArgumentException if the limit is negative.
+	 */
+	public void setTimeLimit(long millis) {
+		if (millis < 0)
+			throw new IllegalArgumentException("The time limit can't be negative.");
+		timeLimit = millis;
+	}
+
+	/**
+	 * The result of a search:  the best arrangement found, as the cell for each card
+	 * of the deal, its score, and an upper bound on the score of every arrangement.
+	 */
+	public static class Solution {
+
+		private final int score;
+		private final int upperBound;
+		private final int[] moves;
+		private final long nodes;
+		private final long nanos;
+
+		private Solution(int score, int upperBound, int[] moves, long nodes, long nanos) {
+			this.score = score;
+			this.upperBound = upperBound;
+			this.moves = moves;
+			this.nodes = nodes;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * Returns the score of the best arrangement found.
+		 */
+		public int getScore() {
+			return score;
+		}
+
+		/**
+		 * Returns a score that no arrangement can beat.  This is equal to getScore()
+		 * when the search finished.
+		 */
+		public int getUpperBound() {
+			return upperBound;
+		}
+
+		/**
+		 * Tests whether the score is proven to be the best possible.
+		 */
+		public boolean isOptimal() {
+			return score >= upperBound;
+		}
+
+		/**
+		 * Returns the cell in which card i of the deal is placed, for i from 0 to 24.
+		 * Cards that were already on the board when the search started keep their cells.
+		 */
+		public int getMove(int position) {
+			return moves[position];
+		}
+
+		/**
+		 * Returns the number of positions that were searched.
+		 */
+		public long getNodes() {
+			return nodes;
+		}
+
+		/**
+		 * Returns the time that the search took, in seconds.
+		 */
+		public double getSeconds() {
+			return nanos / 1e9;
+		}
+
+		/**
+		 * Plays the arrangement on a game with the same deal, from the position the
+		 * search started from.
+		 */
+		public void playOn(GameState state) {
+			while (!state.isOver())
+				state.place(moves[state.getCardsPlaced()]);
+		}
+
+		public String toString() {
+			return String.format("score %d%s, %d positions in %.2f seconds", score,
+					isOptimal() ? " (optimal)" : " (upper bound " + upperBound + ")", nodes, getSeconds());
+		}
+	}
+
+	/**
+	 * Finds the best way to finish a game whose deal is known.  The cards that are
+	 * already on the board stay where they are, and the rest of the first 25 cards
+	 * of the deal are placed to make the highest score.  The state is not changed.
+	 * A PokerEvents.SolverSearch event is recorded for each call.
+	 */
+	public Solution solve(GameState state) {
+		PokerEvents.SolverSearch event = new PokerEvents.SolverSearch();
+		event.begin();
+		long startTime = System.nanoTime();
+		Search search = new Search(state, startTime);
+		LineTable lines = state.getLineTable();
+		int upper;
+		if (state.isOver())
+			upper = state.score(scheme);
+		else {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				if (state.getCardsPlaced() == 0 && lines.isFiveByFive() && LinePlanSearch.supports(scheme)) {
+					int[] cards = new int[state.getCellCount()];
+					for (int i = 0; i < cards.length; i++)
+						cards[i] = state.getDealtCard(i);
+					upper = pool.invoke(new PlanNode(search, new LinePlanSearch(scheme, lines, cards), true));
+				}
+				else
+					upper = pool.invoke(new Node(new Worker(search, state)));
+			}
+			finally {
+				pool.shutdownNow();
+			}
+		}
+		Solution solution;
+		synchronized (search) {
+			solution = new Solution(search.best.get(), Math.max(upper, search.best.get()), search.bestMoves.clone(),
+					search.nodes.get(), System.nanoTime() - startTime);
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.depth = state.getCellCount() - state.getCardsPlaced();
+			event.nodes = solution.getNodes();
+			event.probes = search.probes.get();
+			event.hits = search.hits.get();
+			event.hitRate = event.probes == 0 ? 0 : (double)event.hits / event.probes;
+			event.score = solution.getScore();
+			event.upperBound = solution.getUpperBound();
+			event.outOfTime = search.outOfTime;
+			event.commit();
+		}
+		return solution;
+	}
+
+	/**
+	 * Solves a game that has not been started, with the default scoring scheme.
+	 */
+	public static Solution solve(int[] deal) {
+		return new KnownDeckSolver(ScoringScheme.getDefault()).solve(new GameState(deal));
+	}
+
+	/**
+	 * The data shared by all the tasks of one call to solve().
+	 */
+	private class Search implements LinePlanSearch.Listener {
+
+		final int startCards;                          // The cards on the board at the start.
+		final int cellCount;
+		final int tableCards;                          // Positions with fewer cards than this go in the table.
+		final long dealKey;                            // Mixed into the key of every position.
+		final int[][] symmetries;                      // symmetries[t][cell] is where cell goes under symmetry t.
+		final AtomicInteger best = new AtomicInteger();
+		final int[] bestMoves;
+		final AtomicLong nodes = new AtomicLong();
+		final AtomicLong probes = new AtomicLong();    // Table probes and hits, for PokerEvents.
+		final AtomicLong hits = new AtomicLong();
+		final long deadline;                           // In System.nanoTime(), or 0 for none.
+		volatile boolean outOfTime;
+
+		Search(GameState state, long startTime) {
+			startCards = state.getCardsPlaced();
+			cellCount = state.getCellCount();
+			tableCards = cellCount - TABLE_EMPTY + 1;
+			bestMoves = new int[cellCount];
+			long key = rulesKey(scheme, state.getLineTable());
+			for (int i = 0; i < cellCount; i++)
+				key ^= DEAL_ZOBRIST[state.getDealtCard(i)];
+			dealKey = key;
+			symmetries = symmetries(state.getLineTable());
+			deadline = timeLimit == 0 ? 0 : startTime + timeLimit * 1000000L;
+			for (int i = 0; i < startCards; i++)
+				bestMoves[i] = state.getMove(i);
+			best.set(-1);
+			improveStart(state);
+		}
+
+		/**
+		 * Records an arrangement if it is better than the best one so far.
+		 */
+		synchronized void offer(int score, GameState finished) {
+			if (score > best.get()) {
+				for (int i = 0; i < cellCount; i++)
+					bestMoves[i] = finished.getMove(i);
+				best.set(score);
+			}
+		}
+
+		public int getBest() {
+			return best.get();
+		}
+
+		/**
+		 * Records a board of a whole deal if it is better than the best one so far.
+		 */
+		public synchronized void offer(int score, int[] board) {
+			if (score > best.get()) {
+				for (int cell = 0; cell < cellCount; cell++)
+					bestMoves[board[cell]] = cell;
+				best.set(score);
+			}
+		}
+
+		public boolean shouldStop(int plans) {
+			nodes.addAndGet(plans);
+			if (deadline != 0 && System.nanoTime() - deadline > 0)
+				outOfTime = true;
+			return outOfTime;
+		}
+
+		/**
+		 * Finds the starting arrangement:  plays greedily, and then improves the board by
+		 * simulated annealing, that is, by swapping random pairs of cards, keeping every
+		 * swap that doesn't lower the score and some that do, less and less often.
+		 */
+		private void improveStart(GameState state) {
+			GameState game = new GameState(state);
+			game.playOut(new GreedyStrategy(scheme));
+			int[] board = new int[cellCount];
+			for (int cell = 0; cell < cellCount; cell++)
+				board[cell] = game.getCard(cell);
+			offer(game.score(scheme), game);
+			int[] free = new int[cellCount - startCards];   // The cells that were empty at the start.
+			int n = 0;
+			for (int cell = 0; cell < cellCount; cell++) {
+				if (state.isEmpty(cell))
+					free[n++] = cell;
+			}
+			if (free.length < 2)
+				return;
+			long seed = state.getHash();
+			for (int i = 0; i < cellCount; i++)
+				seed = Deals.mix(seed + state.getDealtCard(i));
+			SplittableRandom rng = new SplittableRandom(seed);
+			int[] bestBoard = board.clone();
+			int bestScore = game.score(scheme);
+			for (int run = 0; run < ANNEALING_RUNS; run++) {
+				System.arraycopy(bestBoard, 0, board, 0, board.length);
+				int score = anneal(state.getLineTable(), board, free, rng, bestBoard, bestScore);
+				bestScore = Math.max(bestScore, score);
+			}
+			game = new GameState(state);
+			while (!game.isOver()) {
+				int card = game.getNextCard();
+				for (int cell : free) {
+					if (bestBoard[cell] == card)
+						game.place(cell);
+				}
+			}
+			offer(game.score(scheme), game);
+		}
+
+		/**
+		 * Runs one pass of simulated annealing on a board, and copies the best board that
+		 * it sees into bestBoard if that is better than bestScore.
+		 * @return the score of the best board seen.
+		 */
+		private int anneal(LineTable lines, int[] board, int[] free, SplittableRandom rng, int[] bestBoard, int bestScore) {
+			int[] hand = new int[lines.getLineLength()];
+			int[] lineScores = new int[lines.getLineCount()];
+			int score = 0;
+			for (int line = 0; line < lineScores.length; line++) {
+				lineScores[line] = lineScore(lines, line, board, hand);
+				score += lineScores[line];
+			}
+			int[] changed = new int[2*lines.getMaxLinesPerCell()];
+			int[] newScores = new int[changed.length];
+			for (int step = 0; step < ANNEALING_STEPS; step++) {
+				double temperature = START_TEMPERATURE * Math.pow(END_TEMPERATURE / START_TEMPERATURE, (double)step / ANNEALING_STEPS);
+				int a = free[rng.nextInt(free.length)];
+				int b = free[rng.nextInt(free.length)];
+				if (a == b)
+					continue;
+				swap(board, a, b);
+				int count = 0;
+				for (int line : lines.getLinesOfCell(a))
+					changed[count++] = line;
+				for (int line : lines.getLinesOfCell(b)) {
+					if (!contains(lines.getLinesOfCell(a), line))
+						changed[count++] = line;
+				}
+				int delta = 0;
+				for (int i = 0; i < count; i++) {
+					newScores[i] = lineScore(lines, changed[i], board, hand);
+					delta += newScores[i] - lineScores[changed[i]];
+				}
+				if (delta >= 0 || rng.nextDouble() < Math.exp(delta / temperature)) {
+					for (int i = 0; i < count; i++)
+						lineScores[changed[i]] = newScores[i];
+					score += delta;
+					if (score > bestScore) {
+						bestScore = score;
+						System.arraycopy(board, 0, bestBoard, 0, board.length);
+					}
+				}
+				else
+					swap(board, a, b);
+			}
+			return bestScore;
+		}
+
+		private int lineScore(LineTable lines, int line, int[] board, int[] hand) {
+			int count = 0;
+			for (int cell : lines.getCellsOfLine(line))
+				hand[count++] = board[cell];
+			if (count > 5)
+				return scheme.getPoints(HandEvaluator.bestRank(hand, count, new int[5]) >> 20);
+			return scheme.getPoints(HandEvaluator.handType(hand, count));
+		}
+	}
+
+	/**
+	 * One search task's view of the game:  its own copy of the game, the cards that are
+	 * still to be placed, the symmetric hashes of the board, and scratch space.
+	 */
+	private class Worker {
+
+		final Search search;
+		final GameState game;
+		final DeckState remaining;      // The cards of the deal that are not on the board yet.
+		final long[] hashes;            // The hash of the board under each symmetry.
+		final LineBounds bounds = new LineBounds(scheme);
+		final BoardBounds boardBounds;  // Or null if the board is not 5 by 5.
+		final int[][] cellLists;        // By cards placed.
+		final int[][] boundLists;
+		final int[] positionBounds;     // By cards placed, the bound that open() found for the position.
+		long nodes;                     // Not yet added to search.nodes.
+		long probes, hits;              // Not yet added to search.probes and search.hits.
+
+		Worker(Search search, GameState state) {
+			this.search = search;
+			game = new GameState(state);
+			remaining = new DeckState(LineBounds.remainingCards(state));
+			hashes = new long[search.symmetries.length];
+			boardBounds = state.getLineTable().isFiveByFive() ? new BoardBounds(scheme) : null;
+			cellLists = new int[search.cellCount + 1][search.cellCount];
+			boundLists = new int[search.cellCount + 1][search.cellCount];
+			positionBounds = new int[search.cellCount + 1];
+			for (int cell = 0; cell < search.cellCount; cell++) {
+				if (!state.isEmpty(cell))
+					hashCard(cell, state.getCard(cell));
+			}
+		}
+
+		Worker(Worker other) {
+			search = other.search;
+			game = new GameState(other.game);
+			remaining = new DeckState(other.remaining);
+			hashes = other.hashes.clone();
+			boardBounds = other.boardBounds == null ? null : new BoardBounds(scheme);
+			cellLists = new int[search.cellCount + 1][search.cellCount];
+			boundLists = new int[search.cellCount + 1][search.cellCount];
+			positionBounds = new int[search.cellCount + 1];
+		}
+
+		void place(int cell) {
+			int card = game.getNextCard();
+			game.place(cell);
+			remaining.remove(card);
+			hashCard(cell, card);
+		}
+
+		void undo(int cell) {
+			int card = game.getCard(cell);
+			game.undo();
+			remaining.add(card);
+			hashCard(cell, card);
+		}
+
+		void hashCard(int cell, int card) {
+			int[][] symmetries = search.symmetries;
+			for (int t = 0; t < symmetries.length; t++)
+				hashes[t] ^= ZOBRIST[CardCodes.DECK_SIZE*symmetries[t][cell] + card];
+		}
+
+		long key() {
+			long key = hashes[0];
+			for (int t = 1; t < hashes.length; t++)
+				key = Math.min(key, hashes[t]);
+			return key ^ search.dealKey;
+		}
+
+		/**
+		 * Starts the search of a position:  handles a finished board, and finds the
+		 * bound of the position, from the table if that is better than LineBounds.
+		 * BoardBounds only decides whether the position can be pruned:  it stops
+		 * early above the best score, and then its result is not a bound.  Fills in
+		 * the cells to try, in order, with their bounds.
+		 * @return the number of cells to try, or -1 if the position needs no search;
+		 *    in that case, its bound (or score) is in boundLists[cards][0].
+		 */
+		int open() {
+			int cards = game.getCardsPlaced();
+			int[] cells = cellLists[cards], cellBounds = boundLists[cards];
+			if (++nodes == CHECK_INTERVAL)
+				checkClock();
+			if (game.isOver()) {
+				int score = game.score(scheme);
+				if (score > search.best.get())
+					search.offer(score, game);
+				cellBounds[0] = score;
+				return -1;
+			}
+			int bound = bounds.compute(game, remaining);
+			if (cards < search.tableCards) {
+				int stored = table.probe(key());
+				probes++;
+				if (stored != TranspositionTable.MISSING) {
+					hits++;
+					if (stored < bound)
+						bound = stored;
+				}
+			}
+			int best = search.best.get();
+			if (bound > best && boardBounds != null) {
+				int board = boardBounds.bound(game, remaining, best);
+				if (board <= best)
+					bound = board;
+			}
+			positionBounds[cards] = bound;
+			if (bound <= search.best.get() || search.outOfTime) {
+				cellBounds[0] = bound;
+				return -1;
+			}
+			return bounds.orderCells(game, remaining, cells, cellBounds);
+		}
+
+		/**
+		 * Records the bound found by searching a position, or the bound that open()
+		 * found if that is lower.
+		 * @return the bound that was recorded.
+		 */
+		int close(int upper) {
+			int cards = game.getCardsPlaced();
+			upper = Math.min(upper, positionBounds[cards]);
+			if (cards < search.tableCards)
+				table.store(key(), upper);
+			return upper;
+		}
+
+		/**
+		 * Searches the current position and returns an upper bound on the best score that
+		 * can be reached from it.
+		 */
+		int search() {
+			int cards = game.getCardsPlaced();
+			int count = open();
+			if (count < 0)
+				return boundLists[cards][0];
+			int[] cells = cellLists[cards], cellBounds = boundLists[cards];
+			int upper = 0;
+			for (int i = 0; i < count; i++) {
+				if (cellBounds[i] <= search.best.get() || search.outOfTime) {
+					upper = Math.max(upper, cellBounds[i]);  // The bounds are in decreasing order.
+					break;
+				}
+				place(cells[i]);
+				upper = Math.max(upper, search());
+				undo(cells[i]);
+			}
+			return close(upper);
+		}
+
+		void checkClock() {
+			search.nodes.addAndGet(nodes);
+			search.probes.addAndGet(probes);
+			search.hits.addAndGet(hits);
+			nodes = 0;
+			probes = 0;
+			hits = 0;
+			if (search.deadline != 0 && System.nanoTime() - search.deadline > 0)
+				search.outOfTime = true;
+		}
+	}
+
+	/**
+	 * A fork/join task that searches one position.  Near the start of the search,
+	 * the moves from the position are forked as separate tasks; deeper down, the
+	 * worker searches them itself.
+	 */
+	@SuppressWarnings("serial")
+	private class Node extends RecursiveTask<Integer> {
+
+		private final Worker worker;
+
+		Node(Worker worker) {
+			this.worker = worker;
+		}
+
+		protected Integer compute() {
+			Worker w = worker;
+			if (w.game.getCardsPlaced() >= w.search.startCards + SPLIT_DEPTH) {
+				int upper = w.search();
+				w.checkClock();
+				return upper;
+			}
+			int cards = w.game.getCardsPlaced();
+			int count = w.open();
+			if (count < 0)
+				return w.boundLists[cards][0];
+			int[] cells = w.cellLists[cards], cellBounds = w.boundLists[cards];
+			List<Node> children = new ArrayList<Node>();
+			int upper = 0;
+			for (int i = 0; i < count; i++) {
+				if (cellBounds[i] <= w.search.best.get()) {
+					upper = cellBounds[i];
+					break;
+				}
+				Worker child = new Worker(w);
+				child.place(cells[i]);
+				children.add(new Node(child));
+			}
+			for (Node child : invokeAll(children))
+				upper = Math.max(upper, child.join());
+			upper = w.close(upper);
+			w.checkClock();
+			return upper;
+		}
+	}
+
+	/**
+	 * A fork/join task that searches the plans of a whole deal that add parts to a
+	 * plan.  At the start, the plans with one more part are forked as separate tasks.
+	 */
+	@SuppressWarnings("serial")
+	private class PlanNode extends RecursiveTask<Integer> {
+
+		private final Search search;
+		private final LinePlanSearch plan;
+		private final boolean split;
+
+		PlanNode(Search search, LinePlanSearch plan, boolean split) {
+			this.search = search;
+			this.plan = plan;
+			this.split = split;
+		}
+
+		protected Integer compute() {
+			if (!split)
+				return plan.search(search);
+			List<LinePlanSearch> plans = new ArrayList<LinePlanSearch>();
+			int upper = plan.split(search, plans);
+			List<PlanNode> children = new ArrayList<PlanNode>();
+			for (LinePlanSearch child : plans)
+				children.add(new PlanNode(search, child, false));
+			for (PlanNode child : invokeAll(children))
+				upper = Math.max(upper, child.join());
+			return upper;
+		}
+	}
+
+	/**
+	 * Returns a number that is mixed into the key of every position, which differs
+	 * between scoring schemes with different points and between line tables, since
+	 * the bound of a position depends on both.
+	 */
+	static long rulesKey(ScoringScheme scheme, LineTable lines) {
+		long key = 2L * lines.getSize() + (lines.hasDiagonals() ? 1 : 0);
+		for (int points : scheme.getPointsTable())
+			key = 31*key + points;
+		return new SplittableRandom(key).nextLong();
+	}
+
+	/**
+	 * Finds the rearrangements of the cells of an n-by-n grid that take every line of a
+	 * table to a line of the table, so that they don't change the score of any board.
+	 * The candidates are transposing the grid or not, combined with a permutation of
+	 * the rows and a permutation of the columns that are each either the same as p, or
+	 * p followed by reversing the order, where p is one of the permutations of 0 to n-1
+	 * that commute with reversing the order (eight of them for n = 5).  For the standard
+	 * lines all 32 candidates are symmetries, and they include the eight rotations and
+	 * reflections.  The first symmetry is always the identity.
+	 */
+	static int[][] symmetries(LineTable lines) {
+		int n = lines.getSize();
+		int pairs = n / 2;
+		List<int[]> perms = new ArrayList<int[]>();
+		for (int[] order : orderings(pairs)) {
+			for (int flips = 0; flips < 1 << pairs; flips++) {
+				// Permute the pairs {0,n-1}, {1,n-2}, ..., and flip each pair or not; the middle stays fixed.
+				int[] p = new int[n];
+				for (int pair = 0; pair < pairs; pair++) {
+					boolean flip = (flips & (1 << pair)) != 0;
+					p[pair] = flip ? n - 1 - order[pair] : order[pair];
+					p[n - 1 - pair] = n - 1 - p[pair];
+				}
+				if (n % 2 == 1)
+					p[pairs] = pairs;
+				perms.add(p);
+			}
+		}
+		List<int[]> found = new ArrayList<int[]>();
+		for (int transpose = 0; transpose < 2; transpose++) {
+			for (int[] p : perms) {
+				for (int reverse = 0; reverse < 2; reverse++) {
+					int[] map = new int[n * n];
+					for (int r = 0; r < n; r++) {
+						for (int c = 0; c < n; c++) {
+							int r2 = p[r];
+							int c2 = reverse == 0 ? p[c] : n - 1 - p[c];
+							map[n*r + c] = transpose == 0 ? n*r2 + c2 : n*c2 + r2;
+						}
+					}
+					if (keepsLines(lines, map))
+						found.add(map);
+				}
+			}
+		}
+		return found.toArray(new int[found.size()][]);
+	}
+
+	/**
+	 * Returns all the orderings of 0 to k-1, starting with 0, 1, ..., k-1.
+	 */
+	private static List<int[]> orderings(int k) {
+		List<int[]> result = new ArrayList<int[]>();
+		if (k == 0) {
+			result.add(new int[0]);
+			return result;
+		}
+		for (int[] rest : orderings(k - 1)) {
+			for (int first = 0; first < k; first++) {
+				int[] order = new int[k];
+				order[0] = first;
+				for (int i = 0; i < k - 1; i++)
+					order[i + 1] = rest[i] < first ? rest[i] : rest[i] + 1;
+				result.add(order);
+			}
+		}
+		return result;
+	}
+
+	private static boolean keepsLines(LineTable lines, int[] map) {
+		for (int line = 0; line < lines.getLineCount(); line++) {
+			long image = 0;
+			for (int cell : lines.getCellsOfLine(line))
+				image |= 1L << map[cell];
+			boolean isLine = false;
+			for (int other = 0; other < lines.getLineCount() && !isLine; other++) {
+				long cells = 0;
+				for (int cell : lines.getCellsOfLine(other))
+					cells |= 1L << cell;
+				isLine = cells == image;
+			}
+			if (!isLine)
+				return false;
+		}
+		return true;
+	}
+
+	private static void swap(int[] board, int a, int b) {
+		int temp = board[a];
+		board[a] = board[b];
+		board[b] = temp;
+	}
+
+	private static boolean contains(int[] list, int x) {
+		for (int y : list) {
+			if (y == x)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Solves the games Deals.forGame(seed, g) for g from 0 to games-1 and prints
+	 * each result.  The optional arguments are the number of games, the seed, a
+	 * time limit for each game in seconds (10 by default, or 0 for none), and the
+	 * name of a file for the table.
+	 * With a file, the table is a MappedTranspositionTable that is kept from one
+	 * run to the next, so running the same games again starts where the last run
+	 * left off.
+	 * @throws IOException if the table file can't be opened.
+	 */
+	public static void main(String[] args) throws IOException {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+		long seconds = args.length > 2 ? Long.parseLong(args[2]) : 10;
+		ScoringScheme scheme = ScoringScheme.getDefault();
+		KnownDeckSolver solver = new KnownDeckSolver(scheme);
+		solver.setTimeLimit(1000 * seconds);
+		MappedTranspositionTable file = null;
+		if (args.length > 3) {
+			file = new MappedTranspositionTable(Paths.get(args[3]), 1 << 22);
+			solver.setTranspositionTable(file);
+		}
+		try {
+			for (int g = 0; g < games; g++) {
+				Solution solution = solver.solve(new GameState(Deals.forGame(seed, g)));
+				System.out.println("Game " + g + ": " + solution);
+			}
+		}
+		finally {
+			if (file != null)
+				file.close();
+		}
+	}
+
+}
@@ -0,0 +1,267 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The best games with one scoring scheme:  a table of the best games of
+ * all, and a ranking of the players of each seeded deal, such as a daily
+ * challenge, with each player's best game on that deal.  Any number of
+ * threads, one for each session of a game server for example, can record
+ * games and read the tables at once, and none of them ever waits for a
+ * lock.
+ * <p>Each table is an immutable Ranking held in an AtomicReference.  A
+ * reader gets the current table with a single read, and can keep it and
+ * look at it for as long as it likes while newer tables replace it; the
+ * version number of a table tells a client that polls whether anything
+ * has changed since the table it has.  To record a game, a thread makes a
+ * new table with the game in it and puts it in place with compareAndSet(),
+ * and if another thread got there first, it tries again with the newer
+ * table.  Most games don't make the table at all, and those are turned
+ * away after just reading the current table, with no write to shared
+ * memory.  The rankings of the deals are kept in a ConcurrentHashMap by
+ * seed, so games on different deals never touch the same reference.
+ * <p>A leaderboard can be backed by a ScoreStore:  record() also adds the
+ * game to the store, whose addGame() only puts it on a lock-free queue,
+ * so the store doesn't make sessions wait for each other or for the disk
+ * either.  A new leaderboard is filled from the store's statistics and
+ * history.  The store keeps each player's best score and the recent
+ * games, so a best score from before the history comes back without its
+ * seed and time, and the rankings of old deals are lost; daily challenges
+ * are recent by nature.
+ */
+public class Leaderboard {
+
+	public static final int DEFAULT_SIZE = 10;          // Games in the table of the best games.
+	public static final int DEAL_RANKING_SIZE = 100;    // Players in the ranking of one deal.
+
+	private final String scheme;
+	private final int size;
+	private final ScoreStore store;   // Where games are saved, or null.
+	private final AtomicReference<Ranking> top;
+	private final ConcurrentHashMap<Long,AtomicReference<Ranking>> byDeal
+			= new ConcurrentHashMap<Long,AtomicReference<Ranking>>();
+
+	/**
+	 * Creates an empty leaderboard that is not backed by a store.
+	 * @param scheme the name of the scoring scheme of the games.
+	 * @param size the number of games in the table of the best games.
+	 * @throws IllegalArgumentException if the scheme is null or the size is less than 1.
+	 */
+	public Leaderboard(String scheme, int size) {
+		this(scheme, size, null);
+	}
+
+	/**
+	 * Creates a leaderboard backed by a score store, with the games of the scheme that
+	 * are in the store.
+	 * @param store the store, or null for none.
+	 * @throws IllegalArgumentException if the scheme is null or the size is less than 1.
+	 */
+	public Leaderboard(String scheme, int size, ScoreStore store) {
+		if (scheme == null || size < 1)
+			throw new IllegalArgumentException("A leaderboard needs a scheme and room for a game.");
+		this.scheme = scheme;
+		this.size = size;
+		this.store = store;
+		top = new AtomicReference<Ranking>(new Ranking(size, false));
+		if (store == null)
+			return;
+		Set<String> bestInHistory = new HashSet<String>();
+		for (ScoreStore.GameRecord game : store.getHistory()) {
+			if (!game.getScheme().equals(scheme))
+				continue;
+			offer(game);
+			ScoreStore.PlayerStats stats = store.getStats(game.getPlayer(), scheme);
+			if (stats != null && stats.getBestScore() == game.getScore())
+				bestInHistory.add(game.getPlayer());
+		}
+		for (ScoreStore.PlayerStats stats : store.getAllStats()) {
+			if (stats.getScheme().equals(scheme) && !bestInHistory.contains(stats.getPlayer()))
+				offer(new ScoreStore.GameRecord(stats.getPlayer(), scheme, stats.getBestScore(), ScoreStore.NO_SEED, 0));
+		}
+	}
+
+	/**
+	 * Returns the name of the scoring scheme of the games.
+	 */
+	public String getScheme() {
+		return scheme;
+	}
+
+	/**
+	 * Records a finished game, and adds it to the store if there is one.
+	 * @param player the name of the player.
+	 * @param score the final score.
+	 * @param seed the seed of the deal, as in Deals.forGame(), or ScoreStore.NO_SEED.
+	 * @return true if the game made the table of the best games or the ranking of its deal.
+	 * @throws IllegalArgumentException if the player is null, or too long for the store.
+	 * @throws IllegalStateException if the store has been closed.
+	 */
+	public boolean record(String player, int score, long seed) {
+		ScoreStore.GameRecord game = new ScoreStore.GameRecord(player, scheme, score, seed, System.currentTimeMillis());
+		if (store != null)
+			store.addGame(player, scheme, score, seed);
+		return offer(game);
+	}
+
+	/**
+	 * Puts a game in the tables where it belongs, without storing it.
+	 * @return true if any table changed.
+	 * @throws IllegalArgumentException if the game has another scoring scheme.
+	 */
+	public boolean offer(ScoreStore.GameRecord game) {
+		if (!game.getScheme().equals(scheme))
+			throw new IllegalArgumentException("The leaderboard is for " + scheme + " scoring.");
+		boolean changed = offer(top, game);
+		if (game.getSeed() != ScoreStore.NO_SEED) {
+			AtomicReference<Ranking> ranking = byDeal.get(game.getSeed());
+			if (ranking == null) {
+				ranking = byDeal.computeIfAbsent(game.getSeed(),
+						seed -> new AtomicReference<Ranking>(new Ranking(DEAL_RANKING_SIZE, true)));
+			}
+			changed |= offer(ranking, game);
+		}
+		return changed;
+	}
+
+	private static boolean offer(AtomicReference<Ranking> ref, ScoreStore.GameRecord game) {
+		while (true) {
+			Ranking current = ref.get();
+			Ranking next = current.with(game);
+			if (next == current)
+				return false;
+			if (ref.compareAndSet(current, next))
+				return true;
+		}
+	}
+
+	/**
+	 * Returns the current table of the best games.
+	 */
+	public Ranking getTop() {
+		return top.get();
+	}
+
+	/**
+	 * Returns the current ranking of the players of a deal, which is empty if no game
+	 * has been recorded with the deal.
+	 * @param seed the seed of the deal, as in Deals.forGame().
+	 */
+	public Ranking getRanking(long seed) {
+		AtomicReference<Ranking> ranking = byDeal.get(seed);
+		return ranking == null ? new Ranking(DEAL_RANKING_SIZE, true) : ranking.get();
+	}
+
+
+	/**
+	 * A table of games, with the highest score first and, between equal scores, the
+	 * game that got there first.  A Ranking never changes; recording a game makes a
+	 * new one.
+	 */
+	public static class Ranking {
+
+		private final ScoreStore.GameRecord[] games;
+		private final int capacity;
+		private final boolean onePerPlayer;   // True if a player has at most one game in the table.
+		private final long version;
+
+		private Ranking(int capacity, boolean onePerPlayer) {
+			this(new ScoreStore.GameRecord[0], capacity, onePerPlayer, 0);
+		}
+
+		private Ranking(ScoreStore.GameRecord[] games, int capacity, boolean onePerPlayer, long version) {
+			this.games = games;
+			this.capacity = capacity;
+			this.onePerPlayer = onePerPlayer;
+			this.version = version;
+		}
+
+		/**
+		 * Returns the table with a game added, or this table if the game doesn't make
+		 * it.  In a table with one game per player, a player's game is replaced only by
+		 * a higher score.
+		 */
+		private Ranking with(ScoreStore.GameRecord game) {
+			int score = game.getScore();
+			int old = onePerPlayer ? indexOf(game.getPlayer()) : -1;
+			if (old >= 0 ? games[old].getScore() >= score
+					: games.length == capacity && games[capacity - 1].getScore() >= score)
+				return this;
+			int place = 0;
+			while (place < games.length && games[place].getScore() >= score)
+				place++;
+			int length = Math.min(capacity, old >= 0 ? games.length : games.length + 1);
+			ScoreStore.GameRecord[] next = new ScoreStore.GameRecord[length];
+			int j = 0;
+			for (int i = 0; i < games.length && j < length; i++) {
+				if (i == place)
+					next[j++] = game;
+				if (i != old && j < length)
+					next[j++] = games[i];
+			}
+			if (j < length)
+				next[j] = game;   // Last place.
+			return new Ranking(next, capacity, onePerPlayer, version + 1);
+		}
+
+		/**
+		 * Returns the number of games in the table.
+		 */
+		public int size() {
+			return games.length;
+		}
+
+		/**
+		 * Returns the game in a place in the table, from 0 for the best.
+		 */
+		public ScoreStore.GameRecord get(int place) {
+			return games[place];
+		}
+
+		/**
+		 * Returns the games, best first, as a list that can't be modified.
+		 */
+		public List<ScoreStore.GameRecord> getGames() {
+			return Collections.unmodifiableList(Arrays.asList(games));
+		}
+
+		/**
+		 * Returns the highest score in the table, or zero if it is empty.
+		 */
+		public int getBestScore() {
+			return games.length == 0 ? 0 : games[0].getScore();
+		}
+
+		/**
+		 * Returns the place of a player's best game in the table, from 0 for the best,
+		 * or -1 if the player has no game in it.
+		 */
+		public int indexOf(String player) {
+			for (int i = 0; i < games.length; i++) {
+				if (games[i].getPlayer().equals(player))
+					return i;
+			}
+			return -1;
+		}
+
+		/**
+		 * Returns the number of changes that made this table, which is larger for a
+		 * newer table of the same leaderboard.
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		public String toString() {
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < games.length; i++)
+				text.append(String.format("%3d. %-20s %5d%n", i + 1, games[i].getPlayer(), games[i].getScore()));
+			return text.toString();
+		}
+	}
+
+}
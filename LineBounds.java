@@ -0,0 +1,362 @@
+/**
+ * Static upper bounds on what the lines of a board can still become, for
+ * ordering and pruning the moves of a search.  For a line that is not yet
+ * full, the bound looks at the cards already in the line and at the cards
+ * that are still available to fill it, and decides which hand types can
+ * possibly be made.  For example, a line that holds cards of two suits can
+ * never be a flush, a line that holds a pair can never be a straight, and
+ * four of a kind needs enough cards of one value to be left in the deck.
+ * The tests are necessary conditions only, so a type that is reported as
+ * possible may still be impossible, but a type that is reported as
+ * impossible really is; a bound computed from them never underestimates.
+ * <p>The possible types are returned as a bit mask, with bit t set when
+ * type t (one of the PokerRank constants NOTHING to ROYAL_FLUSH) is
+ * possible, because the points of a scoring scheme are not always
+ * increasing in the type (the English scheme pays more for a straight than
+ * for a flush).  The best points for each of the 1024 masks are computed
+ * once, when a LineBounds object is created for a scheme.
+ * <p>Card sets are 64-bit masks with bit c set for card code c.  Which
+ * cards are "available" depends on the search:  a solver that knows the
+ * order of the deck uses remainingCards(), while a search that does not
+ * uses unseenCards() or the DeckState of GameState.getUnseen().  Each
+ * method that takes a mask of available cards also has a form that takes a
+ * DeckState, which saves counting the available cards of each value every
+ * time; that form should be used in an inner loop.  A LineBounds object keeps the bounds of the lines
+ * of the position it was last given, so the effect of one more card
+ * can be found by re-evaluating only the lines through its cell.  An object
+ * must be used by only one thread at a time.
+ * <p>The tests are made for the lines of five cells of the standard board.
+ * On a smaller grid the same tests for groups of equal values are made with
+ * fewer cells, and straights and flushes are never possible.  On a larger
+ * grid, a line is only bounded once it is full; until then, any hand type
+ * is taken to be possible, which is a correct but loose bound.
+ */
+public class LineBounds {
+
+	private static final int TYPE_COUNT = 10;        // The number of hand types.
+	private static final int VALUE_BITS = 0x1FFF;   // One bit for each of the 13 values, 2 (bit 0) to ace (bit 12).
+	private static final int WHEEL = 0x100F;        // The values of A-2-3-4-5.
+	private static final int BROADWAY = 0x1F00;     // The values of 10-J-Q-K-A.
+	private static final int ALL_TYPES = (1 << TYPE_COUNT) - 1;
+
+	private final ScoringScheme scheme;
+	private final int[] pointsForTypes = new int[1 << TYPE_COUNT];  // The best points for each mask of types.
+	private final int[] lineBounds = new int[GameState.MAX_LINES];  // The bound for each line of the last position.
+	private final int[] lineCards = new int[LineTable.MAX_SIZE];   // Scratch space for the cards of a line.
+	private final long[] sortKeys = new long[GameState.MAX_CELLS]; // Scratch space for orderCells().
+	private int total;                                              // The sum of lineBounds.
+
+	/**
+	 * Creates an object for computing bounds on the points of a scoring scheme.
+	 */
+	public LineBounds(ScoringScheme scheme) {
+		this.scheme = scheme;
+		for (int types = 1; types < pointsForTypes.length; types++) {
+			int best = 0;
+			for (int type = 0; type < TYPE_COUNT; type++) {
+				if ((types & (1 << type)) != 0)
+					best = Math.max(best, scheme.getPoints(type));
+			}
+			pointsForTypes[types] = best;
+		}
+	}
+
+	/**
+	 * Returns the scoring scheme that the bounds are for.
+	 */
+	public ScoringScheme getScheme() {
+		return scheme;
+	}
+
+	/**
+	 * Computes an upper bound on the final score of a game, and remembers the bound
+	 * for each line, for use by boundAfter() and orderCells().
+	 * @param available the cards that may still be placed, as a mask of card codes.
+	 *    The cards on the board must not be in the mask.
+	 * @return the sum of the bounds of the lines.
+	 */
+	public int compute(GameState state, long available) {
+		return compute(state, available, DeckState.packedValueCounts(available));
+	}
+
+	/**
+	 * Computes an upper bound on the final score of a game, like compute(GameState, long),
+	 * with the available cards given as a DeckState.
+	 */
+	public int compute(GameState state, DeckState available) {
+		return compute(state, available.getCards(), available.getPackedValueCounts());
+	}
+
+	private int compute(GameState state, long available, long availableCounts) {
+		total = 0;
+		int length = state.getSize();
+		for (int line = 0; line < state.getLineCount(); line++) {
+			int count = 0;
+			for (int cell : state.getCellsOfLine(line)) {
+				if (!state.isEmpty(cell))
+					lineCards[count++] = state.getCard(cell);
+			}
+			lineBounds[line] = pointsForTypes[possibleTypes(lineCards, count, length, available, availableCounts)];
+			total += lineBounds[line];
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the bound for one line of the position that was given to compute().
+	 */
+	public int getLineBound(int line) {
+		return lineBounds[line];
+	}
+
+	/**
+	 * Returns an upper bound on the final score if a card is placed in an empty cell
+	 * of the position that was last given to compute().  Only the lines through the
+	 * cell are re-evaluated; the others keep their bounds, which are still valid
+	 * (though not as tight) without the card.
+	 */
+	public int boundAfter(GameState state, int cell, int card, long available) {
+		return boundAfter(state, cell, card, available, DeckState.packedValueCounts(available));
+	}
+
+	/**
+	 * Returns an upper bound on the final score after a card is placed, like
+	 * boundAfter(GameState, int, int, long), with the available cards given as a DeckState.
+	 */
+	public int boundAfter(GameState state, int cell, int card, DeckState available) {
+		return boundAfter(state, cell, card, available.getCards(), available.getPackedValueCounts());
+	}
+
+	private int boundAfter(GameState state, int cell, int card, long available, long availableCounts) {
+		long rest = available & ~(1L << card);
+		long restCounts = rest == available ? availableCounts : availableCounts - (1L << (4*(CardCodes.value(card) - 2)));
+		int bound = total;
+		int length = state.getSize();
+		for (int line : state.getLinesOfCell(cell)) {
+			int count = 0;
+			for (int c : state.getCellsOfLine(line)) {
+				if (c == cell)
+					lineCards[count++] = card;
+				else if (!state.isEmpty(c))
+					lineCards[count++] = state.getCard(c);
+			}
+			bound += pointsForTypes[possibleTypes(lineCards, count, length, rest, restCounts)] - lineBounds[line];
+		}
+		return bound;
+	}
+
+	/**
+	 * Lists the empty cells in the order in which a search should try them for the
+	 * next card:  highest bound first, and among cells with the same bound, the one
+	 * that gains the most points now.  compute() must have been called for the
+	 * position first.
+	 * @param cells an array with room for every cell of the board that receives the cells.
+	 * @param bounds if not null, an array with room for every cell that receives the
+	 *    bound for each listed cell, in the same order, so that a search can stop
+	 *    trying cells once the bound is no better than the best it has found.
+	 * @return the number of cells that were listed.
+	 */
+	public int orderCells(GameState state, long available, int[] cells, int[] bounds) {
+		return orderCells(state, available, DeckState.packedValueCounts(available), cells, bounds);
+	}
+
+	/**
+	 * Lists the empty cells in the order in which a search should try them, like
+	 * orderCells(GameState, long, int[], int[]), with the available cards given as a DeckState.
+	 */
+	public int orderCells(GameState state, DeckState available, int[] cells, int[] bounds) {
+		return orderCells(state, available.getCards(), available.getPackedValueCounts(), cells, bounds);
+	}
+
+	private int orderCells(GameState state, long available, long availableCounts, int[] cells, int[] bounds) {
+		int card = state.getNextCard();
+		int count = 0;
+		int last = state.getCellCount() - 1;
+		long[] keys = sortKeys;
+		for (int cell = 0; cell <= last; cell++) {
+			if (!state.isEmpty(cell))
+				continue;
+			int bound = boundAfter(state, cell, card, available, availableCounts);
+			int gain = 0;
+			for (int line : state.getLinesOfCell(cell))
+				gain += scheme.getPointsForRank(state.rankWith(line, cell, card)) - scheme.getPointsForRank(state.getLineRank(line));
+			// Sort on the bound, then on the gain, then on the cell, all packed in one key.
+			long key = ((long)bound << 32) | ((long)(gain + 0x8000) << 8) | (last - cell);
+			int i = count++;
+			while (i > 0 && keys[i-1] < key) {
+				keys[i] = keys[i-1];
+				i--;
+			}
+			keys[i] = key;
+		}
+		for (int i = 0; i < count; i++) {
+			cells[i] = last - (int)(keys[i] & 0xFF);
+			if (bounds != null)
+				bounds[i] = (int)(keys[i] >>> 32);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the hand types that a line can still become, as a bit mask in which bit
+	 * t is set if type t is possible.  For a full line, this is just the type of its hand.
+	 * @param cards the card codes of the cards that are in the line, in positions 0
+	 *    to count-1.
+	 * @param count the number of cards in the line, 0 to 5 for a line of five cells.
+	 * @param available the cards that may be used to fill the line, as a mask of
+	 *    card codes.  This must not include the cards in the line.
+	 */
+	public static int possibleTypes(int[] cards, int count, long available) {
+		return possibleTypes(cards, count, 5, available, DeckState.packedValueCounts(available));
+	}
+
+	/**
+	 * Returns the hand types that a line can still become, like
+	 * possibleTypes(int[], int, long), with the available cards given as a DeckState.
+	 */
+	public static int possibleTypes(int[] cards, int count, DeckState available) {
+		return possibleTypes(cards, count, 5, available.getCards(), available.getPackedValueCounts());
+	}
+
+	/**
+	 * The test behind possibleTypes().
+	 * @param length the number of cells in the line.
+	 * @param availableCounts the number of available cards of each value, packed as
+	 *    in DeckState.getPackedValueCounts().
+	 */
+	private static int possibleTypes(int[] cards, int count, int length, long available, long availableCounts) {
+		if (count == length && length <= 5)
+			return 1 << HandEvaluator.handType(cards, count);
+		if (length > 5)
+			return count < length ? ALL_TYPES : 1 << (HandEvaluator.bestRank(cards, count, new int[5]) >> 20);
+
+		/* Count the values in the line, four bits per value, and check whether the
+		 * line has only one suit. */
+
+		long lineCounts = 0;
+		int lineValues = 0;
+		int suit = count == 0 ? -1 : CardCodes.suit(cards[0]);
+		for (int i = 0; i < count; i++) {
+			int v = CardCodes.value(cards[i]) - 2;
+			lineCounts += 1L << (4*v);
+			lineValues |= 1 << v;
+			if (CardCodes.suit(cards[i]) != suit)
+				suit = -2;  // More than one suit.
+		}
+		int pairedValues = 0;    // Values that occur more than once in the line.
+		for (int v = 0; v < 13; v++) {
+			if (nibble(lineCounts, v) > 1)
+				pairedValues |= 1 << v;
+		}
+
+		/* Find the values that are available in any suit. */
+
+		int availableValues = 0;
+		for (int s = 0; s < 4; s++)
+			availableValues |= suitValues(available, s);
+
+		int types = 0;
+
+		/* Straights and straight flushes:  the line's values must all be different and
+		 * fit in one five-value window, and the missing values must be available. */
+
+		if (pairedValues == 0 && length == 5) {
+			for (int w = -1; w <= 8; w++) {
+				int window = w == -1 ? WHEEL : 0x1F << w;
+				if ((lineValues & ~window) != 0)
+					continue;
+				int missing = window & ~lineValues;
+				if ((missing & ~availableValues) != 0)
+					continue;
+				types |= 1 << PokerRank.STRAIGHT;
+				for (int s = 0; s < 4; s++) {
+					if ((suit == -1 || suit == s) && (missing & ~suitValues(available, s)) == 0)
+						types |= 1 << (window == BROADWAY ? PokerRank.ROYAL_FLUSH : PokerRank.STRAIGHT_FLUSH);
+				}
+			}
+		}
+
+		/* Flushes:  one suit in the line, and enough cards of that suit to fill it. */
+
+		for (int s = 0; s < 4; s++) {
+			if ((suit == -1 || suit == s) && length == 5 && count + Integer.bitCount(suitValues(available, s)) >= 5)
+				types |= 1 << PokerRank.FLUSH;
+		}
+
+		/* Hands made of groups of equal values. */
+
+		int pairable = 0;   // Values that can still make a pair:  at most two in the line, two or more in all.
+		for (int v = 0; v < 13; v++) {
+			int inLine = nibble(lineCounts, v);
+			if (inLine <= 2 && inLine + nibble(availableCounts, v) >= 2)
+				pairable |= 1 << v;
+		}
+		for (int v = 0; v < 13; v++) {
+			int inLine = nibble(lineCounts, v);
+			int total = inLine + nibble(availableCounts, v);
+			if (total < 2)
+				continue;  // Every hand below needs at least a pair of this value.
+			int others = count - inLine;               // Cards in the line with other values.
+			boolean otherPairs = (pairedValues & ~(1 << v)) != 0;
+			if (total >= 4 && others <= length - 4)
+				types |= 1 << PokerRank.FOUR_OF_A_KIND;
+			if (total >= 3 && inLine <= 3 && others <= length - 3 && !otherPairs)
+				types |= 1 << PokerRank.TRIPLE;
+			if (inLine <= 2 && others <= length - 2 && !otherPairs)
+				types |= 1 << PokerRank.PAIR;
+			// A full house with a triple of v, or two pairs with the lower pair of v.
+			int partners = pairable & ~(1 << v);
+			while (partners != 0) {
+				int p = Integer.numberOfTrailingZeros(partners);
+				partners &= partners - 1;
+				int pairInLine = nibble(lineCounts, p);
+				if (total >= 3 && inLine <= 3 && inLine + pairInLine == count && length == 5)
+					types |= 1 << PokerRank.FULL_HOUSE;
+				if (p > v && inLine <= 2 && count - inLine - pairInLine <= length - 4)
+					types |= 1 << PokerRank.TWO_PAIR;
+			}
+		}
+		if (pairedValues == 0)
+			types |= 1 << PokerRank.NOTHING;
+		return types;
+	}
+
+	/**
+	 * Returns the highest hand type that a line can still become.
+	 * @see #possibleTypes(int[], int, long)
+	 */
+	public static int maxHandType(int[] cards, int count, long available) {
+		return 31 - Integer.numberOfLeadingZeros(possibleTypes(cards, count, available));
+	}
+
+	/**
+	 * Returns the cards that will still be placed in a game whose deal is known:
+	 * the next card and the ones after it, up to the last card that goes on the board.
+	 */
+	public static long remainingCards(GameState state) {
+		long cards = 0;
+		for (int i = state.getCardsPlaced(); i < state.getCellCount(); i++)
+			cards |= 1L << state.getDealtCard(i);
+		return cards;
+	}
+
+	/**
+	 * Returns the cards that a player who does not know the order of the deck could
+	 * still see:  every card that is not on the board.
+	 */
+	public static long unseenCards(GameState state) {
+		return state.getUnseen().getCards();
+	}
+
+	/**
+	 * Returns the values of the cards of one suit in a set of cards, as a mask of 13 bits.
+	 */
+	private static int suitValues(long cards, int suit) {
+		return (int)(cards >>> (13*suit)) & VALUE_BITS;
+	}
+
+	private static int nibble(long counts, int v) {
+		return (int)(counts >>> (4*v)) & 0xF;
+	}
+
+}
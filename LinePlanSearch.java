@@ -0,0 +1,1037 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An exact search for the best arrangement of a whole deal on a 5-by-5
+ * board, which KnownDeckSolver uses for games that have not been started.
+ * Placing the cards one by one can't prove a whole deal optimal in
+ * reasonable time, because every bound of a nearly empty board is far above
+ * the score; this search decides what the lines hold instead, so that a few
+ * choices settle most of the score.
+ * <p>A plan gives some of the lines a "part" that the line must hold:
+ * particular cards (a pair, two pairs, three or four of a kind, a full house,
+ * a straight, a straight flush or a royal flush), or five cards of one suit
+ * (a flush).  The value of a plan is the sum, over its parts, of the points
+ * of the part's hand less the points for nothing.  Every board has a plan
+ * whose value is its score, less the points for nothing in each line:  the
+ * part of each line is the cards that make its hand.  A board that carries
+ * out a plan scores at least its value, since the other cards of a line can
+ * only improve the hand of its part (when the scoring scheme never gives
+ * fewer points for a better hand of this kind; see supports()).  So the best
+ * score comes from the best plan that some board carries out.
+ * <p>The parts are tried in order of their points, from the highest, and
+ * each is skipped or given to a row or a column.  Rows are given parts in
+ * order, and so are columns, since any reordering of the rows or of the
+ * columns keeps the rows and the columns of a board; the order only matters
+ * to the diagonals, which are planned last.  A plan is kept only if some
+ * board carries out its rows and columns, which is a matching of the 25
+ * cards to the 25 cells:  a card of a part must go in a cell of its line,
+ * and a cell of a flush line must get a card of the line's suit.  A plan is
+ * dropped when an upper bound is no better than the best score found so far.
+ * The bound adds to the value the best total of parts still to come for the
+ * free rows, parts that each fit with the plan and that don't share cards;
+ * the same for the free columns; and the best two parts that fit with the
+ * plan as diagonals.  While it is above the best score, the diagonals are
+ * planned:  pairs of parts are tried in order of their points, with each
+ * order of the rows and columns, until a board carries out the whole plan.
+ * <p>A transposed board has the same score, so the first part that goes in
+ * a row or a column goes in a row.  A LinePlanSearch object holds the plan
+ * and scratch space, so it must be used by only one thread at a time; a
+ * copy can search another branch of the same deal.
+ */
+class LinePlanSearch {
+
+	private static final int SIZE = GameState.SIZE;
+	private static final int CELLS = GameState.CELL_COUNT;
+	private static final int LINES = GameState.LINE_COUNT;
+	private static final int ALL = (1 << CELLS) - 1;  // A mask of all the cards, or of all the cells.
+	private static final int ROW = LineTable.ROW;
+	private static final int COLUMN = LineTable.COLUMN;
+	private static final int DIAGONAL = LineTable.DIAGONAL;
+	private static final int CHECK_INTERVAL = 256;    // Plans between calls of Listener.shouldStop().
+	private static final int PACK_EFFORT = 100000;    // Parts looked at by pack() before it settles for a weaker bound.
+
+	private static final int[] LINE_CELLS = new int[LINES];   // The cells of each line, as a mask.
+
+	static {
+		for (int line = 0; line < LINES; line++) {
+			for (int cell : LineTable.STANDARD.getCellsOfLine(line))
+				LINE_CELLS[line] |= 1 << cell;
+		}
+	}
+
+	/**
+	 * Where a search finds the best score so far, which the searches of one deal
+	 * share, and where it reports better boards.
+	 */
+	interface Listener {
+
+		/**
+		 * Returns the best score found so far.
+		 */
+		int getBest();
+
+		/**
+		 * Records a board, given as the position in the deal of the card in each cell.
+		 */
+		void offer(int score, int[] board);
+
+		/**
+		 * Counts the plans that were searched since the last call, and tests whether
+		 * the search should stop.
+		 */
+		boolean shouldStop(int plans);
+	}
+
+	/* The deal and its parts, which copies share.  Cards are numbered by their
+	 * position in the deal, so a set of cards is a mask of 25 bits. */
+
+	private final int[] deal;            // The card codes.
+	private final int[] points;
+	private final int base;              // The points for nothing in every line.
+	private final LineTable lines;
+	private final boolean diagonals;
+	private final int[] suitCards = new int[4];
+	private final int partCount;
+	private final int[] partCards;       // The particular cards of each part, or 0 for a flush.
+	private final int[] partSize;        // The number of particular cards.
+	private final int[] partSuit;        // The suit of a flush, or -1.
+	private final int[] partWeight;      // Points above nothing, in decreasing order.
+
+	/* The plan.  Row i and column i are given parts in order, so rows and columns are
+	 * the first free ones that a new part can go in.  Lines 10 and 11 are the diagonals. */
+
+	private final int[] lineCards = new int[LINES];
+	private final int[] lineSuit = new int[LINES];
+	private final boolean[] lineUsed = new boolean[LINES];
+	private int rows, columns;
+	private int depth;                   // The number of parts in the plan.
+	private int value;
+	private int start;                   // The first part that may still be added,
+	private int startKind;               // and, for a repeated flush, the first kind of line for it.
+	private int limit = Integer.MAX_VALUE;   // A bound on the value of the plans, from the search that made a copy.
+	private final int[] addedLine = new int[LINES + 1];   // By depth:  the line that was given a part,
+	private final int[] addedPart = new int[LINES + 1];   // the part,
+	private final int[] savedStart = new int[LINES + 1];  // and start and startKind before.
+	private final int[] savedStartKind = new int[LINES + 1];
+
+	/* By depth:  a matching of cards to cells that carries out the rows and columns,
+	 * the cards allowed in each cell, and the parts that fit in a free row, in a free
+	 * column and in a diagonal. */
+
+	private final int[][] allowed = new int[LINES + 1][];
+	private final int[][] cellCard = new int[LINES + 1][];
+	private final int[][] cardCell = new int[LINES + 1][];
+	private final int[][][] fitting = new int[3][LINES + 1][];
+	private final int[][] fittingCount = new int[3][LINES + 1];
+	private final byte[][][] placeable = new byte[2][LINES + 1][];   // Whether a board carries out the plan with
+	                                                                 // the part in a free line:  1, -1, or 0 if unknown.
+
+	/* Scratch space. */
+
+	private final int[] scratchAllowed = new int[CELLS];
+	private final int[] scratchCellCard = new int[CELLS];
+	private final int[] scratchCardCell = new int[CELLS];
+	private final int[] lineHolds = new int[2 * SIZE];   // The cards that the matching puts in each row and column,
+	private boolean holdsKnown;                          // if known at this depth.
+	private final int[][] crossOptions = new int[2][CELLS];  // The rows and columns where a diagonal card can go.
+	private final int[] flushes = new int[4];
+	private final int[] rowAt = new int[SIZE];           // The row (slot) at each row of the board,
+	private final int[] columnAt = new int[SIZE];        // and the column at each column.
+	private final int[] pinnedRow1 = new int[SIZE];      // For each column, the row where a card of a diagonal
+	private final int[] pinnedRow2 = new int[SIZE];      // part must go, or -1.
+	private int diagonalCards1, diagonalSuit1, diagonalCards2, diagonalSuit2;
+	private long[] pairs = new long[64];                 // Pairs of diagonal parts, by weight.
+	private final int[][] levelAllowed = new int[2 * SIZE + 1][CELLS];   // By rows and columns placed:  the cards
+	private final int[][] levelCellCard = new int[2 * SIZE + 1][CELLS];  // allowed in each cell of the board,
+	private final int[][] levelCardCell = new int[2 * SIZE + 1][CELLS];  // and a matching.
+	private final int[] laterColumns = new int[SIZE];
+	private final int[] board = new int[CELLS];
+	private final int[] hand = new int[SIZE];
+	private int visited;
+	private int packBest, packFirst, packUpper, packEffort;
+	private Listener listener;
+	private int plans;
+	private boolean stopped;
+
+	/**
+	 * Creates a search for the best arrangement of the 25 cards of a deal, with an
+	 * empty plan.
+	 * @param cards the codes of the cards, in the order of the deal.
+	 * @throws IllegalArgumentException if the lines are not those of a 5-by-5 board.
+	 */
+	LinePlanSearch(ScoringScheme scheme, LineTable lines, int[] cards) {
+		if (!lines.isFiveByFive())
+			throw new IllegalArgumentException("Only 5-by-5 boards can be planned.");
+		this.lines = lines;
+		diagonals = lines.hasDiagonals();
+		deal = Arrays.copyOf(cards, CELLS);
+		points = scheme.getPointsTable();
+		base = lines.getLineCount() * points[PokerRank.NOTHING];
+		for (int i = 0; i < CELLS; i++)
+			suitCards[CardCodes.suit(deal[i])] |= 1 << i;
+
+		List<int[]> parts = new ArrayList<int[]>();   // {cards, suit, weight}
+		makeParts(parts);
+		parts.sort((a, b) -> b[2] - a[2]);
+		partCount = parts.size();
+		partCards = new int[partCount];
+		partSize = new int[partCount];
+		partSuit = new int[partCount];
+		partWeight = new int[partCount];
+		for (int p = 0; p < partCount; p++) {
+			int[] part = parts.get(p);
+			partCards[p] = part[0];
+			partSize[p] = Integer.bitCount(part[0]);
+			partSuit[p] = part[1];
+			partWeight[p] = part[2];
+		}
+
+		Arrays.fill(lineSuit, -1);
+		allowed[0] = new int[CELLS];
+		cellCard[0] = new int[CELLS];
+		cardCell[0] = new int[CELLS];
+		for (int cell = 0; cell < CELLS; cell++) {
+			allowed[0][cell] = ALL;
+			cellCard[0][cell] = cell;
+			cardCell[0][cell] = cell;
+		}
+		int[] all = new int[partCount];
+		for (int p = 0; p < partCount; p++)
+			all[p] = p;
+		for (int kind = ROW; kind <= DIAGONAL; kind++) {
+			fitting[kind][0] = kind == DIAGONAL && !diagonals ? new int[0] : all;
+			fittingCount[kind][0] = fitting[kind][0].length;
+			if (kind != DIAGONAL)
+				placeable[kind][0] = new byte[partCount];
+		}
+	}
+
+	/**
+	 * Creates a copy of a search, with the same plan, that can search on its own.
+	 */
+	LinePlanSearch(LinePlanSearch other) {
+		deal = other.deal;
+		points = other.points;
+		base = other.base;
+		lines = other.lines;
+		diagonals = other.diagonals;
+		System.arraycopy(other.suitCards, 0, suitCards, 0, 4);
+		partCount = other.partCount;
+		partCards = other.partCards;
+		partSize = other.partSize;
+		partSuit = other.partSuit;
+		partWeight = other.partWeight;
+		System.arraycopy(other.lineCards, 0, lineCards, 0, LINES);
+		System.arraycopy(other.lineSuit, 0, lineSuit, 0, LINES);
+		System.arraycopy(other.lineUsed, 0, lineUsed, 0, LINES);
+		rows = other.rows;
+		columns = other.columns;
+		depth = other.depth;
+		value = other.value;
+		start = other.start;
+		startKind = other.startKind;
+		System.arraycopy(other.addedLine, 0, addedLine, 0, LINES + 1);
+		System.arraycopy(other.addedPart, 0, addedPart, 0, LINES + 1);
+		System.arraycopy(other.savedStart, 0, savedStart, 0, LINES + 1);
+		System.arraycopy(other.savedStartKind, 0, savedStartKind, 0, LINES + 1);
+		allowed[depth] = other.allowed[depth].clone();
+		cellCard[depth] = other.cellCard[depth].clone();
+		cardCell[depth] = other.cardCell[depth].clone();
+		for (int kind = ROW; kind <= DIAGONAL; kind++) {
+			fitting[kind][depth] = Arrays.copyOf(other.fitting[kind][depth], other.fittingCount[kind][depth]);
+			fittingCount[kind][depth] = other.fittingCount[kind][depth];
+			if (kind != DIAGONAL)
+				placeable[kind][depth] = Arrays.copyOf(other.placeable[kind][depth], other.fittingCount[kind][depth]);
+		}
+	}
+
+	/**
+	 * Tests whether a scoring scheme never gives fewer points when the other cards
+	 * of a line improve the hand of its part:  no hand is worth less than nothing,
+	 * a pair is worth no more than two pairs, three of a kind, a full house or four of
+	 * a kind, two pairs and three of a kind are worth no more than a full house, three
+	 * of a kind no more than four of a kind, and a flush no more than a straight or
+	 * royal flush.  The search is only exact for such a scheme, as all the standard
+	 * ones are.
+	 */
+	static boolean supports(ScoringScheme scheme) {
+		int[] p = scheme.getPointsTable();
+		for (int t = 0; t < p.length; t++) {
+			if (p[t] < p[PokerRank.NOTHING])
+				return false;
+		}
+		return p[PokerRank.PAIR] <= Math.min(p[PokerRank.TWO_PAIR], p[PokerRank.TRIPLE])
+				&& Math.max(p[PokerRank.TWO_PAIR], p[PokerRank.TRIPLE]) <= p[PokerRank.FULL_HOUSE]
+				&& p[PokerRank.TRIPLE] <= p[PokerRank.FOUR_OF_A_KIND]
+				&& p[PokerRank.FLUSH] <= Math.min(p[PokerRank.STRAIGHT_FLUSH], p[PokerRank.ROYAL_FLUSH]);
+	}
+
+	/**
+	 * Lists every part that the cards of the deal can make and that is worth more
+	 * than nothing.
+	 */
+	private void makeParts(List<int[]> parts) {
+		int[][] byValue = new int[13][4];
+		int[] valueCount = new int[13];
+		for (int i = 0; i < CELLS; i++) {
+			int v = CardCodes.value(deal[i]) - 2;
+			byValue[v][valueCount[v]++] = i;
+		}
+		List<int[]> pairs = new ArrayList<int[]>();    // {cards, value}
+		List<int[]> triples = new ArrayList<int[]>();
+		for (int v = 0; v < 13; v++) {
+			int k = valueCount[v];
+			for (int a = 0; a < k; a++) {
+				for (int b = a + 1; b < k; b++) {
+					int pair = 1 << byValue[v][a] | 1 << byValue[v][b];
+					pairs.add(new int[] { pair, v });
+					addPart(parts, pair, -1, PokerRank.PAIR);
+					for (int c = b + 1; c < k; c++) {
+						int triple = pair | 1 << byValue[v][c];
+						triples.add(new int[] { triple, v });
+						addPart(parts, triple, -1, PokerRank.TRIPLE);
+						for (int d = c + 1; d < k; d++)
+							addPart(parts, triple | 1 << byValue[v][d], -1, PokerRank.FOUR_OF_A_KIND);
+					}
+				}
+			}
+		}
+		for (int i = 0; i < pairs.size(); i++) {
+			for (int j = i + 1; j < pairs.size(); j++) {
+				if (pairs.get(i)[1] != pairs.get(j)[1])
+					addPart(parts, pairs.get(i)[0] | pairs.get(j)[0], -1, PokerRank.TWO_PAIR);
+			}
+		}
+		for (int[] triple : triples) {
+			for (int[] pair : pairs) {
+				if (triple[1] != pair[1])
+					addPart(parts, triple[0] | pair[0], -1, PokerRank.FULL_HOUSE);
+			}
+		}
+		for (int low = -1; low <= 8; low++)   // The five values from low, where -1 is a low ace.
+			addStraights(parts, byValue, valueCount, low, 0, 0);
+		for (int s = 0; s < 4; s++) {
+			if (Integer.bitCount(suitCards[s]) >= SIZE)
+				addPart(parts, 0, s, PokerRank.FLUSH);
+		}
+	}
+
+	private void addStraights(List<int[]> parts, int[][] byValue, int[] valueCount, int low, int i, int cards) {
+		if (i == SIZE) {
+			int n = 0;
+			for (int c = cards; c != 0; c &= c - 1)
+				hand[n++] = deal[Integer.numberOfTrailingZeros(c)];
+			addPart(parts, cards, -1, HandEvaluator.handType(hand, SIZE));
+			return;
+		}
+		int v = low + i < 0 ? 12 : low + i;
+		for (int k = 0; k < valueCount[v]; k++)
+			addStraights(parts, byValue, valueCount, low, i + 1, cards | 1 << byValue[v][k]);
+	}
+
+	private void addPart(List<int[]> parts, int cards, int suit, int type) {
+		int weight = points[type] - points[PokerRank.NOTHING];
+		if (weight > 0)
+			parts.add(new int[] { cards, suit, weight });
+	}
+
+	/**
+	 * Searches the plans that add parts to this one, and reports every board that is
+	 * better than the best score so far.
+	 * @return an upper bound on the score of every board that carries out one of the
+	 *    plans, which may be less than the best score.
+	 */
+	int search(Listener listener) {
+		return search(listener, null);
+	}
+
+	/**
+	 * Makes copies of this search with one more part each, for the parts that may
+	 * beat the best score, so that they can be searched separately, and plans the
+	 * diagonals of this plan itself.
+	 * @return an upper bound on the score of every board that carries out one of the
+	 *    plans that are not in the copies.
+	 */
+	int split(Listener listener, List<LinePlanSearch> children) {
+		return search(listener, children);
+	}
+
+	private int search(Listener listener, List<LinePlanSearch> children) {
+		this.listener = listener;
+		stopped = listener.shouldStop(0);
+		if (stopped && limit < Integer.MAX_VALUE)
+			return base + limit;
+		int upper = searchPlans(children);
+		listener.shouldStop(plans);
+		plans = 0;
+		return upper;
+	}
+
+	/**
+	 * Searches the plans that add parts to this one, or if there is a list of
+	 * children, adds a copy to it for each plan with one more part.
+	 */
+	private int searchPlans(List<LinePlanSearch> children) {
+		int diagonalBound = diagonalBound();
+		if (value + diagonalBound > listener.getBest() - base && !stopped)
+			planDiagonals(listener);
+		int upper = stopped ? value + diagonalBound : 0;
+		int rowBound = 0, rowFirst = -1, columnBound = 0, columnFirst = -1;
+		for (int p = start; p < partCount; p++) {
+			if (p > rowFirst) {   // Otherwise the best packing didn't use the parts that are now skipped.
+				rowBound = pack(ROW, p);
+				rowFirst = packFirst;
+			}
+			if (p > columnFirst) {
+				columnBound = pack(COLUMN, p);
+				columnFirst = packFirst;
+			}
+			int bound = value + rowBound + columnBound + diagonalBound;
+			if (bound <= listener.getBest() - base || stopped) {
+				upper = Math.max(upper, bound);
+				break;
+			}
+			for (int kind = p == start ? startKind : ROW; kind <= COLUMN; kind++) {
+				if (++plans == CHECK_INTERVAL) {
+					stopped = listener.shouldStop(plans);
+					plans = 0;
+				}
+				if (children != null) {
+					LinePlanSearch child = new LinePlanSearch(this);
+					child.limit = bound;
+					if (child.add(p, kind))
+						children.add(child);
+				}
+				else if (add(p, kind)) {
+					upper = Math.max(upper, searchPlans(null) - base);
+					remove();
+				}
+			}
+		}
+		return base + upper;
+	}
+
+	/**
+	 * Gives a part to the first free row or column, if a board can still carry out the
+	 * rows and columns of the plan, and finds the parts that still fit.
+	 * @return false, leaving the plan as it was, if no board can.
+	 */
+	private boolean add(int p, int kind) {
+		if (kind == COLUMN && rows == 0 && columns == 0)
+			return false;   // Transposing the board would put it in a row.
+		int i = indexOf(fitting[kind][depth], fittingCount[kind][depth], p);
+		if (i < 0 || placeable[kind][depth][i] < 0)
+			return false;
+		int line = kind == ROW ? rows : SIZE + columns;
+		int d = depth + 1;
+		addedLine[d] = line;
+		addedPart[d] = p;
+		savedStart[d] = start;
+		savedStartKind[d] = startKind;
+		if (allowed[d] == null) {
+			allowed[d] = new int[CELLS];
+			cellCard[d] = new int[CELLS];
+			cardCell[d] = new int[CELLS];
+		}
+		System.arraycopy(allowed[depth], 0, allowed[d], 0, CELLS);
+		System.arraycopy(cellCard[depth], 0, cellCard[d], 0, CELLS);
+		System.arraycopy(cardCell[depth], 0, cardCell[d], 0, CELLS);
+		restrict(allowed[d], line, partCards[p], partSuit[p]);
+		if (!repair(allowed[d], cellCard[d], cardCell[d]))
+			return false;
+		lineCards[line] = partCards[p];
+		lineSuit[line] = partSuit[p];
+		lineUsed[line] = true;
+		if (kind == ROW)
+			rows++;
+		else
+			columns++;
+		depth = d;
+		value += partWeight[p];
+		if (partSuit[p] >= 0) {
+			start = p;          // Another line may be a flush of the same suit.
+			startKind = kind;
+		}
+		else {
+			start = p + 1;
+			startKind = ROW;
+		}
+		filter(line, kind);
+		return true;
+	}
+
+	/**
+	 * Takes the last part out of the plan.
+	 */
+	private void remove() {
+		int line = addedLine[depth];
+		lineCards[line] = 0;
+		lineSuit[line] = -1;
+		lineUsed[line] = false;
+		if (line < SIZE)
+			rows--;
+		else
+			columns--;
+		value -= partWeight[addedPart[depth]];
+		start = savedStart[depth];
+		startKind = savedStartKind[depth];
+		depth--;
+		holdsKnown = false;
+	}
+
+	/**
+	 * Lists, at the new depth, the parts of the last depth that still fit in a free row,
+	 * a free column and a diagonal, now that a part is in a line.  Whether a board
+	 * carries out the plan with a part in a free row or column is only found out
+	 * when it is needed, since most parts are never looked at again.
+	 */
+	private void filter(int line, int kind) {
+		int previous = depth - 1;
+		holdsKnown = false;
+		if (diagonals)
+			findCrossOptions();
+		for (int k = ROW; k <= DIAGONAL; k++) {
+			int[] from = fitting[k][previous];
+			int count = fittingCount[k][previous];
+			if (fitting[k][depth] == null || fitting[k][depth].length < count) {
+				fitting[k][depth] = new int[Math.max(count, 1)];
+				if (k != DIAGONAL)
+					placeable[k][depth] = new byte[Math.max(count, 1)];
+			}
+			int[] to = fitting[k][depth];
+			int n = 0;
+			boolean full = k == ROW ? rows == SIZE : k == COLUMN ? columns == SIZE : false;
+			if (!full) {
+				for (int i = 0; i < count; i++) {
+					int p = from[i];
+					if (k != DIAGONAL && placeable[k][previous][i] < 0 || !fits(p, k, line, kind))
+						continue;
+					if (k == DIAGONAL && !transversal(p))
+						continue;
+					if (k != DIAGONAL)
+						placeable[k][depth][n] = 0;
+					to[n++] = p;
+				}
+			}
+			fittingCount[k][depth] = n;
+		}
+	}
+
+	/**
+	 * Tests whether a part in a line of one kind fits with the part that was just put
+	 * in a line of the same kind or of another kind.
+	 */
+	private boolean fits(int p, int kind, int line, int lineKind) {
+		return fits(partCards[p], partSuit[p], lineCards[line], lineSuit[line], kind == lineKind && kind != DIAGONAL);
+	}
+
+	/**
+	 * Tests whether two parts can be in two lines.  Parallel lines don't share cards,
+	 * and crossing lines share at most one, exactly one if both parts are five
+	 * particular cards.  Crossing flushes have the same suit, and five particular
+	 * cards that cross a flush include a card of its suit.
+	 */
+	private boolean fits(int cards1, int suit1, int cards2, int suit2, boolean parallel) {
+		int shared = cards1 & cards2;
+		if (parallel)
+			return shared == 0;
+		if ((shared & (shared - 1)) != 0)
+			return false;
+		boolean full1 = Integer.bitCount(cards1) == SIZE, full2 = Integer.bitCount(cards2) == SIZE;
+		if (shared == 0 && full1 && full2)
+			return false;
+		if (suit1 >= 0 && suit2 >= 0)
+			return suit1 == suit2;
+		if (suit1 >= 0 && full2)
+			return (cards2 & suitCards[suit1]) != 0;
+		if (suit2 >= 0 && full1)
+			return (cards1 & suitCards[suit2]) != 0;
+		return true;
+	}
+
+	/**
+	 * Tests whether some board carries out the rows and columns of the plan with a part
+	 * in a free line of a kind, given its place in the list of parts that fit.
+	 */
+	private boolean placeable(int kind, int i) {
+		byte[] known = placeable[kind][depth];
+		if (known[i] == 0)
+			known[i] = fitsFreeLine(fitting[kind][depth][i], kind) ? (byte)1 : (byte)-1;
+		return known[i] > 0;
+	}
+
+	/**
+	 * Tests whether some board carries out the rows and columns of the plan with a part
+	 * in a free line of a kind.  All the free lines of a kind are alike, so the part is
+	 * first checked against the cards that the matching already puts in each of them.
+	 */
+	private boolean fitsFreeLine(int p, int kind) {
+		if (!holdsKnown) {
+			Arrays.fill(lineHolds, 0);
+			for (int cell = 0; cell < CELLS; cell++) {
+				int card = 1 << cellCard[depth][cell];
+				lineHolds[cell / SIZE] |= card;
+				lineHolds[SIZE + cell % SIZE] |= card;
+			}
+			holdsKnown = true;
+		}
+		int first = kind == ROW ? rows : SIZE + columns;
+		int last = kind == ROW ? SIZE : 2 * SIZE;
+		int suitMask = partSuit[p] >= 0 ? suitCards[partSuit[p]] : ALL;
+		for (int line = first; line < last; line++) {
+			if ((partCards[p] & ~lineHolds[line]) == 0 && (lineHolds[line] & ~suitMask) == 0)
+				return true;
+		}
+		System.arraycopy(allowed[depth], 0, scratchAllowed, 0, CELLS);
+		System.arraycopy(cellCard[depth], 0, scratchCellCard, 0, CELLS);
+		System.arraycopy(cardCell[depth], 0, scratchCardCell, 0, CELLS);
+		restrict(scratchAllowed, first, partCards[p], partSuit[p]);
+		return repair(scratchAllowed, scratchCellCard, scratchCardCell);
+	}
+
+	/**
+	 * Tests whether the cards of a part can be a diagonal, which crosses each row and
+	 * each column once:  they must go in different rows and in different columns, each
+	 * in the line of its own part if it has one, and in lines whose parts allow them.
+	 * A flush can't cross a flush of another suit, or five particular cards without a
+	 * card of its suit.
+	 */
+	private boolean transversal(int p) {
+		int suit = partSuit[p];
+		if (suit >= 0) {
+			for (int line = 0; line < 2 * SIZE; line++) {
+				if (lineSuit[line] >= 0 && lineSuit[line] != suit
+						|| Integer.bitCount(lineCards[line]) == SIZE && (lineCards[line] & suitCards[suit]) == 0)
+					return false;
+			}
+			return flushRoom(suit, 1);
+		}
+		return crosses(partCards[p], ROW) && crosses(partCards[p], COLUMN);
+	}
+
+	/**
+	 * Tests whether two parts can be the diagonals.
+	 */
+	private boolean diagonalPair(int a, int b) {
+		if (!fits(partCards[a], partSuit[a], partCards[b], partSuit[b], false))
+			return false;
+		return partSuit[a] < 0 || partSuit[b] < 0 || flushRoom(partSuit[a], 2);
+	}
+
+	/**
+	 * Tests whether there are enough cards of a suit for the flushes of the plan and
+	 * some diagonal flushes.  Flush rows and columns cover 5 cells each, less one
+	 * for each crossing, and each diagonal has at most one cell in each of them.
+	 */
+	private boolean flushRoom(int suit, int diagonalFlushes) {
+		int r = 0, c = 0;
+		for (int line = 0; line < SIZE; line++) {
+			if (lineSuit[line] == suit)
+				r++;
+			if (lineSuit[SIZE + line] == suit)
+				c++;
+		}
+		int cells = SIZE * (r + c) - r * c;
+		if (diagonalFlushes == 1)
+			cells += Math.max(0, SIZE - r - c);
+		else if (diagonalFlushes == 2)
+			cells += Math.max(0, 2 * SIZE - 1 - 2 * (r + c));
+		return cells <= Integer.bitCount(suitCards[suit]);
+	}
+
+	/**
+	 * Finds the rows and the columns where each card could cross a diagonal:  the line
+	 * of its part if it has one, or else any line whose part allows it.
+	 */
+	private void findCrossOptions() {
+		for (int kind = ROW; kind <= COLUMN; kind++) {
+			int first = kind == ROW ? 0 : SIZE;
+			for (int card = 0; card < CELLS; card++) {
+				int suit = CardCodes.suit(deal[card]);
+				int options = 0;
+				for (int i = 0; i < SIZE; i++) {
+					int line = first + i;
+					if ((lineCards[line] >> card & 1) != 0) {
+						options = 1 << i;
+						break;
+					}
+					if (!lineUsed[line] || (lineSuit[line] < 0 || lineSuit[line] == suit) && Integer.bitCount(lineCards[line]) < SIZE)
+						options |= 1 << i;
+				}
+				crossOptions[kind][card] = options;
+			}
+		}
+	}
+
+	/**
+	 * Tests whether some cards can go in different lines of a kind.
+	 */
+	private boolean crosses(int cards, int kind) {
+		int n = 0;
+		for (int c = cards; c != 0; c &= c - 1)
+			hand[n++] = crossOptions[kind][Integer.numberOfTrailingZeros(c)];
+		return assign(0, n, 0);
+	}
+
+	private boolean assign(int i, int n, int used) {
+		if (i == n)
+			return true;
+		for (int options = hand[i] & ~used; options != 0; options &= options - 1) {
+			if (assign(i + 1, n, used | (options & -options)))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Limits the cards of the cells for a part in a line:  its particular cards can't go
+	 * in other lines, and the cells of a flush get cards of its suit.
+	 */
+	private void restrict(int[] cells, int line, int cards, int suit) {
+		int inside = LINE_CELLS[line];
+		int suitMask = suit >= 0 ? suitCards[suit] : ALL;
+		for (int cell = 0; cell < CELLS; cell++)
+			cells[cell] &= (inside >> cell & 1) != 0 ? suitMask : ~cards;
+	}
+
+	/**
+	 * Mends a matching of cards to cells after the cards allowed in the cells were
+	 * limited.
+	 * @return false if there is no longer a matching of every cell.
+	 */
+	private boolean repair(int[] cells, int[] cellCard, int[] cardCell) {
+		for (int cell = 0; cell < CELLS; cell++) {
+			int card = cellCard[cell];
+			if (card >= 0 && (cells[cell] >> card & 1) == 0) {
+				cellCard[cell] = -1;
+				cardCell[card] = -1;
+			}
+		}
+		for (int cell = 0; cell < CELLS; cell++) {
+			if (cellCard[cell] < 0) {
+				visited = 0;
+				if (!augment(cell, cells, cellCard, cardCell))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean augment(int cell, int[] cells, int[] cellCard, int[] cardCell) {
+		for (int options = cells[cell] & ~visited; options != 0; options &= options - 1) {
+			int card = Integer.numberOfTrailingZeros(options);
+			visited |= 1 << card;
+			int other = cardCell[card];
+			if (other < 0 || augment(other, cells, cellCard, cardCell)) {
+				cardCell[card] = cell;
+				cellCard[cell] = card;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns an upper bound on the points that parts from a given one on can add to the
+	 * free lines of a kind:  the best total of parts that fit, with no card in two of
+	 * them and enough cards of each suit for the flushes.  Sets packFirst to the first
+	 * part of the best total, or to Integer.MAX_VALUE if it is empty.  If that takes
+	 * too long, the bound also allows, for each choice that was not tried, the weight
+	 * of its first part in each line still free, and packFirst is set to from.
+	 */
+	private int pack(int kind, int from) {
+		packBest = 0;
+		packFirst = Integer.MAX_VALUE;
+		packUpper = 0;
+		packEffort = PACK_EFFORT;
+		int first = kind == ROW ? 0 : SIZE;
+		int free = SIZE - (kind == ROW ? rows : columns);
+		int count = fittingCount[kind][depth];
+		if (free == 0 || count == 0)
+			return 0;
+		int used = 0;
+		Arrays.fill(flushes, 0);
+		for (int line = first; line < first + SIZE; line++) {
+			used |= lineCards[line];
+			if (lineSuit[line] >= 0)
+				flushes[lineSuit[line]]++;
+		}
+		int[] list = fitting[kind][depth];
+		int i = 0;
+		while (i < count && list[i] < from)
+			i++;
+		pack(kind, list, i, count, free, used, 0, Integer.MAX_VALUE);
+		if (packEffort < 0)
+			packFirst = from;
+		return Math.max(packBest, packUpper);
+	}
+
+	private void pack(int kind, int[] list, int i, int count, int free, int used, int total, int firstPart) {
+		if (total > packBest) {
+			packBest = total;
+			packFirst = firstPart;
+		}
+		if (free == 0)
+			return;
+		for (; i < count; i++) {
+			int p = list[i];
+			if (total + free * partWeight[p] <= packBest)
+				return;
+			if (--packEffort < 0) {
+				packUpper = Math.max(packUpper, total + free * partWeight[p]);
+				return;
+			}
+			if ((partCards[p] & used) != 0 || !placeable(kind, i))
+				continue;
+			int f = Math.min(firstPart, p);
+			int suit = partSuit[p];
+			if (suit >= 0) {
+				flushes[suit]++;
+				if (Integer.bitCount(suitCards[suit] & ~used) >= SIZE * flushes[suit])
+					pack(kind, list, i, count, free - 1, used, total + partWeight[p], f);
+				flushes[suit]--;
+			}
+			else
+				pack(kind, list, i + 1, count, free - 1, used | partCards[p], total + partWeight[p], f);
+		}
+	}
+
+	/**
+	 * Returns an upper bound on the points of the diagonals:  the best two parts that
+	 * fit with the plan as diagonals and with each other, or the best one.
+	 */
+	private int diagonalBound() {
+		int[] list = fitting[DIAGONAL][depth];
+		int count = fittingCount[DIAGONAL][depth];
+		int bound = 0;
+		for (int i = 0; i < count; i++) {
+			int a = list[i];
+			if (2 * partWeight[a] <= bound)
+				break;
+			bound = Math.max(bound, partWeight[a]);
+			for (int j = i; j < count; j++) {
+				int b = list[j];
+				if (partWeight[a] + partWeight[b] <= bound)
+					break;
+				if ((j != i || partSuit[a] >= 0) && diagonalPair(a, b)) {
+					bound = partWeight[a] + partWeight[b];
+					break;
+				}
+			}
+		}
+		return bound;
+	}
+
+	/**
+	 * Looks for the best diagonals for the rows and columns of the plan that beat the
+	 * best score so far, and reports the board.  With no parts in the diagonals, the
+	 * matching is already a board.  Otherwise the pairs of parts are tried in order of
+	 * their points, and the first one that a board carries out is the best.
+	 */
+	private void planDiagonals(Listener listener) {
+		if (value > listener.getBest() - base) {
+			for (int cell = 0; cell < CELLS; cell++)
+				board[cell] = cellCard[depth][cell];
+			listener.offer(score(), board);
+		}
+		if (!diagonals)
+			return;
+		int target = listener.getBest() - base - value;
+		int[] list = fitting[DIAGONAL][depth];
+		int count = fittingCount[DIAGONAL][depth];
+		int n = 0;
+		for (int i = 0; i < count && 2 * partWeight[list[i]] > target; i++) {
+			int a = list[i];
+			if (partWeight[a] > target)
+				n = addPair(n, partWeight[a], a, -1);
+			for (int j = i; j < count && partWeight[a] + partWeight[list[j]] > target; j++) {
+				int b = list[j];
+				if ((j != i || partSuit[a] >= 0) && diagonalPair(a, b))
+					n = addPair(n, partWeight[a] + partWeight[b], a, b);
+			}
+		}
+		Arrays.sort(pairs, 0, n);
+		for (int k = n - 1; k >= 0 && !stopped; k--) {
+			int a = (int)(pairs[k] >>> 21 & 0xfffff), b = (int)(pairs[k] & 0x1fffff) - 1;
+			if (labelDiagonals(a, b)) {
+				listener.offer(score(), board);
+				return;
+			}
+		}
+	}
+
+	private int addPair(int n, int weight, int a, int b) {
+		if (n == pairs.length)
+			pairs = Arrays.copyOf(pairs, 2 * n);
+		pairs[n] = (long)weight << 42 | (long)a << 21 | (b + 1);
+		return n + 1;
+	}
+
+	/**
+	 * Looks for a board that carries out the plan with parts in the diagonals, by
+	 * trying the orders of the rows and of the columns.  Since free rows are alike,
+	 * as are free columns, they are kept in order.  Reversing the columns swaps the
+	 * diagonals, so the parts need only be tried one way round.
+	 * @param b the second part, or -1 for none.
+	 * @return true, with the board in board[], if there is one.
+	 */
+	private boolean labelDiagonals(int a, int b) {
+		diagonalCards1 = partCards[a];
+		diagonalSuit1 = partSuit[a];
+		diagonalCards2 = b < 0 ? 0 : partCards[b];
+		diagonalSuit2 = b < 0 ? -1 : partSuit[b];
+		for (int c = 0; c < SIZE; c++) {
+			pinnedRow1[c] = pinnedRow2[c] = -1;
+			for (int r = 0; r < SIZE; r++) {
+				int cards = lineCards[r] & lineCards[SIZE + c];
+				if ((cards & diagonalCards1) != 0)
+					pinnedRow1[c] = r;
+				if ((cards & diagonalCards2) != 0)
+					pinnedRow2[c] = r;
+			}
+		}
+		return match(0, 0, 0) && labelRows(0, 0, rows);
+	}
+
+	private boolean labelRows(int t, int used, int nextFree) {
+		if (t == SIZE)
+			return labelColumns(0, 0, columns);
+		for (int r = 0; r < SIZE; r++) {
+			if ((used >> r & 1) != 0 || r >= rows && r != nextFree)
+				continue;
+			rowAt[t] = r;
+			if (match(t + 1, used | 1 << r, 0) && labelRows(t + 1, used | 1 << r, r >= rows ? r + 1 : nextFree))
+				return true;
+			if (stopped)
+				return false;
+		}
+		return false;
+	}
+
+	private boolean labelColumns(int u, int used, int nextFree) {
+		if (u == SIZE) {
+			System.arraycopy(levelCellCard[2 * SIZE], 0, board, 0, CELLS);
+			return true;
+		}
+		for (int c = 0; c < SIZE; c++) {
+			if ((used >> c & 1) != 0 || c >= columns && c != nextFree)
+				continue;
+			if (pinnedRow1[c] >= 0 && pinnedRow1[c] != rowAt[u] || pinnedRow2[c] >= 0 && pinnedRow2[c] != rowAt[SIZE - 1 - u])
+				continue;
+			if (!diagonalCell(u, u, c, diagonalCards1) || !diagonalCell(SIZE - 1 - u, u, c, diagonalCards2))
+				continue;
+			columnAt[u] = c;
+			if (match(SIZE + u + 1, (1 << SIZE) - 1, used | 1 << c) && labelColumns(u + 1, used | 1 << c, c >= columns ? c + 1 : nextFree))
+				return true;
+			if (stopped)
+				return false;
+		}
+		return false;
+	}
+
+	/**
+	 * Tests whether a cell of a diagonal can get a card, and one of the diagonal's part
+	 * if the part has five cards.
+	 */
+	private boolean diagonalCell(int t, int u, int c, int cards) {
+		int options = allowed[depth][SIZE * rowAt[t] + c] & diagonalMask(t, u);
+		return options != 0 && (Integer.bitCount(cards) < SIZE || (options & cards) != 0);
+	}
+
+	/**
+	 * Returns the cards that the diagonals allow in a cell of the board.
+	 */
+	private int diagonalMask(int t, int u) {
+		int mask = ALL;
+		if (t == u)
+			mask &= diagonalSuit1 >= 0 ? suitCards[diagonalSuit1] : ALL;
+		else
+			mask &= ~diagonalCards1;
+		if (t + u == SIZE - 1)
+			mask &= diagonalSuit2 >= 0 ? suitCards[diagonalSuit2] : ALL;
+		else
+			mask &= ~diagonalCards2;
+		return mask;
+	}
+
+	/**
+	 * Tests whether a matching of the cards to the cells of the board may carry out
+	 * the plan with the first rows in the order of rowAt[], and then the first columns
+	 * in the order of columnAt[].  The diagonals are known cells of the board, so only
+	 * the rows and columns that are not placed yet are unknown; a cell in one of them
+	 * may get any card that one of those rows or columns allows.  The matching is mended
+	 * from the one of the level before, or at the start from the matching of the plan.
+	 * @param level the number of rows and columns placed, rows first.
+	 * @param usedRows the rows placed, as a mask, and usedColumns the columns.
+	 */
+	private boolean match(int level, int usedRows, int usedColumns) {
+		if (++plans == CHECK_INTERVAL) {
+			stopped = listener.shouldStop(plans);
+			plans = 0;
+		}
+		int[] cells = levelAllowed[level], matchedCard = levelCellCard[level], matchedCell = levelCardCell[level];
+		if (level == 0) {
+			System.arraycopy(cellCard[depth], 0, matchedCard, 0, CELLS);
+			System.arraycopy(cardCell[depth], 0, matchedCell, 0, CELLS);
+		}
+		else {
+			System.arraycopy(levelCellCard[level - 1], 0, matchedCard, 0, CELLS);
+			System.arraycopy(levelCardCell[level - 1], 0, matchedCell, 0, CELLS);
+		}
+		int placedRows = Math.min(level, SIZE), placedColumns = Math.max(0, level - SIZE);
+		int laterRows = 0;
+		for (int r = 0; r < SIZE; r++) {
+			int later = 0;   // What row r allows in the columns not placed yet.
+			for (int c = 0; c < SIZE; c++) {
+				if ((usedColumns >> c & 1) == 0)
+					later |= allowed[depth][SIZE * r + c];
+			}
+			laterColumns[r] = later;
+			if ((usedRows >> r & 1) == 0)
+				laterRows |= later;
+		}
+		for (int t = 0; t < SIZE; t++) {
+			for (int u = 0; u < SIZE; u++) {
+				int options;
+				if (t >= placedRows)
+					options = laterRows;
+				else if (u >= placedColumns)
+					options = laterColumns[rowAt[t]];
+				else
+					options = allowed[depth][SIZE * rowAt[t] + columnAt[u]];
+				cells[SIZE * t + u] = options & diagonalMask(t, u);
+			}
+		}
+		return repair(cells, matchedCard, matchedCell);
+	}
+
+	/**
+	 * Returns the score of the board in board[].
+	 */
+	private int score() {
+		int total = 0;
+		for (int line = 0; line < lines.getLineCount(); line++) {
+			int[] cells = lines.getCellsOfLine(line);
+			for (int i = 0; i < SIZE; i++)
+				hand[i] = deal[board[cells[i]]];
+			total += points[HandEvaluator.handType(hand, SIZE)];
+		}
+		return total;
+	}
+
+	private static int indexOf(int[] list, int count, int x) {
+		int low = 0, high = count - 1;   // The lists are in increasing order.
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (list[mid] < x)
+				low = mid + 1;
+			else if (list[mid] > x)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+}
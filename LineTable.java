@@ -0,0 +1,235 @@
+import java.util.Arrays;
+
+/**
+ * The lines of a square grid that are scored as poker hands, as lookup
+ * tables:  for each line, the cells that it contains, and for each cell,
+ * the lines that contain it.  Cells are numbered in row-major order, so the
+ * cell in row r and column c of a grid of size n is number n*r + c.  The
+ * lines are the rows, from top to bottom, then the columns, from left to
+ * right, then (if there are diagonals) the diagonal from the top left
+ * corner and the diagonal from the top right corner.  Every piece of code
+ * that needs to know which cells make up a line, such as scoring, the
+ * incremental updates of GameState, and the bounds of a search, uses these
+ * tables instead of loops over rows, columns and diagonals.
+ * <p>The standard game is 5-by-5, but other sizes are allowed for variants,
+ * up to 7-by-7, the largest grid that one deck can fill.  On a smaller grid,
+ * such as a 4-by-4 quick game, the lines are short hands that can't be
+ * straights or flushes.  On a larger grid, each line is scored as the best
+ * five-card hand that can be made from its cards.
+ * <p>The tables are built once and are never changed, so they can be
+ * shared by any number of games and threads.  The set of lines that the
+ * game uses is chosen by the system property pokersolitaire.lines, which
+ * can be "standard" (the default), "no-diagonals", or a size such as "6x6"
+ * or "4x4-no-diagonals"; see forName().
+ */
+public final class LineTable {
+
+	public static final int ROW = 0;        // Codes for the kinds of line.
+	public static final int COLUMN = 1;
+	public static final int DIAGONAL = 2;
+
+	public static final String LINES_PROPERTY = "pokersolitaire.lines";  // Names the default table.
+	public static final int MAX_SIZE = 7;   // The largest grid, 49 cells, that one deck can fill.
+
+	/**
+	 * The 5-by-5 grid with twelve lines:  five rows, five columns and two diagonals.
+	 */
+	public static final LineTable STANDARD = new LineTable(5, true);
+
+	/**
+	 * The 5-by-5 grid with only the rows and columns.
+	 */
+	public static final LineTable NO_DIAGONALS = new LineTable(5, false);
+
+	private static LineTable defaultTable;  // Created by getDefault().
+
+	private final int size;
+	private final boolean diagonals;
+	private final int[][] cellsOfLine;  // cellsOfLine[line] lists the cells of a line, in order.
+	private final int[][] linesOfCell;  // linesOfCell[cell] lists the lines that contain a cell.
+	private final int[] lineKinds;      // ROW, COLUMN or DIAGONAL for each line.
+	private final int[] lineNumbers;    // The number of each line among the lines of its kind, from 1.
+	private final int maxLinesPerCell;
+
+	/**
+	 * Creates the tables for a square grid.
+	 * @param size the number of rows, and of columns, in the grid.
+	 * @param diagonals whether the two diagonals are lines.
+	 * @throws IllegalArgumentException if size is less than two or more than MAX_SIZE.
+	 */
+	public LineTable(int size, boolean diagonals) {
+		if (size < 2 || size > MAX_SIZE)
+			throw new IllegalArgumentException("A grid must have between 2 and " + MAX_SIZE + " rows and columns.");
+		this.size = size;
+		this.diagonals = diagonals;
+		int lineCount = 2*size + (diagonals ? 2 : 0);
+		cellsOfLine = new int[lineCount][size];
+		lineKinds = new int[lineCount];
+		lineNumbers = new int[lineCount];
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				cellsOfLine[i][j] = size*i + j;            // row i
+				cellsOfLine[size + i][j] = size*j + i;     // column i
+			}
+			lineKinds[i] = ROW;
+			lineKinds[size + i] = COLUMN;
+			lineNumbers[i] = lineNumbers[size + i] = i + 1;
+			if (diagonals) {
+				cellsOfLine[2*size][i] = size*i + i;
+				cellsOfLine[2*size + 1][i] = size*i + (size - 1 - i);
+			}
+		}
+		if (diagonals) {
+			lineKinds[2*size] = lineKinds[2*size + 1] = DIAGONAL;
+			lineNumbers[2*size] = 1;
+			lineNumbers[2*size + 1] = 2;
+		}
+		int cellCount = size*size;
+		int[] count = new int[cellCount];
+		int[][] lines = new int[cellCount][lineCount];
+		for (int line = 0; line < lineCount; line++) {
+			for (int cell : cellsOfLine[line])
+				lines[cell][count[cell]++] = line;
+		}
+		linesOfCell = new int[cellCount][];
+		int max = 0;
+		for (int cell = 0; cell < cellCount; cell++) {
+			linesOfCell[cell] = Arrays.copyOf(lines[cell], count[cell]);
+			max = Math.max(max, count[cell]);
+		}
+		maxLinesPerCell = max;
+	}
+
+	/**
+	 * Returns the table named by the system property pokersolitaire.lines, or the
+	 * standard table if the property is not set.
+	 * @throws IllegalArgumentException if the property does not name a table.
+	 */
+	public static synchronized LineTable getDefault() {
+		if (defaultTable == null) {
+			String name = System.getProperty(LINES_PROPERTY);
+			defaultTable = name == null ? STANDARD : forName(name);
+		}
+		return defaultTable;
+	}
+
+	/**
+	 * Returns a table given its name:  "standard", "no-diagonals", or a grid size
+	 * such as "5x5", optionally followed by "-no-diagonals".
+	 * @throws IllegalArgumentException if the name is not of that form.
+	 */
+	public static LineTable forName(String name) {
+		String n = name.trim().toLowerCase();
+		if (n.equals("standard"))
+			return STANDARD;
+		if (n.equals("no-diagonals"))
+			return NO_DIAGONALS;
+		boolean diagonals = true;
+		if (n.endsWith("-no-diagonals")) {
+			diagonals = false;
+			n = n.substring(0, n.length() - "-no-diagonals".length());
+		}
+		String[] parts = n.split("x");
+		if (parts.length == 2 && parts[0].equals(parts[1])) {
+			try {
+				int size = Integer.parseInt(parts[0]);
+				if (size == 5)
+					return diagonals ? STANDARD : NO_DIAGONALS;
+				return new LineTable(size, diagonals);
+			}
+			catch (NumberFormatException e) {
+				// Handled below.
+			}
+		}
+		throw new IllegalArgumentException("Unknown set of lines: " + name);
+	}
+
+	/**
+	 * Returns the number of rows, and of columns, in the grid.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of cells in each line, which is the size of the grid.
+	 */
+	public int getLineLength() {
+		return size;
+	}
+
+	/**
+	 * Tests whether this is a 5-by-5 grid, on which every line is an ordinary
+	 * five-card poker hand.  Code that has a faster way of handling that case,
+	 * which is the usual one, can check this.
+	 */
+	public boolean isFiveByFive() {
+		return size == 5;
+	}
+
+	/**
+	 * Returns the number of cells in the grid.
+	 */
+	public int getCellCount() {
+		return linesOfCell.length;
+	}
+
+	/**
+	 * Returns the number of lines that are scored.
+	 */
+	public int getLineCount() {
+		return cellsOfLine.length;
+	}
+
+	/**
+	 * Tests whether the diagonals are lines.
+	 */
+	public boolean hasDiagonals() {
+		return diagonals;
+	}
+
+	/**
+	 * Returns the largest number of lines that contain any one cell.
+	 */
+	public int getMaxLinesPerCell() {
+		return maxLinesPerCell;
+	}
+
+	/**
+	 * Returns the cells of a line.  The array is shared and must not be modified.
+	 */
+	public int[] getCellsOfLine(int line) {
+		return cellsOfLine[line];
+	}
+
+	/**
+	 * Returns the lines that contain a cell.  The array is shared and must not be modified.
+	 */
+	public int[] getLinesOfCell(int cell) {
+		return linesOfCell[cell];
+	}
+
+	/**
+	 * Returns the kind of a line:  ROW, COLUMN or DIAGONAL.
+	 */
+	public int getLineKind(int line) {
+		return lineKinds[line];
+	}
+
+	/**
+	 * Returns the name of a line, such as "Row 1", "Column 3" or "Diagonal 2".
+	 */
+	public String getLineName(int line) {
+		String kind = lineKinds[line] == ROW ? "Row" : lineKinds[line] == COLUMN ? "Column" : "Diagonal";
+		return kind + " " + lineNumbers[line];
+	}
+
+	/**
+	 * Returns a name for the table that forName() understands, such as "5x5" or
+	 * "5x5-no-diagonals".
+	 */
+	public String toString() {
+		return size + "x" + size + (diagonals ? "" : "-no-diagonals");
+	}
+
+}
@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A TranspositionTable that keeps its entries outside the Java heap, so a
+ * table of many gigabytes neither needs a huge heap nor slows down the
+ * garbage collector.  The table is either anonymous, in direct buffers, or
+ * backed by a file that is mapped into memory.  A table in a file can be
+ * opened again later, even by another run of the program, and everything
+ * stored in it is still there, so a solver that is restarted on the same
+ * deals doesn't have to search the same positions again.
+ * <p>The slots work just like those of HeapTranspositionTable:  each is 16
+ * bytes, the data (the value, with a 1 in bit 32 to mark a used slot) and
+ * the key xor the data, so there are no locks, and a slot whose two words
+ * come from different stores, by two threads at once or because the
+ * program crashed while the operating system was writing the file back,
+ * just reads as empty.  Since a single buffer can only hold 2 gigabytes,
+ * the slots are spread over several buffers of a gigabyte each.  The file
+ * starts with a header that holds a magic number and the number of slots.
+ * <p>The words are stored little-endian, whatever the processor, so a file
+ * can be moved between machines.  Changes to a mapped file reach the disk
+ * when the operating system decides, or when force() or close() is called.
+ */
+public class MappedTranspositionTable implements TranspositionTable, AutoCloseable {
+
+	private static final long MAGIC = 0x504F54544231L;   // "POTTB1", the start of a table file.
+	private static final int HEADER_SIZE = 64;           // Bytes before the first slot.
+	private static final int SLOT_SIZE = 16;
+	private static final int BUFFER_SHIFT = 26;          // log2 of the slots in one buffer.
+	private static final int BUFFER_SLOTS = 1 << BUFFER_SHIFT;
+
+	private final ByteBuffer[] buffers;   // The slots, BUFFER_SLOTS in each buffer but the last.
+	private final int mask;               // The number of slots minus 1.
+	private final FileChannel channel;    // The file, or null for an anonymous table.
+
+	/**
+	 * Creates an anonymous table with room for a given number of entries, which is
+	 * rounded up to a power of two.  Each entry takes 16 bytes of memory outside the heap.
+	 * @throws IllegalArgumentException if the number is not between 1 and 2^30.
+	 */
+	public MappedTranspositionTable(int entries) {
+		int size = slotCount(entries);
+		mask = size - 1;
+		channel = null;
+		buffers = new ByteBuffer[(size + BUFFER_SLOTS - 1) >>> BUFFER_SHIFT];
+		for (int i = 0; i < buffers.length; i++) {
+			int slots = Math.min(BUFFER_SLOTS, size - (i << BUFFER_SHIFT));
+			buffers[i] = ByteBuffer.allocateDirect(slots * SLOT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	/**
+	 * Opens the table in a file, or creates it if there is no such file or the file
+	 * is empty.  The entries that are in the file are kept.
+	 * @param entries the number of entries, which is rounded up to a power of two.
+	 * @throws IllegalArgumentException if the number is not between 1 and 2^30.
+	 * @throws IOException if the file can't be opened or mapped, or holds something
+	 *    other than a table of the same size.
+	 */
+	public MappedTranspositionTable(Path file, int entries) throws IOException {
+		int size = slotCount(entries);
+		mask = size - 1;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (channel.size() != 0) {
+				long slots = readHeader(header);
+				if (slots < 0)
+					throw new IOException("Not a transposition table file: " + file);
+				if (slots != size || channel.size() != HEADER_SIZE + (long)size * SLOT_SIZE)
+					throw new IOException("The transposition table file " + file + " has the wrong size.");
+			}
+			else {
+				header.clear();
+				header.putLong(MAGIC).putLong(size);
+				header.rewind();
+				while (header.hasRemaining())
+					channel.write(header, header.position());
+				channel.write(ByteBuffer.allocate(1), HEADER_SIZE + (long)size * SLOT_SIZE - 1);  // Zeros, sparse if possible.
+				channel.force(true);
+			}
+			buffers = map(size);
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens an existing table file, with all the entries that are stored in it.
+	 * @throws IOException if the file can't be read or mapped, or is not a table.
+	 */
+	public static MappedTranspositionTable open(Path file) throws IOException {
+		int size;
+		try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && in.read(header, header.position()) > 0)
+				;
+			header.flip();
+			if (header.remaining() < 16 || header.getLong() != MAGIC)
+				throw new IOException("Not a transposition table file.");
+			long slots = header.getLong();
+			if (slots < 1 || slots > 1 << 30 || Long.bitCount(slots) != 1
+					|| in.size() != HEADER_SIZE + slots * SLOT_SIZE)
+				throw new IOException("The transposition table file has the wrong size.");
+			size = (int)slots;
+		}
+		return new MappedTranspositionTable(file, size);
+	}
+
+	private static int slotCount(int entries) {
+		if (entries < 1 || entries > 1 << 30)
+			throw new IllegalArgumentException("A table must have between 1 and 2^30 entries.");
+		int size = Integer.highestOneBit(entries);
+		if (size < entries)
+			size <<= 1;
+		return size;
+	}
+
+	/**
+	 * Reads the header of the file.
+	 * @return the number of slots, or -1 if the file doesn't start with a table header.
+	 */
+	private long readHeader(ByteBuffer header) throws IOException {
+		header.clear();
+		while (header.hasRemaining() && channel.read(header, header.position()) > 0)
+			;
+		header.flip();
+		if (header.remaining() < 16 || header.getLong() != MAGIC)
+			return -1;
+		return header.getLong();
+	}
+
+	private ByteBuffer[] map(int size) throws IOException {
+		ByteBuffer[] mapped = new ByteBuffer[(size + BUFFER_SLOTS - 1) >>> BUFFER_SHIFT];
+		for (int i = 0; i < mapped.length; i++) {
+			long start = (long)i << BUFFER_SHIFT;
+			int slots = (int)Math.min(BUFFER_SLOTS, size - start);
+			mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + start * SLOT_SIZE,
+					(long)slots * SLOT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return mapped;
+	}
+
+	public int probe(long key) {
+		int slot = (int)key & mask;
+		ByteBuffer buffer = buffers[slot >>> BUFFER_SHIFT];
+		int offset = (slot & (BUFFER_SLOTS - 1)) * SLOT_SIZE;
+		long d = buffer.getLong(offset);
+		if (d == 0 || (buffer.getLong(offset + 8) ^ d) != key)
+			return MISSING;
+		return (int)d;
+	}
+
+	public void store(long key, int value) {
+		int slot = (int)key & mask;
+		ByteBuffer buffer = buffers[slot >>> BUFFER_SHIFT];
+		int offset = (slot & (BUFFER_SLOTS - 1)) * SLOT_SIZE;
+		long d = (1L << 32) | (value & 0xFFFFFFFFL);   // Bit 32 marks a used slot.
+		buffer.putLong(offset, d);
+		buffer.putLong(offset + 8, key ^ d);
+	}
+
+	public void clear() {
+		for (ByteBuffer buffer : buffers) {
+			for (int offset = 0; offset < buffer.capacity(); offset += 8)
+				buffer.putLong(offset, 0);
+		}
+	}
+
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * Tests whether the table is kept in a file.
+	 */
+	public boolean isPersistent() {
+		return channel != null;
+	}
+
+	/**
+	 * Writes all the changes to a table in a file out to the disk.  Does nothing for
+	 * an anonymous table.
+	 * @throws IOException if the file can't be written.
+	 */
+	public void force() throws IOException {
+		if (channel == null)
+			return;
+		for (ByteBuffer buffer : buffers)
+			((MappedByteBuffer)buffer).force();
+	}
+
+	/**
+	 * Writes a table in a file out to the disk and closes the file.  The memory
+	 * stays mapped until the table is garbage collected, but the table must not be
+	 * used any more.
+	 * @throws IOException if the file can't be written or closed.
+	 */
+	public void close() throws IOException {
+		if (channel == null)
+			return;
+		force();
+		channel.close();
+	}
+
+}
@@ -0,0 +1,122 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A strategy that tries each possible placement of the next card and plays
+ * the rest of the game out a number of times, with random orders of the
+ * cards that have not been seen yet and a fast rollout policy (by default,
+ * a GreedyStrategy).  The card goes in the cell with the best average
+ * final score.  Every candidate cell is tried with the same set of random
+ * futures (common random numbers), so that the differences between cells
+ * are not drowned out by the luck of the rollouts.  The search works on
+ * its own copy of the game, using place() and undo() to make and take back
+ * moves, so the board is never copied during the search.
+ * <p>The random choices depend only on the seed and the position, so the
+ * strategy is repeatable and can be used from several threads at once.
+ */
+public class MonteCarloStrategy implements PlacementStrategy {
+
+	private final ScoringScheme scheme;
+	private final PlacementStrategy rolloutPolicy;
+	private final int rollouts;     // The number of rollouts for each candidate cell.
+	private final long seed;
+
+	/**
+	 * Creates a Monte Carlo strategy that uses greedy rollouts.
+	 * @param scheme the scoring scheme that is being maximized.
+	 * @param rollouts the number of games that are played out for each candidate cell.
+	 */
+	public MonteCarloStrategy(ScoringScheme scheme, int rollouts) {
+		this(scheme, new GreedyStrategy(scheme), rollouts, 1);
+	}
+
+	/**
+	 * Creates a Monte Carlo strategy.
+	 * @param scheme the scoring scheme that is being maximized.
+	 * @param rolloutPolicy the strategy that plays out the rest of each game.
+	 * @param rollouts the number of games that are played out for each candidate cell.
+	 * @param seed the seed for shuffling the unseen cards.
+	 * @throws IllegalArgumentException if rollouts is less than one.
+	 */
+	public MonteCarloStrategy(ScoringScheme scheme, PlacementStrategy rolloutPolicy, int rollouts, long seed) {
+		if (rollouts < 1)
+			throw new IllegalArgumentException("At least one rollout is needed.");
+		this.scheme = scheme;
+		this.rolloutPolicy = rolloutPolicy;
+		this.rollouts = rollouts;
+		this.seed = seed;
+	}
+
+	/**
+	 * Chooses the cell with the best average.  The cells are tried in the order given
+	 * by LineBounds, and once the upper bound for a cell is no better than the best
+	 * average found so far, that cell and the rest are skipped without any rollouts,
+	 * since no rollout can score more than the bound.  The choice is the same as the
+	 * best cell of evaluate(), except perhaps among cells with equal values.
+	 */
+	public int chooseCell(GameState state) {
+		LineBounds bounds = new LineBounds(scheme);
+		DeckState unseen = state.getUnseen();
+		bounds.compute(state, unseen);
+		int[] cells = new int[state.getCellCount()];
+		int[] cellBounds = new int[state.getCellCount()];
+		int count = bounds.orderCells(state, unseen, cells, cellBounds);
+		GameState work = new GameState(state);
+		long base = Deals.mix(seed ^ state.getHash() ^ state.getNextCard());
+		int best = -1;
+		double bestValue = 0;
+		for (int i = 0; i < count; i++) {
+			if (best != -1 && cellBounds[i] <= bestValue)
+				break;
+			double value = average(work, cells[i], base);
+			if (best == -1 || value > bestValue) {
+				best = cells[i];
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Estimates the expected final score for each possible placement of the next card.
+	 * If the calling thread is interrupted, the search stops by throwing a
+	 * CancellationException; the state is not changed in either case.
+	 * @return an array with one value for each cell.  The value is NaN for cells
+	 *    that are not empty.
+	 */
+	public double[] evaluate(GameState state) {
+		GameState work = new GameState(state);
+		long base = Deals.mix(seed ^ state.getHash() ^ state.getNextCard());
+		double[] values = new double[state.getCellCount()];
+		for (int cell = 0; cell < values.length; cell++)
+			values[cell] = work.isEmpty(cell) ? average(work, cell, base) : Double.NaN;
+		return values;
+	}
+
+	/**
+	 * Places the next card in a cell of the work state, plays out the rollouts, and
+	 * returns their average score.  The work state is returned to where it was.
+	 * @param base the seed of the first rollout; rollout r uses base + r, for every cell.
+	 */
+	private double average(GameState work, int cell, long base) {
+		int start = work.getCardsPlaced();
+		long total = 0;
+		work.place(cell);
+		for (int r = 0; r < rollouts; r++) {
+			if (Thread.currentThread().isInterrupted())
+				throw new CancellationException("Monte Carlo search was cancelled.");
+			work.shuffleUnseen(new SplittableRandom(base + r));
+			work.playOut(rolloutPolicy);
+			total += work.score(scheme);
+			while (work.getCardsPlaced() > start + 1)
+				work.undo();
+		}
+		work.undo();
+		return (double)total / rollouts;
+	}
+
+	public String toString() {
+		return "Monte Carlo (" + rollouts + " rollouts)";
+	}
+
+}
@@ -0,0 +1,137 @@
+/**
+ * A strategy that puts each card where it adds the most to the expected
+ * points of the lines through its cell, with the expected points of a line
+ * taken from HandOdds as if the rest of the line were filled with cards
+ * drawn at random from the cards that have not been seen.  Unlike the
+ * greedy strategy, it sees that a four-card flush draw or an open pair is
+ * worth something before the line is full, and it needs no training, but
+ * since each line is valued by itself, it doesn't know that the lines
+ * compete for the same cards.
+ * <p>The hand types can also be given values other than their points, and
+ * the diagonals a weight other than 1, to make the strategy play for some
+ * hands more than the points alone would say; those are the weights that
+ * StrategyTuner tunes.  The ratio of the values of a flush and a straight,
+ * for example, decides how readily it gives up a flush draw for a
+ * straight draw.
+ * <p>The strategy keeps no mutable state, so it can be used from several
+ * threads at once.
+ */
+public class OddsStrategy implements PlacementStrategy {
+
+	private final HandOdds odds;
+	private final double[] values;   // The value of each hand type; by default, its points.
+	private final double diagonalWeight;   // Multiplies the values of the diagonals.
+	private final boolean weighted;        // True if the values are not the points of a scheme.
+
+	/**
+	 * Creates a strategy that uses the odds in HandOdds.getDefault().
+	 */
+	public OddsStrategy(ScoringScheme scheme) {
+		this(HandOdds.getDefault(), scheme);
+	}
+
+	/**
+	 * Creates a strategy that uses given odds.
+	 */
+	public OddsStrategy(HandOdds odds, ScoringScheme scheme) {
+		this.odds = odds;
+		int[] points = scheme.getPointsTable();
+		values = new double[points.length];
+		for (int type = 0; type < points.length; type++)
+			values[type] = points[type];
+		diagonalWeight = 1;
+		weighted = false;
+	}
+
+	/**
+	 * Creates a strategy that values the hand types and the diagonals with given weights
+	 * instead of the points of a scoring scheme.
+	 * @param values the value of each hand type, PokerRank.NOTHING through
+	 *    PokerRank.ROYAL_FLUSH.  The array is copied.
+	 * @param diagonalWeight the number that the values of the diagonals are multiplied by.
+	 * @throws IllegalArgumentException if there are not ten values, or a weight is not
+	 *    finite.
+	 */
+	public OddsStrategy(HandOdds odds, double[] values, double diagonalWeight) {
+		if (values.length != PokerRank.ROYAL_FLUSH + 1)
+			throw new IllegalArgumentException("There must be a value for each of the ten hand types.");
+		for (double value : values) {
+			if (Double.isNaN(value) || Double.isInfinite(value))
+				throw new IllegalArgumentException("Bad hand type value " + value + ".");
+		}
+		if (Double.isNaN(diagonalWeight) || Double.isInfinite(diagonalWeight))
+			throw new IllegalArgumentException("Bad diagonal weight " + diagonalWeight + ".");
+		this.odds = odds;
+		this.values = values.clone();
+		this.diagonalWeight = diagonalWeight;
+		weighted = true;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the lines have more than five cells.
+	 */
+	public int chooseCell(GameState state) {
+		if (state.getLineTable().getLineLength() > 5)
+			throw new IllegalArgumentException("OddsStrategy needs lines of at most five cells.");
+		int card = state.getNextCard();
+		DeckState deck = new DeckState(state.getUnseen());
+		deck.remove(card);
+		int[] hand = new int[5];
+		double[] chances = new double[values.length];
+		double[] now = new double[state.getLineCount()];
+		for (int line = 0; line < now.length; line++)
+			now[line] = lineValue(state, line, -1, card, deck, hand, chances);
+		int bestCell = -1;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int cell = 0; cell < state.getCellCount(); cell++) {
+			if (!state.isEmpty(cell))
+				continue;
+			double value = 0;
+			for (int line : state.getLinesOfCell(cell)) {
+				double gain = lineValue(state, line, cell, card, deck, hand, chances) - now[line];
+				value += state.getLineTable().getLineKind(line) == LineTable.DIAGONAL ? diagonalWeight * gain : gain;
+			}
+			if (value > bestValue) {
+				bestValue = value;
+				bestCell = cell;
+			}
+		}
+		return bestCell;
+	}
+
+	/**
+	 * Returns the expected value of a line, with one more card in one of its empty cells,
+	 * when the rest of it is filled from a deck.
+	 * @param cell the cell of the extra card, or -1 for none.
+	 */
+	private double lineValue(GameState state, int line, int cell, int card, DeckState deck,
+			int[] hand, double[] chances) {
+		int count = lineCards(state, line, cell, card, hand);
+		odds.odds(hand, count, state.getCellsOfLine(line).length - count, deck, chances);
+		double value = 0;
+		for (int type = 0; type < values.length; type++)
+			value += chances[type] * values[type];
+		return value;
+	}
+
+	/**
+	 * Puts the cards of a line in an array, with one more card in one of its empty cells.
+	 * @param cell the cell of the extra card, or -1 for none.
+	 * @return the number of cards.
+	 */
+	private static int lineCards(GameState state, int line, int cell, int card, int[] hand) {
+		int count = 0;
+		for (int c : state.getCellsOfLine(line)) {
+			if (c == cell)
+				hand[count++] = card;
+			else if (!state.isEmpty(c))
+				hand[count++] = state.getCard(c);
+		}
+		return count;
+	}
+
+	public String toString() {
+		return weighted ? "Weighted hand odds" : "Hand odds";
+	}
+
+}
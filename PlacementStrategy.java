@@ -0,0 +1,21 @@
+/**
+ * A strategy for playing Poker Solitaire:  given a game in progress, it
+ * decides where the next card should go.  Strategies are used by the
+ * simulator, which can call the same strategy object from several threads
+ * at once, so implementations must be thread-safe.  The easiest way to
+ * achieve that is to keep no mutable state in the strategy object.
+ */
+public interface PlacementStrategy {
+
+	/**
+	 * Chooses the cell in which the next card, state.getNextCard(), will be placed.
+	 * A strategy can look at the board and at the cards that have already been
+	 * dealt, but it should not look at cards later in the deal, which the player
+	 * would not know.  If the strategy changes the state while thinking, it must
+	 * restore it before returning.
+	 * @param state a game that is not over.
+	 * @return the number of an empty cell, 0 to 24.
+	 */
+	int chooseCell(GameState state);
+
+}
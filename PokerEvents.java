@@ -0,0 +1,131 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+
+/**
+ * Custom Java Flight Recorder events for the parts of the program where
+ * the time goes, so that a recording of a game or a simulation, made with
+ * -XX:StartFlightRecording or jcmd, shows what the engine was doing with
+ * no profiler attached.  The events are grouped under "Poker Solitaire" in
+ * JDK Mission Control.
+ * <p>The events are coarse on purpose.  Nothing is recorded for a single
+ * hand evaluation, which takes a few nanoseconds; instead GameState counts
+ * its evaluations in a plain field, and the simulations commit one
+ * Evaluations event for each block of games with the count for the block.
+ * When recording is off, an event is an object that is never used, which
+ * the JIT compiler removes, and the fields that take work to fill in are
+ * only filled in when shouldCommit() says that the event will be kept.
+ * None of the events record a stack trace.
+ */
+public final class PokerEvents {
+
+	private PokerEvents() {
+	}
+
+	/**
+	 * The hand evaluations made while playing a block of games.
+	 */
+	@Name("pokersolitaire.Evaluations")
+	@Label("Hand Evaluations")
+	@Category({ "Poker Solitaire", "Engine" })
+	@Description("Hand evaluations made by the games of one block of a simulation")
+	@StackTrace(false)
+	public static class Evaluations extends Event {
+
+		@Label("Source")
+		public String source;
+
+		@Label("Games")
+		public long games;
+
+		@Label("Evaluations")
+		public long evaluations;
+	}
+
+	/**
+	 * One call of BoardBatch.score().
+	 */
+	@Name("pokersolitaire.ScoringPass")
+	@Label("Scoring Pass")
+	@Category({ "Poker Solitaire", "Engine" })
+	@Description("Scoring of a batch of finished boards")
+	@StackTrace(false)
+	public static class ScoringPass extends Event {
+
+		@Label("Scheme")
+		public String scheme;
+
+		@Label("Boards")
+		public int boards;
+
+		@Label("Lines")
+		public int lines;
+
+		@Label("Batch Size")
+		@DataAmount
+		public long bytes;
+	}
+
+	/**
+	 * One call of KnownDeckSolver.solve().
+	 */
+	@Name("pokersolitaire.SolverSearch")
+	@Label("Solver Search")
+	@Category({ "Poker Solitaire", "Solver" })
+	@Description("A branch-and-bound search for the best arrangement of a known deal")
+	@StackTrace(false)
+	public static class SolverSearch extends Event {
+
+		@Label("Cards to Place")
+		@Description("The depth of the search, in cards")
+		public int depth;
+
+		@Label("Positions")
+		public long nodes;
+
+		@Label("Table Probes")
+		public long probes;
+
+		@Label("Table Hits")
+		public long hits;
+
+		@Label("Table Hit Rate")
+		@Percentage
+		public double hitRate;
+
+		@Label("Score")
+		public int score;
+
+		@Label("Upper Bound")
+		public int upperBound;
+
+		@Label("Out of Time")
+		public boolean outOfTime;
+	}
+
+	/**
+	 * One drawing of the board in the window.
+	 */
+	@Name("pokersolitaire.RenderFrame")
+	@Label("Render Frame")
+	@Category({ "Poker Solitaire", "User Interface" })
+	@Description("Drawing of the game board")
+	@StackTrace(false)
+	public static class RenderFrame extends Event {
+
+		@Label("Cards Placed")
+		public int cardsPlaced;
+
+		@Label("Scale")
+		public double scale;
+
+		@Label("Hint Shown")
+		public boolean hint;
+	}
+
+}
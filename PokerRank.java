@@ -188,7 +188,16 @@ public class PokerRank {
 	public String getHandTypeAsString() {
 		if (cards.size() == 0)
 			return "Empty Hand";
-		int type = getHandType();
+		return getHandTypeName(getHandType());
+	}
+
+	/**
+	 * Returns the name of a basic type of hand, such as "Two pairs", "Straight",
+	 * or "Nothing".
+	 * @param type one of the constants NOTHING, PAIR, TWO_PAIR, TRIPLE, STRAIGHT,
+	 *    FLUSH, FULL_HOUSE, FOUR_OF_A_KIND, STRAIGHT_FLUSH, or ROYAL_FLUSH.
+	 */
+	public static String getHandTypeName(int type) {
 		if (type == PAIR)
 			return "Pair";
 		if (type == TWO_PAIR)
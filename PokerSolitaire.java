@@ -1,3 +1,5 @@
+import java.io.IOException;
+
 import javafx.application.Application;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -18,7 +20,10 @@ import javafx.stage.Stage;
  * hands in each row, column, and diagonal of a 5-by-5 grid of cards.
  * The user sees one card at a time and must place that card on the
  * grid by clicking one of the empty grid positions.  The game is
- * over when all 25 grid positions have been filled.
+ * over when all 25 grid positions have been filled.  Until then, the
+ * Undo button takes back the cards that have been placed, one at a time.
+ * The number of cards of each suit that are still in the deck is shown
+ * under the high score.
  */
 public class PokerSolitaire extends Application {
 
@@ -34,18 +39,24 @@ public class PokerSolitaire extends Application {
 	private int cardsPlaced; 		// Keeps track of number of cards placed, when this is 25 the game is over.
 	
 	private int totalPoints;		// Keeps track of the total points that the player has scored between all hands.
-	private int highScore;			// Keeps track of the highest score the player has gotten so far in a game.
+	private Leaderboard leaderboard;	// The best games with the scoring scheme, backed by the score store if it opened.
+	private ScoreStore scoreStore;	// Saves finished games between runs, or null if the file can't be used.
 
 	private Button newGameButton;			// Disabled initially until the game is over.
+	private Button undoButton;				// Enabled while there is a card on the board and the game is not over.
+	private final int[] placedCells = new int[25];	// The cell of each card placed, as 5*row + col, in order.
 	
 	private PokerRank ranker;		// Scores the hands in each row, column, and diagonal.
 	
-	private final int[] points = { 0, 1, 2, 3, 4, 6, 9, 25, 50, 250 }; // Points associated with hand rank (0 to 9)
+	private final BoardLayout layout = new BoardLayout(); // Positions of the grid cells on the canvas.
+	
+	private final ScoringScheme scoring = ScoringScheme.getDefault(); // Points associated with hand rank (0 to 9)
 	
-	/* Holds the scores for the rows/columns/diagonals */
-	private String[] rowScores = new String[5];
-	private String[] colScores = new String[5];
-	private String[] diagScores = new String[2];
+	private final LineTable lines = LineTable.getDefault().isFiveByFive()  // The rows, columns and diagonals that are scored.
+			? LineTable.getDefault() : LineTable.STANDARD;                 // The window only has room for a 5-by-5 board.
+	
+	/* Holds the scores for the rows/columns/diagonals, in the order of the line table */
+	private String[] lineScores = new String[lines.getLineCount()];
 	
 	/**
 	 *  Draw the game board, showing the grid of cards and the next card
@@ -59,10 +70,10 @@ public class PokerSolitaire extends Application {
 		g.setLineWidth(2);
 		// Draw the 5-by-5 grid of cards.
 		for (int row = 0; row < 5; row++) {
-			int y = 20 + row*(CARD_HEIGHT + 20);  // y-coordinate for cards in this row
+			double y = layout.cellY(row);  // y-coordinate for cards in this row
 			System.out.println("y: " + y);
 			for (int col = 0; col < 5; col++) {
-				int x = 20 + col*(CARD_WIDTH + 20);  // x-coordinate for cards in this column
+				double x = layout.cellX(col);  // x-coordinate for cards in this column
 				System.out.println("x: " + x);
 				g.fillRect(x, y, CARD_WIDTH, CARD_HEIGHT); // draw empty space
 				g.strokeRect(x - 1, y - 1, CARD_WIDTH + 2, CARD_HEIGHT + 2); // draw a border
@@ -72,10 +83,10 @@ public class PokerSolitaire extends Application {
 		
 		// Draw the cards
 		for (int row = 0; row < 5; row++) {
-			int y = 20 + row*(CARD_HEIGHT + 20);
+			double y = layout.cellY(row);
 			
 			for (int col = 0; col < 5; col++) {
-				int x = 20 + col*(CARD_WIDTH + 20);
+				double x = layout.cellX(col);
 				
 				if(grid[row][col] != null)
 					grid[row][col].drawCard(g, x, y);
@@ -95,9 +106,11 @@ public class PokerSolitaire extends Application {
 			g.setStroke(Color.BROWN);
 			g.strokeText("Game", 645, CARD_HEIGHT - 50);
 			g.strokeText("over", 653, CARD_HEIGHT - 30);
-			newGameButton.setDisable(false);						
-			if(totalPoints > highScore)
-	    		highScore = totalPoints;		
+			if(newGameButton.isDisable()) { // record the game only once
+				leaderboard.record(System.getProperty("user.name"), totalPoints, ScoreStore.NO_SEED);
+			}
+			newGameButton.setDisable(false);
+			undoButton.setDisable(true);
 		}
 		// This means it's NOT the end of the game.
 		else {
@@ -105,6 +118,7 @@ public class PokerSolitaire extends Application {
 			currentCard = deck.dealCard();
 			currentCard.drawCard(g, 630, 50);
 			cardsPlaced++;
+			undoButton.setDisable(cardsPlaced < 2);
 		}
 		
 		int x, y;
@@ -112,16 +126,8 @@ public class PokerSolitaire extends Application {
 		y = CARD_HEIGHT + 100;
 		/* Draw the text displaying the hands and points in rows/columns/diagonals */	
 		g.setFill(Color.WHITE);
-		for(int i = 0; i < rowScores.length; i++) {
-			g.fillText(rowScores[i], x, y);
-			y = y + 40;
-		}
-		for(int i = 0; i < colScores.length; i++) {
-			g.fillText(colScores[i], x, y);
-			y = y + 40;
-		}
-		for(int i = 0; i < diagScores.length; i++) {
-			g.fillText(diagScores[i], x, y);
+		for(int i = 0; i < lineScores.length; i++) {
+			g.fillText(lineScores[i], x, y);
 			y = y + 40;
 		}
 		
@@ -138,7 +144,15 @@ public class PokerSolitaire extends Application {
 		g.fillText("High Score", 805, 70);
 		
 		g.setFill(Color.WHITE);
-		g.fillText(Integer.toString(highScore), 848, 105);
+		g.fillText(Integer.toString(leaderboard.getTop().getBestScore()), 848, 105);
+		
+		/* Draw the number of cards of each suit that are still in the deck */
+		DeckState remaining = deck.getRemaining();
+		g.fillText("Left in deck", 745, 160);
+		g.fillText("\u2660" + remaining.getSuitCount(PokerCard.SPADES)
+				+ "  \u2665" + remaining.getSuitCount(PokerCard.HEARTS)
+				+ "  \u2666" + remaining.getSuitCount(PokerCard.DIAMONDS)
+				+ "  \u2663" + remaining.getSuitCount(PokerCard.CLUBS), 745, 185);
 		
 		
 		System.out.println(currentCard.getSuitAsString() + currentCard.getValueAsString());
@@ -158,7 +172,13 @@ public class PokerSolitaire extends Application {
 		ranker = new PokerRank();
 		cardsPlaced = 0;
 		totalPoints = 0;
-		highScore = 0;
+		try {
+			scoreStore = ScoreStore.openDefault();
+		}
+		catch (IOException e) {
+			System.out.println("High scores will not be saved: " + e);
+		}
+		leaderboard = new Leaderboard(scoring.getName(), Leaderboard.DEFAULT_SIZE, scoreStore);
 		score();
 		
 		canvas.setOnMousePressed( evt -> doMouseDown(evt.getX(), evt.getY()) );
@@ -175,93 +195,35 @@ public class PokerSolitaire extends Application {
 	}
 
 	/**
-	 * This method scores the poker hands in each row, column, and the two diagonals.
-	 * It updates the labels associated with each, as well as the total points.
+	 * Writes the saved games to disk when the window is closed.
 	 */
-	private void score() {
-		
-		// Rows
-		for(int row = 0; row < 5; row++) {
-			for(int col = 0; col < 5; col++) {
-				
-				if(grid[row][col] != null)
-					ranker.add(grid[row][col]);	
+	public void stop() {
+		if(scoreStore != null) {
+			try {
+				scoreStore.close();
 			}
-			if(row == 0) {
-				rowScores[row] = "Row 1: " + ranker.getHandTypeAsString() + " (" + points[ranker.getHandType()] + " points)";
-				totalPoints += points[ranker.getHandType()];
+			catch (IOException e) {
+				System.out.println("Could not save high scores: " + e);
 			}
-			else if(row == 1) {
-				rowScores[row] = "Row 2: " + ranker.getHandTypeAsString() + " (" + points[ranker.getHandType()] + " points)";	
-				totalPoints += points[ranker.getHandType()];
-			}
-			else if(row == 2) {
-				rowScores[row] = "Row 3: " + ranker.getHandTypeAsString() + " (" + points[ranker.getHandType()] + " points)";
-				totalPoints += points[ranker.getHandType()];
-			}
-			else if(row == 3) {
-				rowScores[row] = "Row 4: " + ranker.getHandTypeAsString() + " (" + points[ranker.getHandType()] + " points)";
-				totalPoints += points[ranker.getHandType()];
-			}
-			else {
-				rowScores[row] = "Row 5: " + ranker.getHandTypeAsString() + " (" + points[ranker.getHandType()] + " points)";
-				totalPoints += points[ranker.getHandType()];
-			}
-			
-			ranker.clear();
 		}
-		
-		// Columns
-		for(int col = 0; col < 5; col++) {
-			for(int row = 0; row < 5; row++) {
-				
-				if(grid[row][col] != null)
-					ranker.add(grid[row][col]);
-			}
-			if(col == 0) {
-				colScores[col] = "Column 1: " + ranker.getHandTypeAsString() + " (" + points[ranker.getHandType()] + " points)";
-				totalPoints += points[ranker.getHandType()];
-			}
-			else if(col == 1) {
-				colScores[col] = "Column 2: " + ranker.getHandTypeAsString() + " (" + points[ranker.getHandType()] + " points)";	
-				totalPoints += points[ranker.getHandType()];
-			}
-			else if(col == 2) {
-				colScores[col] = "Column 3: " + ranker.getHandTypeAsString() + " (" + points[ranker.getHandType()] + " points)";
-				totalPoints += points[ranker.getHandType()];
-			}
-			else if(col == 3) {
-				colScores[col] = "Column 4: " + ranker.getHandTypeAsString() + " (" + points[ranker.getHandType()] + " points)";	
-				totalPoints += points[ranker.getHandType()];
-			}
-			else {
-				colScores[col] = "Column 5: " + ranker.getHandTypeAsString() + " (" + points[ranker.getHandType()] + " points)";
-				totalPoints += points[ranker.getHandType()];
+	}
+
+	/**
+	 * This method scores the poker hands in each line of the line table:  each row, column,
+	 * and (unless they are turned off) the two diagonals.  It updates the labels associated with each, as well as the total points.
+	 */
+	private void score() {
+		int size = lines.getSize();
+		for(int line = 0; line < lines.getLineCount(); line++) {
+			for(int cell : lines.getCellsOfLine(line)) {
+				if(grid[cell / size][cell % size] != null)
+					ranker.add(grid[cell / size][cell % size]);
 			}
-			
+			int points = scoring.getPoints(ranker.getHandType());
+			lineScores[line] = lines.getLineName(line) + ": " + ranker.getHandTypeAsString() + " (" + points + " points)";
+			totalPoints += points;
 			ranker.clear();
 		}
-		
-		// Diagonal one
-		for(int i = 0; i < 5; i++) {
-			if(grid[i][i] != null)
-				ranker.add(grid[i][i]);
-		}
-		
-		diagScores[0] = "Diagonal 1: " + ranker.getHandTypeAsString() + " (" + points[ranker.getHandType()] + " points)";
-		totalPoints += points[ranker.getHandType()];
-		ranker.clear();
-		
-		// Diagonal two
-		int j = 4;
-		for(int i = 0; i < 5; i++) {
-			if(grid[i][j] != null)
-				ranker.add(grid[i][j]);
-			j--;
-		}
-		diagScores[1] = "Diagonal 2: " + ranker.getHandTypeAsString() + " (" + points[ranker.getHandType()] + " points)";
-		totalPoints += points[ranker.getHandType()];
-		ranker.clear();
 	}
 
 	/**
@@ -272,20 +234,21 @@ public class PokerSolitaire extends Application {
      * @param y y-coordinate of mouse click.
      */
     private void doMouseDown(double x, double y) {
-    	int row = getRow(y);
-    	int col = getCol(x);
+    	int row = layout.rowAt(y);
+    	int col = layout.columnAt(x);
     	
     	if(isValid(row, col)) {
     		grid[row][col] = currentCard;
+    		placedCells[cardsPlaced - 1] = 5*row + col;
     		totalPoints = 0; // must reset this every click 
     		score();
     		draw();
     	}
     	
-//    	if(isValid(getRow(y), getCol(x))) {
+//    	if(isValid(layout.rowAt(y), layout.columnAt(x))) {
 //    		System.out.println("That was a valid click.");
-//    		System.out.println("Pressed row: " + getRow(y));
-//        	System.out.println("Pressed col: " + getCol(x));
+//    		System.out.println("Pressed row: " + layout.rowAt(y));
+//        	System.out.println("Pressed col: " + layout.columnAt(x));
 //    	}
 //    	else {
 //    		System.out.println("Invalid click. Please click in one of the unused boxes.");
@@ -305,7 +268,11 @@ public class PokerSolitaire extends Application {
     		doNewGame();
     	});
     	
-    	HBox bottomBar = new HBox(newGameButton);
+    	undoButton = new Button("Undo");
+    	undoButton.setDisable(true);
+    	undoButton.setOnAction( e -> doUndo() );
+    	
+    	HBox bottomBar = new HBox(10, undoButton, newGameButton);
     	bottomBar.setAlignment(Pos.CENTER);
     	bottomBar.setStyle( // CSS styling for the HBox
                 "-fx-padding: 5px; -fx-border-color: black; -fx-background-color: brown" );
@@ -313,6 +280,24 @@ public class PokerSolitaire extends Application {
     	return bottomBar;	
     }
     
+    /**
+     * Takes back the card that was placed most recently.  The card in the Next Card box
+     * goes back on the deck, and so does the card that is taken back, which draw() then
+     * deals again, so it is the next card once more.
+     */
+    private void doUndo() {
+    	if(cardsPlaced < 2 || !newGameButton.isDisable())  // No card on the board, or the game is over.
+    		return;
+    	deck.undealCard();
+    	int cell = placedCells[cardsPlaced - 2];
+    	grid[cell / 5][cell % 5] = null;
+    	deck.undealCard();
+    	cardsPlaced -= 2;
+    	totalPoints = 0;
+    	score();
+    	draw();
+    }
+    
     /**
      * Setups variables for a new game and clears the board.
      */
@@ -334,50 +319,6 @@ public class PokerSolitaire extends Application {
     	draw();
     }
     
-    /**
-     * Returns the row number given a y-coordinate.
-     * @param y The y-coordinate of the mouse press.
-     * @return The row number of the click, -1 if not in a row.
-     */
-    private int getRow(double y) {
-    	int row = -1; // returns -1 if outside row bounds;
-    	
-    	if(y > 20 && y < (20 + CARD_HEIGHT))
-    		row = 0;
-    	else if(y > 166 && y < (166 + CARD_HEIGHT))
-    		row = 1;
-    	else if(y > 312 && y < (312 + CARD_HEIGHT))
-    		row = 2;
-    	else if(y > 458 && y < (458 + CARD_HEIGHT))
-    		row = 3;
-    	else if(y > 604 && y < (604 + CARD_HEIGHT))
-    		row = 4;
-    	
-    	return row;
-    }
-    
-    /**
-     * Returns the column number given a x-coordinate.
-     * @param x The x-coordinate of the mouse press.
-     * @return The column number of the click, -1 if not in a column. 
-     */
-    private int getCol(double x) {
-    	int col = -1; // returns -1 if outside column bounds;
-    	
-    	if(x > 20 && x < (20 + CARD_WIDTH)) 
-    		col = 0;
-    	else if(x > 130 && x < (130 + CARD_WIDTH))
-    		col = 1;
-    	else if(x > 240 && x < (240 + CARD_WIDTH))
-    		col = 2;
-    	else if(x > 350 && x < (350 + CARD_WIDTH))
-    		col = 3;
-    	else if(x > 460 && x < (460 + CARD_WIDTH))
-    		col = 4;
-    	
-    	return col;
-    }
-    
     /**
      * Determines if a given click is valid based on row and column number.
      * @param row The row.
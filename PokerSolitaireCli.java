@@ -0,0 +1,83 @@
+import java.io.IOException;
+
+/**
+ * The command-line entry point for the headless engine:  simulations,
+ * tournaments, score distributions, training and tuning of strategies,
+ * and the check of the hand evaluator, without JavaFX or card images.
+ * This is the main class of the jar that
+ * packaging/build.sh makes, and the program that the AppCDS archive and the
+ * native image are built for, so it should not touch any class that it
+ * does not need.  Run it with no arguments for a list of commands.
+ */
+public class PokerSolitaireCli {
+
+	private static final String USAGE =
+			"Usage: PokerSolitaireCli <command> [arguments]\n" +
+			"Commands:\n" +
+			"  simulate [games] [greedy|random|odds|tuned|value] [seed] [scheme]\n" +
+			"        play games with one strategy and print statistics; tuned\n" +
+			"        uses the weights in tuner.checkpoint\n" +
+			"  tournament [deals] [seed]\n" +
+			"        compare the built-in strategies on the same deals\n" +
+			"  distribution [samples] [seed]\n" +
+			"        estimate the score distribution of the greedy strategy\n" +
+			"        with variance reduction\n" +
+			"  train [iterations] [games] [seed]\n" +
+			"        train a value model by self-play and save it in value.model\n" +
+			"  tune [iterations] [games] [seed]\n" +
+			"        tune the weights of the odds strategy and save them in\n" +
+			"        tuner.checkpoint, going on from a checkpoint of the same run\n" +
+			"  verify [threads]\n" +
+			"        check the fast hand evaluator against PokerRank on every hand\n" +
+			"  schemes\n" +
+			"        list the scoring schemes\n";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.print(USAGE);
+			return;
+		}
+		String[] rest = new String[args.length - 1];
+		System.arraycopy(args, 1, rest, 0, rest.length);
+		switch (args[0]) {
+		case "simulate":
+			Simulator.main(rest);
+			break;
+		case "tournament":
+			Tournament.main(rest);
+			break;
+		case "distribution":
+			int samples = rest.length > 0 ? Integer.parseInt(rest[0]) : 5200;
+			long seed = rest.length > 1 ? Long.parseLong(rest[1]) : 1;
+			ScoringScheme scheme = ScoringScheme.getDefault();
+			System.out.println(ScoreDistribution.estimate(new GreedyStrategy(scheme), scheme, samples, seed,
+					ScoreDistribution.ANTITHETIC | ScoreDistribution.STRATIFIED));
+			break;
+		case "train":
+			ValueTrainer.main(rest);
+			break;
+		case "tune":
+			StrategyTuner.main(rest);
+			break;
+		case "verify":
+			EvaluatorVerifier.main(rest);
+			break;
+		case "schemes":
+			System.out.println(ScoringScheme.CLASSIC);
+			System.out.println(ScoringScheme.AMERICAN);
+			System.out.println(ScoringScheme.ENGLISH);
+			try {
+				for (ScoringScheme s : ScoringScheme.load(ScoringScheme.CONFIG_FILE).values())
+					System.out.println(s);
+			}
+			catch (IOException e) {
+				// No scoring.properties, so there are only the built-in schemes.
+			}
+			break;
+		default:
+			System.err.print(USAGE);
+			System.exit(1);
+		}
+	}
+
+}
@@ -1,12 +1,24 @@
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Button;
+import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * A solitaire card game in which the user tries to get good poker
@@ -16,7 +28,7 @@ import javafx.stage.Stage;
  * over when all 25 grid positions have been filled.
  *    A score is computed for the game by assigning points to the
  * hands represented by each row, column, and diagonal according to
- * the following scale:
+ * a ScoringScheme.  By default, this is the following scale:
  *         One Pair:         1 point;
  *         Two Pairs:        2 points;
  *         Triple:           3 points;
@@ -26,13 +38,38 @@ import javafx.stage.Stage;
  *         Four of a Kind:  25 points;
  *         Straight Flush:  50 points;
  *         Royal Flush:    250 points
+ * Moves can be taken back with the Undo button, and taken back moves can
+ * be made again with Redo, until a new card is placed.  The Hint button
+ * outlines the cell where a Monte Carlo search would put the next card.
+ * The search runs in the background and starts as soon as each card is
+ * shown, so the hint is usually ready by the time it is asked for.
+ * The window can be resized; the board is scaled to fit it.
+ * If the index of daily challenges made by ChallengeGenerator is in the
+ * current directory, the Easy, Medium and Hard buttons start today's
+ * challenge deal of that difficulty, and its target score is shown,
+ * with the player's place in the Leaderboard of that deal once it has
+ * been played.  Undo, Redo and Hint are turned off during a challenge,
+ * so that every ranked game is played unassisted and without seeing the
+ * cards ahead.
+ * Every finished game is recorded in the GameLog in the user's home
+ * directory.  The Replay button shows the recorded games, starting with
+ * the most recent one, and places the cards of each game again one at a
+ * time.  Any game can be chosen by its number, and the games next to the
+ * one being shown are read ahead in the background, so going from one
+ * game to the next doesn't wait for the disk, however long the log is.
  */
 public class PokerSolitaireWithScore extends Application {
 	
 	private static final int CARD_WIDTH = 90;   // Each card image is 90 pixels wide.
 	private static final int CARD_HEIGHT = 126; // Each card image is 126 pixels tall.
+	private static final int BOARD_WIDTH = 950;  // The size of the board when it is drawn at scale 1.
+	private static final int BOARD_HEIGHT = 750;
+	private static final int REPLAY_DELAY = 500; // Milliseconds between the moves of a replayed game.
+	private static final int PREFETCH = 4;       // Games on each side of the replayed game that are read ahead.
 	
 	private Canvas canvas;     // The canvas on which the game is played.
+	private Pane canvasHolder; // Holds the canvas, and is resized with the window.
+	private final BoardLayout layout = new BoardLayout(); // Positions of the grid cells, and the scale of the board.
 	private GraphicsContext g; // A graphics context for drawing on the canvas.
 	
 	private Image faceDownCard; // An image of the back of a card.
@@ -40,8 +77,27 @@ public class PokerSolitaireWithScore extends Application {
 	private GraphicalCard[] deck; // holds the 52 cards of a standard poker deck.
 	private GraphicalCard[][] grid; // holds the cards that have been placed on the board.
 	private int nextCard; // the card that is available for the user to play next.
+	private GameState game; // the same game as the grid, with the history of moves for undo and redo.
+	private Button undoButton, redoButton; // enabled only when there is a move to undo or redo.
+	private Button hintButton; // shows the best place for the next card.
+	private HintService hints; // computes hints in the background.
+	private boolean showHint; // set to true when the user asks for a hint, and false after each move.
 	private PokerRank ranker = new PokerRank(); // used for scoring poker hands.
-	private int[] pointsForRank = { 0, 1, 2, 3, 4, 6, 9, 25, 50, 250 }; // maps ranks to scores.
+	private ScoringScheme scoring = ScoringScheme.getDefault(); // maps ranks to scores.
+	private DailyChallenges challenges; // the daily challenge deals, or null if the index could not be read.
+	private DailyChallenges.Challenge challenge; // the challenge being played, or null for a random deal.
+	private BorderPane content; // holds the canvas, and the bar of buttons for playing or for replays.
+	private HBox bottomBar, replayBar; // the buttons for playing a game, and for watching replays.
+	private GameLog.Writer recorder; // records the finished games, or null if the log can't be written.
+	private ScoreStore scoreStore; // saves finished games between runs, or null if the file can't be used.
+	private Leaderboard leaderboard; // the best games, and the ranking of each challenge deal.
+	private int[] recordedMoves; // the cells of the cards of the last game recorded on this board, or null.
+	private GameLog replayLog; // the recorded games while replays are shown, or null when playing.
+	private int replayIndex; // the number of the game being replayed.
+	private GameLog.Game replayGame; // the game being replayed, or null if it can't be shown.
+	private Timeline replayTimer; // places the next card of the replayed game.
+	private Button pauseButton; // pauses and restarts a replay.
+	private TextField gameNumberField; // for choosing a game to replay by its number.
 	
 	
 	/**
@@ -49,17 +105,22 @@ public class PokerSolitaireWithScore extends Application {
 	 *  that the user must play if the game is in progress.  The score
 	 *  is also displayed.  If a game is not in progress, then the back
 	 *  of a card id drawn in place of a card in the Next Card position.
+	 *  Each call is recorded as a PokerEvents.RenderFrame event.
 	 */
 	private void draw() {
+		PokerEvents.RenderFrame frame = new PokerEvents.RenderFrame();
+		frame.begin();
+		double scale = layout.getScale();
+		g.setTransform(scale, 0, 0, scale, 0, 0); // everything is drawn in board coordinates
 		g.setFill(Color.GREEN);
-		g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+		g.fillRect(0, 0, canvas.getWidth() / scale, canvas.getHeight() / scale);
 		g.setFill(Color.BEIGE);
 		g.setStroke(Color.SIENNA);
 		g.setLineWidth(2);
 		for (int row = 0; row < 5; row++) {
-			int y = 20 + row*(CARD_HEIGHT + 20);  // y-coordinate for cards in this row
+			double y = layout.cellY(row);  // y-coordinate for cards in this row
 			for (int col = 0; col < 5; col++) {
-				int x = 20 + col*(CARD_WIDTH + 20);  // x-coordinate for cards in this column
+				double x = layout.cellX(col);  // x-coordinate for cards in this column
 				if (grid[row][col] != null) {
 					grid[row][col].drawCard(g, x, y);
 				}
@@ -70,7 +131,7 @@ public class PokerSolitaireWithScore extends Application {
 			}
 		}
 		// Draw the next card at (x,y) = (630,50).
-		if (gameInProgress)
+		if (gameInProgress || (replayLog != null && nextCard < 25))
 			deck[nextCard].drawCard(g, 630, 50);
 		else
 			g.drawImage(faceDownCard, 630, 50);
@@ -78,13 +139,67 @@ public class PokerSolitaireWithScore extends Application {
 		g.setFill(Color.BEIGE);
 		g.setFont(Font.font(20));
 		g.fillText("Next Card", 625, 35);
-		if (!gameInProgress) {
+		if (replayLog != null) {
+			putReplayInfo();
+		}
+		else if (!gameInProgress) {
 		   g.fillText("Click anywhere\nto start a\nnew game!", 730, 80);
 		}
+		// Start working out the hint for the next card, in case the user asks for it.
+		if (gameInProgress && challenge == null)
+			hints.analyze(game, () -> { if (showHint) draw(); });
+		else
+			hints.cancel();
+		if (showHint && gameInProgress)
+			putHint();
 		putScores();
+		undoButton.setDisable(challenge != null || !game.canUndo());
+		redoButton.setDisable(challenge != null || !game.canRedo());
+		hintButton.setDisable(challenge != null || !gameInProgress);
+		frame.end();
+		if (frame.shouldCommit()) {
+			frame.cardsPlaced = game.getCardsPlaced();
+			frame.scale = scale;
+			frame.hint = showHint && gameInProgress;
+			frame.commit();
+		}
+	}
+
+	/**
+	 * Outlines the cell recommended by the hint service, or says that the hint is still
+	 * being computed.  This method is only called from draw().
+	 */
+	private void putHint() {
+		if (hints.isReady()) {
+			int cell = hints.getBestCell();
+			double x = layout.cellX(cell % 5);
+			double y = layout.cellY(cell / 5);
+			g.setStroke(Color.YELLOW);
+			g.setLineWidth(4);
+			g.strokeRect(x - 3, y - 3, CARD_WIDTH + 6, CARD_HEIGHT + 6);
+			g.setLineWidth(2);
+			g.setStroke(Color.SIENNA);
+			g.fillText(String.format("Hint: about\n%.1f points", hints.getValue(cell)), 730, 80);
+		}
+		else {
+			g.fillText("Thinking...", 730, 80);
+		}
 	}
 	
 	
+	/**
+	 * Says which recorded game is being replayed, who played it, and its score.  This
+	 * method is only called from draw().
+	 */
+	private void putReplayInfo() {
+		String text = "Replay of game\n" + (replayIndex + 1) + " of " + replayLog.size();
+		if (replayGame == null)
+			text += "\ncan't be shown";
+		else
+			text += "\nby " + replayGame.getPlayer() + "\n" + replayGame.getScore() + " points";
+		g.fillText(text, 730, 80);
+	}
+
 	/**
 	 * Computes and outputs the type of poker hand and the number of points for each
 	 * row, column, and diagonal in the grid.  Also outputs the total score.  The
@@ -96,55 +211,31 @@ public class PokerSolitaireWithScore extends Application {
 		g.setFill(Color.WHITE);
 		int y = 230;
 		int total = 0;
-		for (int row = 0; row < 5; row++) {
-			ranker.clear();
-			for (int col = 0; col < 5; col++) {
-				if (grid[row][col] != null) {
-					ranker.add(grid[row][col]);
-				}
-			}
-			int rank = ranker.getHandType();
-			int points = pointsForRank[rank];
-			g.fillText("Row " + (row+1) + ": " + ranker.getHandTypeAsString() + "  (" + points + " points)", 600, y);
-			y += 35;
-			total = total + points;
-		}
-		for (int col = 0; col < 5; col++) {
+		LineTable lines = game.getLineTable();
+		for (int line = 0; line < lines.getLineCount(); line++) {
 			ranker.clear();
-			for (int row = 0; row < 5; row++) {
-				if (grid[row][col] != null) {
-					ranker.add(grid[row][col]);
+			for (int cell : lines.getCellsOfLine(line)) {
+				if (grid[cell / 5][cell % 5] != null) {
+					ranker.add(grid[cell / 5][cell % 5]);
 				}
 			}
-			int rank = ranker.getHandType();
-			int points = pointsForRank[rank];
-			g.fillText("Column " + (col+1) + ": " + ranker.getHandTypeAsString() + "  (" + points + " points)", 600, y);
+			int points = scoring.getPoints(ranker.getHandType());
+			g.fillText(lines.getLineName(line) + ": " + ranker.getHandTypeAsString() + "  (" + points + " points)", 600, y);
 			y += 35;
 			total = total + points;
 		}
-		ranker.clear();
-		for (int i = 0; i < 5; i++) {
-			if (grid[i][i] != null) {
-				ranker.add(grid[i][i]);
-			}
-		}
-		int rank = ranker.getHandType();
-		int points = pointsForRank[rank];
-		g.fillText("Diagonal 1: " + ranker.getHandTypeAsString() + "  (" + points + " points)", 600, y);
-		y += 35;
-		total = total + points;
-		ranker.clear();
-		for (int i = 0; i < 5; i++) {
-			if (grid[i][4-i] != null) {
-				ranker.add(grid[i][4-i]);
-			}
-		}
-		rank = ranker.getHandType();
-		points = pointsForRank[rank];
-		g.fillText("Diagonal 2: " + ranker.getHandTypeAsString() + "  (" + points + " points)", 600, y);
-		y += 55;
-		total = total + points;
+		y += 20;
 		g.fillText("TOTAL POINTS: " + total, 600, y);
+		if (challenge != null) {
+			y += 30;
+			g.fillText(String.format("%s challenge:  target %d%s,\nexpected %.1f",
+					DailyChallenges.getDifficultyName(challenge.getDifficulty()), challenge.getBestScore(),
+					challenge.isOptimal() ? " (best possible)" : "", challenge.getExpectedScore()), 600, y);
+			Leaderboard.Ranking ranking = leaderboard.getRanking(challenge.getDealSeed());
+			int place = ranking.indexOf(System.getProperty("user.name"));
+			if (place >= 0)
+				g.fillText("Your place: " + (place + 1) + " of " + ranking.size(), 600, y + 50);
+		}
 	}
 	
 	/**
@@ -154,27 +245,270 @@ public class PokerSolitaireWithScore extends Application {
 	 * If not, a new Next Card is shown.
 	 */
 	private void doMouseDown(double x, double y) {
+		if (replayLog != null)
+			return;
 		if (!gameInProgress) {
 			startGame();
 			return;
 		}
-		for (int row = 0; row < 5; row++) {
-			int r = 20 + row*(CARD_HEIGHT + 20);  // y-coordinate for cards in this row
-			for (int col = 0; col < 5; col++) {
-				int c = 20 + col*(CARD_WIDTH + 20);  // x-coordinate for cards in this column
-				if ( x >= c && x < c + 90 && y >= r && y <= r + 126 && grid[row][col] == null) {
-					grid[row][col] = deck[nextCard];
-					nextCard++;
-					if (nextCard == 25) {
-						gameInProgress = false;
-					}
-					draw();
-					return;
-				}
+		int cell = layout.cellAt(x, y);
+		if (cell == -1)
+			return;
+		int row = cell / 5;
+		int col = cell % 5;
+		if (grid[row][col] == null) {
+			grid[row][col] = deck[nextCard];
+			game.place(cell);
+			showHint = false;
+			nextCard++;
+			if (nextCard == 25) {
+				gameInProgress = false;
+				recordGame();
 			}
+			draw();
 		}
 	}
 
+	/**
+	 * Adds the finished game on the board to the leaderboard and to the log of games
+	 * for replays, unless the same board has been added already and was only undone
+	 * and redone since.  A board finished differently after an undo is recorded too.
+	 * A challenge is recorded with the seed of its deal.
+	 */
+	private void recordGame() {
+		int[] moves = new int[game.getCellCount()];
+		for (int i = 0; i < moves.length; i++)
+			moves[i] = game.getMove(i);
+		if (Arrays.equals(moves, recordedMoves))
+			return;
+		recordedMoves = moves;
+		String player = System.getProperty("user.name");
+		int score = game.score(scoring);
+		long seed = challenge != null ? challenge.getDealSeed() : ScoreStore.NO_SEED;
+		leaderboard.record(player, score, seed);
+		if (recorder == null)
+			return;
+		try {
+			recorder.append(game, player, scoring.getName(), score, seed);
+		}
+		catch (IOException e) {
+			System.out.println("Could not record the game for replays: " + e);
+		}
+	}
+
+	/**
+	 * Makes the canvas fill its container after the window is resized, and scales the
+	 * board to fit, keeping its proportions.
+	 */
+	private void doResize() {
+		double width = canvasHolder.getWidth();
+		double height = canvasHolder.getHeight();
+		if (width <= 0 || height <= 0)
+			return;
+		canvas.setWidth(width);
+		canvas.setHeight(height);
+		layout.setScale(Math.min(width / BOARD_WIDTH, height / BOARD_HEIGHT));
+		if (game != null)
+			draw();
+	}
+
+	/**
+	 * Takes back the most recent move.  The card goes back to the Next Card box.  If the
+	 * board was full, the game is in progress again.  Not allowed in a challenge, where
+	 * it would show the cards that come next.
+	 */
+	private void doUndo() {
+		if (challenge != null || !game.canUndo())
+			return;
+		game.undo();
+		int cell = game.getMove(game.getCardsPlaced());
+		grid[cell / 5][cell % 5] = null;
+		showHint = false;
+		nextCard--;
+		gameInProgress = true;
+		draw();
+	}
+
+	/**
+	 * Puts the card back where it was before the most recent undo.
+	 */
+	private void doRedo() {
+		if (challenge != null || !game.canRedo())
+			return;
+		int cell = game.getMove(game.getCardsPlaced());
+		grid[cell / 5][cell % 5] = deck[nextCard];
+		game.redo();
+		showHint = false;
+		nextCard++;
+		if (nextCard == 25) {
+			gameInProgress = false;
+			recordGame();
+		}
+		draw();
+	}
+
+	/**
+	 * Creates the bottom panel that holds the Undo, Redo and Hint buttons, and a
+	 * button for each difficulty of daily challenge if the index of challenges was
+	 * loaded.  The day's challenge is looked up when the button is clicked, so a
+	 * window left open past midnight offers the new day's deal.
+	 * @return An HBox containing the buttons.
+	 */
+	private HBox makeBottom() {
+		undoButton = new Button("Undo");
+		undoButton.setOnAction( e -> doUndo() );
+		redoButton = new Button("Redo");
+		redoButton.setOnAction( e -> doRedo() );
+		hintButton = new Button("Hint");
+		hintButton.setOnAction( e -> {
+			showHint = true;
+			draw();
+		});
+		Button replayButton = new Button("Replay");
+		replayButton.setOnAction( e -> startReplay() );
+		HBox bottomBar = new HBox(10, undoButton, redoButton, hintButton, replayButton);
+		if (challenges != null) {
+			for (int d = DailyChallenges.EASY; d <= DailyChallenges.HARD; d++) {
+				if (challenges.getCount(d) == 0)
+					continue;
+				int difficulty = d;
+				Button dailyButton = new Button(DailyChallenges.getDifficultyName(d));
+				dailyButton.setOnAction( e -> startChallenge(challenges.today(difficulty)) );
+				bottomBar.getChildren().add(dailyButton);
+			}
+		}
+		bottomBar.setAlignment(Pos.CENTER);
+		bottomBar.setStyle( // CSS styling for the HBox
+				"-fx-padding: 5px; -fx-border-color: black; -fx-background-color: brown" );
+		return bottomBar;
+	}
+
+	/**
+	 * Creates the panel of buttons that is shown instead of the bottom panel while
+	 * replays are being watched.
+	 * @return An HBox containing the buttons.
+	 */
+	private HBox makeReplayBar() {
+		Button previousButton = new Button("Previous");
+		previousButton.setOnAction( e -> showReplay(replayIndex - 1) );
+		Button nextButton = new Button("Next");
+		nextButton.setOnAction( e -> showReplay(replayIndex + 1) );
+		pauseButton = new Button("Pause");
+		pauseButton.setOnAction( e -> {
+			if (replayTimer.getStatus() == Animation.Status.RUNNING) {
+				replayTimer.pause();
+				pauseButton.setText("Play");
+			}
+			else {
+				replayTimer.play();
+				pauseButton.setText("Pause");
+			}
+		});
+		gameNumberField = new TextField();
+		gameNumberField.setPrefColumnCount(8);
+		gameNumberField.setOnAction( e -> goToGame() );
+		Button goButton = new Button("Go to Game");
+		goButton.setOnAction( e -> goToGame() );
+		Button doneButton = new Button("Done");
+		doneButton.setOnAction( e -> endReplay() );
+		HBox bar = new HBox(10, previousButton, nextButton, pauseButton, gameNumberField, goButton, doneButton);
+		bar.setAlignment(Pos.CENTER);
+		bar.setStyle(
+				"-fx-padding: 5px; -fx-border-color: black; -fx-background-color: brown" );
+		return bar;
+	}
+
+	/**
+	 * Opens the log of recorded games and starts replaying the most recent one.  The
+	 * log is opened again each time, so it includes the games just played.
+	 */
+	private void startReplay() {
+		try {
+			if (recorder != null)
+				recorder.flush();
+			replayLog = new GameLog(GameLog.getDefaultFile());
+		}
+		catch (IOException e) {
+			System.out.println("Could not read the recorded games: " + e);
+			return;
+		}
+		if (replayLog.size() == 0) {
+			replayLog.close();
+			replayLog = null;
+			return;
+		}
+		gameInProgress = false;
+		challenge = null;
+		content.setBottom(replayBar);
+		showReplay(replayLog.size() - 1);
+	}
+
+	/**
+	 * Starts replaying a recorded game from an empty board.  A number outside the log
+	 * is moved to the first or last game.  The games around it are read ahead in the
+	 * background.
+	 */
+	private void showReplay(int index) {
+		replayIndex = Math.max(0, Math.min(replayLog.size() - 1, index));
+		gameNumberField.setText(String.valueOf(replayIndex + 1));
+		replayLog.prefetch(replayIndex - PREFETCH, 2*PREFETCH + 1);
+		replayGame = replayLog.getGame(replayIndex);
+		if (replayGame != null && !replayGame.getLineTable().isFiveByFive())
+			replayGame = null;   // The window only draws a 5-by-5 board.
+		if (replayGame != null) {
+			arrangeDeck(replayGame.getDeal());
+			newBoard(replayGame.getLineTable());
+			replayTimer.playFromStart();
+		}
+		else {
+			replayTimer.stop();
+			grid = new GraphicalCard[5][5];
+			nextCard = 25;
+			draw();
+		}
+		pauseButton.setText("Pause");
+	}
+
+	/**
+	 * Replays the game whose number is typed in the game number field.
+	 */
+	private void goToGame() {
+		try {
+			showReplay(Integer.parseInt(gameNumberField.getText().trim()) - 1);
+		}
+		catch (NumberFormatException e) {
+			gameNumberField.setText(String.valueOf(replayIndex + 1));
+		}
+	}
+
+	/**
+	 * Places the next card of the game being replayed, and stops at the end of the game.
+	 */
+	private void replayStep() {
+		if (replayGame == null || nextCard == 25) {
+			replayTimer.stop();
+			pauseButton.setText("Play");
+			return;
+		}
+		int cell = replayGame.getMove(nextCard);
+		grid[cell / 5][cell % 5] = deck[nextCard];
+		game.place(cell);
+		nextCard++;
+		draw();
+	}
+
+	/**
+	 * Stops showing replays and starts a new game.
+	 */
+	private void endReplay() {
+		replayTimer.stop();
+		replayLog.close();
+		replayLog = null;
+		replayGame = null;
+		content.setBottom(bottomBar);
+		startGame();
+	}
+
     /**
      * Make the array of 52 poker cards.  This method is called just once, at startup.
      */
@@ -200,8 +534,64 @@ public class PokerSolitaireWithScore extends Application {
 			deck[r] = deck[top];
 			deck[top] = temp;
 		}
+		challenge = null;
+		newBoard();
+	}
+
+	/**
+	 * Start one of the daily challenges.  The deck is put in the order of the
+	 * challenge's deal, so every player gets the same cards.
+	 */
+	private void startChallenge(DailyChallenges.Challenge daily) {
+		arrangeDeck(daily.getDeal());
+		challenge = daily;
+		newBoard();
+	}
+
+	/**
+	 * Puts the deck in the order of a deal, given as card codes.
+	 */
+	private void arrangeDeck(int[] deal) {
+		GraphicalCard[] byCode = new GraphicalCard[52];
+		for (GraphicalCard card : deck) {
+			byCode[CardCodes.code(card)] = card;
+		}
+		for (int i = 0; i < 52; i++) {
+			deck[i] = byCode[deal[i]];
+		}
+	}
+
+	/**
+	 * Remove all cards from the board and start a game with the cards in the
+	 * current order of the deck.
+	 */
+	private void newBoard() {
+		newBoard(windowLines());
+	}
+
+	/**
+	 * Returns the lines that games are played on:  the default lines, unless they are
+	 * not on a 5-by-5 board, which is the only board the window draws.
+	 */
+	private static LineTable windowLines() {
+		LineTable lines = LineTable.getDefault();
+		return lines.isFiveByFive() ? lines : LineTable.STANDARD;
+	}
+
+	/**
+	 * Remove all cards from the board and start a game on given lines with the cards
+	 * in the current order of the deck.
+	 */
+	private void newBoard(LineTable lines) {
 		grid = new GraphicalCard[5][5];
-		gameInProgress = true;
+		int[] codes = new int[52];
+		for (int i = 0; i < 52; i++) {
+			codes[i] = CardCodes.code(deck[i]);
+		}
+		game = new GameState(codes, lines);
+		recordedMoves = null;
+		showHint = false;
+		gameInProgress = replayLog == null;  // A replayed game is played by the timer, not the user.
 		nextCard = 0;
 		draw();
 	}
@@ -211,22 +601,79 @@ public class PokerSolitaireWithScore extends Application {
 	 * Set up and show the window for the program.
 	 */
 	public void start( Stage stage ) {
-		canvas = new Canvas(950,750);
+		canvas = new Canvas(BOARD_WIDTH,BOARD_HEIGHT);
 		g = canvas.getGraphicsContext2D();
-		BorderPane content = new BorderPane();
-		content.setCenter(canvas);
+		canvasHolder = new Pane(canvas);
+		canvasHolder.setMinSize(0, 0);  // lets the window shrink below the board's natural size
+		canvasHolder.widthProperty().addListener( (obs, oldVal, newVal) -> doResize() );
+		canvasHolder.heightProperty().addListener( (obs, oldVal, newVal) -> doResize() );
+		try {
+			challenges = DailyChallenges.load(DailyChallenges.INDEX_FILE, scoring, windowLines());
+		}
+		catch (IOException e) {
+			challenges = null;  // No daily challenges, or not for this game; only random deals can be played.
+		}
+		try {
+			scoreStore = ScoreStore.openDefault();
+		}
+		catch (IOException e) {
+			System.out.println("High scores will not be saved: " + e);
+		}
+		leaderboard = new Leaderboard(scoring.getName(), Leaderboard.DEFAULT_SIZE, scoreStore);
+		try {
+			recorder = new GameLog.Writer(GameLog.getDefaultFile());
+		}
+		catch (IOException e) {
+			System.out.println("Games will not be recorded for replays: " + e);
+		}
+		replayTimer = new Timeline(new KeyFrame(Duration.millis(REPLAY_DELAY), e -> replayStep()));
+		replayTimer.setCycleCount(Animation.INDEFINITE);
+		content = new BorderPane();
+		content.setCenter(canvasHolder);
+		bottomBar = makeBottom();
+		replayBar = makeReplayBar();
+		content.setBottom(bottomBar);
 		Scene scene = new Scene(content);
 		stage.setScene(scene);
 		stage.setTitle("Poker Solitaire");
-		stage.setResizable(false);
+		stage.setResizable(true);
 		stage.show();
 		faceDownCard = new Image("cards/back.jpg");
+		hints = new HintService(scoring, 100);
 		canvas.setOnMousePressed( e -> doMouseDown( e.getX(), e.getY() ));
 		makeCards();
 		startGame();
 	}
 	
 	
+	/**
+	 * Stops the hint service's background thread, and closes the score store and the
+	 * log of recorded games, when the window is closed.
+	 */
+	public void stop() {
+		hints.shutdown();
+		replayTimer.stop();
+		if (replayLog != null)
+			replayLog.close();
+		if (recorder != null) {
+			try {
+				recorder.close();
+			}
+			catch (IOException e) {
+				System.out.println("Could not save the recorded games: " + e);
+			}
+		}
+		if (scoreStore != null) {
+			try {
+				scoreStore.close();
+			}
+			catch (IOException e) {
+				System.out.println("Could not save high scores: " + e);
+			}
+		}
+	}
+
+
 	/**
 	 * Launch the application by calling its start() method.
 	 */
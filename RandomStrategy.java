@@ -0,0 +1,35 @@
+/**
+ * A strategy that puts each card in a randomly chosen empty cell.  The
+ * choice is a deterministic function of a seed and the game position,
+ * so that a simulation gives the same results no matter how the games
+ * are divided among threads, and the strategy object needs no mutable
+ * random number generator.
+ */
+public class RandomStrategy implements PlacementStrategy {
+
+	private final long seed;
+
+	/**
+	 * Creates a random strategy.  Strategies with different seeds make
+	 * different choices.
+	 */
+	public RandomStrategy(long seed) {
+		this.seed = seed;
+	}
+
+	public int chooseCell(GameState state) {
+		int placed = state.getCardsPlaced();
+		long h = Deals.mix(seed ^ ((long)placed << 32 | state.getNextCard()) ^ state.getDealtCard(0) * 0x9E3779B97F4A7C15L);
+		int k = (int)((h >>> 1) % (state.getCellCount() - placed));  // choose the k-th empty cell
+		for (int cell = 0; cell < state.getCellCount(); cell++) {
+			if (state.isEmpty(cell) && k-- == 0)
+				return cell;
+		}
+		throw new IllegalStateException("The game is over.");
+	}
+
+	public String toString() {
+		return "Random";
+	}
+
+}
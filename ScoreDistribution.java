@@ -0,0 +1,320 @@
+import java.util.SplittableRandom;
+
+/**
+ * Estimates the distribution of the final score of Poker Solitaire when it
+ * is played with a given strategy, and compares two strategies.  The number
+ * of possible deals is far too large to average over all of them, so the
+ * estimates are made by simulating games, but with optional variance
+ * reduction that makes them converge with far fewer games than naive
+ * sampling of shuffled decks:
+ * <ul>
+ * <li>ANTITHETIC plays each sampled deal together with its antithetic partner
+ *     (see Deals.fromUniforms()), and uses the average of the two scores.
+ * <li>STRATIFIED divides the samples evenly among the 52 possible first cards,
+ *     which removes the part of the variance that is due to the first card.
+ * <li>COMMON_RANDOM_NUMBERS, for compare() only, lets both strategies play
+ *     exactly the same deals, so that the luck of the deal cancels out of the
+ *     difference between their scores.
+ * </ul>
+ * Options are combined with the | operator.  All results are repeatable for
+ * a given seed.
+ */
+public class ScoreDistribution {
+
+	public static final int ANTITHETIC = 1;              // Option: use antithetic pairs of deals.
+	public static final int STRATIFIED = 2;              // Option: stratify the samples by first card.
+	public static final int COMMON_RANDOM_NUMBERS = 4;   // Option: compared strategies play the same deals.
+
+	private static final double Z_95 = 1.959964;  // For 95% confidence intervals.
+
+	private final long games;           // The number of games that were simulated.
+	private final double mean;          // The estimated expected score.
+	private final double variance;      // The estimated variance of the score of a single game.
+	private final double standardError; // The standard error of the estimate of the mean.
+	private final double royalProbability;  // The estimated probability of a Royal Flush in some line.
+
+	private ScoreDistribution(Estimator e) {
+		games = e.games();
+		mean = e.mean();
+		variance = e.gameVariance();
+		standardError = Math.sqrt(e.varianceOfMean());
+		royalProbability = e.royalProbability();
+	}
+
+	/**
+	 * Returns the number of games that were simulated to make the estimate.
+	 */
+	public long getGames() {
+		return games;
+	}
+
+	/**
+	 * Returns the estimated expected score.
+	 */
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * Returns the estimated variance of the score of one game.
+	 */
+	public double getVariance() {
+		return variance;
+	}
+
+	/**
+	 * Returns the standard error of getMean(), taking into account the variance
+	 * reduction options that were used.
+	 */
+	public double getStandardError() {
+		return standardError;
+	}
+
+	/**
+	 * Returns the estimated probability that the final board has a Royal Flush in
+	 * at least one of its twelve lines.
+	 */
+	public double getRoyalFlushProbability() {
+		return royalProbability;
+	}
+
+	public String toString() {
+		return String.format("mean %.3f +/- %.3f, std dev %.3f, P(royal flush) %.3g, %d games",
+				mean, Z_95*standardError, Math.sqrt(variance), royalProbability, games);
+	}
+
+	/**
+	 * Estimates the score distribution for a strategy.
+	 * @param strategy the strategy that plays the games.
+	 * @param scheme the scoring scheme.
+	 * @param samples the number of samples.  With the ANTITHETIC option, each sample
+	 *    is a pair of games.
+	 * @param seed the seed that determines the deals.
+	 * @param options a combination of ANTITHETIC and STRATIFIED, or 0.
+	 * @throws IllegalArgumentException if there are too few samples for the variance to be
+	 *    estimated.
+	 */
+	public static ScoreDistribution estimate(PlacementStrategy strategy, ScoringScheme scheme,
+			int samples, long seed, int options) {
+		Estimator e = new Estimator(samples, options);
+		int[][] deals = new int[2][];
+		for (int s = 0; s < samples; s++) {
+			int n = makeDeals(seed, s, options, deals);
+			e.add(s, play(strategy, scheme, deals, n, e, s % e.strata));
+		}
+		return new ScoreDistribution(e);
+	}
+
+	/**
+	 * Compares two strategies, by estimating the expected difference between their
+	 * scores.  With COMMON_RANDOM_NUMBERS, the two strategies play the same deals and
+	 * the comparison usually needs many fewer samples to tell them apart.
+	 * @param options a combination of ANTITHETIC, STRATIFIED and COMMON_RANDOM_NUMBERS, or 0.
+	 * @see #estimate(PlacementStrategy, ScoringScheme, int, long, int)
+	 */
+	public static Comparison compare(PlacementStrategy a, PlacementStrategy b, ScoringScheme scheme,
+			int samples, long seed, int options) {
+		Estimator ea = new Estimator(samples, options);
+		Estimator eb = new Estimator(samples, options);
+		Estimator diff = new Estimator(samples, options);
+		long seedB = (options & COMMON_RANDOM_NUMBERS) != 0 ? seed : Deals.mix(~seed);
+		int[][] deals = new int[2][];
+		for (int s = 0; s < samples; s++) {
+			int n = makeDeals(seed, s, options, deals);
+			double x = play(a, scheme, deals, n, ea, s % ea.strata);
+			n = makeDeals(seedB, s, options, deals);
+			double y = play(b, scheme, deals, n, eb, s % eb.strata);
+			ea.add(s, x);
+			eb.add(s, y);
+			diff.add(s, x - y);
+		}
+		return new Comparison(new ScoreDistribution(ea), new ScoreDistribution(eb), diff);
+	}
+
+	/**
+	 * The result of comparing two strategies with compare().
+	 */
+	public static class Comparison {
+
+		private final ScoreDistribution first, second;
+		private final double meanDifference;
+		private final double standardError;
+		private final double efficiency;
+
+		private Comparison(ScoreDistribution first, ScoreDistribution second, Estimator diff) {
+			this.first = first;
+			this.second = second;
+			meanDifference = diff.mean();
+			standardError = Math.sqrt(diff.varianceOfMean());
+			double independent = first.standardError*first.standardError + second.standardError*second.standardError;
+			efficiency = standardError > 0 ? independent / (standardError*standardError) : Double.POSITIVE_INFINITY;
+		}
+
+		/**
+		 * Returns the score distribution of the first strategy.
+		 */
+		public ScoreDistribution getFirst() {
+			return first;
+		}
+
+		/**
+		 * Returns the score distribution of the second strategy.
+		 */
+		public ScoreDistribution getSecond() {
+			return second;
+		}
+
+		/**
+		 * Returns the estimated expected score of the first strategy minus that of the second.
+		 */
+		public double getMeanDifference() {
+			return meanDifference;
+		}
+
+		/**
+		 * Returns the standard error of getMeanDifference().
+		 */
+		public double getStandardError() {
+			return standardError;
+		}
+
+		/**
+		 * Returns how many times more games two independent estimates would have needed
+		 * to reach the same standard error for the difference.  This is about 1 when
+		 * the strategies play different deals, and can be much larger with common
+		 * random numbers.
+		 */
+		public double getEfficiency() {
+			return efficiency;
+		}
+
+		public String toString() {
+			return String.format("difference %.3f +/- %.3f (efficiency %.1fx)%n  first:  %s%n  second: %s",
+					meanDifference, Z_95*standardError, efficiency, first, second);
+		}
+	}
+
+	// --------------------- the private implementation section -------------------
+
+	/**
+	 * Makes the one or two deals for a sample, and returns how many there are.
+	 */
+	private static int makeDeals(long seed, int sample, int options, int[][] deals) {
+		SplittableRandom rng = new SplittableRandom(Deals.mix(seed + sample * 0x9E3779B97F4A7C15L));
+		double[] u = Deals.uniforms(rng);
+		int n = (options & ANTITHETIC) != 0 ? 2 : 1;
+		for (int i = 0; i < n; i++) {
+			deals[i] = Deals.fromUniforms(u, i == 1);
+			if ((options & STRATIFIED) != 0)
+				Deals.moveToTop(deals[i], sample % CardCodes.DECK_SIZE);
+		}
+		return n;
+	}
+
+	/**
+	 * Plays the deals for one sample, records each game in the estimator as part of
+	 * a given stratum, and returns the average score.
+	 */
+	private static double play(PlacementStrategy strategy, ScoringScheme scheme, int[][] deals, int n,
+			Estimator e, int stratum) {
+		double total = 0;
+		for (int i = 0; i < n; i++) {
+			GameState game = new GameState(deals[i]);
+			game.playOut(strategy);
+			boolean royal = false;
+			for (int line = 0; line < game.getLineCount(); line++) {
+				if (game.getLineType(line) == PokerRank.ROYAL_FLUSH)
+					royal = true;
+			}
+			int score = game.score(scheme);
+			e.addGame(stratum, score, royal);
+			total += score;
+		}
+		return total / n;
+	}
+
+	/**
+	 * Accumulates samples in strata, and computes the stratified estimates.  Each
+	 * stratum has probability 1/strata.  A "sample" is the value that is averaged
+	 * to estimate the mean, such as the average score of an antithetic pair, while
+	 * a "game" is the score of one game, used to estimate the shape of the distribution.
+	 */
+	private static class Estimator {
+		final int strata;
+		final long[] n;          // number of samples in each stratum
+		final double[] mean;     // running mean of the samples in each stratum
+		final double[] m2;       // running sum of squared deviations in each stratum
+		final long[] gameCount;  // number of games in each stratum
+		final double[] gameSum, gameSumSq;
+		final long[] royalCount;
+
+		Estimator(int samples, int options) {
+			strata = (options & STRATIFIED) != 0 ? CardCodes.DECK_SIZE : 1;
+			if (samples < 2*strata)
+				throw new IllegalArgumentException("At least " + 2*strata + " samples are needed.");
+			n = new long[strata];
+			mean = new double[strata];
+			m2 = new double[strata];
+			gameCount = new long[strata];
+			gameSum = new double[strata];
+			gameSumSq = new double[strata];
+			royalCount = new long[strata];
+		}
+
+		void addGame(int h, int score, boolean royal) {
+			gameCount[h]++;
+			gameSum[h] += score;
+			gameSumSq[h] += (double)score*score;
+			if (royal)
+				royalCount[h]++;
+		}
+
+		void add(int sample, double x) {
+			int h = sample % strata;
+			n[h]++;
+			double d = x - mean[h];
+			mean[h] += d / n[h];
+			m2[h] += d * (x - mean[h]);
+		}
+
+		long games() {
+			long total = 0;
+			for (long g : gameCount)
+				total += g;
+			return total;
+		}
+
+		double mean() {
+			double total = 0;
+			for (int h = 0; h < strata; h++)
+				total += mean[h];
+			return total / strata;
+		}
+
+		double varianceOfMean() {
+			double total = 0;
+			for (int h = 0; h < strata; h++)
+				total += m2[h] / (n[h] - 1) / n[h];
+			return total / ((double)strata*strata);
+		}
+
+		double gameVariance() {
+			double m = 0, sq = 0;
+			for (int h = 0; h < strata; h++) {
+				m += gameSum[h] / gameCount[h];
+				sq += gameSumSq[h] / gameCount[h];
+			}
+			m /= strata;
+			sq /= strata;
+			return Math.max(0, sq - m*m);
+		}
+
+		double royalProbability() {
+			double p = 0;
+			for (int h = 0; h < strata; h++)
+				p += (double)royalCount[h] / gameCount[h];
+			return p / strata;
+		}
+	}
+
+}
@@ -0,0 +1,695 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps high scores, statistics for each player, and a history of recent
+ * games in a file, so that they survive from one run of the program to the
+ * next.  The file is a log:  each finished game is appended to the end as
+ * a new record, and nothing in the file is ever changed in place.  Each
+ * record starts with a marker, its length and a CRC-32 checksum, so a
+ * record that was only partly written when the program or the computer
+ * crashed is recognized when the file is read, skipped, and the reading
+ * continues with the next good record.
+ * <p>addGame() only puts the game on a lock-free queue, so it never waits
+ * for the disk, or for another thread that is recording a game.  The games
+ * on the queue are moved into the statistics and into a buffer of records
+ * by the next method that reads the statistics, or by the background
+ * thread, whichever comes first.  The background thread writes the buffer out through a
+ * FileChannel and forces it to the disk every FLUSH_INTERVAL milliseconds,
+ * so that many games, from a long simulation for example, share the cost
+ * of a single fsync.  At most the games of the last interval can be lost
+ * in a crash.  When the log has grown to several times the size of the
+ * data it contains, it is compacted:  a new file with one summary record
+ * per player, plus the recent history, is written beside it and then
+ * moved over the old file in one atomic step, so that a crash leaves
+ * either the old file or the new one, never a mixture.
+ * <p>A store holds an exclusive lock on the file LOCK_SUFFIX beside its
+ * file while it is open, so a second store on the same file, in this
+ * program or another one, can't be opened, and can't lose games by
+ * writing over the first one's or by compacting away games it hasn't read.
+ * <p>All the methods are thread-safe.
+ */
+public class ScoreStore implements AutoCloseable {
+
+	public static final int HISTORY_LIMIT = 1000;      // The number of recent games that are kept.
+	public static final long FLUSH_INTERVAL = 200;     // Milliseconds between writes to the disk.
+	public static final long NO_SEED = -1;             // The seed of a game whose deal was not seeded.
+	public static final String LOCK_SUFFIX = ".lock";  // Added to the name of the file that is locked.
+
+	private static final short MAGIC = 0x5053;         // "PS", the start of every record.
+	private static final int HEADER_SIZE = 10;         // Marker, length and checksum.
+	private static final int MAX_RECORD_SIZE = 4096;   // Longer "records" are taken to be corrupt.
+	private static final int MAX_NAME_SIZE = 1000;     // The longest name, in bytes of UTF-8.
+	private static final long COMPACT_MIN_SIZE = 1 << 20;  // Smaller files are never compacted automatically.
+	private static final int COMPACT_RATIO = 4;        // Compact when the file is this many times the live data.
+
+	private static final byte GAME = 1;      // A finished game; counts in the statistics and the history.
+	private static final byte PLAYER = 2;    // The statistics of a player, written by compaction.
+	private static final byte HISTORY = 3;   // A game that is already counted in a PLAYER record.
+
+	private static final Set<Path> OPEN_FILES = new HashSet<Path>();   // The files of the open stores of this program.
+
+	private final Path file;
+	private final Path key;            // The absolute name of the file, in OPEN_FILES.
+	private final FileChannel lockChannel;   // The lock file, locked while the store is open.
+	private final ConcurrentLinkedQueue<GameRecord> added = new ConcurrentLinkedQueue<GameRecord>();   // Games not yet applied.
+	private final Map<String,Stats> stats = new LinkedHashMap<String,Stats>();   // By player and scheme.
+	private final ArrayDeque<GameRecord> history = new ArrayDeque<GameRecord>();
+	private final ScheduledExecutorService flusher;
+	private final CRC32 crc = new CRC32();     // Used only while holding the lock on this object.
+	private final Object writeLock = new Object();   // Held while the channel is in use.
+
+	private FileChannel channel;   // Open for appending to the end of the file, or null if it couldn't be opened.
+	                               // Used only while holding the write lock.
+	private ByteBuffer pending = ByteBuffer.allocate(8192);  // Records that have not been written yet.
+	private long fileSize;         // The size of the file, including all records that have been written.
+	private int corruptRecords;    // The number of damaged parts of the file that were skipped by load.
+	private IOException failure;   // An error in the background thread, reported by the next flush().
+	private volatile boolean closed;
+
+	/**
+	 * Opens a store, reading all the records that are in the file.  If the file does
+	 * not exist, it is created.  If damaged records are found, they are skipped and
+	 * the file is compacted right away, so it is clean again.
+	 * @throws IOException if the file can't be read or created, or another store has it open.
+	 */
+	public ScoreStore(Path file) throws IOException {
+		this.file = file;
+		key = file.toAbsolutePath().normalize();
+		synchronized (OPEN_FILES) {
+			if (!OPEN_FILES.add(key))
+				throw new IOException("The score file " + file + " is already open.");
+		}
+		FileChannel lock = null;
+		try {
+			Path folder = key.getParent();
+			if (folder != null)
+				Files.createDirectories(folder);
+			lock = FileChannel.open(key.resolveSibling(key.getFileName() + LOCK_SUFFIX),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			if (lock.tryLock() == null)
+				throw new IOException("The score file " + file + " is open in another program.");
+			lockChannel = lock;
+			load();
+			if (corruptRecords > 0)
+				compact();
+			else
+				openForAppend();
+		}
+		catch (IOException | RuntimeException e) {
+			try {
+				if (channel != null)
+					channel.close();
+				if (lock != null)
+					lock.close();
+			}
+			catch (IOException closing) {
+				e.addSuppressed(closing);
+			}
+			release();
+			throw e;
+		}
+		flusher = Executors.newSingleThreadScheduledExecutor( runnable -> {
+			Thread thread = new Thread(runnable, "Score store");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::backgroundFlush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Opens the store that the game uses, in the file .pokersolitaire/scores.log in
+	 * the user's home folder.
+	 * @throws IOException if the file can't be read or created.
+	 */
+	public static ScoreStore openDefault() throws IOException {
+		return new ScoreStore(Paths.get(System.getProperty("user.home"), ".pokersolitaire", "scores.log"));
+	}
+
+	/**
+	 * Records a finished game whose deal was not seeded.
+	 * @see #addGame(String, String, int, long)
+	 */
+	public void addGame(String player, String scheme, int score) {
+		addGame(player, scheme, score, NO_SEED);
+	}
+
+	/**
+	 * Records a finished game.  The game is in the statistics the next time they are
+	 * read, and is written to the file by the background thread a little later.
+	 * This never waits for a lock.
+	 * @param player the name of the player.
+	 * @param scheme the name of the scoring scheme that the game was scored with.
+	 * @param score the final score.
+	 * @param seed the seed of the deal, as in Deals.forGame(), or NO_SEED.
+	 * @throws IllegalArgumentException if a name is null or too long.
+	 * @throws IllegalStateException if the store has been closed.
+	 */
+	public void addGame(String player, String scheme, int score, long seed) {
+		if (closed)
+			throw new IllegalStateException("The score store has been closed.");
+		GameRecord game = new GameRecord(player, scheme, score, seed, System.currentTimeMillis());
+		nameBytes(player);   // Checks the lengths now, rather than when the game is written.
+		nameBytes(scheme);
+		added.offer(game);
+	}
+
+	/**
+	 * Moves the games that have been added into the statistics, the history, and the
+	 * buffer of records to write.  Called while holding the lock on this object.
+	 */
+	private void applyAdded() {
+		GameRecord game;
+		while ((game = added.poll()) != null) {
+			pending = append(pending, GAME, game, null);
+			apply(GAME, game, null);
+		}
+	}
+
+	/**
+	 * Returns the highest score that anyone has recorded with a scoring scheme, or
+	 * zero if there are no games with that scheme.
+	 */
+	public synchronized int getHighScore(String scheme) {
+		applyAdded();
+		int best = 0;
+		for (Stats s : stats.values()) {
+			if (s.scheme.equals(scheme))
+				best = Math.max(best, s.best);
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the statistics of a player with a scoring scheme, or null if the player
+	 * has not finished a game with that scheme.
+	 */
+	public synchronized PlayerStats getStats(String player, String scheme) {
+		applyAdded();
+		Stats s = stats.get(key(player, scheme));
+		return s == null ? null : new PlayerStats(s);
+	}
+
+	/**
+	 * Returns the statistics of every player, for every scoring scheme they have used.
+	 */
+	public synchronized List<PlayerStats> getAllStats() {
+		applyAdded();
+		List<PlayerStats> list = new ArrayList<PlayerStats>();
+		for (Stats s : stats.values())
+			list.add(new PlayerStats(s));
+		return list;
+	}
+
+	/**
+	 * Returns the most recent games, at most HISTORY_LIMIT of them, oldest first.
+	 */
+	public synchronized List<GameRecord> getHistory() {
+		applyAdded();
+		return new ArrayList<GameRecord>(history);
+	}
+
+	/**
+	 * Returns the number of damaged parts of the file that were skipped when the
+	 * store was opened.
+	 */
+	public synchronized int getCorruptRecords() {
+		return corruptRecords;
+	}
+
+	/**
+	 * Writes all recorded games to the file and forces them to the disk.
+	 * @throws IOException if this or an earlier background write failed.
+	 */
+	public void flush() throws IOException {
+		synchronized (writeLock) {
+			writePending();
+			if (failure != null) {
+				IOException e = failure;
+				failure = null;
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the file with a new one that holds the same information in the
+	 * smallest form:  one record for each player and scheme, plus the history.
+	 * The new file is written under a temporary name and then renamed, so the
+	 * old file is kept if anything goes wrong, and so are the games that have
+	 * not been written to it yet.  Only the records are made while holding the
+	 * lock on this object; addGame() can record games while the file is written.
+	 * @throws IOException if the new file can't be written.
+	 * @throws IllegalStateException if the store has been closed.
+	 */
+	public void compact() throws IOException {
+		synchronized (writeLock) {
+			ByteBuffer contents = ByteBuffer.allocate(8192);
+			int covered;   // The bytes at the start of pending whose games are in the new file.
+			synchronized (this) {
+				if (!lockChannel.isOpen())
+					throw new IllegalStateException("The score store has been closed.");
+				applyAdded();
+				for (Stats s : stats.values())
+					contents = append(contents, PLAYER, null, s);
+				for (GameRecord game : history)
+					contents = append(contents, HISTORY, game, null);
+				covered = pending.position();
+			}
+			// Games recorded from here on go after the covered part of pending, which only
+			// this thread takes records out of, while it holds the write lock.
+			contents.flip();
+			Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+			try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				while (contents.hasRemaining())
+					out.write(contents);
+				out.force(true);
+			}
+			try {
+				if (channel != null)
+					channel.close();
+				channel = null;
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				synchronized (this) {
+					pending.flip();
+					pending.position(covered);
+					pending.compact();   // Keeps the games recorded while the new file was written.
+				}
+			}
+			finally {
+				openForAppend();   // The new file, or the old one if it couldn't be replaced.
+			}
+		}
+	}
+
+	/**
+	 * Writes all recorded games to the file, stops the background thread, and
+	 * closes the file.  The store can't be used after it is closed, and a game that
+	 * another thread adds while it is being closed may not be saved.
+	 * @throws IOException if the games can't be written.
+	 */
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+		}
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);   // A compaction may be running.
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			flush();
+		}
+		finally {
+			synchronized (writeLock) {
+				try {
+					if (channel != null)
+						channel.close();
+					channel = null;
+					lockChannel.close();   // Releases the lock.
+				}
+				finally {
+					release();
+				}
+			}
+		}
+	}
+
+	private void release() {
+		synchronized (OPEN_FILES) {
+			OPEN_FILES.remove(key);
+		}
+	}
+
+	/**
+	 * Runs every FLUSH_INTERVAL milliseconds on the background thread.  Errors are
+	 * kept and reported by the next call to flush().
+	 */
+	private void backgroundFlush() {
+		try {
+			synchronized (writeLock) {
+				writePending();
+				long liveSize;
+				synchronized (this) {
+					liveSize = (stats.size() + history.size()) * 64L;
+				}
+				if (fileSize > COMPACT_MIN_SIZE && fileSize > COMPACT_RATIO * liveSize)
+					compact();
+			}
+		}
+		catch (IOException e) {
+			synchronized (writeLock) {
+				failure = e;
+			}
+		}
+	}
+
+	/**
+	 * Writes the pending records at the end of the file and forces them to the disk.
+	 * This is called while holding the write lock.  The lock on this object is held
+	 * only while the buffer is taken, so addGame() doesn't wait for the disk.
+	 * @throws IOException if the records can't be written; the part that was not
+	 *    written is put back at the front of the buffer, to be written next time.
+	 */
+	private void writePending() throws IOException {
+		ByteBuffer data;
+		synchronized (this) {
+			applyAdded();
+			if (pending.position() == 0)
+				return;
+			data = pending;
+			pending = ByteBuffer.allocate(Math.max(8192, data.capacity() / 2));
+		}
+		data.flip();
+		try {
+			if (channel == null)
+				openForAppend();   // It failed after a compaction.
+			while (data.hasRemaining())
+				fileSize += channel.write(data);
+			channel.force(false);
+		}
+		catch (IOException e) {
+			synchronized (this) {
+				ByteBuffer unwritten = ByteBuffer.allocate(Math.max(8192, data.remaining() + pending.position()));
+				unwritten.put(data);
+				pending.flip();
+				unwritten.put(pending);
+				pending = unwritten;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens the channel for writing at the end of the file.
+	 */
+	private void openForAppend() throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		fileSize = channel.size();
+	}
+
+	/**
+	 * Reads the whole file and applies every good record.  After a damaged part, the
+	 * rest of the file is searched for the next record marker with a good checksum.
+	 */
+	private void load() throws IOException {
+		if (!Files.exists(file))
+			return;
+		ByteBuffer data;
+		try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = in.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("Score file is too large: " + file);
+			data = ByteBuffer.allocate((int)size);
+			while (data.hasRemaining() && in.read(data) >= 0) {
+			}
+			data.flip();
+		}
+		int position = 0;
+		boolean inDamage = false;   // True while skipping a damaged part.
+		while (position < data.limit()) {
+			int length = recordLength(data, position);
+			if (length >= 0 && applyRecord(data, position + HEADER_SIZE, length)) {
+				position += HEADER_SIZE + length;
+				inDamage = false;
+			}
+			else {
+				if (!inDamage)
+					corruptRecords++;
+				inDamage = true;
+				position++;
+			}
+		}
+	}
+
+	/**
+	 * Checks the header and checksum of the record that starts at a position.
+	 * @return the length of the record's data, or -1 if there is no good record there.
+	 */
+	private int recordLength(ByteBuffer data, int position) {
+		if (data.limit() - position < HEADER_SIZE || data.getShort(position) != MAGIC)
+			return -1;
+		int length = data.getInt(position + 2);
+		if (length < 1 || length > MAX_RECORD_SIZE || length > data.limit() - position - HEADER_SIZE)
+			return -1;
+		ByteBuffer contents = data.duplicate();
+		contents.position(position + HEADER_SIZE).limit(position + HEADER_SIZE + length);
+		crc.reset();
+		crc.update(contents);
+		if ((int)crc.getValue() != data.getInt(position + 6))
+			return -1;
+		return length;
+	}
+
+	/**
+	 * Decodes one record and applies it to the statistics and history.
+	 * @return false if the record can't be decoded.
+	 */
+	private boolean applyRecord(ByteBuffer data, int start, int length) {
+		ByteBuffer in = data.duplicate();
+		in.position(start).limit(start + length);
+		try {
+			byte type = in.get();
+			if (type == PLAYER) {
+				Stats s = new Stats(getString(in), getString(in));
+				s.games = in.getLong();
+				s.totalPoints = in.getLong();
+				s.best = in.getInt();
+				apply(PLAYER, null, s);
+			}
+			else if (type == GAME || type == HISTORY) {
+				String player = getString(in);
+				String scheme = getString(in);
+				int score = in.getInt();
+				long seed = in.getLong();
+				long time = in.getLong();
+				apply(type, new GameRecord(player, scheme, score, seed, time), null);
+			}
+			else {
+				return false;
+			}
+			return !in.hasRemaining();
+		}
+		catch (BufferUnderflowException | IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Applies a record to the statistics and history.  For a PLAYER record,
+	 * stats is the record; otherwise, game is.
+	 */
+	private void apply(byte type, GameRecord game, Stats playerStats) {
+		if (type == PLAYER) {
+			stats.put(key(playerStats.player, playerStats.scheme), playerStats);
+			return;
+		}
+		if (type == GAME) {
+			String key = key(game.getPlayer(), game.getScheme());
+			Stats s = stats.get(key);
+			if (s == null) {
+				s = new Stats(game.getPlayer(), game.getScheme());
+				stats.put(key, s);
+			}
+			s.games++;
+			s.totalPoints += game.getScore();
+			s.best = Math.max(s.best, game.getScore());
+		}
+		history.addLast(game);
+		if (history.size() > HISTORY_LIMIT)
+			history.removeFirst();
+	}
+
+	/**
+	 * Adds a record to a buffer of records.  For a PLAYER record, stats is the
+	 * record; otherwise, game is.  Called while holding the lock on this object.
+	 * @return the buffer, or a bigger copy of it if the record didn't fit.
+	 */
+	private ByteBuffer append(ByteBuffer buffer, byte type, GameRecord game, Stats playerStats) {
+		byte[] player = nameBytes(type == PLAYER ? playerStats.player : game.getPlayer());
+		byte[] scheme = nameBytes(type == PLAYER ? playerStats.scheme : game.getScheme());
+		int length = 1 + 2 + player.length + 2 + scheme.length + 20;  // Either kind of record ends with 20 bytes of numbers.
+		if (buffer.remaining() < HEADER_SIZE + length) {
+			ByteBuffer bigger = ByteBuffer.allocate(2*buffer.capacity() + HEADER_SIZE + length);
+			buffer.flip();
+			bigger.put(buffer);
+			buffer = bigger;
+		}
+		int start = buffer.position();
+		buffer.putShort(MAGIC).putInt(length).putInt(0);
+		buffer.put(type);
+		buffer.putShort((short)player.length).put(player);
+		buffer.putShort((short)scheme.length).put(scheme);
+		if (type == PLAYER)
+			buffer.putLong(playerStats.games).putLong(playerStats.totalPoints).putInt(playerStats.best);
+		else
+			buffer.putInt(game.getScore()).putLong(game.getSeed()).putLong(game.getTime());
+		ByteBuffer contents = buffer.duplicate();
+		contents.position(start + HEADER_SIZE).limit(start + HEADER_SIZE + length);
+		crc.reset();
+		crc.update(contents);
+		buffer.putInt(start + 6, (int)crc.getValue());
+		return buffer;
+	}
+
+	private static byte[] nameBytes(String name) {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_NAME_SIZE)
+			throw new IllegalArgumentException("Name is too long: " + name);
+		return bytes;
+	}
+
+	private static String getString(ByteBuffer in) {
+		int length = in.getShort();
+		if (length < 0 || length > MAX_NAME_SIZE)
+			throw new IllegalArgumentException("Bad string length.");
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static String key(String player, String scheme) {
+		return player + '\u0000' + scheme;
+	}
+
+	/**
+	 * The statistics for one player and scoring scheme, as kept in memory.
+	 */
+	private static class Stats {
+		final String player, scheme;
+		long games;
+		long totalPoints;
+		int best;
+
+		Stats(String player, String scheme) {
+			this.player = player;
+			this.scheme = scheme;
+		}
+	}
+
+	/**
+	 * A copy of the statistics of one player with one scoring scheme.
+	 */
+	public static class PlayerStats {
+
+		private final String player, scheme;
+		private final long games, totalPoints;
+		private final int best;
+
+		private PlayerStats(Stats s) {
+			player = s.player;
+			scheme = s.scheme;
+			games = s.games;
+			totalPoints = s.totalPoints;
+			best = s.best;
+		}
+
+		public String getPlayer() {
+			return player;
+		}
+
+		public String getScheme() {
+			return scheme;
+		}
+
+		public long getGames() {
+			return games;
+		}
+
+		public long getTotalPoints() {
+			return totalPoints;
+		}
+
+		public int getBestScore() {
+			return best;
+		}
+
+		/**
+		 * Returns the average score, or zero if no games have been played.
+		 */
+		public double getAverage() {
+			return games == 0 ? 0 : (double)totalPoints / games;
+		}
+
+		public String toString() {
+			return String.format("%s (%s): %d games, average %.2f, best %d",
+					player, scheme, games, getAverage(), best);
+		}
+	}
+
+	/**
+	 * One finished game in the history.
+	 */
+	public static class GameRecord {
+
+		private final String player, scheme;
+		private final int score;
+		private final long seed;
+		private final long time;
+
+		/**
+		 * @throws IllegalArgumentException if the player or scheme is null.
+		 */
+		public GameRecord(String player, String scheme, int score, long seed, long time) {
+			if (player == null || scheme == null)
+				throw new IllegalArgumentException("The player and scheme can't be null.");
+			this.player = player;
+			this.scheme = scheme;
+			this.score = score;
+			this.seed = seed;
+			this.time = time;
+		}
+
+		public String getPlayer() {
+			return player;
+		}
+
+		public String getScheme() {
+			return scheme;
+		}
+
+		public int getScore() {
+			return score;
+		}
+
+		/**
+		 * Returns the seed of the deal, or NO_SEED.
+		 */
+		public long getSeed() {
+			return seed;
+		}
+
+		/**
+		 * Returns the time when the game was finished, in milliseconds since 1970.
+		 */
+		public long getTime() {
+			return time;
+		}
+	}
+
+}
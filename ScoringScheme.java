@@ -0,0 +1,240 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A scoring scheme assigns a number of points to each basic type of poker
+ * hand (the constants PokerRank.NOTHING through PokerRank.ROYAL_FLUSH).
+ * A scheme is compiled into a flat array of ten ints, indexed by hand type,
+ * so looking up the points for a hand is a single array access no matter
+ * which scheme is in use.  The points for a full numerical rank, as returned
+ * by PokerRank.getRank(), are found the same way after shifting the hand
+ * type out of bits 20 through 23.
+ * <p>Three schemes are built in: "classic" (the scale that has always been
+ * used by this program), "american" and "english".  More schemes can be
+ * defined in a properties file, one scheme per line, in the form
+ * <pre>
+ *     scheme.tournament = 0 2 5 10 15 20 25 50 75 100
+ * </pre>
+ * where the ten numbers are the points for NOTHING, PAIR, ..., ROYAL_FLUSH.
+ * The file "scoring.properties" in the current directory is read by
+ * getDefault(), and the scheme that it returns can be selected with the
+ * system property "pokersolitaire.scoring".
+ */
+public class ScoringScheme {
+
+	public static final String CONFIG_FILE = "scoring.properties";   // Read by getDefault(), if it exists.
+	public static final String SCHEME_PROPERTY = "pokersolitaire.scoring";  // Names the default scheme.
+
+	/**
+	 * The scale used by PokerSolitaire and PokerSolitaireWithScore:
+	 * one pair 1, two pairs 2, triple 3, straight 4, flush 6, full house 9,
+	 * four of a kind 25, straight flush 50, royal flush 250.
+	 */
+	public static final ScoringScheme CLASSIC = new ScoringScheme("classic",
+			new int[] { 0, 1, 2, 3, 4, 6, 9, 25, 50, 250 });
+
+	/**
+	 * The American Poker Squares scale, in which a straight scores more than a
+	 * flush.
+	 */
+	public static final ScoringScheme AMERICAN = new ScoringScheme("american",
+			new int[] { 0, 2, 5, 10, 15, 20, 25, 50, 75, 100 });
+
+	/**
+	 * The English Poker Squares scale, which rewards straights over flushes
+	 * and full houses, and makes no difference between a straight flush
+	 * and a royal flush.
+	 */
+	public static final ScoringScheme ENGLISH = new ScoringScheme("english",
+			new int[] { 0, 1, 3, 6, 12, 5, 10, 16, 30, 30 });
+
+	private static ScoringScheme defaultScheme;  // Created by getDefault() the first time it is called.
+
+	private final String name;     // The name of the scheme, such as "american".
+	private final int[] points;    // points[t] is the number of points for a hand of type t.
+	private final int maxPoints;   // The largest value in points[].
+
+	/**
+	 * Creates a scoring scheme.
+	 * @param name the name of the scheme.
+	 * @param points the number of points for each hand type.  The array must have
+	 *    exactly ten non-negative elements, one for each hand type from NOTHING to
+	 *    ROYAL_FLUSH.  The array is copied.
+	 * @throws IllegalArgumentException if the array does not have ten elements or
+	 *    if any of the elements is negative.
+	 */
+	public ScoringScheme(String name, int[] points) {
+		if (points == null || points.length != PokerRank.ROYAL_FLUSH + 1)
+			throw new IllegalArgumentException("A scoring scheme needs points for exactly ten hand types.");
+		int max = 0;
+		for (int p : points) {
+			if (p < 0)
+				throw new IllegalArgumentException("Points in a scoring scheme can't be negative.");
+			max = Math.max(max, p);
+		}
+		this.name = name;
+		this.points = points.clone();
+		this.maxPoints = max;
+	}
+
+	/**
+	 * Returns the name of this scheme.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of points for a hand of a given basic type.
+	 * @param handType one of the constants PokerRank.NOTHING through PokerRank.ROYAL_FLUSH,
+	 *    such as the value returned by PokerRank.getHandType().
+	 */
+	public int getPoints(int handType) {
+		return points[handType];
+	}
+
+	/**
+	 * Returns the number of points for a hand with a given numerical rank, such as the
+	 * value returned by PokerRank.getRank().  Only the hand type in bits 20 through 23
+	 * of the rank is used.
+	 */
+	public int getPointsForRank(int rank) {
+		return points[rank >> 20];
+	}
+
+	/**
+	 * Returns the largest number of points that this scheme gives to a single hand.
+	 */
+	public int getMaxPoints() {
+		return maxPoints;
+	}
+
+	/**
+	 * Returns a copy of the lookup table, indexed by hand type.  Code that scores
+	 * many boards can keep the returned array in a local variable or a final field
+	 * so that the inner loop does not even need to call getPoints().
+	 */
+	public int[] getPointsTable() {
+		return points.clone();
+	}
+
+	/**
+	 * Returns the name of the scheme followed by its ten point values, in the
+	 * same form that is used in a scoring properties file.
+	 */
+	public String toString() {
+		StringBuilder s = new StringBuilder(name).append(" =");
+		for (int p : points)
+			s.append(' ').append(p);
+		return s.toString();
+	}
+
+	/**
+	 * Returns the built-in scheme with the given name, or null if there is none.
+	 */
+	public static ScoringScheme getBuiltIn(String name) {
+		if (CLASSIC.name.equalsIgnoreCase(name))
+			return CLASSIC;
+		if (AMERICAN.name.equalsIgnoreCase(name))
+			return AMERICAN;
+		if (ENGLISH.name.equalsIgnoreCase(name))
+			return ENGLISH;
+		return null;
+	}
+
+	/**
+	 * Reads scoring schemes from a properties file.  Every property whose name
+	 * starts with "scheme." defines a scheme; other properties are ignored.
+	 * @param fileName the name of the file.
+	 * @return a map from scheme names to schemes, in no particular order.  The
+	 *    built-in schemes are not included unless the file defines them.
+	 * @throws IOException if the file can't be read.
+	 * @throws IllegalArgumentException if the file contains a malformed scheme.
+	 */
+	public static Map<String,ScoringScheme> load(String fileName) throws IOException {
+		try (InputStream in = new FileInputStream(fileName)) {
+			return load(in);
+		}
+	}
+
+	/**
+	 * Reads scoring schemes in properties format from an input stream.  See
+	 * load(String) for details.  The stream is not closed.
+	 */
+	public static Map<String,ScoringScheme> load(InputStream in) throws IOException {
+		Properties props = new Properties();
+		props.load(in);
+		Map<String,ScoringScheme> schemes = new LinkedHashMap<String,ScoringScheme>();
+		for (String key : props.stringPropertyNames()) {
+			if (!key.startsWith("scheme."))
+				continue;
+			String name = key.substring("scheme.".length());
+			schemes.put(name, parse(name, props.getProperty(key)));
+		}
+		return schemes;
+	}
+
+	/**
+	 * Creates a scheme from a list of ten numbers separated by spaces and/or commas.
+	 * @throws IllegalArgumentException if the list is not ten non-negative integers.
+	 */
+	public static ScoringScheme parse(String name, String values) {
+		String[] tokens = values.trim().split("[\\s,]+");
+		if (tokens.length != PokerRank.ROYAL_FLUSH + 1)
+			throw new IllegalArgumentException("Scoring scheme \"" + name + "\" must list ten point values.");
+		int[] points = new int[tokens.length];
+		for (int i = 0; i < tokens.length; i++) {
+			try {
+				points[i] = Integer.parseInt(tokens[i]);
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Illegal point value \"" + tokens[i]
+						+ "\" in scoring scheme \"" + name + "\".");
+			}
+		}
+		return new ScoringScheme(name, points);
+	}
+
+	/**
+	 * Finds a scheme by name, looking first at the built-in schemes and then in
+	 * the file scoring.properties, if it exists.
+	 * @return the scheme, or null if there is no scheme with the given name.
+	 * @throws IllegalArgumentException if scoring.properties contains a malformed scheme.
+	 */
+	public static ScoringScheme forName(String name) {
+		ScoringScheme scheme = getBuiltIn(name);
+		if (scheme != null)
+			return scheme;
+		try {
+			return load(CONFIG_FILE).get(name);
+		}
+		catch (IOException e) {
+			return null;  // No config file, so only the built-in schemes exist.
+		}
+	}
+
+	/**
+	 * Returns the scheme named by the system property "pokersolitaire.scoring", or
+	 * the classic scheme if that property is not set.  The scheme is looked up
+	 * only once, so this can be called as often as needed.
+	 * @throws IllegalArgumentException if the property names a scheme that does not exist.
+	 */
+	public static synchronized ScoringScheme getDefault() {
+		if (defaultScheme == null) {
+			String name = System.getProperty(SCHEME_PROPERTY);
+			if (name == null)
+				defaultScheme = CLASSIC;
+			else {
+				defaultScheme = forName(name);
+				if (defaultScheme == null)
+					throw new IllegalArgumentException("Unknown scoring scheme \"" + name + "\".");
+			}
+		}
+		return defaultScheme;
+	}
+
+}
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays large numbers of games of Poker Solitaire with a given strategy,
+ * on several threads, and collects statistics about the results.  Nothing
+ * is kept for individual games:  each thread adds its games to its own
+ * GameStatistics object, and those objects are merged only after all the
+ * games are finished, so the threads never contend for shared data.
+ * Game number g always uses the deal Deals.forGame(seed, g), so the results
+ * do not depend on the number of threads.
+ */
+public class Simulator {
+
+	/**
+	 * The number of games that a thread takes at one time.  Threads take blocks
+	 * of games from a shared counter until all the games have been played.
+	 */
+	private static final int BLOCK_SIZE = 4096;
+
+	private Simulator() {
+	}
+
+	/**
+	 * Plays games using all available processors.
+	 * @see #run(PlacementStrategy, ScoringScheme, long, long, int)
+	 */
+	public static GameStatistics run(PlacementStrategy strategy, ScoringScheme scheme, long games, long seed) {
+		return run(strategy, scheme, games, seed, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Plays a number of games and returns the combined statistics.
+	 * @param strategy the strategy that places the cards.  It will be called from
+	 *    several threads at once.
+	 * @param scheme the scoring scheme.
+	 * @param games the number of games to play.
+	 * @param seed the seed that determines the deals.
+	 * @param threads the number of threads to use.
+	 */
+	public static GameStatistics run(PlacementStrategy strategy, ScoringScheme scheme,
+			long games, long seed, int threads) {
+		AtomicLong nextBlock = new AtomicLong();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<GameStatistics>> results = new ArrayList<Future<GameStatistics>>();
+			for (int t = 0; t < threads; t++) {
+				results.add(executor.submit( () -> {
+					GameStatistics stats = new GameStatistics();
+					int[] deal = new int[CardCodes.DECK_SIZE];
+					GameState game = new GameState(Deals.sorted());
+					while (true) {
+						long start = nextBlock.getAndAdd(BLOCK_SIZE);
+						if (start >= games)
+							return stats;
+						long end = Math.min(games, start + BLOCK_SIZE);
+						PokerEvents.Evaluations event = new PokerEvents.Evaluations();
+						event.begin();
+						long evaluations = game.getEvaluations();
+						for (long g = start; g < end; g++) {
+							Deals.forGame(seed, g, deal);
+							game.reset(deal);
+							game.playOut(strategy);
+							stats.add(game, game.score(scheme));
+						}
+						event.end();
+						if (event.shouldCommit()) {
+							event.source = "Simulator, " + strategy;
+							event.games = end - start;
+							event.evaluations = game.getEvaluations() - evaluations;
+							event.commit();
+						}
+					}
+				}));
+			}
+			GameStatistics total = new GameStatistics();
+			for (Future<GameStatistics> f : results)
+				total.merge(f.get());
+			return total;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Simulation was interrupted.", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Simulation failed.", e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs a simulation from the command line and prints the statistics.  The
+	 * arguments are the number of games, the strategy ("greedy", "random", "odds"
+	 * for an OddsStrategy, "tuned" for an OddsStrategy with the weights in the file
+	 * tuner.checkpoint, or "value" for a ValueStrategy with the model in the file
+	 * value.model), the seed and the scoring scheme; all of them are optional.
+	 * @throws IOException if the value model or the tuned weights can't be read.
+	 * @throws IllegalArgumentException if the strategy or the scheme is unknown.
+	 */
+	public static void main(String[] args) throws IOException {
+		long games = args.length > 0 ? Long.parseLong(args[0]) : 100000;
+		String name = args.length > 1 ? args[1] : "greedy";
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+		ScoringScheme scheme = args.length > 3 ? ScoringScheme.forName(args[3]) : ScoringScheme.getDefault();
+		if (scheme == null)
+			throw new IllegalArgumentException("Unknown scoring scheme \"" + args[3] + "\".");
+		PlacementStrategy strategy;
+		if (name.equals("random"))
+			strategy = new RandomStrategy(seed);
+		else if (name.equals("odds"))
+			strategy = new OddsStrategy(scheme);
+		else if (name.equals("tuned"))
+			strategy = StrategyTuner.loadStrategy(StrategyTuner.CHECKPOINT_FILE);
+		else if (name.equals("value"))
+			strategy = new ValueStrategy(ValueTrainer.load(ValueTrainer.MODEL_FILE));
+		else if (name.equals("greedy"))
+			strategy = new GreedyStrategy(scheme);
+		else
+			throw new IllegalArgumentException("Unknown strategy \"" + name + "\".");
+		long startTime = System.nanoTime();
+		GameStatistics stats = run(strategy, scheme, games, seed);
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		System.out.println(strategy + ", " + scheme.getName() + " scoring");
+		System.out.print(stats);
+		System.out.printf("%.2f seconds, %.0f games per second%n", seconds, games / seconds);
+	}
+
+}
@@ -0,0 +1,327 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tunes the weights of an OddsStrategy, the value of each hand type from a
+ * pair to a royal flush and the weight of the diagonals, to get the
+ * highest average score.  The search is SPSA, simultaneous perturbation
+ * stochastic approximation:  each iteration moves every weight up or down
+ * by the same small factor, with the directions chosen at random, plays
+ * the strategy with the weights moved up against the strategy with them
+ * moved down, and moves the weights along the difference in their scores.
+ * That needs just two strategies per iteration however many weights there
+ * are, so all the games go into measuring the one difference as well as
+ * possible.  The weights are kept as logarithms, so that the value of a
+ * royal flush and the value of a pair change by the same proportion.
+ * <p>Both strategies play the same deals, so the luck of the deal cancels
+ * out of the difference, and each iteration uses its own fixed set of
+ * deals, given by the seed and the iteration number, so a run can be
+ * repeated exactly.  The games are played in parallel like those of
+ * Simulator:  threads take blocks of deals from a shared counter, so the
+ * time of an iteration goes down in proportion to the number of
+ * processors, and the result depends only on the seed.  The threads are
+ * started once and kept for the whole run.
+ * <p>After each iteration main() saves the weights, the iteration number
+ * and the settings of the run in a checkpoint file, and a run that is
+ * started again with the same settings goes on from there.  The file is
+ * written beside the old one and moved over it, so a crash leaves one
+ * whole checkpoint or the other.  Simulator plays the tuned strategy as
+ * "tuned".
+ */
+public class StrategyTuner implements AutoCloseable {
+
+	public static final String CHECKPOINT_FILE = "tuner.checkpoint";   // Where main() saves its progress.
+	public static final int WEIGHT_COUNT = 10;   // The nine hand types from a pair up, and the diagonals.
+
+	private static final int BLOCK_SIZE = 64;        // Deals per work item.
+	private static final double STEP_GAIN = 0.1;     // a in the SPSA step size a/(k+1+A)^0.602.
+	private static final double STEP_DELAY = 10;     // A in the step size.
+	private static final double PERTURBATION = 0.15; // c in the perturbation c/(k+1)^0.101, in log units.
+	private static final double MAX_STEP = 0.25;     // The most that one weight's logarithm moves in one step.
+	private static final double MIN_VALUE = 0.5;     // The starting value of a hand type that scores no points.
+	private static final String[] WEIGHT_NAMES = { "pair", "two-pairs", "triple", "straight", "flush",
+			"full-house", "four-of-a-kind", "straight-flush", "royal-flush", "diagonals" };
+
+	private final HandOdds odds;
+	private final ScoringScheme scheme;
+	private final int games;
+	private final long seed;
+	private final int threads;
+	private final ExecutorService executor;
+	private final double[] logWeights = new double[WEIGHT_COUNT];
+	private int iteration;   // The number of iterations so far.
+
+	/**
+	 * Creates a tuner that starts from the points of a scoring scheme and a weight of 1
+	 * for the diagonals, which is what OddsStrategy plays by default.
+	 * @param scheme the scoring scheme that the games are scored with.
+	 * @param games the number of deals in each iteration.  Each deal is played twice.
+	 * @param seed the seed that determines the deals and the directions of the steps.
+	 * @param threads the number of threads to use.
+	 * @throws IllegalArgumentException if the number of games or threads is less than 1.
+	 */
+	public StrategyTuner(ScoringScheme scheme, int games, long seed, int threads) {
+		if (games < 1 || threads < 1)
+			throw new IllegalArgumentException("A tuner needs at least one game and one thread.");
+		odds = HandOdds.getDefault();
+		this.scheme = scheme;
+		this.games = games;
+		this.seed = seed;
+		this.threads = threads;
+		int[] points = scheme.getPointsTable();
+		for (int type = PokerRank.PAIR; type <= PokerRank.ROYAL_FLUSH; type++)
+			logWeights[type - 1] = Math.log(Math.max(MIN_VALUE, points[type]));
+		logWeights[WEIGHT_COUNT - 1] = 0;
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * Returns the number of iterations so far.
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+
+	/**
+	 * Returns the current weights:  the values of a pair through a royal flush, and
+	 * the weight of the diagonals.
+	 * @return a new array of WEIGHT_COUNT numbers.
+	 */
+	public double[] getWeights() {
+		double[] weights = new double[WEIGHT_COUNT];
+		for (int i = 0; i < WEIGHT_COUNT; i++)
+			weights[i] = Math.exp(logWeights[i]);
+		return weights;
+	}
+
+	/**
+	 * Returns a strategy that plays with the current weights.
+	 */
+	public OddsStrategy getStrategy() {
+		return strategy(odds, getWeights());
+	}
+
+	/**
+	 * Makes the strategy for a set of weights, as returned by getWeights().
+	 */
+	private static OddsStrategy strategy(HandOdds odds, double[] weights) {
+		double[] values = new double[PokerRank.ROYAL_FLUSH + 1];   // A line with nothing is worth 0.
+		System.arraycopy(weights, 0, values, PokerRank.PAIR, values.length - 1);
+		return new OddsStrategy(odds, values, weights[WEIGHT_COUNT - 1]);
+	}
+
+	/**
+	 * Does one iteration:  plays the deals of this iteration with the weights moved up
+	 * and down, and moves the weights.
+	 * @return the average score of the weights moved up minus that of the weights moved
+	 *    down.
+	 */
+	public double iterate() {
+		int k = iteration;
+		double step = STEP_GAIN / Math.pow(k + 1 + STEP_DELAY, 0.602);
+		double size = PERTURBATION / Math.pow(k + 1, 0.101);
+		long directions = Deals.mix(seed ^ Deals.mix(k + 1));   // One bit for each weight.
+		double[] up = new double[WEIGHT_COUNT];
+		double[] down = new double[WEIGHT_COUNT];
+		double[] delta = new double[WEIGHT_COUNT];
+		for (int i = 0; i < WEIGHT_COUNT; i++) {
+			delta[i] = (directions >>> i & 1) == 0 ? 1 : -1;
+			up[i] = Math.exp(logWeights[i] + size*delta[i]);
+			down[i] = Math.exp(logWeights[i] - size*delta[i]);
+		}
+		double difference = meanDifference(strategy(odds, up), strategy(odds, down), Deals.mix(seed + k));
+		for (int i = 0; i < WEIGHT_COUNT; i++) {
+			double change = step * difference / (2 * size * delta[i]);
+			logWeights[i] += Math.max(-MAX_STEP, Math.min(MAX_STEP, change));
+		}
+		iteration++;
+		return difference;
+	}
+
+	/**
+	 * Plays the same deals with two strategies, in parallel.
+	 * @param dealSeed the seed of the deals, as in Deals.forGame().
+	 * @return the average score of the first strategy minus that of the second.
+	 */
+	private double meanDifference(PlacementStrategy first, PlacementStrategy second, long dealSeed) {
+		AtomicLong nextBlock = new AtomicLong();
+		List<Future<Long>> results = new ArrayList<Future<Long>>();
+		for (int t = 0; t < threads; t++) {
+			results.add(executor.submit( () -> {
+				long total = 0;
+				int[] deal = new int[CardCodes.DECK_SIZE];
+				GameState game = new GameState(Deals.sorted());
+				while (true) {
+					long start = nextBlock.getAndAdd(BLOCK_SIZE);
+					if (start >= games)
+						return total;
+					long end = Math.min(games, start + BLOCK_SIZE);
+					for (long g = start; g < end; g++) {
+						Deals.forGame(dealSeed, g, deal);
+						game.reset(deal);
+						game.playOut(first);
+						total += game.score(scheme);
+						game.reset(deal);
+						game.playOut(second);
+						total -= game.score(scheme);
+					}
+				}
+			}));
+		}
+		try {
+			long total = 0;
+			for (Future<Long> f : results)
+				total += f.get();
+			return (double)total / games;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Tuning was interrupted.", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Tuning failed.", e.getCause());
+		}
+	}
+
+	/**
+	 * Saves the weights and the progress of the run in a checkpoint file.  The file is
+	 * replaced in one atomic step.
+	 * @throws IOException if the file can't be written.
+	 */
+	public void save(Path file) throws IOException {
+		Properties props = new Properties();
+		props.setProperty("scheme", scheme.getName());
+		props.setProperty("games", String.valueOf(games));
+		props.setProperty("seed", String.valueOf(seed));
+		props.setProperty("iteration", String.valueOf(iteration));
+		double[] weights = getWeights();
+		for (int i = 0; i < WEIGHT_COUNT; i++)
+			props.setProperty("weight." + WEIGHT_NAMES[i], String.valueOf(weights[i]));
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(temp)) {
+			props.store(out, "StrategyTuner checkpoint");
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Goes on from a checkpoint file, if it was saved by a run with the same scoring
+	 * scheme, number of games and seed.
+	 * @return true if the weights and the iteration number were read from the file.
+	 * @throws IOException if the file exists but can't be read or is malformed.
+	 */
+	public boolean resume(Path file) throws IOException {
+		if (!Files.exists(file))
+			return false;
+		Properties props = read(file);
+		if (!scheme.getName().equals(props.getProperty("scheme"))
+				|| !String.valueOf(games).equals(props.getProperty("games"))
+				|| !String.valueOf(seed).equals(props.getProperty("seed")))
+			return false;
+		double[] weights = weights(props);
+		try {
+			iteration = Integer.parseInt(props.getProperty("iteration", ""));
+		}
+		catch (NumberFormatException e) {
+			throw new IOException("Bad iteration number in the checkpoint.");
+		}
+		for (int i = 0; i < WEIGHT_COUNT; i++)
+			logWeights[i] = Math.log(weights[i]);
+		return true;
+	}
+
+	/**
+	 * Makes a strategy with the weights in a checkpoint file.
+	 * @throws IOException if the file can't be read or is malformed.
+	 */
+	public static OddsStrategy loadStrategy(String fileName) throws IOException {
+		return strategy(HandOdds.getDefault(), weights(read(Paths.get(fileName))));
+	}
+
+	private static Properties read(Path file) throws IOException {
+		Properties props = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			props.load(in);
+		}
+		return props;
+	}
+
+	private static double[] weights(Properties props) throws IOException {
+		double[] weights = new double[WEIGHT_COUNT];
+		for (int i = 0; i < WEIGHT_COUNT; i++) {
+			String key = "weight." + WEIGHT_NAMES[i];
+			try {
+				weights[i] = Double.parseDouble(props.getProperty(key, ""));
+			}
+			catch (NumberFormatException e) {
+				throw new IOException("Missing or bad " + key + " in the checkpoint.");
+			}
+			if (!(weights[i] > 0) || Double.isInfinite(weights[i]))
+				throw new IOException("Bad " + key + " in the checkpoint.");
+		}
+		return weights;
+	}
+
+	/**
+	 * Stops the threads.  The tuner must not be used any more.
+	 */
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Tunes the weights for the default scoring scheme, saving them in tuner.checkpoint
+	 * after every iteration.  If the file holds a checkpoint of a run with the same
+	 * arguments, the run goes on from it.  Every tenth iteration, and at the end, the
+	 * weights are tested by playing a separate set of games.  The optional arguments
+	 * are the number of iterations, the deals per iteration, and the seed.
+	 */
+	public static void main(String[] args) throws IOException {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 4000;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+		ScoringScheme scheme = ScoringScheme.getDefault();
+		int threads = Runtime.getRuntime().availableProcessors();
+		Path file = Paths.get(CHECKPOINT_FILE);
+		long testSeed = seed ^ 0x7E57;
+		int testGames = 20000;
+		try (StrategyTuner tuner = new StrategyTuner(scheme, games, seed, threads)) {
+			if (tuner.resume(file))
+				System.out.println("Resuming from iteration " + tuner.getIteration());
+			else {
+				GameStatistics test = Simulator.run(tuner.getStrategy(), scheme, testGames, testSeed, threads);
+				System.out.printf("Starting weights: test mean %.3f +/- %.3f%n",
+						test.getMean(), 1.96*test.getStandardError());
+			}
+			long startTime = System.nanoTime();
+			while (tuner.getIteration() < iterations) {
+				tuner.iterate();
+				tuner.save(file);
+				int i = tuner.getIteration();
+				if (i % 10 == 0 || i == iterations) {
+					GameStatistics test = Simulator.run(tuner.getStrategy(), scheme, testGames, testSeed, threads);
+					System.out.printf("Iteration %d: test mean %.3f +/- %.3f (%.0f seconds)%n",
+							i, test.getMean(), 1.96*test.getStandardError(), (System.nanoTime() - startTime) / 1e9);
+				}
+			}
+			double[] weights = tuner.getWeights();
+			for (int i = 0; i < WEIGHT_COUNT; i++)
+				System.out.printf("%-16s %8.3f%n", WEIGHT_NAMES[i], weights[i]);
+			System.out.println("Saved " + CHECKPOINT_FILE);
+		}
+	}
+
+}
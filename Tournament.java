@@ -0,0 +1,234 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares strategies fairly by making all of them play exactly the same
+ * deals.  A block of seeded deals is generated once and stored as a flat
+ * byte array, 52 card codes per deal, rather than as deck objects.  The
+ * games are then played in parallel, every strategy on every deal, and the
+ * score of each game is recorded so that the strategies can be compared
+ * deal by deal.  Because the luck of the deal is the same for every strategy,
+ * the paired differences have a much smaller variance than the scores
+ * themselves, and the confidence intervals are correspondingly narrower.
+ * <p>The results depend only on the seed and the number of deals, not on
+ * the number of threads.
+ */
+public class Tournament {
+
+	private static final int BLOCK_SIZE = 1024;   // Games per work item.
+	private static final double Z_95 = 1.959964;  // For 95% confidence intervals.
+
+	private final List<String> names = new ArrayList<String>();
+	private final List<PlacementStrategy> strategies = new ArrayList<PlacementStrategy>();
+
+	/**
+	 * Adds a strategy to the tournament.  The strategy will be called from several
+	 * threads at once, so it must be thread-safe.
+	 * @param name the name of the strategy, which is used in the report.
+	 */
+	public void addStrategy(String name, PlacementStrategy strategy) {
+		names.add(name);
+		strategies.add(strategy);
+	}
+
+	/**
+	 * Creates the deals for a tournament.  Deal number g is Deals.forGame(seed, g).
+	 * @return an array containing the deals one after the other, 52 card codes each.
+	 */
+	public static byte[] makeDeals(int count, long seed) {
+		byte[] deals = new byte[count * CardCodes.DECK_SIZE];
+		int[] deal = new int[CardCodes.DECK_SIZE];
+		for (int g = 0; g < count; g++) {
+			Deals.forGame(seed, g, deal);
+			for (int i = 0; i < deal.length; i++)
+				deals[g*CardCodes.DECK_SIZE + i] = (byte)deal[i];
+		}
+		return deals;
+	}
+
+	/**
+	 * Plays a tournament on newly generated deals, using all available processors.
+	 */
+	public Result run(int deals, long seed, ScoringScheme scheme) {
+		return run(makeDeals(deals, seed), scheme, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Lets every strategy play every deal in a block of deals.
+	 * @param deals the deals, in the format returned by makeDeals().
+	 * @param scheme the scoring scheme.
+	 * @param threads the number of threads to use.
+	 * @throws IllegalStateException if no strategies have been added.
+	 */
+	public Result run(byte[] deals, ScoringScheme scheme, int threads) {
+		if (strategies.isEmpty())
+			throw new IllegalStateException("No strategies have been added to the tournament.");
+		int games = deals.length / CardCodes.DECK_SIZE;
+		int blocksPerStrategy = (games + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int[][] scores = new int[strategies.size()][games];
+		AtomicInteger nextItem = new AtomicInteger();
+		int items = blocksPerStrategy * strategies.size();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> workers = new ArrayList<Future<?>>();
+			for (int t = 0; t < threads; t++) {
+				workers.add(executor.submit( () -> {
+					int[] deal = new int[CardCodes.DECK_SIZE];
+					GameState game = new GameState(Deals.sorted());
+					int item;
+					while ((item = nextItem.getAndIncrement()) < items) {
+						int s = item / blocksPerStrategy;
+						int start = (item % blocksPerStrategy) * BLOCK_SIZE;
+						int end = Math.min(games, start + BLOCK_SIZE);
+						PlacementStrategy strategy = strategies.get(s);
+						PokerEvents.Evaluations event = new PokerEvents.Evaluations();
+						event.begin();
+						long evaluations = game.getEvaluations();
+						for (int g = start; g < end; g++) {
+							for (int i = 0; i < deal.length; i++)
+								deal[i] = deals[g*CardCodes.DECK_SIZE + i];
+							game.reset(deal);
+							game.playOut(strategy);
+							scores[s][g] = game.score(scheme);
+						}
+						event.end();
+						if (event.shouldCommit()) {
+							event.source = "Tournament, " + names.get(s);
+							event.games = end - start;
+							event.evaluations = game.getEvaluations() - evaluations;
+							event.commit();
+						}
+					}
+				}));
+			}
+			for (Future<?> f : workers)
+				f.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Tournament was interrupted.", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Tournament failed.", e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return new Result(new ArrayList<String>(names), scores);
+	}
+
+	/**
+	 * The scores of all the games in a tournament, with methods for comparing the
+	 * strategies.  Strategies are numbered in the order in which they were added.
+	 */
+	public static class Result {
+
+		private final List<String> names;
+		private final int[][] scores;   // scores[s][g] is the score of strategy s on deal g.
+
+		private Result(List<String> names, int[][] scores) {
+			this.names = names;
+			this.scores = scores;
+		}
+
+		/**
+		 * Returns the number of deals that were played.
+		 */
+		public int getGames() {
+			return scores[0].length;
+		}
+
+		/**
+		 * Returns the score of a strategy on one deal.
+		 */
+		public int getScore(int strategy, int game) {
+			return scores[strategy][game];
+		}
+
+		/**
+		 * Returns the mean score of a strategy.
+		 */
+		public double getMean(int strategy) {
+			long total = 0;
+			for (int score : scores[strategy])
+				total += score;
+			return (double)total / scores[strategy].length;
+		}
+
+		/**
+		 * Returns the mean of the differences, score of a minus score of b, over all deals.
+		 */
+		public double getMeanDifference(int a, int b) {
+			return getMean(a) - getMean(b);
+		}
+
+		/**
+		 * Returns the half-width of the 95% confidence interval for getMeanDifference(a,b),
+		 * computed from the variance of the paired differences.
+		 */
+		public double getConfidence(int a, int b) {
+			int n = scores[a].length;
+			if (n < 2)
+				return Double.POSITIVE_INFINITY;
+			double mean = 0, m2 = 0;
+			for (int g = 0; g < n; g++) {
+				double d = scores[a][g] - scores[b][g];
+				double delta = d - mean;
+				mean += delta / (g + 1);
+				m2 += delta * (d - mean);
+			}
+			return Z_95 * Math.sqrt(m2 / (n - 1) / n);
+		}
+
+		/**
+		 * Returns the number of deals on which strategy a scored more than strategy b.
+		 */
+		public int getWins(int a, int b) {
+			int wins = 0;
+			for (int g = 0; g < scores[a].length; g++) {
+				if (scores[a][g] > scores[b][g])
+					wins++;
+			}
+			return wins;
+		}
+
+		/**
+		 * Returns a report with the mean score of each strategy and the paired
+		 * difference, with its confidence interval, for each pair of strategies.
+		 */
+		public String toString() {
+			StringBuilder s = new StringBuilder();
+			s.append(String.format("%d deals%n", getGames()));
+			for (int i = 0; i < names.size(); i++)
+				s.append(String.format("  %-20s mean %8.3f%n", names.get(i), getMean(i)));
+			for (int i = 0; i < names.size(); i++) {
+				for (int j = i + 1; j < names.size(); j++) {
+					s.append(String.format("  %s - %s: %.3f +/- %.3f (wins %d, losses %d)%n",
+							names.get(i), names.get(j), getMeanDifference(i, j), getConfidence(i, j),
+							getWins(i, j), getWins(j, i)));
+				}
+			}
+			return s.toString();
+		}
+	}
+
+	/**
+	 * Runs a tournament between the built-in strategies.  The optional arguments are
+	 * the number of deals and the seed.
+	 */
+	public static void main(String[] args) {
+		int deals = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+		ScoringScheme scheme = ScoringScheme.getDefault();
+		Tournament tournament = new Tournament();
+		tournament.addStrategy("Greedy", new GreedyStrategy(scheme));
+		tournament.addStrategy("Random", new RandomStrategy(seed));
+		System.out.print(tournament.run(deals, seed, scheme));
+	}
+
+}
@@ -0,0 +1,45 @@
+/**
+ * A table that a search uses to remember what it has learned about the
+ * positions it has already searched, so that it does not search them again
+ * when they are reached by another order of moves.  Each entry maps a 64-bit
+ * position key, such as a hash of the board, to an int value, such as an
+ * upper bound on the best score that can be reached from the position.
+ * <p>A table has a fixed number of entries, and storing a new entry may
+ * overwrite an older one, so a probe can miss even for a key that was
+ * stored.  A table never returns a value for a key that was not stored with
+ * it, except with the tiny probability of two different keys colliding.
+ * Implementations must allow probe() and store() to be called by several
+ * threads at once; a probe that races with a store may miss, but must not
+ * return a value that was stored for a different key.
+ */
+public interface TranspositionTable {
+
+	/**
+	 * The value returned by probe() when the table has no entry for a key.
+	 */
+	int MISSING = Integer.MIN_VALUE;
+
+	/**
+	 * Returns the value stored for a key, or MISSING.
+	 */
+	int probe(long key);
+
+	/**
+	 * Stores a value for a key, replacing any value that is already stored for it
+	 * and possibly an entry for another key.
+	 * @param value the value, which must not be MISSING.
+	 */
+	void store(long key, int value);
+
+	/**
+	 * Removes all the entries.  This must not be called while another thread is
+	 * using the table.
+	 */
+	void clear();
+
+	/**
+	 * Returns the number of entries that the table can hold.
+	 */
+	int getCapacity();
+
+}
@@ -0,0 +1,198 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A learned estimate of the final score of a game, from the position on
+ * the board.  The model is linear over the lines:  each line is reduced to
+ * a small feature code that describes its cards (how many there are, the
+ * pattern of equal values, and whether a flush and a straight are still
+ * open, or the hand type once the line is full), and each (line, code)
+ * pair has a weight.  The value of a position is the sum of the weights of
+ * its lines.  This is an n-tuple network with one tuple per line, and it
+ * is evaluated with a handful of table lookups.
+ * <p>Because the value is a sum over lines, the change caused by placing a
+ * card only involves the lines through its cell, so valueAfter() can rate
+ * every candidate cell without making any moves and without allocating any
+ * memory.  ValueStrategy uses it to choose moves in microseconds, which
+ * makes it a good rollout policy for MonteCarloStrategy.
+ * <p>Weights are trained by ValueTrainer.  A model is only read while games
+ * are played, so one model can be shared by any number of threads, but it
+ * must not be shared with a thread that is training it.
+ */
+public class ValueModel {
+
+	/**
+	 * The number of feature codes for each line.  Codes for partial lines are
+	 * 4*(25*count + 5*distinct + largest group) + 2*flush + straight; the codes
+	 * from PARTIAL_CODES up are for full lines, by hand type.
+	 */
+	public static final int PARTIAL_CODES = 4*125;
+	public static final int CODES = PARTIAL_CODES + PokerRank.ROYAL_FLUSH + 1;
+
+	private static final int MAGIC = 0x504F5631;  // "POV1", the start of a model file.
+	private static final int ACE_BIT = 1 << 12;   // The bit for an ace in a mask of values.
+
+	private final String schemeName;
+	private final int lineCount;
+	final double[] weights;    // weights[CODES*line + code]; package-private for ValueTrainer.
+
+	/**
+	 * Creates an untrained model for the lines of a LineTable.  The weight of each full
+	 * hand is its points under the scoring scheme and every other weight is zero, so
+	 * the model starts out as a greedy player.
+	 * @throws IllegalArgumentException if the lines have more than five cells.
+	 */
+	public ValueModel(ScoringScheme scheme, LineTable lines) {
+		if (lines.getLineLength() > 5)
+			throw new IllegalArgumentException("A value model needs lines of at most five cells.");
+		schemeName = scheme.getName();
+		lineCount = lines.getLineCount();
+		weights = new double[CODES * lineCount];
+		for (int line = 0; line < lineCount; line++) {
+			for (int type = 0; type <= PokerRank.ROYAL_FLUSH; type++)
+				weights[CODES*line + PARTIAL_CODES + type] = scheme.getPoints(type);
+		}
+	}
+
+	private ValueModel(String schemeName, int lineCount) {
+		this.schemeName = schemeName;
+		this.lineCount = lineCount;
+		weights = new double[CODES * lineCount];
+	}
+
+	/**
+	 * Returns the name of the scoring scheme that the model was trained for.
+	 */
+	public String getSchemeName() {
+		return schemeName;
+	}
+
+	/**
+	 * Returns the number of lines that the model was made for.
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * Returns the estimated final score of a game.
+	 * @throws IllegalArgumentException if the game has a different number of lines,
+	 *    or lines of more than five cells.
+	 */
+	public double value(GameState state) {
+		checkLines(state);
+		double v = 0;
+		for (int line = 0; line < lineCount; line++)
+			v += weights[CODES*line + lineCode(state, line, -1, 0)];
+		return v;
+	}
+
+	/**
+	 * Returns the change in the estimated final score if a card were placed in an empty
+	 * cell.  The state is not changed.  Adding this to value(state) gives the value of
+	 * the position after the move, and comparing it between cells gives the best move.
+	 */
+	public double valueAfter(GameState state, int cell, int card) {
+		double delta = 0;
+		for (int line : state.getLinesOfCell(cell)) {
+			int base = CODES*line;
+			delta += weights[base + lineCode(state, line, cell, card)] - weights[base + lineCode(state, line, -1, 0)];
+		}
+		return delta;
+	}
+
+	/**
+	 * Computes the feature code of a line, optionally with one more card in one of its
+	 * empty cells.
+	 * @param cell the cell of the extra card, or -1 for none.
+	 */
+	static int lineCode(GameState state, int line, int cell, int card) {
+		int count = 0;
+		long counts = 0;       // Four bits for each value.
+		int values = 0;        // One bit for each value.
+		int suit = -1;
+		boolean oneSuit = true;
+		for (int c : state.getCellsOfLine(line)) {
+			int code = c == cell ? card : state.getCard(c);
+			if (code == GameState.EMPTY)
+				continue;
+			int v = CardCodes.value(code) - 2;
+			counts += 1L << (4*v);
+			values |= 1 << v;
+			int s = CardCodes.suit(code);
+			if (count == 0)
+				suit = s;
+			else if (s != suit)
+				oneSuit = false;
+			count++;
+		}
+		if (count == state.getCellsOfLine(line).length) {
+			int rank = cell == -1 ? state.getLineRank(line) : state.rankWith(line, cell, card);
+			return PARTIAL_CODES + (rank >> 20);
+		}
+		int distinct = Integer.bitCount(values);
+		int largest = 0;
+		for (long n = counts; n != 0; n >>>= 4)
+			largest = Math.max(largest, (int)(n & 0xF));
+		boolean straight = distinct == count && (span(values) <= 4
+				|| (values & ACE_BIT) != 0 && span((values & ~ACE_BIT) << 1 | 1) <= 4);
+		return 4*(25*count + 5*distinct + largest) + (oneSuit ? 2 : 0) + (straight ? 1 : 0);
+	}
+
+	/**
+	 * Returns the distance between the highest and lowest set bits of a mask, or 0 for
+	 * an empty mask.
+	 */
+	private static int span(int mask) {
+		if (mask == 0)
+			return 0;
+		return 31 - Integer.numberOfLeadingZeros(mask) - Integer.numberOfTrailingZeros(mask);
+	}
+
+	/**
+	 * Checks that the model can value a game.
+	 * @throws IllegalArgumentException if it can't.
+	 */
+	void checkLines(GameState state) {
+		if (state.getLineCount() != lineCount)
+			throw new IllegalArgumentException("The model was made for " + lineCount + " lines.");
+		if (state.getLineTable().getLineLength() > 5)
+			throw new IllegalArgumentException("A value model needs lines of at most five cells.");
+	}
+
+	/**
+	 * Writes the model in a compact binary form.
+	 */
+	public void save(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeUTF(schemeName);
+		data.writeInt(lineCount);
+		data.writeInt(CODES);
+		for (double w : weights)
+			data.writeFloat((float)w);
+		data.flush();
+	}
+
+	/**
+	 * Reads a model that was written by save().
+	 * @throws IOException if the data can't be read or is not a model.
+	 */
+	public static ValueModel load(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not a value model.");
+		String scheme = data.readUTF();
+		int lines = data.readInt();
+		if (lines < 1 || lines > 64 || data.readInt() != CODES)
+			throw new IOException("The value model has the wrong size.");
+		ValueModel model = new ValueModel(scheme, lines);
+		for (int i = 0; i < model.weights.length; i++)
+			model.weights[i] = data.readFloat();
+		return model;
+	}
+
+}
@@ -0,0 +1,44 @@
+/**
+ * A strategy that puts each card where a ValueModel says the expected
+ * final score will be highest.  Each candidate cell costs only a few table
+ * lookups for the lines through it, so a move takes a few microseconds and
+ * no memory is allocated.  With a trained model, this is a much better
+ * rollout policy for MonteCarloStrategy than the greedy strategy, for
+ * about the same cost.
+ * <p>The strategy keeps no mutable state, so it can be used from several
+ * threads at once.
+ */
+public class ValueStrategy implements PlacementStrategy {
+
+	private final ValueModel model;
+
+	/**
+	 * Creates a strategy that plays by a value model.  The model must not be
+	 * changed while the strategy is in use.
+	 */
+	public ValueStrategy(ValueModel model) {
+		this.model = model;
+	}
+
+	public int chooseCell(GameState state) {
+		model.checkLines(state);
+		int card = state.getNextCard();
+		int bestCell = -1;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int cell = 0; cell < state.getCellCount(); cell++) {
+			if (!state.isEmpty(cell))
+				continue;
+			double value = model.valueAfter(state, cell, card);
+			if (value > bestValue) {
+				bestValue = value;
+				bestCell = cell;
+			}
+		}
+		return bestCell;
+	}
+
+	public String toString() {
+		return "Value model";
+	}
+
+}
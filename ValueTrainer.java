@@ -0,0 +1,253 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Trains a ValueModel by self-play.  Each iteration plays a batch of games
+ * with the current model (choosing a random cell for a small fraction of
+ * the moves, so that positions the model doesn't like are still explored),
+ * and then moves the weight of every (line, code) pair that occurred
+ * towards the final scores of the games in which it occurred.  That is a
+ * Monte Carlo regression of the final score on the line features.
+ * <p>The games of an iteration are played in parallel, in the same way as
+ * in Simulator:  threads take blocks of games from a shared counter, and
+ * each thread adds up its corrections in its own arrays, which are combined
+ * after all the games of the iteration are finished.  The weights do not
+ * change during an iteration, so the result depends only on the seed and
+ * not on the number of threads.
+ */
+public class ValueTrainer {
+
+	public static final String MODEL_FILE = "value.model";   // Where main() saves the model.
+
+	private static final int BLOCK_SIZE = 256;   // Games per work item.
+
+	private final ValueModel model;
+	private final ScoringScheme scheme;
+	private final LineTable lines;
+	private double learningRate = 0.3;
+	private PlacementStrategy behavior;   // The strategy that plays the training games, or null for the model.
+	private double exploration = 0.05;
+	private int iterations;    // The number of iterations so far.
+
+	/**
+	 * Creates a trainer for a model.
+	 * @param scheme the scoring scheme that the games are scored with.
+	 * @param lines the lines of the games, which must be the lines the model was made for.
+	 * @throws IllegalArgumentException if the model was made for a different number of lines.
+	 */
+	public ValueTrainer(ValueModel model, ScoringScheme scheme, LineTable lines) {
+		if (model.getLineCount() != lines.getLineCount())
+			throw new IllegalArgumentException("The model was made for " + model.getLineCount() + " lines.");
+		this.model = model;
+		this.scheme = scheme;
+		this.lines = lines;
+	}
+
+	/**
+	 * Sets the fraction of the distance to the average target that a weight moves in
+	 * one iteration.  The default is 0.3.
+	 * @throws IllegalArgumentException if the rate is not between 0 and 1.
+	 */
+	public void setLearningRate(double learningRate) {
+		if (!(learningRate > 0 && learningRate <= 1))
+			throw new IllegalArgumentException("The learning rate must be between 0 and 1.");
+		this.learningRate = learningRate;
+	}
+
+	/**
+	 * Sets the fraction of moves that are made at random during training.  The default
+	 * is 0.05.
+	 * @throws IllegalArgumentException if the fraction is not between 0 and 1.
+	 */
+	public void setExploration(double exploration) {
+		if (!(exploration >= 0 && exploration <= 1))
+			throw new IllegalArgumentException("The exploration rate must be between 0 and 1.");
+		this.exploration = exploration;
+	}
+
+	/**
+	 * Sets the strategy that plays the training games, or null to let the model play
+	 * them itself (the default).  Training on the games of a good strategy, such as
+	 * GreedyStrategy, teaches the model the value of the positions that strategy
+	 * reaches; a player that follows the model is then better than that strategy,
+	 * and further training on its own games improves it from there.
+	 */
+	public void setBehavior(PlacementStrategy behavior) {
+		this.behavior = behavior;
+	}
+
+	/**
+	 * Plays one batch of training games and updates the weights.
+	 * @param games the number of games in the batch.
+	 * @param seed the seed for the deals and for the random moves.  Each iteration
+	 *    uses different deals.
+	 * @param threads the number of threads to use.
+	 * @return the average score of the training games.
+	 */
+	public double iterate(int games, long seed, int threads) {
+		long batchSeed = Deals.mix(seed + iterations);
+		AtomicInteger nextBlock = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Batch>> results = new ArrayList<Future<Batch>>();
+			for (int t = 0; t < threads; t++) {
+				results.add(executor.submit( () -> {
+					Batch batch = new Batch();
+					int start;
+					while ((start = nextBlock.getAndAdd(BLOCK_SIZE)) < games) {
+						for (int g = start; g < Math.min(games, start + BLOCK_SIZE); g++)
+							batch.play(batchSeed, g);
+					}
+					return batch;
+				}));
+			}
+			Batch total = new Batch();
+			for (Future<Batch> f : results)
+				total.merge(f.get());
+			double[] weights = model.weights;
+			for (int i = 0; i < weights.length; i++) {
+				if (total.hits[i] > 0)
+					weights[i] += learningRate * total.errors[i] / total.hits[i];
+			}
+			iterations++;
+			return (double)total.points / games;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Training was interrupted.", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Training failed.", e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * The games played by one thread in one iteration, and the corrections they call for.
+	 */
+	private class Batch {
+
+		final double[] errors = new double[model.weights.length];  // Sum of (final score - estimate) for each weight.
+		final long[] hits = new long[model.weights.length];        // Number of times each weight was used.
+		final int[] codes = new int[lines.getCellCount() * lines.getLineCount()];  // The codes after each move.
+		final double[] estimates = new double[lines.getCellCount()];               // The value after each move.
+		final int[] deal = new int[CardCodes.DECK_SIZE];
+		final GameState game = new GameState(Deals.sorted(), lines);
+		final ValueStrategy policy = new ValueStrategy(model);
+		long points;
+
+		void play(long batchSeed, int g) {
+			Deals.forGame(batchSeed, g, deal);
+			game.reset(deal);
+			int lineCount = lines.getLineCount();
+			for (int move = 0; move < lines.getCellCount(); move++) {
+				long h = Deals.mix(batchSeed ^ (31L*g + move) * 0x9E3779B97F4A7C15L);
+				int cell;
+				if ((h >>> 11) * 0x1.0p-53 < exploration)
+					cell = nthEmptyCell((int)((h & 0x7FF) % (lines.getCellCount() - move)));
+				else
+					cell = behavior == null ? policy.chooseCell(game) : behavior.chooseCell(game);
+				game.place(cell);
+				double estimate = 0;
+				for (int line = 0; line < lineCount; line++) {
+					int index = ValueModel.CODES*line + ValueModel.lineCode(game, line, -1, 0);
+					codes[move*lineCount + line] = index;
+					estimate += model.weights[index];
+				}
+				estimates[move] = estimate;
+			}
+			int score = game.score(scheme);
+			points += score;
+			for (int move = 0; move < lines.getCellCount(); move++) {
+				double error = (score - estimates[move]) / lineCount;  // Shared among the lines.
+				for (int line = 0; line < lineCount; line++) {
+					int index = codes[move*lineCount + line];
+					errors[index] += error;
+					hits[index]++;
+				}
+			}
+		}
+
+		int nthEmptyCell(int n) {
+			for (int cell = 0; cell < lines.getCellCount(); cell++) {
+				if (game.isEmpty(cell) && n-- == 0)
+					return cell;
+			}
+			throw new IllegalStateException("The game is over.");
+		}
+
+		void merge(Batch other) {
+			for (int i = 0; i < errors.length; i++) {
+				errors[i] += other.errors[i];
+				hits[i] += other.hits[i];
+			}
+			points += other.points;
+		}
+	}
+
+	/**
+	 * Reads a model from a file.
+	 * @throws IOException if the file can't be read or is not a model.
+	 */
+	public static ValueModel load(String fileName) throws IOException {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(fileName))) {
+			return ValueModel.load(in);
+		}
+	}
+
+	/**
+	 * Writes a model to a file.
+	 * @throws IOException if the file can't be written.
+	 */
+	public static void save(ValueModel model, String fileName) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName))) {
+			model.save(out);
+		}
+	}
+
+	/**
+	 * Trains a model for the default scoring scheme and lines, and saves it in the file
+	 * value.model.  Every tenth iteration, and at the end, the model is tested by
+	 * playing a separate set of games without random moves.  The optional arguments
+	 * are the number of iterations, the games per iteration, and the seed.
+	 */
+	public static void main(String[] args) throws IOException {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+		ScoringScheme scheme = ScoringScheme.getDefault();
+		LineTable lines = LineTable.getDefault();
+		ValueModel model = new ValueModel(scheme, lines);
+		ValueTrainer trainer = new ValueTrainer(model, scheme, lines);
+		int threads = Runtime.getRuntime().availableProcessors();
+		long startTime = System.nanoTime();
+		trainer.setBehavior(new GreedyStrategy(scheme));
+		for (int i = 1; i <= iterations; i++) {
+			if (i > iterations / 2)
+				trainer.setBehavior(null);
+			double mean = trainer.iterate(games, seed, threads);
+			if (i % 10 == 0 || i == iterations) {
+				GameStatistics test = Simulator.run(new ValueStrategy(model), scheme, 20000, seed ^ 0x7E57, threads);
+				System.out.printf("Iteration %d: training mean %.3f, test mean %.3f +/- %.3f (%.0f seconds)%n",
+						i, mean, test.getMean(), 1.96*test.getStandardError(), (System.nanoTime() - startTime) / 1e9);
+			}
+		}
+		save(model, MODEL_FILE);
+		System.out.println("Saved " + MODEL_FILE);
+	}
+
+}
@@ -0,0 +1,34 @@
+#!/bin/sh
+# Makes an AppCDS archive, a file of classes that the JVM has already parsed and
+# verified, so that later runs map the classes into memory instead of loading
+# them one at a time.  The archive is recorded by a short training run and is
+# only valid for the same JDK and the same jar.
+#
+#   packaging/appcds.sh        archive for the command-line program
+#   packaging/appcds.sh game   archive for the game window; close the window
+#                              after a game to finish the training run
+#
+# The game needs JavaFX; set JAVAFX_HOME to the folder of the JavaFX SDK.
+set -e
+cd "$(dirname "$0")/.."
+
+if [ "$1" = "game" ]; then
+	if [ -z "$JAVAFX_HOME" ]; then
+		echo "Set JAVAFX_HOME to the folder of the JavaFX SDK." >&2
+		exit 1
+	fi
+	FX="--module-path $JAVAFX_HOME/lib --add-modules javafx.controls"
+	rm -rf build/game
+	mkdir -p build/game
+	javac $FX -d build/game *.java
+	java $FX -XX:ArchiveClassesAtExit=build/game.jsa -cp build/game PokerSolitaireWithScore
+	echo "Wrote build/game.jsa.  Start the game with:"
+	echo "  java $FX -XX:SharedArchiveFile=build/game.jsa -cp build/game PokerSolitaireWithScore"
+else
+	[ -f build/pokersolitaire-cli.jar ] || packaging/build.sh
+	# The training run should touch the classes of the engine; classes that it misses are
+	# still loaded from the jar as usual.
+	java -XX:ArchiveClassesAtExit=build/cli.jsa -jar build/pokersolitaire-cli.jar simulate 2000 > /dev/null
+	echo "Wrote build/cli.jsa.  Run the program with:"
+	echo "  java -XX:SharedArchiveFile=build/cli.jsa -jar build/pokersolitaire-cli.jar <command>"
+fi
@@ -0,0 +1,18 @@
+#!/bin/sh
+# Compiles the headless engine and packs it into build/pokersolitaire-cli.jar,
+# with PokerSolitaireCli as its main class.  The JavaFX classes are left out,
+# so the jar runs on any JDK, with or without JavaFX.  Run from any folder;
+# paths are relative to the top of the project.
+set -e
+cd "$(dirname "$0")/.."
+
+rm -rf build/classes
+mkdir -p build/classes
+
+# Every source file that does not use JavaFX, directly or through GraphicalCard.
+SOURCES=$(grep -L -e javafx -e GraphicalCard *.java)
+javac -d build/classes $SOURCES
+
+printf 'Main-Class: PokerSolitaireCli\n' > build/manifest.txt
+jar --create --file build/pokersolitaire-cli.jar --manifest build/manifest.txt -C build/classes .
+echo "Wrote build/pokersolitaire-cli.jar"